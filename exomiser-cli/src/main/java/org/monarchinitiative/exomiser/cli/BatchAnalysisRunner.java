@@ -0,0 +1,368 @@
+/*
+ * The Exomiser - A tool to annotate and prioritize genomic variants
+ *
+ * Copyright (c) 2016-2017 Queen Mary University of London.
+ * Copyright (c) 2012-2016 Charité Universitätsmedizin Berlin and Genome Research Ltd.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.monarchinitiative.exomiser.cli;
+
+import org.monarchinitiative.exomiser.core.analysis.util.VariantCountEstimator;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs the analyses of a batch file concurrently. Up to maxConcurrentAnalyses are run at once, so long as the
+ * estimated memory needed to hold their variants fits in the heap budget. The number of variants in each VCF is
+ * estimated before the batch starts and the largest analyses are started first so that a long-running whole genome
+ * does not end up running alone at the end of the batch. An analysis which is larger than the whole budget is run on
+ * its own.
+ * <p>
+ * A failed analysis is logged and recorded in the {@link BatchResult} rather than stopping the rest of the batch. An
+ * entry can run several analyses of the same VCF together, such as the probands of a cohort, in which case the memory
+ * reserved for it is scaled by the number of analyses and a result is recorded for each of them.
+ *
+ * @author Jules Jacobsen <j.jacobsen@qmul.ac.uk>
+ */
+public class BatchAnalysisRunner {
+
+    private static final Logger logger = LoggerFactory.getLogger(BatchAnalysisRunner.class);
+
+    private static final long BYTES_PER_MEGABYTE = 1024L * 1024L;
+
+    private final int maxConcurrentAnalyses;
+    private final long bytesPerVariant;
+    private final long heapBudgetBytes;
+
+    /**
+     * @param maxConcurrentAnalyses the maximum number of analyses to run at once.
+     * @param bytesPerVariant       estimate of the heap used by each variant of a running analysis.
+     * @param heapBudgetBytes       heap available to the running analyses.
+     */
+    public BatchAnalysisRunner(int maxConcurrentAnalyses, long bytesPerVariant, long heapBudgetBytes) {
+        if (maxConcurrentAnalyses < 1) {
+            throw new IllegalArgumentException("maxConcurrentAnalyses must be at least 1");
+        }
+        this.maxConcurrentAnalyses = maxConcurrentAnalyses;
+        this.bytesPerVariant = bytesPerVariant;
+        this.heapBudgetBytes = heapBudgetBytes;
+    }
+
+    /**
+     * @return the given fraction of the heap which is not currently in use.
+     */
+    public static long freeHeapBudget(double heapFraction) {
+        Runtime runtime = Runtime.getRuntime();
+        long usedBytes = runtime.totalMemory() - runtime.freeMemory();
+        return (long) ((runtime.maxMemory() - usedBytes) * heapFraction);
+    }
+
+    /**
+     * Runs all the entries, blocking until they have finished.
+     *
+     * @return the result of each analysis, in the same order as the entries.
+     */
+    public List<BatchResult> run(List<BatchEntry> entries) {
+        int budgetMegabytes = (int) Math.max(1, Math.min(Integer.MAX_VALUE, heapBudgetBytes / BYTES_PER_MEGABYTE));
+        List<ScheduledEntry> scheduledEntries = new ArrayList<>(entries.size());
+        for (BatchEntry entry : entries) {
+            long estimatedVariantCount = estimateVariantCount(entry.getVcfPath());
+            //each analysis of the entry holds its own copy of the variants which pass its filters
+            long requiredMegabytes = estimatedVariantCount * bytesPerVariant * entry.getAnalysisNames().size() / BYTES_PER_MEGABYTE;
+            int reservedMegabytes = (int) Math.max(1, Math.min(budgetMegabytes, requiredMegabytes));
+            scheduledEntries.add(new ScheduledEntry(entry, estimatedVariantCount, reservedMegabytes));
+        }
+        logger.info("Running {} analyses using up to {} threads and {} MB of heap", entries.size(), maxConcurrentAnalyses, budgetMegabytes);
+
+        //the semaphore is fair so that a large analysis waiting for memory is not starved by smaller ones
+        Semaphore memory = new Semaphore(budgetMegabytes, true);
+        AtomicInteger numFinished = new AtomicInteger();
+        ExecutorService executorService = Executors.newFixedThreadPool(maxConcurrentAnalyses, daemonThreadFactory("exomiser-batch-"));
+        try {
+            List<ScheduledEntry> largestFirst = new ArrayList<>(scheduledEntries);
+            largestFirst.sort(Comparator.comparingLong(ScheduledEntry::getEstimatedVariantCount).reversed());
+            for (ScheduledEntry scheduledEntry : largestFirst) {
+                scheduledEntry.future = executorService.submit(() -> {
+                    List<BatchResult> entryResults = runEntry(scheduledEntry, memory);
+                    logger.info("Finished {} of {} batch entries", numFinished.incrementAndGet(), entries.size());
+                    return entryResults;
+                });
+            }
+            List<BatchResult> results = new ArrayList<>(scheduledEntries.size());
+            for (ScheduledEntry scheduledEntry : scheduledEntries) {
+                results.addAll(getResults(scheduledEntry));
+            }
+            return results;
+        } finally {
+            executorService.shutdownNow();
+        }
+    }
+
+    private long estimateVariantCount(Path vcfPath) {
+        if (vcfPath == null) {
+            return 0;
+        }
+        try {
+            return VariantCountEstimator.estimateVariantCount(vcfPath);
+        } catch (IOException e) {
+            //the analysis will report the problem with the file when it is run
+            logger.warn("Unable to estimate number of variants in {}", vcfPath, e);
+            return 0;
+        }
+    }
+
+    private List<BatchResult> runEntry(ScheduledEntry scheduledEntry, Semaphore memory) throws InterruptedException {
+        BatchEntry entry = scheduledEntry.getEntry();
+        memory.acquire(scheduledEntry.getReservedMegabytes());
+        Instant startTime = Instant.now();
+        long startNanos = System.nanoTime();
+        try {
+            logger.info("Running analysis: {}", entry.getName());
+            Map<String, String> failures = entry.getTask().run();
+            long durationMillis = elapsedMillis(startNanos);
+            List<BatchResult> results = new ArrayList<>(entry.getAnalysisNames().size());
+            for (String analysisName : entry.getAnalysisNames()) {
+                String failure = failures.get(analysisName);
+                BatchStatus status = failure == null ? BatchStatus.COMPLETED : BatchStatus.FAILED;
+                results.add(new BatchResult(entry, analysisName, scheduledEntry.getEstimatedVariantCount(), status, startTime, durationMillis, failure == null ? "" : failure));
+            }
+            return results;
+        } catch (RuntimeException e) {
+            logger.error("Analysis {} failed", entry.getName(), e);
+            return failedResults(scheduledEntry, startTime, elapsedMillis(startNanos), String.valueOf(e.getMessage()));
+        } finally {
+            memory.release(scheduledEntry.getReservedMegabytes());
+        }
+    }
+
+    private static long elapsedMillis(long startNanos) {
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
+    }
+
+    private List<BatchResult> getResults(ScheduledEntry scheduledEntry) {
+        BatchEntry entry = scheduledEntry.getEntry();
+        try {
+            return scheduledEntry.future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return failedResults(scheduledEntry, Instant.now(), 0, "Interrupted");
+        } catch (ExecutionException e) {
+            logger.error("Analysis {} failed", entry.getName(), e.getCause());
+            return failedResults(scheduledEntry, Instant.now(), 0, String.valueOf(e.getCause()));
+        }
+    }
+
+    private static List<BatchResult> failedResults(ScheduledEntry scheduledEntry, Instant startTime, long durationMillis, String message) {
+        BatchEntry entry = scheduledEntry.getEntry();
+        List<BatchResult> results = new ArrayList<>(entry.getAnalysisNames().size());
+        for (String analysisName : entry.getAnalysisNames()) {
+            results.add(new BatchResult(entry, analysisName, scheduledEntry.getEstimatedVariantCount(), BatchStatus.FAILED, startTime, durationMillis, message));
+        }
+        return results;
+    }
+
+    /**
+     * Writes a tab-separated summary of the batch with one line per analysis.
+     */
+    public static void writeSummary(Path summaryFile, List<BatchResult> results) {
+        try (BufferedWriter writer = Files.newBufferedWriter(summaryFile, StandardCharsets.UTF_8)) {
+            writer.write("#ANALYSIS\tVCF\tESTIMATED_VARIANTS\tSTATUS\tSTART_TIME\tDURATION_MS\tMESSAGE");
+            writer.newLine();
+            for (BatchResult result : results) {
+                BatchEntry entry = result.getEntry();
+                writer.write(String.join("\t",
+                        result.getAnalysisName(),
+                        String.valueOf(entry.getVcfPath()),
+                        String.valueOf(result.getEstimatedVariantCount()),
+                        result.getStatus().toString(),
+                        result.getStartTime().toString(),
+                        String.valueOf(result.getDurationMillis()),
+                        result.getMessage().replaceAll("[\t\r\n]+", " ")));
+                writer.newLine();
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Unable to write batch summary " + summaryFile, e);
+        }
+        logger.info("Written batch summary to {}", summaryFile);
+    }
+
+    private static ThreadFactory daemonThreadFactory(String namePrefix) {
+        AtomicInteger threadCount = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, namePrefix + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    private static class ScheduledEntry {
+
+        private final BatchEntry entry;
+        private final long estimatedVariantCount;
+        private final int reservedMegabytes;
+        private Future<List<BatchResult>> future;
+
+        private ScheduledEntry(BatchEntry entry, long estimatedVariantCount, int reservedMegabytes) {
+            this.entry = entry;
+            this.estimatedVariantCount = estimatedVariantCount;
+            this.reservedMegabytes = reservedMegabytes;
+        }
+
+        BatchEntry getEntry() {
+            return entry;
+        }
+
+        long getEstimatedVariantCount() {
+            return estimatedVariantCount;
+        }
+
+        int getReservedMegabytes() {
+            return reservedMegabytes;
+        }
+    }
+
+    /**
+     * Runs the analyses of a batch entry and writes their results.
+     */
+    @FunctionalInterface
+    public interface BatchTask {
+
+        /**
+         * @return a message describing the failure of each analysis which failed, keyed by the analysis name. An
+         * exception thrown from here fails all the analyses of the entry.
+         */
+        Map<String, String> run();
+    }
+
+    /**
+     * An entry of the batch - either a single analysis or several analyses of the same VCF which are run together.
+     */
+    public static class BatchEntry {
+
+        private final String name;
+        private final List<String> analysisNames;
+        private final Path vcfPath;
+        private final BatchTask task;
+
+        /**
+         * @param name    name of the analysis used in the logs and summary, usually the path of the analysis file.
+         * @param vcfPath the VCF analysed, used to estimate the memory required. May be null if this is not known.
+         * @param task    runs the analysis and writes the results.
+         */
+        public BatchEntry(String name, Path vcfPath, Runnable task) {
+            this(Collections.singletonList(name), vcfPath, () -> {
+                task.run();
+                return Collections.emptyMap();
+            });
+        }
+
+        /**
+         * @param analysisNames names of the analyses run together by the task, used in the logs and summary.
+         * @param vcfPath       the VCF shared by the analyses, used to estimate the memory required. May be null if
+         *                      this is not known.
+         * @param task          runs the analyses and writes their results.
+         */
+        public BatchEntry(List<String> analysisNames, Path vcfPath, BatchTask task) {
+            if (analysisNames.isEmpty()) {
+                throw new IllegalArgumentException("A batch entry must have at least one analysis");
+            }
+            this.name = String.join(",", analysisNames);
+            this.analysisNames = Collections.unmodifiableList(new ArrayList<>(analysisNames));
+            this.vcfPath = vcfPath;
+            this.task = task;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public List<String> getAnalysisNames() {
+            return analysisNames;
+        }
+
+        public Path getVcfPath() {
+            return vcfPath;
+        }
+
+        public BatchTask getTask() {
+            return task;
+        }
+    }
+
+    public enum BatchStatus {
+        COMPLETED, FAILED
+    }
+
+    public static class BatchResult {
+
+        private final BatchEntry entry;
+        private final String analysisName;
+        private final long estimatedVariantCount;
+        private final BatchStatus status;
+        private final Instant startTime;
+        private final long durationMillis;
+        private final String message;
+
+        BatchResult(BatchEntry entry, String analysisName, long estimatedVariantCount, BatchStatus status, Instant startTime, long durationMillis, String message) {
+            this.entry = entry;
+            this.analysisName = analysisName;
+            this.estimatedVariantCount = estimatedVariantCount;
+            this.status = status;
+            this.startTime = startTime;
+            this.durationMillis = durationMillis;
+            this.message = message;
+        }
+
+        public BatchEntry getEntry() {
+            return entry;
+        }
+
+        public String getAnalysisName() {
+            return analysisName;
+        }
+
+        public long getEstimatedVariantCount() {
+            return estimatedVariantCount;
+        }
+
+        public BatchStatus getStatus() {
+            return status;
+        }
+
+        public Instant getStartTime() {
+            return startTime;
+        }
+
+        public long getDurationMillis() {
+            return durationMillis;
+        }
+
+        public String getMessage() {
+            return message;
+        }
+    }
+}
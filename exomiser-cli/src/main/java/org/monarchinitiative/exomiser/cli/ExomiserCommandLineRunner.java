@@ -21,12 +21,16 @@
 package org.monarchinitiative.exomiser.cli;
 
 import org.apache.commons.cli.*;
+import org.monarchinitiative.exomiser.cli.BatchAnalysisRunner.BatchEntry;
+import org.monarchinitiative.exomiser.cli.BatchAnalysisRunner.BatchResult;
+import org.monarchinitiative.exomiser.cli.BatchAnalysisRunner.BatchStatus;
 import org.monarchinitiative.exomiser.core.Exomiser;
 import org.monarchinitiative.exomiser.core.analysis.*;
 import org.monarchinitiative.exomiser.core.writers.OutputFormat;
 import org.monarchinitiative.exomiser.core.writers.OutputSettings;
 import org.monarchinitiative.exomiser.core.writers.ResultsWriter;
 import org.monarchinitiative.exomiser.core.writers.ResultsWriterFactory;
+import org.monarchinitiative.exomiser.core.writers.ResultsWriterUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -36,7 +40,14 @@
 
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+
+import static java.util.stream.Collectors.toList;
 
 /**
  * @author Jules Jacobsen <jules.jacobsen@sanger.ac.uk>
@@ -63,6 +74,15 @@ public class ExomiserCommandLineRunner implements CommandLineRunner {
     @Value("buildVersion")
     private String buildVersion;
 
+    @Value("${exomiser.batch.max-concurrent-analyses:0}")
+    private int maxConcurrentAnalyses;
+    @Value("${exomiser.batch.bytes-per-variant:2048}")
+    private long bytesPerVariant;
+    @Value("${exomiser.batch.heap-fraction:0.8}")
+    private double heapFraction;
+    @Value("${exomiser.batch.cohort-mode:false}")
+    private boolean cohortMode;
+
     @Override
     public void run(String... strings) {
         if (strings.length == 0) {
@@ -84,25 +104,14 @@ private void runAnalyses(CommandLine commandLine) {
             Path analysisBatchFile = Paths.get(commandLine.getOptionValue("analysis-batch"));
             List<Path> analysisScripts = new BatchFileReader().readPathsFromBatchFile(analysisBatchFile);
             logger.info("Running {} analyses from analysis batch file.", analysisScripts.size());
-            //this *can* be run in parallel using parallelStream() at the expense of RAM in order to hold all the variants in memory.
-            //like this:
-            //analysisScripts.parallelStream().forEach(this::runAnalysisFromScript);
-            //HOWEVER there may be threading issues so this needs investigation.
-            analysisScripts.forEach(analysis ->{
-                logger.info("Running analysis: {}", analysis);
-                runAnalysisFromScript(analysis);
-            });
+            runBatch(analysisBatchFile, makeBatchEntries(analysisScripts, this::prepareAnalysisFromScript));
         }
         //check the args for a batch file first as this option is otherwise ignored
         else if (commandLine.hasOption("batch-file")) {
             Path batchFilePath = Paths.get(commandLine.getOptionValue("batch-file"));
             List<Path> settingsFiles = new BatchFileReader().readPathsFromBatchFile(batchFilePath);
             logger.info("Running {} analyses from settings batch file.", settingsFiles.size());
-            for (Path settingsFile : settingsFiles) {
-                logger.info("Running settings: {}", settingsFile);
-                Settings settings = commandLineOptionsParser.parseSettingsFile(settingsFile);
-                runAnalysisFromSettings(settings);
-            }
+            runBatch(batchFilePath, makeBatchEntries(settingsFiles, this::prepareAnalysisFromSettingsFile));
         } else {
             //make a single SettingsBuilder
             Settings settings = commandLineOptionsParser.parseCommandLine(commandLine);
@@ -127,6 +136,149 @@ private void printHelp() {
         formatter.printHelp(launchCommand, options);
     }
 
+    /**
+     * Runs the batch concurrently and writes a summary of the timings and outcome of each analysis next to the batch
+     * file. The shared data sources are safe for concurrent use - the tabix files are read through a pool of readers,
+     * the variant caches are concurrent and load each variant only once when several analyses ask for it at the same
+     * time, and the phenotype data is read-only once loaded - so the limit on the number of analyses run at once is the
+     * heap.
+     */
+    private void runBatch(Path batchFile, List<BatchEntry> batchEntries) {
+        int numThreads = maxConcurrentAnalyses > 0 ? maxConcurrentAnalyses : Runtime.getRuntime().availableProcessors();
+        long heapBudget = BatchAnalysisRunner.freeHeapBudget(heapFraction);
+        BatchAnalysisRunner batchAnalysisRunner = new BatchAnalysisRunner(numThreads, bytesPerVariant, heapBudget);
+        List<BatchResult> results = batchAnalysisRunner.run(batchEntries);
+        long numFailed = results.stream().filter(result -> result.getStatus() == BatchStatus.FAILED).count();
+        logger.info("Finished batch of {} analyses with {} failures", results.size(), numFailed);
+        Path summaryFile = batchFile.resolveSibling(batchFile.getFileName() + ".summary.tsv");
+        BatchAnalysisRunner.writeSummary(summaryFile, results);
+    }
+
+    /**
+     * Parses the analyses up-front so that the VCFs can be sized before the batch starts. Any problem parsing a file is
+     * reported as a failure of that analysis when the batch is run, as is an analysis which would overwrite the
+     * results of an earlier one. In cohort mode the analyses of the same VCF are run together as a single entry of the
+     * batch, so that the VCF is only read and annotated once, and an analysis without an outputPrefix has its results
+     * named after its proband as well as the VCF.
+     */
+    private List<BatchEntry> makeBatchEntries(List<Path> analysisFiles, Function<Path, PreparedAnalysis> analysisPreparer) {
+        List<BatchEntry> batchEntries = new ArrayList<>();
+        Map<Path, List<PreparedAnalysis>> cohortsByVcf = new LinkedHashMap<>();
+        Map<Path, String> outputFileOwners = new HashMap<>();
+        for (Path analysisFile : analysisFiles) {
+            try {
+                PreparedAnalysis preparedAnalysis = analysisPreparer.apply(analysisFile);
+                if (cohortMode) {
+                    preparedAnalysis = withProbandOutputPrefix(preparedAnalysis);
+                }
+                claimOutputFiles(preparedAnalysis, outputFileOwners);
+                Path vcfPath = preparedAnalysis.analysis.getVcfPath();
+                if (cohortMode) {
+                    cohortsByVcf.computeIfAbsent(vcfPath, key -> new ArrayList<>()).add(preparedAnalysis);
+                } else {
+                    Analysis analysis = preparedAnalysis.analysis;
+                    OutputSettings outputSettings = preparedAnalysis.outputSettings;
+                    batchEntries.add(new BatchEntry(preparedAnalysis.name, vcfPath, () -> runAnalysisAndWriteResults(analysis, outputSettings)));
+                }
+            } catch (RuntimeException e) {
+                batchEntries.add(new BatchEntry(analysisFile.toString(), null, () -> {
+                    throw e;
+                }));
+            }
+        }
+        cohortsByVcf.forEach((vcfPath, cohort) -> {
+            List<String> analysisNames = cohort.stream().map(preparedAnalysis -> preparedAnalysis.name).collect(toList());
+            batchEntries.add(new BatchEntry(analysisNames, vcfPath, () -> runCohortAndWriteResults(cohort)));
+        });
+        return batchEntries;
+    }
+
+    /**
+     * The probands of a cohort usually share a VCF, so without an outputPrefix they would all write their results to
+     * the default files for that VCF. These are given a default prefix which also includes the proband sample name, or
+     * the name of the analysis file where the proband is not named.
+     */
+    private static PreparedAnalysis withProbandOutputPrefix(PreparedAnalysis preparedAnalysis) {
+        OutputSettings outputSettings = preparedAnalysis.outputSettings;
+        Path vcfPath = preparedAnalysis.analysis.getVcfPath();
+        if (vcfPath == null || !outputSettings.getOutputPrefix().isEmpty()) {
+            return preparedAnalysis;
+        }
+        String probandSampleName = preparedAnalysis.analysis.getProbandSampleName();
+        if (probandSampleName.isEmpty()) {
+            probandSampleName = Paths.get(preparedAnalysis.name).getFileName().toString();
+        }
+        OutputSettings probandOutputSettings = OutputSettings.builder()
+                .outputPassVariantsOnly(outputSettings.outputPassVariantsOnly())
+                .numberOfGenesToShow(outputSettings.getNumberOfGenesToShow())
+                .outputFormats(outputSettings.getOutputFormats())
+                .outputPrefix(ResultsWriterUtils.makeProbandOutputPrefix(vcfPath, probandSampleName))
+                .build();
+        return new PreparedAnalysis(preparedAnalysis.name, preparedAnalysis.analysis, probandOutputSettings);
+    }
+
+    /**
+     * Records the results files the analysis will write, failing it if any of them belong to an earlier analysis of
+     * the batch, as running both would leave only the results of whichever finished last.
+     */
+    private static void claimOutputFiles(PreparedAnalysis preparedAnalysis, Map<Path, String> outputFileOwners) {
+        Path vcfPath = preparedAnalysis.analysis.getVcfPath();
+        String outputPrefix = preparedAnalysis.outputSettings.getOutputPrefix();
+        if (vcfPath == null && outputPrefix.isEmpty()) {
+            //nothing to name the results after - the analysis itself will report the missing VCF
+            return;
+        }
+        List<Path> outputFiles = new ArrayList<>();
+        for (OutputFormat outputFormat : preparedAnalysis.outputSettings.getOutputFormats()) {
+            Path outputFile = Paths.get(ResultsWriterUtils.makeOutputFilename(vcfPath, outputPrefix, outputFormat)).toAbsolutePath().normalize();
+            String owner = outputFileOwners.get(outputFile);
+            if (owner != null) {
+                throw new IllegalArgumentException(String.format("Results file %s would overwrite the results of %s - set a different outputPrefix", outputFile, owner));
+            }
+            outputFiles.add(outputFile);
+        }
+        outputFiles.forEach(outputFile -> outputFileOwners.put(outputFile, preparedAnalysis.name));
+    }
+
+    private PreparedAnalysis prepareAnalysisFromScript(Path analysisScript) {
+        Analysis analysis = analysisParser.parseAnalysis(analysisScript);
+        OutputSettings outputSettings = analysisParser.parseOutputSettings(analysisScript);
+        return new PreparedAnalysis(analysisScript.toString(), analysis, outputSettings);
+    }
+
+    private PreparedAnalysis prepareAnalysisFromSettingsFile(Path settingsFile) {
+        Settings settings = commandLineOptionsParser.parseSettingsFile(settingsFile);
+        if (!settings.isValid()) {
+            throw new IllegalArgumentException("Invalid settings in " + settingsFile);
+        }
+        Analysis analysis = settingsParser.parse(settings);
+        return new PreparedAnalysis(settingsFile.toString(), analysis, settings);
+    }
+
+    /**
+     * @return a message describing the failure of each analysis of the cohort which failed, keyed by the analysis name.
+     */
+    private Map<String, String> runCohortAndWriteResults(List<PreparedAnalysis> cohort) {
+        List<Analysis> analyses = cohort.stream().map(preparedAnalysis -> preparedAnalysis.analysis).collect(toList());
+        List<CohortAnalysisResult> cohortResults = exomiser.runCohort(analyses);
+        Map<String, String> failures = new HashMap<>();
+        for (int i = 0; i < cohort.size(); i++) {
+            PreparedAnalysis preparedAnalysis = cohort.get(i);
+            CohortAnalysisResult cohortResult = cohortResults.get(i);
+            if (cohortResult.isFailed()) {
+                failures.put(preparedAnalysis.name, String.valueOf(cohortResult.getFailure().getMessage()));
+                continue;
+            }
+            try {
+                writeResults(preparedAnalysis.analysis, cohortResult.getAnalysisResults(), preparedAnalysis.outputSettings);
+            } catch (RuntimeException e) {
+                logger.error("Unable to write results of analysis {}", preparedAnalysis.name, e);
+                failures.put(preparedAnalysis.name, String.valueOf(e.getMessage()));
+            }
+        }
+        return failures;
+    }
+
     private void runAnalysisFromScript(Path analysisScript) {
         Analysis analysis = analysisParser.parseAnalysis(analysisScript);
         OutputSettings outputSettings = analysisParser.parseOutputSettings(analysisScript);
@@ -153,4 +305,20 @@ private void writeResults(Analysis analysis, AnalysisResults analysisResults, Ou
         }
     }
 
+    /**
+     * An analysis parsed from a file of the batch, along with where its results are to be written.
+     */
+    private static class PreparedAnalysis {
+
+        private final String name;
+        private final Analysis analysis;
+        private final OutputSettings outputSettings;
+
+        private PreparedAnalysis(String name, Analysis analysis, OutputSettings outputSettings) {
+            this.name = name;
+            this.analysis = analysis;
+            this.outputSettings = outputSettings;
+        }
+    }
+
 }
@@ -0,0 +1,258 @@
+/*
+ * The Exomiser - A tool to annotate and prioritize genomic variants
+ *
+ * Copyright (c) 2016-2017 Queen Mary University of London.
+ * Copyright (c) 2012-2016 Charité Universitätsmedizin Berlin and Genome Research Ltd.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.monarchinitiative.exomiser.cli;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.monarchinitiative.exomiser.cli.BatchAnalysisRunner.BatchEntry;
+import org.monarchinitiative.exomiser.cli.BatchAnalysisRunner.BatchResult;
+import org.monarchinitiative.exomiser.cli.BatchAnalysisRunner.BatchStatus;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.startsWith;
+import static org.junit.Assert.assertThat;
+
+/**
+ * @author Jules Jacobsen <j.jacobsen@qmul.ac.uk>
+ */
+public class BatchAnalysisRunnerTest {
+
+    private static final long MEGABYTE = 1024L * 1024L;
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private Path writeVcf(int numRecords) throws Exception {
+        List<String> lines = new ArrayList<>();
+        lines.add("##fileformat=VCFv4.2");
+        lines.add("#CHROM\tPOS\tID\tREF\tALT\tQUAL\tFILTER\tINFO");
+        for (int i = 1; i <= numRecords; i++) {
+            lines.add("1\t" + i + "\t.\tA\tT\t100\tPASS\t.");
+        }
+        Path vcfPath = temporaryFolder.newFile().toPath();
+        Files.write(vcfPath, lines, StandardCharsets.UTF_8);
+        return vcfPath;
+    }
+
+    private Runnable trackConcurrency(AtomicInteger running, AtomicInteger maxRunning) {
+        return () -> {
+            maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+            try {
+                Thread.sleep(50);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            running.decrementAndGet();
+        };
+    }
+
+    @Test
+    public void testRunReturnsResultsInEntryOrder() throws Exception {
+        BatchAnalysisRunner instance = new BatchAnalysisRunner(2, 1, 100 * MEGABYTE);
+        List<BatchEntry> entries = Arrays.asList(
+                new BatchEntry("small", writeVcf(1), () -> {}),
+                new BatchEntry("large", writeVcf(10), () -> {}),
+                new BatchEntry("unknown", null, () -> {})
+        );
+
+        List<BatchResult> results = instance.run(entries);
+
+        assertThat(results.size(), equalTo(3));
+        assertThat(results.get(0).getEntry().getName(), equalTo("small"));
+        assertThat(results.get(0).getEstimatedVariantCount(), equalTo(1L));
+        assertThat(results.get(1).getEntry().getName(), equalTo("large"));
+        assertThat(results.get(1).getEstimatedVariantCount(), equalTo(10L));
+        assertThat(results.get(2).getEntry().getName(), equalTo("unknown"));
+        assertThat(results.get(2).getEstimatedVariantCount(), equalTo(0L));
+        results.forEach(result -> assertThat(result.getStatus(), equalTo(BatchStatus.COMPLETED)));
+    }
+
+    @Test
+    public void testFailedAnalysisDoesNotStopBatch() throws Exception {
+        BatchAnalysisRunner instance = new BatchAnalysisRunner(1, 1, 100 * MEGABYTE);
+        AtomicInteger numRun = new AtomicInteger();
+        List<BatchEntry> entries = Arrays.asList(
+                new BatchEntry("failed", null, () -> {
+                    throw new IllegalStateException("Boom!");
+                }),
+                new BatchEntry("completed", null, numRun::incrementAndGet)
+        );
+
+        List<BatchResult> results = instance.run(entries);
+
+        assertThat(results.get(0).getStatus(), equalTo(BatchStatus.FAILED));
+        assertThat(results.get(0).getMessage(), equalTo("Boom!"));
+        assertThat(results.get(1).getStatus(), equalTo(BatchStatus.COMPLETED));
+        assertThat(numRun.get(), equalTo(1));
+    }
+
+    @Test
+    public void testRunsUpToMaxConcurrentAnalyses() throws Exception {
+        int numEntries = 4;
+        CountDownLatch allStarted = new CountDownLatch(numEntries);
+        AtomicInteger maxRunning = new AtomicInteger();
+        BatchAnalysisRunner instance = new BatchAnalysisRunner(numEntries, 1, 100 * MEGABYTE);
+        List<BatchEntry> entries = new ArrayList<>();
+        for (int i = 0; i < numEntries; i++) {
+            entries.add(new BatchEntry("analysis" + i, null, () -> {
+                allStarted.countDown();
+                try {
+                    //only returns true if all the analyses were running at the same time
+                    if (allStarted.await(5, TimeUnit.SECONDS)) {
+                        maxRunning.incrementAndGet();
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }));
+        }
+
+        instance.run(entries);
+
+        assertThat(maxRunning.get(), equalTo(numEntries));
+    }
+
+    @Test
+    public void testAnalysesWhichDoNotFitInHeapBudgetAreRunOneAtATime() throws Exception {
+        //each analysis needs 3MB of the 4MB budget
+        BatchAnalysisRunner instance = new BatchAnalysisRunner(4, MEGABYTE, 4 * MEGABYTE);
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger maxRunning = new AtomicInteger();
+        List<BatchEntry> entries = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            entries.add(new BatchEntry("analysis" + i, writeVcf(3), trackConcurrency(running, maxRunning)));
+        }
+
+        List<BatchResult> results = instance.run(entries);
+
+        assertThat(maxRunning.get(), equalTo(1));
+        results.forEach(result -> assertThat(result.getStatus(), equalTo(BatchStatus.COMPLETED)));
+    }
+
+    @Test
+    public void testAnalysisLargerThanHeapBudgetIsStillRun() throws Exception {
+        BatchAnalysisRunner instance = new BatchAnalysisRunner(2, MEGABYTE, 4 * MEGABYTE);
+        AtomicInteger numRun = new AtomicInteger();
+        List<BatchEntry> entries = Arrays.asList(
+                new BatchEntry("huge", writeVcf(20), numRun::incrementAndGet),
+                new BatchEntry("small", null, numRun::incrementAndGet)
+        );
+
+        List<BatchResult> results = instance.run(entries);
+
+        assertThat(numRun.get(), equalTo(2));
+        results.forEach(result -> assertThat(result.getStatus(), equalTo(BatchStatus.COMPLETED)));
+    }
+
+    @Test
+    public void testCohortEntryReportsResultOfEachAnalysis() throws Exception {
+        BatchAnalysisRunner instance = new BatchAnalysisRunner(1, 1, 100 * MEGABYTE);
+        Path vcfPath = writeVcf(2);
+        List<BatchEntry> entries = Arrays.asList(
+                new BatchEntry(Arrays.asList("seth", "adam"), vcfPath, () -> Collections.singletonMap("adam", "Proband adam not found")),
+                new BatchEntry("single", null, () -> {})
+        );
+
+        List<BatchResult> results = instance.run(entries);
+
+        assertThat(results.size(), equalTo(3));
+        assertThat(results.get(0).getAnalysisName(), equalTo("seth"));
+        assertThat(results.get(0).getStatus(), equalTo(BatchStatus.COMPLETED));
+        assertThat(results.get(0).getEstimatedVariantCount(), equalTo(2L));
+        assertThat(results.get(1).getAnalysisName(), equalTo("adam"));
+        assertThat(results.get(1).getStatus(), equalTo(BatchStatus.FAILED));
+        assertThat(results.get(1).getMessage(), equalTo("Proband adam not found"));
+        assertThat(results.get(2).getAnalysisName(), equalTo("single"));
+        assertThat(results.get(2).getStatus(), equalTo(BatchStatus.COMPLETED));
+    }
+
+    @Test
+    public void testFailedCohortEntryFailsEachAnalysis() throws Exception {
+        BatchAnalysisRunner instance = new BatchAnalysisRunner(1, 1, 100 * MEGABYTE);
+        List<BatchEntry> entries = Collections.singletonList(
+                new BatchEntry(Arrays.asList("seth", "adam"), null, () -> {
+                    throw new IllegalStateException("Boom!");
+                })
+        );
+
+        List<BatchResult> results = instance.run(entries);
+
+        assertThat(results.size(), equalTo(2));
+        results.forEach(result -> {
+            assertThat(result.getStatus(), equalTo(BatchStatus.FAILED));
+            assertThat(result.getMessage(), equalTo("Boom!"));
+        });
+    }
+
+    @Test
+    public void testCohortEntryReservesHeapForEachAnalysis() throws Exception {
+        //a single analysis of the VCF needs 2MB of the 5MB budget, but the cohort of two needs 4MB
+        BatchAnalysisRunner instance = new BatchAnalysisRunner(2, MEGABYTE, 5 * MEGABYTE);
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger maxRunning = new AtomicInteger();
+        Runnable trackedAnalysis = trackConcurrency(running, maxRunning);
+        List<BatchEntry> entries = new ArrayList<>();
+        for (int i = 0; i < 2; i++) {
+            entries.add(new BatchEntry(Arrays.asList("proband" + i + "a", "proband" + i + "b"), writeVcf(2), () -> {
+                trackedAnalysis.run();
+                return Collections.emptyMap();
+            }));
+        }
+
+        instance.run(entries);
+
+        assertThat(maxRunning.get(), equalTo(1));
+    }
+
+    @Test
+    public void testWriteSummary() throws Exception {
+        BatchAnalysisRunner instance = new BatchAnalysisRunner(1, 1, 100 * MEGABYTE);
+        Path vcfPath = writeVcf(2);
+        List<BatchResult> results = instance.run(Arrays.asList(
+                new BatchEntry("first", vcfPath, () -> {}),
+                new BatchEntry("second", null, () -> {
+                    throw new IllegalArgumentException("Invalid\tsettings");
+                })
+        ));
+        Path summaryFile = temporaryFolder.getRoot().toPath().resolve("batch.txt.summary.tsv");
+
+        BatchAnalysisRunner.writeSummary(summaryFile, results);
+
+        List<String> lines = Files.readAllLines(summaryFile, StandardCharsets.UTF_8);
+        assertThat(lines.size(), equalTo(3));
+        assertThat(lines.get(0), equalTo("#ANALYSIS\tVCF\tESTIMATED_VARIANTS\tSTATUS\tSTART_TIME\tDURATION_MS\tMESSAGE"));
+        assertThat(lines.get(1), startsWith("first\t" + vcfPath + "\t2\tCOMPLETED\t"));
+        assertThat(lines.get(2), startsWith("second\tnull\t0\tFAILED\t"));
+        assertThat(lines.get(2).endsWith("\tInvalid settings"), equalTo(true));
+    }
+}
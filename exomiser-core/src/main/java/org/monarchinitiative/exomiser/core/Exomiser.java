@@ -31,6 +31,11 @@
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 
+import java.util.*;
+
+import static java.util.stream.Collectors.groupingBy;
+import static java.util.stream.Collectors.toList;
+
 /**
  * This is the main entry point for analysing data using the Exomiser. An {@link Analysis}
  * should be build using either a {@link Settings} and the {@link SettingsParser} or with an {@link AnalysisParser}
@@ -55,10 +60,42 @@ public AnalysisBuilder getAnalysisBuilder() {
     }
 
     public AnalysisResults run(Analysis analysis) {
+        return run(analysis, AnalysisProgressListener.NONE);
+    }
+
+    /**
+     * Runs the analysis, reporting its progress to the listener as it goes.
+     */
+    public AnalysisResults run(Analysis analysis, AnalysisProgressListener progressListener) {
         AnalysisMode analysisMode = analysis.getAnalysisMode();
         logger.info("Running analysis with mode: {}", analysisMode);
         AnalysisRunner analysisRunner = analysisFactory.getAnalysisRunnerForMode(analysisMode);
-        return analysisRunner.run(analysis);
+        return analysisRunner.run(analysis, progressListener);
+    }
+
+    public List<CohortAnalysisResult> runCohort(List<Analysis> analyses) {
+        return runCohort(analyses, AnalysisProgressListener.NONE);
+    }
+
+    /**
+     * Runs the analyses of a cohort, such as a different proband of the same joint-called VCF in each analysis, so
+     * that each VCF is read and its variants annotated once, rather than once per analysis.
+     *
+     * @return the outcome of each analysis, in the same order as the analyses. An analysis which failed does not
+     * prevent the others from completing.
+     */
+    public List<CohortAnalysisResult> runCohort(List<Analysis> analyses, AnalysisProgressListener progressListener) {
+        Map<AnalysisMode, List<Analysis>> analysesByMode = analyses.stream()
+                .collect(groupingBy(Analysis::getAnalysisMode, () -> new EnumMap<>(AnalysisMode.class), toList()));
+        Map<Analysis, CohortAnalysisResult> resultsByAnalysis = new IdentityHashMap<>();
+        analysesByMode.forEach((analysisMode, modeAnalyses) -> {
+            logger.info("Running cohort of {} analyses with mode: {}", modeAnalyses.size(), analysisMode);
+            AnalysisRunner analysisRunner = analysisFactory.getAnalysisRunnerForMode(analysisMode);
+            for (CohortAnalysisResult result : analysisRunner.runCohort(modeAnalyses, progressListener)) {
+                resultsByAnalysis.put(result.getAnalysis(), result);
+            }
+        });
+        return analyses.stream().map(resultsByAnalysis::get).collect(toList());
     }
 
 }
@@ -20,6 +20,7 @@
 
 package org.monarchinitiative.exomiser.core.analysis;
 
+import com.google.common.collect.Iterators;
 import de.charite.compbio.jannovar.annotation.VariantEffect;
 import de.charite.compbio.jannovar.mendel.ModeOfInheritance;
 import de.charite.compbio.jannovar.pedigree.Pedigree;
@@ -29,6 +30,7 @@
 import org.monarchinitiative.exomiser.core.filters.GeneFilter;
 import org.monarchinitiative.exomiser.core.filters.GeneFilterRunner;
 import org.monarchinitiative.exomiser.core.filters.VariantFilter;
+import org.monarchinitiative.exomiser.core.filters.VariantFilterDataProvider;
 import org.monarchinitiative.exomiser.core.filters.VariantFilterRunner;
 import org.monarchinitiative.exomiser.core.genome.GeneFactory;
 import org.monarchinitiative.exomiser.core.genome.VariantDataService;
@@ -37,7 +39,6 @@
 import org.monarchinitiative.exomiser.core.model.RegulatoryFeature;
 import org.monarchinitiative.exomiser.core.model.TopologicalDomain;
 import org.monarchinitiative.exomiser.core.model.VariantEvaluation;
-import org.monarchinitiative.exomiser.core.prioritisers.Prioritiser;
 import org.monarchinitiative.exomiser.core.prioritisers.PriorityType;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -45,14 +46,12 @@
 import java.nio.file.Path;
 import java.time.Duration;
 import java.time.Instant;
-import java.util.ArrayList;
-import java.util.List;
-import java.util.Map;
-import java.util.concurrent.atomic.AtomicInteger;
-import java.util.function.Consumer;
+import java.util.*;
+import java.util.concurrent.ForkJoinPool;
 import java.util.function.Function;
 import java.util.function.Predicate;
 import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 import static java.util.stream.Collectors.toConcurrentMap;
 import static java.util.stream.Collectors.toList;
@@ -64,116 +63,143 @@ abstract class AbstractAnalysisRunner implements AnalysisRunner {
 
     private static final Logger logger = LoggerFactory.getLogger(AbstractAnalysisRunner.class);
 
+    //number of variants run through the variant filters together, allowing the filters to fetch their data in bulk
+    static final int VARIANT_BLOCK_SIZE = 10_000;
+
     private final GeneFactory geneFactory;
     private final VariantFactory variantFactory;
 
     private final VariantDataService variantDataService;
     final VariantFilterRunner variantFilterRunner;
     private final GeneFilterRunner geneFilterRunner;
+    private final AnalysisStepScheduler analysisStepScheduler;
 
-    public AbstractAnalysisRunner(GeneFactory geneFactory, VariantFactory variantFactory, VariantDataService variantDataService, VariantFilterRunner variantFilterRunner, GeneFilterRunner geneFilterRunner) {
+    public AbstractAnalysisRunner(GeneFactory geneFactory, VariantFactory variantFactory, VariantDataService variantDataService, VariantFilterRunner variantFilterRunner, GeneFilterRunner geneFilterRunner, ForkJoinPool prioritiserPool) {
         this.geneFactory = geneFactory;
         this.variantFactory = variantFactory;
         this.variantDataService = variantDataService;
         this.variantFilterRunner = variantFilterRunner;
         this.geneFilterRunner = geneFilterRunner;
+        this.analysisStepScheduler = new AnalysisStepScheduler(prioritiserPool);
     }
 
     @Override
     public AnalysisResults run(Analysis analysis) {
+        return run(analysis, AnalysisProgressListener.NONE);
+    }
 
-        Path vcfPath = analysis.getVcfPath();
-        Path pedigreeFilePath = analysis.getPedPath();
-
-        logger.info("Setting up analysis for VCF and PED files: {}, {}", vcfPath, pedigreeFilePath);
-        VCFHeader vcfHeader = readVcfHeader(vcfPath);
-        List<String> sampleNames = vcfHeader.getGenotypeSamples();
-
-        String probandSampleName = SampleNameChecker.getProbandSampleName(analysis.getProbandSampleName(), sampleNames);
-        int probandSampleId = SampleNameChecker.getProbandSampleId(probandSampleName, sampleNames);
+    @Override
+    public AnalysisResults run(Analysis analysis, AnalysisProgressListener progressListener) {
+        ProbandAnalysis probandAnalysis = new ProbandAnalysis(analysis, progressListener, Function.identity());
+        //variants take up 99% of all the memory in an analysis - this scales approximately linearly with the sample size
+        //so for whole genomes this is best run as a stream to filter out the unwanted variants with as many filters as possible in one go
+        try (Stream<VariantEvaluation> variantStream = loadVariants(analysis.getVcfPath())) {
+            partition(variantStream, VARIANT_BLOCK_SIZE).forEach(probandAnalysis::addVariants);
+        }
+        return probandAnalysis.finish();
+    }
 
-        Pedigree pedigree = new PedigreeFactory().createPedigreeForSampleData(pedigreeFilePath, sampleNames);
-        ModeOfInheritance modeOfInheritance = analysis.getModeOfInheritance();
+    /**
+     * Runs the analyses of a cohort, streaming each VCF once however many of the analyses use it. Each block of
+     * variants is annotated once by the {@link VariantFactory} and copied to the analysis of each proband, which then
+     * re-assigns and filters its copies independently. The frequency and pathogenicity data required by the variant
+     * filters are fetched once for each allele in the block and shared between the analyses. An analysis which fails,
+     * for example because its proband is not in the VCF, is reported as failed without stopping the others.
+     */
+    @Override
+    public List<CohortAnalysisResult> runCohort(List<Analysis> analyses, AnalysisProgressListener progressListener) {
+        //a LinkedHashMap rather than groupingBy, as that will not accept the null path of an analysis without a VCF
+        Map<Path, List<Analysis>> analysesByVcf = new LinkedHashMap<>();
+        for (Analysis analysis : analyses) {
+            analysesByVcf.computeIfAbsent(analysis.getVcfPath(), vcfPath -> new ArrayList<>()).add(analysis);
+        }
+        Map<Analysis, CohortAnalysisResult> resultsByAnalysis = new IdentityHashMap<>();
+        analysesByVcf.forEach((vcfPath, vcfAnalyses) -> {
+            for (CohortAnalysisResult result : runSharedPass(vcfPath, vcfAnalyses, progressListener)) {
+                resultsByAnalysis.put(result.getAnalysis(), result);
+            }
+        });
+        return analyses.stream().map(resultsByAnalysis::get).collect(toList());
+    }
 
-        logger.info("Running analysis for proband {} (sample {} in VCF) from samples: {}", probandSampleName, probandSampleId + 1, sampleNames);
+    private List<CohortAnalysisResult> runSharedPass(Path vcfPath, List<Analysis> analyses, AnalysisProgressListener progressListener) {
+        logger.info("Running {} analyses of VCF file {} in a single pass", analyses.size(), vcfPath);
         Instant timeStart = Instant.now();
-        List<String> hpoIds = analysis.getHpoIds();
-        //soo many comments - this is a bad sign that this is too complicated.
-        Map<String, Gene> allGenes = makeKnownGenes();
-        List<VariantEvaluation> variantEvaluations = new ArrayList<>();
-//        some kind of multi-map with ordered duplicate keys would allow for easy grouping of steps for running the groups together.
-        List<List<AnalysisStep>> analysisStepGroups = analysis.getAnalysisStepsGroupedByFunction();
-        boolean variantsLoaded = false;
-        for (List<AnalysisStep> analysisGroup : analysisStepGroups) {
-            //this is admittedly pretty confusing code and I'm sorry. It's easiest to follow if you turn on debugging.
-            //The analysis steps are run in groups of VARIANT_FILTER, GENE_ONLY_DEPENDENT or INHERITANCE_MODE_DEPENDENT
-            AnalysisStep firstStep = analysisGroup.get(0);
-            logger.debug("Running {} group: {}", firstStep.getType(), analysisGroup);
-            if (firstStep.isVariantFilter() && !variantsLoaded) {
-                //variants take up 99% of all the memory in an analysis - this scales approximately linearly with the sample size
-                //so for whole genomes this is best run as a stream to filter out the unwanted variants with as many filters as possible in one go
-                variantEvaluations = loadAndFilterVariants(vcfPath, allGenes, analysisGroup, analysis);
-                //this is done here as there are GeneFilter steps which may require Variants in the genes, or the InheritanceModeDependent steps which definitely need them...
-                assignVariantsToGenes(variantEvaluations, allGenes);
-                variantsLoaded = true;
-            } else {
-                runSteps(analysisGroup, hpoIds, new ArrayList<>(allGenes.values()), pedigree, modeOfInheritance);
+        CohortVariantDataService cohortVariantDataService = new CohortVariantDataService(variantDataService);
+        Function<VariantFilter, VariantFilter> useCohortVariantData = fetchVariantDataFrom(cohortVariantDataService);
+        //a failed analysis has its ProbandAnalysis removed and its failure recorded at the same index
+        ProbandAnalysis[] probandAnalyses = new ProbandAnalysis[analyses.size()];
+        RuntimeException[] failures = new RuntimeException[analyses.size()];
+        for (int i = 0; i < probandAnalyses.length; i++) {
+            try {
+                probandAnalyses[i] = new ProbandAnalysis(analyses.get(i), progressListener, useCohortVariantData);
+            } catch (RuntimeException e) {
+                failures[i] = logFailure(analyses.get(i), e);
             }
         }
-        //maybe only the non-variant dependent steps have been run in which case we need to load the variants although
-        //the results might be a bit meaningless.
-        //See issue #129 This is an excellent place to put the output of a gene phenotype score only run.
-        //i.e. stream in the variants, annotate them (assign a gene symbol) then write out that variant with the calculated GENE_PHENO_SCORE (prioritiser scores).
-        //this would fit well with a lot of people's pipelines where they only want the phenotype score as they are using VEP or ANNOVAR for variant analysis.
-        if (!variantsLoaded) {
-            try(Stream<VariantEvaluation> variantStream = loadVariants(vcfPath)) {
-                variantEvaluations = variantStream.collect(toList());
+        if (hasRunningAnalyses(probandAnalyses)) {
+            try (Stream<VariantEvaluation> variantStream = loadVariants(vcfPath)) {
+                Iterator<List<VariantEvaluation>> blocks = Iterators.partition(variantStream.iterator(), VARIANT_BLOCK_SIZE);
+                while (blocks.hasNext() && hasRunningAnalyses(probandAnalyses)) {
+                    List<VariantEvaluation> block = blocks.next();
+                    for (int i = 0; i < probandAnalyses.length; i++) {
+                        if (probandAnalyses[i] != null) {
+                            try {
+                                probandAnalyses[i].addVariants(block.stream().map(VariantEvaluation::unfilteredCopy).collect(toList()));
+                            } catch (RuntimeException e) {
+                                probandAnalyses[i] = null;
+                                failures[i] = logFailure(analyses.get(i), e);
+                            }
+                        }
+                    }
+                    //the blocks are in VCF order, so the following blocks will not ask for the same alleles
+                    cohortVariantDataService.clear();
+                }
+            } catch (RuntimeException e) {
+                //the VCF itself could not be read, so none of the analyses still running can complete
+                for (int i = 0; i < probandAnalyses.length; i++) {
+                    if (probandAnalyses[i] != null) {
+                        probandAnalyses[i] = null;
+                        failures[i] = logFailure(analyses.get(i), e);
+                    }
+                }
             }
-            assignVariantsToGenes(variantEvaluations, allGenes);
         }
+        logger.info("Fetched variant data for {} of {} alleles requested by the {} analyses", cohortVariantDataService.getNumLookups(), cohortVariantDataService.getNumRequests(), analyses.size());
+        List<CohortAnalysisResult> results = new ArrayList<>(analyses.size());
+        for (int i = 0; i < probandAnalyses.length; i++) {
+            Analysis analysis = analyses.get(i);
+            if (probandAnalyses[i] == null) {
+                results.add(CohortAnalysisResult.failed(analysis, failures[i]));
+                continue;
+            }
+            try {
+                results.add(CohortAnalysisResult.completed(analysis, probandAnalyses[i].finish()));
+            } catch (RuntimeException e) {
+                results.add(CohortAnalysisResult.failed(analysis, logFailure(analysis, e)));
+            }
+        }
+        long ms = Duration.between(timeStart, Instant.now()).toMillis();
+        logger.info("Finished {} analyses of {} in {}m {}s {}ms ({} ms)", analyses.size(), vcfPath, (ms / 1000) / 60 % 60, ms / 1000 % 60, ms % 1000, ms);
+        return results;
+    }
 
-        logger.info("Scoring genes");
-        GeneScorer geneScorer = new RawScoreGeneScorer(probandSampleId, modeOfInheritance, pedigree);
-        List<Gene> genes = geneScorer.scoreGenes(getGenesWithVariants(allGenes).collect(toList()));
-        List<VariantEvaluation> variants = getFinalVariantList(variantEvaluations);
-        logger.info("Analysed {} genes containing {} filtered variants", genes.size(), variants.size());
-
-        logger.info("Creating analysis results from VCF and PED files: {}, {}", vcfPath, pedigreeFilePath);
-        AnalysisResults analysisResults = AnalysisResults.builder()
-                .vcfPath(vcfPath)
-                .pedPath(pedigreeFilePath)
-                .vcfHeader(vcfHeader)
-                .probandSampleName(probandSampleName)
-                .sampleNames(vcfHeader.getGenotypeSamples())
-                .pedigree(pedigree)
-                .genes(genes)
-                .variantEvaluations(variants)
-                .build();
-
-        Duration duration = Duration.between(timeStart, Instant.now());
-        long ms = duration.toMillis();
-        logger.info("Finished analysis in {}m {}s {}ms ({} ms)", (ms / 1000) / 60 % 60, ms / 1000 % 60, ms % 1000, ms);
-        return analysisResults;
+    private static boolean hasRunningAnalyses(ProbandAnalysis[] probandAnalyses) {
+        return Arrays.stream(probandAnalyses).anyMatch(Objects::nonNull);
     }
 
-    private List<VariantEvaluation> loadAndFilterVariants(Path vcfPath, Map<String, Gene> allGenes, List<AnalysisStep> analysisGroup, Analysis analysis) {
-        GeneReassigner geneReassigner = createNonCodingVariantGeneReassigner(analysis, allGenes);
-        List<VariantFilter> variantFilters = getVariantFilterSteps(analysisGroup);
+    private static RuntimeException logFailure(Analysis analysis, RuntimeException e) {
+        logger.error("Analysis of proband '{}' in {} failed", analysis.getProbandSampleName(), analysis.getVcfPath(), e);
+        return e;
+    }
 
-        List<VariantEvaluation> filteredVariants;
-        VariantLogger variantLogger = new VariantLogger();
-        try (Stream<VariantEvaluation> variantStream = loadVariants(vcfPath)) {
-            filteredVariants = variantStream
-                    .peek(variantLogger.logLoadedAndPassedVariants())
-                    .map(reassignNonCodingVariantToBestGeneInJannovarAnnotations(geneReassigner))
-                    .map(reassignNonCodingVariantToBestGeneInTad(geneReassigner))
-                    .filter(isAssociatedWithKnownGene(allGenes))
-                    .filter(runVariantFilters(variantFilters))
-                    .peek(variantLogger.countPassedVariant())
-                    .collect(toList());
-        }
-        variantLogger.logResults();
-        return filteredVariants;
+    private static Function<VariantFilter, VariantFilter> fetchVariantDataFrom(VariantDataService variantDataService) {
+        return variantFilter -> {
+            if (variantFilter instanceof VariantFilterDataProvider) {
+                return ((VariantFilterDataProvider) variantFilter).withVariantDataService(variantDataService);
+            }
+            return variantFilter;
+        };
     }
 
     private GeneReassigner createNonCodingVariantGeneReassigner(Analysis analysis, Map<String, Gene> allGenes) {
@@ -222,19 +248,29 @@ private Function<VariantEvaluation, VariantEvaluation> reassignNonCodingVariantT
 
     /**
      * Defines the filtering behaviour of the runner when performing the initial load and filter of variants. Allows the
-     * concrete runner to define whether a variant should pass or fail when running the variant through the variant
-     * filters defined in the variant filter group, or the initial group if there are more than one.
+     * concrete runner to define which variants in a block of loaded variants should be kept after running the block
+     * through the variant filters defined in the variant filter group, or the initial group if there are more than one.
      *
      * @param variantFilters
-     * @return
+     * @param variantEvaluations a block of variants, in VCF order.
+     * @return the variants from the block to keep.
      */
-    abstract Predicate<VariantEvaluation> runVariantFilters(List<VariantFilter> variantFilters);
+    abstract List<VariantEvaluation> runVariantFilters(List<VariantFilter> variantFilters, List<VariantEvaluation> variantEvaluations);
+
+    /**
+     * Lazily splits the sequential input stream into consecutive lists of up to blockSize elements.
+     */
+    private static <T> Stream<List<T>> partition(Stream<T> stream, int blockSize) {
+        Spliterator<List<T>> blocks = Spliterators.spliteratorUnknownSize(Iterators.partition(stream.iterator(), blockSize), Spliterator.ORDERED | Spliterator.NONNULL);
+        return StreamSupport.stream(blocks, false);
+    }
 
     private Stream<VariantEvaluation> loadVariants(Path vcfPath) {
         List<RegulatoryFeature> regulatoryFeatures = variantDataService.getRegulatoryFeatures();
         ChromosomalRegionIndex<RegulatoryFeature> regulatoryRegionIndex = new ChromosomalRegionIndex<>(regulatoryFeatures);
         logger.info("Loaded {} regulatory regions", regulatoryFeatures.size());
         //WARNING!!! THIS IS NOT THREADSAFE DO NOT USE PARALLEL STREAMS
+        //the variantFactory may annotate using several threads, but the stream it returns is sequential and in VCF order.
         return variantFactory.streamVariantEvaluations(vcfPath).map(setRegulatoryRegionVariantEffect(regulatoryRegionIndex));
     }
 
@@ -290,19 +326,23 @@ private Map<String, Gene> makeKnownGenes() {
                 .collect(toConcurrentMap(Gene::getGeneSymbol, Function.identity()));
     }
 
-    //might this be a nascent class waiting to get out here?
-    private void runSteps(List<AnalysisStep> analysisSteps, List<String> hpoIds, List<Gene> genes, Pedigree pedigree, ModeOfInheritance modeOfInheritance) {
-        boolean inheritanceModesCalculated = false;
-        for (AnalysisStep analysisStep : analysisSteps) {
-            if (!inheritanceModesCalculated && analysisStep.isInheritanceModeDependent()) {
-                analyseGeneCompatibilityWithInheritanceMode(genes, pedigree, modeOfInheritance);
-                inheritanceModesCalculated = true;
-            }
-            runStep(analysisStep, hpoIds, genes);
+    private void runSteps(List<List<AnalysisStep>> analysisStepGroups, List<String> hpoIds, List<Gene> genes, Pedigree pedigree, ModeOfInheritance modeOfInheritance, AnalysisProgressListener progressListener) {
+        if (analysisStepGroups.isEmpty()) {
+            return;
         }
+        progressListener.stepStarted("Prioritising genes");
+        analysisStepScheduler.runSteps(analysisStepGroups, hpoIds, genes,
+                () -> {
+                    progressListener.stepStarted("Checking compatibility with " + modeOfInheritance + " inheritance mode");
+                    analyseGeneCompatibilityWithInheritanceMode(genes, pedigree, modeOfInheritance);
+                },
+                analysisStep -> {
+                    progressListener.stepStarted("Running " + analysisStep.getClass().getSimpleName());
+                    runFilterStep(analysisStep, genes);
+                });
     }
 
-    private void runStep(AnalysisStep analysisStep, List<String> hpoIds, List<Gene> genes) {
+    private void runFilterStep(AnalysisStep analysisStep, List<Gene> genes) {
         if (analysisStep.isVariantFilter()) {
             VariantFilter filter = (VariantFilter) analysisStep;
             logger.info("Running VariantFilter: {}", filter);
@@ -316,13 +356,6 @@ private void runStep(AnalysisStep analysisStep, List<String> hpoIds, List<Gene>
             GeneFilter filter = (GeneFilter) analysisStep;
             logger.info("Running GeneFilter: {}", filter);
             geneFilterRunner.run(filter, genes);
-            return;
-        }
-
-        if (Prioritiser.class.isInstance(analysisStep)) {
-            Prioritiser prioritiser = (Prioritiser) analysisStep;
-            logger.info("Running Prioritiser: {}", prioritiser);
-            prioritiser.prioritizeGenes(hpoIds, genes);
         }
     }
 
@@ -332,32 +365,185 @@ private void analyseGeneCompatibilityWithInheritanceMode(List<Gene> genes, Pedig
         inheritanceModeAnalyser.analyseInheritanceModes(genes);
     }
 
+    /**
+     * The state of the analysis of a single proband. The steps which need to be run before the variants are loaded are
+     * run when this is created, the variants are then added in blocks as they are read from the VCF and the remaining
+     * steps are run once all the variants have been added.
+     */
+    private class ProbandAnalysis {
+
+        private final Analysis analysis;
+        private final AnalysisProgressListener progressListener;
+
+        private final VCFHeader vcfHeader;
+        private final String probandSampleName;
+        private final int probandSampleId;
+        private final Pedigree pedigree;
+        private final ModeOfInheritance modeOfInheritance;
+        private final List<String> hpoIds;
+        private final Instant timeStart;
+
+        private final Map<String, Gene> allGenes;
+        //the groups run between loading the variants are handed to the scheduler together so that independent prioritisers
+        //in different groups can be run in parallel
+        private final List<List<AnalysisStep>> stepGroupsToRun = new ArrayList<>();
+        //these are null if the analysis has no variant filters, in which case all the variants are kept
+        private final GeneReassigner geneReassigner;
+        private final List<VariantFilter> variantFilters;
+
+        private final VariantLogger variantLogger;
+        private final List<VariantEvaluation> variantEvaluations = new ArrayList<>();
+
+        /**
+         * @param variantFilterMapper applied to each of the variant filters run as the variants are loaded.
+         */
+        private ProbandAnalysis(Analysis analysis, AnalysisProgressListener progressListener, Function<VariantFilter, VariantFilter> variantFilterMapper) {
+            this.analysis = analysis;
+            this.progressListener = progressListener;
+            Path vcfPath = analysis.getVcfPath();
+            Path pedigreeFilePath = analysis.getPedPath();
+
+            logger.info("Setting up analysis for VCF and PED files: {}, {}", vcfPath, pedigreeFilePath);
+            progressListener.stepStarted("Setting up analysis");
+            vcfHeader = readVcfHeader(vcfPath);
+            List<String> sampleNames = vcfHeader.getGenotypeSamples();
+
+            probandSampleName = SampleNameChecker.getProbandSampleName(analysis.getProbandSampleName(), sampleNames);
+            probandSampleId = SampleNameChecker.getProbandSampleId(probandSampleName, sampleNames);
+
+            pedigree = new PedigreeFactory().createPedigreeForSampleData(pedigreeFilePath, sampleNames);
+            modeOfInheritance = analysis.getModeOfInheritance();
+
+            logger.info("Running analysis for proband {} (sample {} in VCF) from samples: {}", probandSampleName, probandSampleId + 1, sampleNames);
+            timeStart = Instant.now();
+            hpoIds = analysis.getHpoIds();
+            //soo many comments - this is a bad sign that this is too complicated.
+            allGenes = makeKnownGenes();
+//        some kind of multi-map with ordered duplicate keys would allow for easy grouping of steps for running the groups together.
+            List<AnalysisStep> variantFilterGroup = null;
+            for (List<AnalysisStep> analysisGroup : analysis.getAnalysisStepsGroupedByFunction()) {
+                //this is admittedly pretty confusing code and I'm sorry. It's easiest to follow if you turn on debugging.
+                //The analysis steps are run in groups of VARIANT_FILTER, GENE_ONLY_DEPENDENT or INHERITANCE_MODE_DEPENDENT
+                AnalysisStep firstStep = analysisGroup.get(0);
+                logger.debug("Running {} group: {}", firstStep.getType(), analysisGroup);
+                if (firstStep.isVariantFilter() && variantFilterGroup == null) {
+                    //any steps before the variants are loaded must have finished as these can be used to re-assign the variants
+                    runStepGroups();
+                    variantFilterGroup = analysisGroup;
+                } else {
+                    stepGroupsToRun.add(analysisGroup);
+                }
+            }
+            if (variantFilterGroup == null) {
+                //maybe only the non-variant dependent steps have been run in which case we need to load the variants although
+                //the results might be a bit meaningless.
+                //See issue #129 This is an excellent place to put the output of a gene phenotype score only run.
+                //i.e. stream in the variants, annotate them (assign a gene symbol) then write out that variant with the calculated GENE_PHENO_SCORE (prioritiser scores).
+                //this would fit well with a lot of people's pipelines where they only want the phenotype score as they are using VEP or ANNOVAR for variant analysis.
+                runStepGroups();
+                geneReassigner = null;
+                variantFilters = null;
+                progressListener.stepStarted("Loading variants");
+            } else {
+                progressListener.stepStarted("Loading and filtering variants");
+                geneReassigner = createNonCodingVariantGeneReassigner(analysis, allGenes);
+                variantFilters = getVariantFilterSteps(variantFilterGroup).stream()
+                        .map(variantFilterMapper)
+                        .collect(toList());
+            }
+            variantLogger = new VariantLogger(progressListener);
+        }
+
+        /**
+         * Re-assigns and filters a block of variants, in VCF order, keeping those the runner wants to keep.
+         */
+        private void addVariants(List<VariantEvaluation> block) {
+            if (variantFilters == null) {
+                variantEvaluations.addAll(block);
+                variantLogger.logBlockLoaded(block.size());
+                return;
+            }
+            List<VariantEvaluation> knownGeneVariants = block.stream()
+                    .map(reassignNonCodingVariantToBestGeneInJannovarAnnotations(geneReassigner))
+                    .map(reassignNonCodingVariantToBestGeneInTad(geneReassigner))
+                    .filter(isAssociatedWithKnownGene(allGenes))
+                    .collect(toList());
+            for (VariantEvaluation variantEvaluation : runVariantFilters(variantFilters, knownGeneVariants)) {
+                variantLogger.countPassedVariant(variantEvaluation);
+                variantEvaluations.add(variantEvaluation);
+            }
+            variantLogger.logBlockLoaded(block.size());
+        }
+
+        private AnalysisResults finish() {
+            variantLogger.logResults();
+            //this is done here as there are GeneFilter steps which may require Variants in the genes, or the InheritanceModeDependent steps which definitely need them...
+            assignVariantsToGenes(variantEvaluations, allGenes);
+            runStepGroups();
+
+            logger.info("Scoring genes");
+            progressListener.stepStarted("Scoring genes");
+            GeneScorer geneScorer = new RawScoreGeneScorer(probandSampleId, modeOfInheritance, pedigree);
+            List<Gene> genes = geneScorer.scoreGenes(getGenesWithVariants(allGenes).collect(toList()));
+            List<VariantEvaluation> variants = getFinalVariantList(variantEvaluations);
+            logger.info("Analysed {} genes containing {} filtered variants", genes.size(), variants.size());
+
+            Path vcfPath = analysis.getVcfPath();
+            Path pedigreeFilePath = analysis.getPedPath();
+            logger.info("Creating analysis results from VCF and PED files: {}, {}", vcfPath, pedigreeFilePath);
+            AnalysisResults analysisResults = AnalysisResults.builder()
+                    .vcfPath(vcfPath)
+                    .pedPath(pedigreeFilePath)
+                    .vcfHeader(vcfHeader)
+                    .probandSampleName(probandSampleName)
+                    .sampleNames(vcfHeader.getGenotypeSamples())
+                    .pedigree(pedigree)
+                    .genes(genes)
+                    .variantEvaluations(variants)
+                    .build();
+
+            Duration duration = Duration.between(timeStart, Instant.now());
+            long ms = duration.toMillis();
+            logger.info("Finished analysis in {}m {}s {}ms ({} ms)", (ms / 1000) / 60 % 60, ms / 1000 % 60, ms % 1000, ms);
+            return analysisResults;
+        }
+
+        private void runStepGroups() {
+            runSteps(stepGroupsToRun, hpoIds, new ArrayList<>(allGenes.values()), pedigree, modeOfInheritance, progressListener);
+            stepGroupsToRun.clear();
+        }
+    }
+
     /**
      * Utility class for logging numbers of processed and passed variants.
      */
     private class VariantLogger {
-        private AtomicInteger loaded = new AtomicInteger();
-        private AtomicInteger passed = new AtomicInteger();
-
-        private Consumer<VariantEvaluation> logLoadedAndPassedVariants() {
-            return variantEvaluation -> {
-                loaded.incrementAndGet();
-                if (loaded.get() % 100000 == 0) {
-                    logger.info("Loaded {} variants - {} passed variant filters...", loaded.get(), passed.get());
-                }
-            };
+        private final AnalysisProgressListener progressListener;
+        private int loaded = 0;
+        private int passed = 0;
+
+        private VariantLogger(AnalysisProgressListener progressListener) {
+            this.progressListener = progressListener;
         }
 
-        private Consumer<VariantEvaluation> countPassedVariant() {
-            return variantEvaluation -> {
-                if (variantEvaluation.passedFilters()) {
-                    passed.incrementAndGet();
-                }
-            };
+        private void countPassedVariant(VariantEvaluation variantEvaluation) {
+            if (variantEvaluation.passedFilters()) {
+                passed++;
+            }
+        }
+
+        private void logBlockLoaded(int blockSize) {
+            int previouslyLoaded = loaded;
+            loaded += blockSize;
+            if (loaded / 100000 > previouslyLoaded / 100000) {
+                logger.info("Loaded {} variants - {} passed variant filters...", loaded, passed);
+            }
+            progressListener.variantsLoaded(loaded, passed);
         }
 
         void logResults() {
-            logger.info("Loaded {} variants - {} passed variant filters", loaded.get(), passed.get());
+            logger.info("Loaded {} variants - {} passed variant filters", loaded, passed);
+            progressListener.variantsLoaded(loaded, passed);
         }
     }
 }
@@ -28,8 +28,12 @@
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 
+import javax.annotation.PreDestroy;
+import java.util.concurrent.ForkJoinPool;
+
 /**
  * High-level factory for creating an {@link Analysis} and {@link AnalysisRunner}. This is
  * pretty much all that's needed to run an analysis with.
@@ -51,12 +55,31 @@ public class AnalysisFactory {
     private final PriorityFactory priorityFactory;
     private final VariantDataService variantDataService;
 
-    @Autowired
+    private final ForkJoinPool prioritiserPool;
+
     public AnalysisFactory(GeneFactory geneFactory, VariantFactory variantFactory, PriorityFactory priorityFactory, VariantDataService variantDataService) {
+        this(geneFactory, variantFactory, priorityFactory, variantDataService, 0);
+    }
+
+    /**
+     * @param prioritiserThreads the number of threads used to run the prioritisers. If this is less than 1 the common
+     *                           ForkJoinPool is used.
+     */
+    @Autowired
+    public AnalysisFactory(GeneFactory geneFactory, VariantFactory variantFactory, PriorityFactory priorityFactory, VariantDataService variantDataService, @Value("${exomiser.prioritiser-threads:0}") int prioritiserThreads) {
         this.geneFactory = geneFactory;
         this.variantFactory = variantFactory;
         this.variantDataService = variantDataService;
         this.priorityFactory = priorityFactory;
+        this.prioritiserPool = makePrioritiserPool(prioritiserThreads);
+    }
+
+    private static ForkJoinPool makePrioritiserPool(int prioritiserThreads) {
+        if (prioritiserThreads < 1) {
+            return ForkJoinPool.commonPool();
+        }
+        logger.info("Running prioritisers using {} threads", prioritiserThreads);
+        return new ForkJoinPool(prioritiserThreads);
     }
 
     public AnalysisRunner getAnalysisRunnerForMode(AnalysisMode analysisMode) {
@@ -65,13 +88,13 @@ public AnalysisRunner getAnalysisRunnerForMode(AnalysisMode analysisMode) {
         // below are package-private.
         switch (analysisMode) {
             case FULL:
-                return new SimpleAnalysisRunner(geneFactory, variantFactory, variantDataService);
+                return new SimpleAnalysisRunner(geneFactory, variantFactory, variantDataService, prioritiserPool);
             case SPARSE:
-                return new SparseAnalysisRunner(geneFactory, variantFactory, variantDataService);
+                return new SparseAnalysisRunner(geneFactory, variantFactory, variantDataService, prioritiserPool);
             case PASS_ONLY:
             default:
                 //this guy takes up the least RAM
-                return new PassOnlyAnalysisRunner(geneFactory, variantFactory, variantDataService);
+                return new PassOnlyAnalysisRunner(geneFactory, variantFactory, variantDataService, prioritiserPool);
         }
     }
 
@@ -79,4 +102,16 @@ public AnalysisBuilder getAnalysisBuilder() {
         return new AnalysisBuilder(priorityFactory, variantDataService);
     }
 
+    /**
+     * Shuts down the prioritiser threads created by this factory. Prioritisers which are already running are allowed to
+     * finish. The common ForkJoinPool is not affected.
+     */
+    @PreDestroy
+    public void shutdown() {
+        if (prioritiserPool != ForkJoinPool.commonPool()) {
+            logger.info("Shutting down prioritiser threads");
+            prioritiserPool.shutdown();
+        }
+    }
+
 }
@@ -0,0 +1,46 @@
+/*
+ * The Exomiser - A tool to annotate and prioritize genomic variants
+ *
+ * Copyright (c) 2016-2017 Queen Mary University of London.
+ * Copyright (c) 2012-2016 Charité Universitätsmedizin Berlin and Genome Research Ltd.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.monarchinitiative.exomiser.core.analysis;
+
+/**
+ * Receives updates on the progress of a running analysis, for example to show a user how far their analysis has got.
+ * The methods can be called from any of the threads used to run the analysis and should return quickly.
+ *
+ * @author Jules Jacobsen <j.jacobsen@qmul.ac.uk>
+ */
+public interface AnalysisProgressListener {
+
+    AnalysisProgressListener NONE = new AnalysisProgressListener() {};
+
+    /**
+     * Called as the analysis moves on to its next stage.
+     *
+     * @param description a short, human readable description of what the analysis is now doing.
+     */
+    default void stepStarted(String description) {
+    }
+
+    /**
+     * Called periodically while the variants are loaded and filtered, and once when all have been loaded.
+     */
+    default void variantsLoaded(int numLoaded, int numPassed) {
+    }
+}
@@ -20,6 +20,10 @@
 
 package org.monarchinitiative.exomiser.core.analysis;
 
+import java.util.List;
+
+import static java.util.stream.Collectors.toList;
+
 /**
  *
  * @since 7.0.0
@@ -27,4 +31,32 @@
  */
 public interface AnalysisRunner {
     AnalysisResults run(Analysis analysis);
+
+    /**
+     * Runs the analysis, reporting its progress to the listener.
+     */
+    default AnalysisResults run(Analysis analysis, AnalysisProgressListener progressListener) {
+        return run(analysis);
+    }
+
+    /**
+     * Runs the analyses of a cohort, for example each proband of a joint-called multi-sample VCF. Implementations
+     * should read and annotate each variant shared by the analyses once, rather than once for every analysis.
+     *
+     * The failure of one analysis, for example due to an unknown proband sample name, should not prevent the others
+     * from completing.
+     *
+     * @return the outcome of each analysis, in the same order as the analyses.
+     */
+    default List<CohortAnalysisResult> runCohort(List<Analysis> analyses, AnalysisProgressListener progressListener) {
+        return analyses.stream()
+                .map(analysis -> {
+                    try {
+                        return CohortAnalysisResult.completed(analysis, run(analysis, progressListener));
+                    } catch (RuntimeException e) {
+                        return CohortAnalysisResult.failed(analysis, e);
+                    }
+                })
+                .collect(toList());
+    }
 }
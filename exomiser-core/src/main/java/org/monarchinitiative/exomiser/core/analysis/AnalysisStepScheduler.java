@@ -0,0 +1,158 @@
+/*
+ * The Exomiser - A tool to annotate and prioritize genomic variants
+ *
+ * Copyright (c) 2016-2017 Queen Mary University of London.
+ * Copyright (c) 2012-2016 Charité Universitätsmedizin Berlin and Genome Research Ltd.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.monarchinitiative.exomiser.core.analysis;
+
+import org.monarchinitiative.exomiser.core.model.Gene;
+import org.monarchinitiative.exomiser.core.prioritisers.Prioritiser;
+import org.monarchinitiative.exomiser.core.prioritisers.PriorityType;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Consumer;
+
+/**
+ * Runs groups of {@link AnalysisStep} in the order they were defined, running independent {@link Prioritiser} steps
+ * in parallel.
+ * <p>
+ * The filters and the inheritance mode analysis change the state of the genes and variants, so they are run one at a
+ * time once all the preceding steps have completed. The prioritisers only add their own type of result to the genes,
+ * so any prioritisers of different types between these steps do not depend on each other and are started together on
+ * the {@link ForkJoinPool}. Each one runs its own {@link Prioritiser#prioritizeGenes(List, List)}. A prioritiser of a
+ * type which is already running waits for the running ones to finish, so that the later result replaces the earlier
+ * one as if the steps had been run sequentially. Should any prioritiser fail, those which have not yet started are
+ * skipped. The prioritisers can't be interrupted, so those already running are waited for before the failure is thrown,
+ * which means nothing is still adding results to the genes once the next step, or the next analysis, gets to run.
+ *
+ * @author Jules Jacobsen <j.jacobsen@qmul.ac.uk>
+ */
+class AnalysisStepScheduler {
+
+    private static final Logger logger = LoggerFactory.getLogger(AnalysisStepScheduler.class);
+
+    private final ForkJoinPool forkJoinPool;
+
+    AnalysisStepScheduler(ForkJoinPool forkJoinPool) {
+        this.forkJoinPool = forkJoinPool;
+    }
+
+    /**
+     * @param analysisStepGroups      the groups of steps to run, as grouped by {@link Analysis#getAnalysisStepsGroupedByFunction()}
+     * @param inheritanceModeAnalysis run before the first inheritance mode dependent step of each group.
+     * @param filterRunner            runs a variant or gene filter step over the genes.
+     */
+    void runSteps(List<List<AnalysisStep>> analysisStepGroups, List<String> hpoIds, List<Gene> genes, Runnable inheritanceModeAnalysis, Consumer<AnalysisStep> filterRunner) {
+        RunningPrioritisers runningPrioritisers = new RunningPrioritisers();
+        for (List<AnalysisStep> analysisGroup : analysisStepGroups) {
+            boolean inheritanceModesCalculated = false;
+            for (AnalysisStep analysisStep : analysisGroup) {
+                if (!inheritanceModesCalculated && analysisStep.isInheritanceModeDependent()) {
+                    runningPrioritisers.awaitAll();
+                    inheritanceModeAnalysis.run();
+                    inheritanceModesCalculated = true;
+                }
+                if (Prioritiser.class.isInstance(analysisStep)) {
+                    Prioritiser prioritiser = (Prioritiser) analysisStep;
+                    if (runningPrioritisers.isRunning(prioritiser.getPriorityType())) {
+                        runningPrioritisers.awaitAll();
+                    }
+                    logger.info("Running Prioritiser: {}", prioritiser);
+                    runningPrioritisers.start(prioritiser, () -> prioritiser.prioritizeGenes(hpoIds, genes));
+                } else {
+                    runningPrioritisers.awaitAll();
+                    filterRunner.accept(analysisStep);
+                }
+            }
+        }
+        runningPrioritisers.awaitAll();
+    }
+
+    /**
+     * The prioritisers started since the last time they were all waited for.
+     */
+    private class RunningPrioritisers {
+
+        private final List<CompletableFuture<Void>> tasks = new ArrayList<>();
+        private final Set<PriorityType> priorityTypes = EnumSet.noneOf(PriorityType.class);
+        private CompletableFuture<Void> firstFailure = new CompletableFuture<>();
+
+        private boolean isRunning(PriorityType priorityType) {
+            return priorityTypes.contains(priorityType);
+        }
+
+        private void start(Prioritiser prioritiser, Runnable prioritisation) {
+            CompletableFuture<Void> failure = firstFailure;
+            CompletableFuture<Void> task = CompletableFuture.runAsync(() -> {
+                //a prioritiser still queued when another fails would only be thrown away
+                if (!failure.isDone()) {
+                    prioritisation.run();
+                }
+            }, forkJoinPool);
+            task.whenComplete((ignored, throwable) -> {
+                if (throwable != null) {
+                    failure.completeExceptionally(throwable);
+                }
+            });
+            tasks.add(task);
+            priorityTypes.add(prioritiser.getPriorityType());
+        }
+
+        /**
+         * Waits for all of the prioritisers to finish. Should one fail, those still queued are skipped and the failure
+         * is re-thrown once the running ones have finished.
+         */
+        private void awaitAll() {
+            if (tasks.isEmpty()) {
+                return;
+            }
+            CompletableFuture<Void> allFinished = CompletableFuture.allOf(tasks.toArray(new CompletableFuture[tasks.size()]));
+            try {
+                CompletableFuture.anyOf(allFinished, firstFailure).join();
+            } catch (CompletionException e) {
+                long unfinished = tasks.stream().filter(task -> !task.isDone()).count();
+                logger.error("Prioritiser failed - waiting for {} other prioritisers to finish or be skipped", unfinished);
+                allFinished.handle((ignored, throwable) -> null).join();
+                throw unwrap(e);
+            } finally {
+                tasks.clear();
+                priorityTypes.clear();
+                firstFailure = new CompletableFuture<>();
+            }
+        }
+
+        private RuntimeException unwrap(CompletionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                return (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            return e;
+        }
+    }
+}
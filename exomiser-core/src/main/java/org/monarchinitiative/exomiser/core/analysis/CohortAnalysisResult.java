@@ -0,0 +1,81 @@
+/*
+ * The Exomiser - A tool to annotate and prioritize genomic variants
+ *
+ * Copyright (c) 2016-2017 Queen Mary University of London.
+ * Copyright (c) 2012-2016 Charité Universitätsmedizin Berlin and Genome Research Ltd.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package org.monarchinitiative.exomiser.core.analysis;
+
+import java.util.Objects;
+
+/**
+ * The outcome of one of the analyses of a cohort - either the {@link AnalysisResults} or the exception which caused
+ * the analysis to fail. The failure of one analysis does not prevent the others in the cohort from completing.
+ *
+ * @author Jules Jacobsen <j.jacobsen@qmul.ac.uk>
+ */
+public class CohortAnalysisResult {
+
+    private final Analysis analysis;
+    private final AnalysisResults analysisResults;
+    private final RuntimeException failure;
+
+    private CohortAnalysisResult(Analysis analysis, AnalysisResults analysisResults, RuntimeException failure) {
+        this.analysis = analysis;
+        this.analysisResults = analysisResults;
+        this.failure = failure;
+    }
+
+    public static CohortAnalysisResult completed(Analysis analysis, AnalysisResults analysisResults) {
+        return new CohortAnalysisResult(analysis, Objects.requireNonNull(analysisResults), null);
+    }
+
+    public static CohortAnalysisResult failed(Analysis analysis, RuntimeException failure) {
+        return new CohortAnalysisResult(analysis, null, Objects.requireNonNull(failure));
+    }
+
+    public Analysis getAnalysis() {
+        return analysis;
+    }
+
+    public boolean isFailed() {
+        return failure != null;
+    }
+
+    /**
+     * @return the results of the analysis, or null if the analysis failed.
+     */
+    public AnalysisResults getAnalysisResults() {
+        return analysisResults;
+    }
+
+    /**
+     * @return the exception which caused the analysis to fail, or null if it completed.
+     */
+    public RuntimeException getFailure() {
+        return failure;
+    }
+
+    @Override
+    public String toString() {
+        return "CohortAnalysisResult{" +
+                "probandSampleName='" + analysis.getProbandSampleName() + '\'' +
+                ", failed=" + isFailed() +
+                '}';
+    }
+}
@@ -0,0 +1,169 @@
+/*
+ * The Exomiser - A tool to annotate and prioritize genomic variants
+ *
+ * Copyright (c) 2016-2017 Queen Mary University of London.
+ * Copyright (c) 2012-2016 Charité Universitätsmedizin Berlin and Genome Research Ltd.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.monarchinitiative.exomiser.core.analysis;
+
+import org.monarchinitiative.exomiser.core.genome.VariantDataService;
+import org.monarchinitiative.exomiser.core.model.RegulatoryFeature;
+import org.monarchinitiative.exomiser.core.model.TopologicalDomain;
+import org.monarchinitiative.exomiser.core.model.Variant;
+import org.monarchinitiative.exomiser.core.model.frequency.FrequencyData;
+import org.monarchinitiative.exomiser.core.model.frequency.FrequencySource;
+import org.monarchinitiative.exomiser.core.model.pathogenicity.PathogenicityData;
+import org.monarchinitiative.exomiser.core.model.pathogenicity.PathogenicitySource;
+
+import java.util.*;
+
+import static java.util.stream.Collectors.toList;
+
+/**
+ * Fetches the frequency and pathogenicity data of each allele from the underlying {@link VariantDataService} once,
+ * however many of the probands in a cohort ask for it. The cohort's VCF is streamed in blocks of variants, each of
+ * which is handed to every proband in turn, so the data is only held until {@link #clear()} is called at the end of
+ * the block.
+ * <p>
+ * This is not thread-safe - the blocks are expected to be handed to the probands from a single thread.
+ *
+ * @author Jules Jacobsen <j.jacobsen@qmul.ac.uk>
+ */
+class CohortVariantDataService implements VariantDataService {
+
+    private final VariantDataService variantDataService;
+
+    private final Map<AlleleKey, FrequencyData> frequencyData = new HashMap<>();
+    private final Map<AlleleKey, PathogenicityData> pathogenicityData = new HashMap<>();
+
+    private long numRequests = 0;
+    private long numLookups = 0;
+
+    CohortVariantDataService(VariantDataService variantDataService) {
+        this.variantDataService = variantDataService;
+    }
+
+    @Override
+    public FrequencyData getVariantFrequencyData(Variant variant, Set<FrequencySource> frequencySources) {
+        numRequests++;
+        return frequencyData.computeIfAbsent(new AlleleKey(variant, frequencySources), key -> {
+            numLookups++;
+            return variantDataService.getVariantFrequencyData(variant, frequencySources);
+        });
+    }
+
+    /**
+     * Fetches the data for the alleles not already requested by another proband in one go.
+     */
+    @Override
+    public List<FrequencyData> getVariantFrequencyData(List<? extends Variant> variants, Set<FrequencySource> frequencySources) {
+        numRequests += variants.size();
+        List<AlleleKey> keys = new ArrayList<>(variants.size());
+        Map<AlleleKey, Variant> missingVariants = new LinkedHashMap<>();
+        for (Variant variant : variants) {
+            AlleleKey key = new AlleleKey(variant, frequencySources);
+            keys.add(key);
+            if (!frequencyData.containsKey(key)) {
+                missingVariants.putIfAbsent(key, variant);
+            }
+        }
+        if (!missingVariants.isEmpty()) {
+            numLookups += missingVariants.size();
+            List<FrequencyData> missingData = variantDataService.getVariantFrequencyData(new ArrayList<>(missingVariants.values()), frequencySources);
+            int i = 0;
+            for (AlleleKey key : missingVariants.keySet()) {
+                frequencyData.put(key, missingData.get(i++));
+            }
+        }
+        return keys.stream().map(frequencyData::get).collect(toList());
+    }
+
+    @Override
+    public PathogenicityData getVariantPathogenicityData(Variant variant, Set<PathogenicitySource> pathogenicitySources) {
+        numRequests++;
+        return pathogenicityData.computeIfAbsent(new AlleleKey(variant, pathogenicitySources), key -> {
+            numLookups++;
+            return variantDataService.getVariantPathogenicityData(variant, pathogenicitySources);
+        });
+    }
+
+    @Override
+    public List<RegulatoryFeature> getRegulatoryFeatures() {
+        return variantDataService.getRegulatoryFeatures();
+    }
+
+    @Override
+    public List<TopologicalDomain> getTopologicallyAssociatedDomains() {
+        return variantDataService.getTopologicallyAssociatedDomains();
+    }
+
+    /**
+     * Discards the data fetched for the current block of variants.
+     */
+    void clear() {
+        frequencyData.clear();
+        pathogenicityData.clear();
+    }
+
+    /**
+     * @return the number of alleles the probands have asked for data for.
+     */
+    long getNumRequests() {
+        return numRequests;
+    }
+
+    /**
+     * @return the number of alleles which have been fetched from the underlying {@link VariantDataService}.
+     */
+    long getNumLookups() {
+        return numLookups;
+    }
+
+    private static class AlleleKey {
+
+        private final int chr;
+        private final int pos;
+        private final String ref;
+        private final String alt;
+        private final Set<?> sources;
+
+        private AlleleKey(Variant variant, Set<?> sources) {
+            this.chr = variant.getChromosome();
+            this.pos = variant.getPosition();
+            this.ref = variant.getRef();
+            this.alt = variant.getAlt();
+            this.sources = sources;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+            AlleleKey alleleKey = (AlleleKey) o;
+            return chr == alleleKey.chr &&
+                    pos == alleleKey.pos &&
+                    Objects.equals(ref, alleleKey.ref) &&
+                    Objects.equals(alt, alleleKey.alt) &&
+                    Objects.equals(sources, alleleKey.sources);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(chr, pos, ref, alt, sources);
+        }
+    }
+}
@@ -33,6 +33,7 @@
 
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
 import java.util.function.Function;
 import java.util.function.Predicate;
 import java.util.stream.Stream;
@@ -48,7 +49,11 @@ class PassOnlyAnalysisRunner extends AbstractAnalysisRunner {
     private static final Logger logger = LoggerFactory.getLogger(PassOnlyAnalysisRunner.class);
 
     PassOnlyAnalysisRunner(GeneFactory geneFactory, VariantFactory variantFactory, VariantDataService variantDataService) {
-        super(geneFactory, variantFactory, variantDataService, new SparseVariantFilterRunner(), new SimpleGeneFilterRunner());
+        this(geneFactory, variantFactory, variantDataService, ForkJoinPool.commonPool());
+    }
+
+    PassOnlyAnalysisRunner(GeneFactory geneFactory, VariantFactory variantFactory, VariantDataService variantDataService, ForkJoinPool prioritiserPool) {
+        super(geneFactory, variantFactory, variantDataService, new SparseVariantFilterRunner(), new SimpleGeneFilterRunner(), prioritiserPool);
     }
 
     @Override
@@ -65,15 +70,13 @@ protected Predicate<VariantEvaluation> isAssociatedWithKnownGene(Map<String, Gen
     }
 
     @Override
-    protected Predicate<VariantEvaluation> runVariantFilters(List<VariantFilter> variantFilters) {
-        return variantEvaluation -> {
-            //loop through the filters and only run if the variantEvaluation has passed all prior filters
-            variantFilters.stream()
-                    .filter(filter -> variantEvaluation.passedFilters())
-                    .forEach(filter -> variantFilterRunner.run(filter, variantEvaluation));
-
-            return variantEvaluation.passedFilters();
-        };
+    protected List<VariantEvaluation> runVariantFilters(List<VariantFilter> variantFilters, List<VariantEvaluation> variantEvaluations) {
+        //loop through the filters - the sparse runner will only run a filter over the variants which passed all prior filters
+        List<VariantEvaluation> passedVariants = variantEvaluations;
+        for (VariantFilter filter : variantFilters) {
+            passedVariants = variantFilterRunner.run(filter, passedVariants);
+        }
+        return passedVariants;
     }
 
     @Override
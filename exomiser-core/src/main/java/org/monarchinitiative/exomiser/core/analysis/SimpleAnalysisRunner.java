@@ -31,6 +31,7 @@
 
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
 import java.util.function.Predicate;
 
 /**
@@ -41,7 +42,11 @@
 class SimpleAnalysisRunner extends AbstractAnalysisRunner {
 
     SimpleAnalysisRunner(GeneFactory geneFactory, VariantFactory variantFactory, VariantDataService variantDataService) {
-        super(geneFactory, variantFactory, variantDataService, new SimpleVariantFilterRunner(), new SimpleGeneFilterRunner());
+        this(geneFactory, variantFactory, variantDataService, ForkJoinPool.commonPool());
+    }
+
+    SimpleAnalysisRunner(GeneFactory geneFactory, VariantFactory variantFactory, VariantDataService variantDataService, ForkJoinPool prioritiserPool) {
+        super(geneFactory, variantFactory, variantDataService, new SimpleVariantFilterRunner(), new SimpleGeneFilterRunner(), prioritiserPool);
     }
 
     @Override
@@ -50,12 +55,12 @@ protected Predicate<VariantEvaluation> isAssociatedWithKnownGene(Map<String, Gen
     }
 
     @Override
-    protected Predicate<VariantEvaluation> runVariantFilters(List<VariantFilter> variantFilters) {
-        return variantEvaluation -> {
-            //loop through the filters and run them over the variantEvaluation according to the variantFilterRunner behaviour
-            variantFilters.stream().forEach(filter -> variantFilterRunner.run(filter, variantEvaluation));
-            return true;
-        };
+    protected List<VariantEvaluation> runVariantFilters(List<VariantFilter> variantFilters, List<VariantEvaluation> variantEvaluations) {
+        //loop through the filters and run them over the variantEvaluations according to the variantFilterRunner behaviour
+        for (VariantFilter filter : variantFilters) {
+            variantFilterRunner.run(filter, variantEvaluations);
+        }
+        return variantEvaluations;
     }
 
     @Override
@@ -31,6 +31,7 @@
 
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
 import java.util.function.Predicate;
 
 /**
@@ -42,7 +43,11 @@
 class SparseAnalysisRunner extends AbstractAnalysisRunner {
 
     SparseAnalysisRunner(GeneFactory geneFactory, VariantFactory variantFactory, VariantDataService variantDataService) {
-        super(geneFactory, variantFactory, variantDataService, new SparseVariantFilterRunner(), new SimpleGeneFilterRunner());
+        this(geneFactory, variantFactory, variantDataService, ForkJoinPool.commonPool());
+    }
+
+    SparseAnalysisRunner(GeneFactory geneFactory, VariantFactory variantFactory, VariantDataService variantDataService, ForkJoinPool prioritiserPool) {
+        super(geneFactory, variantFactory, variantDataService, new SparseVariantFilterRunner(), new SimpleGeneFilterRunner(), prioritiserPool);
     }
 
     @Override
@@ -51,15 +56,13 @@ protected Predicate<VariantEvaluation> isAssociatedWithKnownGene(Map<String, Gen
     }
 
     @Override
-    protected Predicate<VariantEvaluation> runVariantFilters(List<VariantFilter> variantFilters) {
-        return variantEvaluation -> {
-            //loop through the filters and only run if the variantEvaluation has passed all prior filters
-            variantFilters.stream()
-                    .filter(filter -> variantEvaluation.passedFilters())
-                    .forEach(filter -> variantFilterRunner.run(filter, variantEvaluation));
-            //for sparse filtering we still want all the variants back, even if they failed the filtering stage - they will be reported as failed.
-            return true;
-        };
+    protected List<VariantEvaluation> runVariantFilters(List<VariantFilter> variantFilters, List<VariantEvaluation> variantEvaluations) {
+        //loop through the filters - the sparse runner will only run a filter over the variants which passed all prior filters
+        for (VariantFilter filter : variantFilters) {
+            variantFilterRunner.run(filter, variantEvaluations);
+        }
+        //for sparse filtering we still want all the variants back, even if they failed the filtering stage - they will be reported as failed.
+        return variantEvaluations;
     }
 
     @Override
@@ -26,23 +26,16 @@
 package org.monarchinitiative.exomiser.core.analysis.util;
 
 import com.google.common.collect.*;
-import de.charite.compbio.jannovar.mendel.ModeOfInheritance;
-import de.charite.compbio.jannovar.mendel.SubModeOfInheritance;
-import de.charite.compbio.jannovar.mendel.bridge.CannotAnnotateMendelianInheritance;
-import de.charite.compbio.jannovar.mendel.bridge.VariantContextMendelianAnnotator;
-import de.charite.compbio.jannovar.pedigree.Genotype;
+import de.charite.compbio.jannovar.mendel.*;
 import de.charite.compbio.jannovar.pedigree.Pedigree;
-import htsjdk.variant.variantcontext.Allele;
-import htsjdk.variant.variantcontext.VariantContext;
 import org.monarchinitiative.exomiser.core.model.Gene;
+import org.monarchinitiative.exomiser.core.model.SampleGenotypes;
 import org.monarchinitiative.exomiser.core.model.VariantEvaluation;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.util.*;
 
-import static java.util.stream.Collectors.toList;
-
 /**
  * This class allows us to do segregation analysis for the variants supplied to
  * it i.e., to determine if they are compatible with autosomal recessive,
@@ -55,12 +48,12 @@ public class InheritanceModeAnalyser {
     private static final Logger logger = LoggerFactory.getLogger(InheritanceModeAnalyser.class);
 
     private final ModeOfInheritance modeOfInheritance;
-    private final VariantContextMendelianAnnotator inheritanceAnnotator;
+    private final MendelianInheritanceChecker inheritanceChecker;
     private final Set<ModeOfInheritance> compatibleModes;
 
     public InheritanceModeAnalyser(ModeOfInheritance modeOfInheritance, Pedigree pedigree) {
         this.modeOfInheritance = modeOfInheritance;
-        this.inheritanceAnnotator = new VariantContextMendelianAnnotator(pedigree, false, false);
+        this.inheritanceChecker = new MendelianInheritanceChecker(pedigree);
         this.compatibleModes = Sets.immutableEnumSet(modeOfInheritance);
     }
 
@@ -102,17 +95,17 @@ public List<List<VariantEvaluation>> findCompatibleCompHetAlleles(List<VariantEv
     }
 
     private boolean isCompHetCompatible(VariantEvaluation ve1, VariantEvaluation ve2) {
-        List<VariantContext> pair = Arrays.asList(ve1.getVariantContext(), ve2.getVariantContext());
+        List<GenotypeCalls> pair = Arrays.asList(toGenotypeCalls(ve1), toGenotypeCalls(ve2));
         try {
-            ImmutableMap<SubModeOfInheritance, ImmutableList<VariantContext>> compatibleSubModesMap = inheritanceAnnotator
-                    .computeCompatibleInheritanceSubModes(pair);
+            ImmutableMap<SubModeOfInheritance, ImmutableList<GenotypeCalls>> compatibleSubModesMap = inheritanceChecker
+                    .checkMendelianInheritanceSub(pair);
             if (compatibleSubModesMap.containsKey(SubModeOfInheritance.AUTOSOMAL_RECESSIVE_COMP_HET)) {
-                ImmutableList<VariantContext> compHetPair = compatibleSubModesMap.get(SubModeOfInheritance.AUTOSOMAL_RECESSIVE_COMP_HET);
+                ImmutableList<GenotypeCalls> compHetPair = compatibleSubModesMap.get(SubModeOfInheritance.AUTOSOMAL_RECESSIVE_COMP_HET);
                 if (compHetPair.size() == 2) {
                     return true;
                 }
             }
-        } catch (CannotAnnotateMendelianInheritance ex) {
+        } catch (IncompatiblePedigreeException ex) {
             logger.error(null, ex);
         }
         return false;
@@ -141,8 +134,8 @@ private void checkInheritanceCompatibilityOfPassedVariants(Gene gene) {
                     .getGeneSymbol(), passedVariantEvaluations.size());
         }
 
-        Multimap<String, VariantEvaluation> geneVariants = mapVariantEvaluationsToVariantContextString(passedVariantEvaluations);
-        List<VariantContext> compatibleVariants = getCompatibleVariantContexts(passedVariantEvaluations);
+        Multimap<SampleGenotypes, VariantEvaluation> geneVariants = mapVariantEvaluationsToSampleGenotypes(passedVariantEvaluations);
+        List<GenotypeCalls> compatibleVariants = getCompatibleGenotypeCalls(geneVariants);
 
         if (!compatibleVariants.isEmpty()) {
             logger.debug("Gene {} has {} variants compatible with {}:", gene.getGeneSymbol(), compatibleVariants.size(), modeOfInheritance);
@@ -151,45 +144,38 @@ private void checkInheritanceCompatibilityOfPassedVariants(Gene gene) {
         }
     }
 
-    private Multimap<String, VariantEvaluation> mapVariantEvaluationsToVariantContextString(List<VariantEvaluation> passedVariantEvaluations) {
-        Multimap<String, VariantEvaluation> geneVariants = ArrayListMultimap.create();
+    /**
+     * All the alleles from the same VCF record share the same {@link SampleGenotypes}, which is used as the key so that
+     * only ONE set of calls is checked per record. Having multiple copies of a record might cause problems with the
+     * comp het calculations.
+     */
+    private Multimap<SampleGenotypes, VariantEvaluation> mapVariantEvaluationsToSampleGenotypes(List<VariantEvaluation> passedVariantEvaluations) {
+        Multimap<SampleGenotypes, VariantEvaluation> geneVariants = LinkedListMultimap.create();
         for (VariantEvaluation variantEvaluation : passedVariantEvaluations) {
-            geneVariants.put(toKeyValue(variantEvaluation.getVariantContext()), variantEvaluation);
+            geneVariants.put(variantEvaluation.getSampleGenotypes(), variantEvaluation);
         }
         return geneVariants;
     }
 
-    /**
-     * A {@link VariantContext} cannot be used directly as a key in a Map or put into a Set as it does not override equals or hashCode.
-     * Also simply using toString isn't an option as the compatible variants returned from the {@link #inheritanceAnnotator}
-     * are different instances and have had their genotype strings changed. This method solves these problems.
-     */
-    private String toKeyValue(VariantContext variantContext) {
-        return variantContext.toStringWithoutGenotypes();
-    }
-
-    private List<VariantContext> getCompatibleVariantContexts(List<VariantEvaluation> passedVariantEvaluations) {
+    private List<GenotypeCalls> getCompatibleGenotypeCalls(Multimap<SampleGenotypes, VariantEvaluation> geneVariantsByGenotypes) {
         //This needs to be done using all the variants in the gene in order to be able to check for compound heterozygous variations
         //otherwise it would be simpler to just call this on each variant in turn
+        List<GenotypeCalls> geneVariants = new ArrayList<>(geneVariantsByGenotypes.keySet().size());
+        for (Collection<VariantEvaluation> recordAlleles : geneVariantsByGenotypes.asMap().values()) {
+            geneVariants.add(toGenotypeCalls(recordAlleles.iterator().next()));
+        }
         try {
-            //Make sure only ONE variantContext is added if there are multiple alleles as there will be one VariantEvaluation per allele.
-            //Having multiple copies of a VariantContext might cause problems with the comp het calculations 
-            List<VariantContext> geneVariants = passedVariantEvaluations.stream()
-                    .map(VariantEvaluation::getVariantContext)
-                    .distinct()
-                    .collect(toList());
-            ImmutableMap<ModeOfInheritance, ImmutableList<VariantContext>> compatibleMap = inheritanceAnnotator.computeCompatibleInheritanceModes(geneVariants);
+            ImmutableMap<ModeOfInheritance, ImmutableList<GenotypeCalls>> compatibleMap = inheritanceChecker.checkMendelianInheritance(geneVariants);
             return compatibleMap.getOrDefault(modeOfInheritance, ImmutableList.of());
-        } catch (CannotAnnotateMendelianInheritance ex) {
+        } catch (IncompatiblePedigreeException ex) {
             logger.error(null, ex);
         }
         return Collections.emptyList();
     }
 
-    private void setVariantEvaluationInheritanceModes(Multimap<String, VariantEvaluation> geneVariants, List<VariantContext> compatibleVariants) {
-        compatibleVariants.forEach(variantContext -> {
-            //using toStringWithoutGenotypes as the genotype string gets changed and VariantContext does not override equals or hashcode so this cannot be used as a key
-            Collection<VariantEvaluation> variants = geneVariants.get(toKeyValue(variantContext));
+    private void setVariantEvaluationInheritanceModes(Multimap<SampleGenotypes, VariantEvaluation> geneVariants, List<GenotypeCalls> compatibleVariants) {
+        compatibleVariants.forEach(genotypeCalls -> {
+            Collection<VariantEvaluation> variants = geneVariants.get((SampleGenotypes) genotypeCalls.getPayload());
             variants.forEach(variant -> {
                 variant.setInheritanceModes(compatibleModes);
                 logger.debug("{}: {}", variant.getInheritanceModes(), variant);
@@ -197,25 +183,45 @@ private void setVariantEvaluationInheritanceModes(Multimap<String, VariantEvalua
         });
     }
 
-    private Genotype getIndividualGenotype(Allele alternateAllele, List<Allele> alleles) {
-        if (alleles.size() != 2) {
-            return Genotype.NOT_OBSERVED;
+    private GenotypeCalls toGenotypeCalls(VariantEvaluation variantEvaluation) {
+        return toGenotypeCalls(variantEvaluation.getSampleGenotypes(), toChromosomeType(variantEvaluation));
+    }
+
+    /**
+     * Builds the Jannovar {@link GenotypeCalls} directly from the compact genotypes. The allele numbers are the indices
+     * of the alleles in the source record, exactly as the Jannovar VariantContext bridge does.
+     */
+    private GenotypeCalls toGenotypeCalls(SampleGenotypes sampleGenotypes, ChromosomeType chromosomeType) {
+        GenotypeCallsBuilder genotypeCallsBuilder = new GenotypeCallsBuilder();
+        genotypeCallsBuilder.setPayload(sampleGenotypes);
+        genotypeCallsBuilder.setChromType(chromosomeType);
+        List<String> sampleNames = sampleGenotypes.getSampleNames();
+        for (int sampleId = 0; sampleId < sampleNames.size(); sampleId++) {
+            genotypeCallsBuilder.getSampleToGenotype().put(sampleNames.get(sampleId), toGenotype(sampleGenotypes, sampleId));
         }
-        Allele allele0 = alleles.get(0);
-        Allele allele1 = alleles.get(1);
-        if (allele0.isNoCall() || allele1.isNoCall()) {
-            return Genotype.NOT_OBSERVED;
+        return genotypeCallsBuilder.build();
+    }
+
+    private Genotype toGenotype(SampleGenotypes sampleGenotypes, int sampleId) {
+        List<Integer> alleleNumbers = new ArrayList<>(2);
+        for (int slot = 0; slot < sampleGenotypes.getPloidy(sampleId); slot++) {
+            int alleleCall = sampleGenotypes.getAlleleCall(sampleId, slot);
+            alleleNumbers.add(alleleCall == SampleGenotypes.NO_CALL ? Genotype.NO_CALL : alleleCall);
         }
+        return new Genotype(alleleNumbers);
+    }
 
-        final boolean isAlt0 = allele0.basesMatch(alternateAllele);
-        final boolean isAlt1 = allele1.basesMatch(alternateAllele);
-        if (isAlt0 && isAlt1) {
-            return Genotype.HOMOZYGOUS_ALT;
-        } else if (!isAlt0 && !isAlt1) {
-            return Genotype.HOMOZYGOUS_REF;
-        } else {
-            return Genotype.HETEROZYGOUS;
+    private ChromosomeType toChromosomeType(VariantEvaluation variantEvaluation) {
+        if (variantEvaluation.isXChromosomal()) {
+            return ChromosomeType.X_CHROMOSOMAL;
+        }
+        if (variantEvaluation.isYChromosomal()) {
+            return ChromosomeType.Y_CHROMOSOMAL;
+        }
+        if (variantEvaluation.isMitochondrial()) {
+            return ChromosomeType.MITOCHONDRIAL;
         }
+        return ChromosomeType.AUTOSOMAL;
     }
 
 }
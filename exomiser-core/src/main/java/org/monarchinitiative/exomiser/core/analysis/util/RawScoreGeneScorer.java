@@ -212,11 +212,11 @@ private float calculateAutosomalRecessiveFilterScore(List<VariantEvaluation> var
     }
     
     private Predicate<VariantEvaluation> variantIsHomozygousAlt(int sampleId) {
-        return ve -> ve.getVariantContext().getGenotype(sampleId).isHomVar();
+        return ve -> ve.getSampleGenotypes().isHomVar(sampleId);
     }
 
     private Predicate<VariantEvaluation> variantIsHeterozygous(int sampleId) {
-        return ve -> ve.getVariantContext().getGenotype(sampleId).isHet();
+        return ve -> ve.getSampleGenotypes().isHet(sampleId);
     }
 
     /**
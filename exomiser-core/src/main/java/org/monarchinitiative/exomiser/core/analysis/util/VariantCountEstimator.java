@@ -0,0 +1,94 @@
+/*
+ * The Exomiser - A tool to annotate and prioritize genomic variants
+ *
+ * Copyright (c) 2016-2017 Queen Mary University of London.
+ * Copyright (c) 2012-2016 Charité Universitätsmedizin Berlin and Genome Research Ltd.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.monarchinitiative.exomiser.core.analysis.util;
+
+import com.google.common.io.CountingInputStream;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Estimates the number of variants in a plain or gzipped VCF file without reading all of it. The first records are
+ * counted and the rest of the file is assumed to have records of the same size, which is accurate enough to decide
+ * how much memory the analysis will need.
+ *
+ * @author Jules Jacobsen <j.jacobsen@qmul.ac.uk>
+ */
+public class VariantCountEstimator {
+
+    public static final int SAMPLE_SIZE = 10_000;
+
+    private static final int GZIP_MAGIC = 0x8b1f;
+
+    private VariantCountEstimator() {
+        //Empty - this is a static class.
+    }
+
+    /**
+     * @return the number of records in the file if it has fewer than {@link #SAMPLE_SIZE}, otherwise an estimate
+     * based on the size of the first {@link #SAMPLE_SIZE} records.
+     */
+    public static long estimateVariantCount(Path vcfPath) throws IOException {
+        long fileSize = Files.size(vcfPath);
+        try (BufferedInputStream bufferedInputStream = new BufferedInputStream(Files.newInputStream(vcfPath))) {
+            boolean gzipped = isGzipped(bufferedInputStream);
+            CountingInputStream countingInputStream = new CountingInputStream(bufferedInputStream);
+            InputStream inputStream = gzipped ? new GZIPInputStream(countingInputStream) : countingInputStream;
+            BufferedReader reader = new BufferedReader(new InputStreamReader(inputStream, StandardCharsets.US_ASCII));
+
+            long headerBytes = 0;
+            int numRecords = 0;
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.startsWith("#")) {
+                    continue;
+                }
+                if (numRecords == 0) {
+                    headerBytes = countingInputStream.getCount();
+                }
+                numRecords++;
+                if (numRecords == SAMPLE_SIZE) {
+                    return estimateFromSample(fileSize, headerBytes, countingInputStream.getCount(), numRecords);
+                }
+            }
+            return numRecords;
+        }
+    }
+
+    private static long estimateFromSample(long fileSize, long headerBytes, long bytesRead, int numRecords) {
+        //the reader buffers ahead of the records it has returned, so the sample includes some unread records
+        long sampleBytes = bytesRead - headerBytes;
+        if (sampleBytes <= 0 || bytesRead >= fileSize) {
+            return numRecords;
+        }
+        return numRecords + (long) ((fileSize - bytesRead) * ((double) numRecords / sampleBytes));
+    }
+
+    private static boolean isGzipped(BufferedInputStream inputStream) throws IOException {
+        inputStream.mark(2);
+        int magic = inputStream.read() | (inputStream.read() << 8);
+        inputStream.reset();
+        return magic == GZIP_MAGIC;
+    }
+}
@@ -25,7 +25,9 @@
 import org.monarchinitiative.exomiser.core.model.frequency.FrequencyData;
 import org.monarchinitiative.exomiser.core.model.frequency.FrequencySource;
 
+import java.util.ArrayList;
 import java.util.EnumSet;
+import java.util.List;
 import java.util.Set;
 
 /**
@@ -48,6 +50,11 @@ public FrequencyDataProvider(VariantDataService variantDataService, Set<Frequenc
         }
     }
 
+    @Override
+    public FrequencyDataProvider withVariantDataService(VariantDataService variantDataService) {
+        return new FrequencyDataProvider(variantDataService, frequencySources, variantFilter);
+    }
+
     @Override
     public void provideVariantData(VariantEvaluation variantEvaluation) {
         //check there are no frequencies first - this may be genuine, or possibly the variant hasn't yet had the data added
@@ -58,4 +65,24 @@ public void provideVariantData(VariantEvaluation variantEvaluation) {
         }
     }
 
+    /**
+     * Fetches the frequency data for all the variants in the block lacking known frequencies in one go.
+     */
+    @Override
+    public void provideVariantData(List<VariantEvaluation> variantEvaluations) {
+        List<VariantEvaluation> variantsWithoutFrequencies = new ArrayList<>(variantEvaluations.size());
+        for (VariantEvaluation variantEvaluation : variantEvaluations) {
+            if (variantEvaluation.getFrequencyData().getKnownFrequencies().isEmpty()) {
+                variantsWithoutFrequencies.add(variantEvaluation);
+            }
+        }
+        if (variantsWithoutFrequencies.isEmpty()) {
+            return;
+        }
+        List<FrequencyData> frequencyData = variantDataService.getVariantFrequencyData(variantsWithoutFrequencies, frequencySources);
+        for (int i = 0; i < variantsWithoutFrequencies.size(); i++) {
+            variantsWithoutFrequencies.get(i).setFrequencyData(frequencyData.get(i));
+        }
+    }
+
 }
@@ -51,6 +51,11 @@ public PathogenicityDataProvider(VariantDataService variantDataService, Set<Path
         }
     }
 
+    @Override
+    public PathogenicityDataProvider withVariantDataService(VariantDataService variantDataService) {
+        return new PathogenicityDataProvider(variantDataService, pathogenicitySources, variantFilter);
+    }
+
     @Override
     public void provideVariantData(VariantEvaluation variantEvaluation) {
         if (variantEvaluation.getPathogenicityData().isEmpty()) {
@@ -54,8 +54,9 @@ public class SimpleVariantFilterRunner implements VariantFilterRunner {
     @Override
     public List<VariantEvaluation> run(List<VariantFilter> variantFilters, List<VariantEvaluation> variantEvaluations) {
         logger.info("Filtering {} variants using simple filtering...", variantEvaluations.size());
-        for (VariantEvaluation variantEvaluation : variantEvaluations) {
-            run(variantFilters, variantEvaluation);
+        //run filter by filter so that any data required by a filter can be fetched for all the variants in one go
+        for (VariantFilter filter : variantFilters) {
+            run(filter, variantEvaluations);
         }
         logger.info("Ran {} filters over {} variants using simple filtering.", getFilterTypes(variantFilters), variantEvaluations.size());
         return variantEvaluations;
@@ -63,16 +64,26 @@ public List<VariantEvaluation> run(List<VariantFilter> variantFilters, List<Vari
 
     @Override
     public List<VariantEvaluation> run(VariantFilter filter, List<VariantEvaluation> filterables) {
+        VariantFilter filterToRun = provideVariantData(filter, filterables);
         for (VariantEvaluation variantEvaluation : filterables) {
-            run(filter, variantEvaluation);
+            run(filterToRun, variantEvaluation);
         }
         return filterables;
     }
 
-    private void run(List<VariantFilter> variantFilters, VariantEvaluation variantEvaluation) {
-        for (VariantFilter filter : variantFilters) {
-            run(filter, variantEvaluation);
+    /**
+     * Provides the data required by the filter for all of the variants in a single batch, where the filter is a
+     * {@link VariantFilterDataProvider}.
+     *
+     * @return the filter to run over the variants once their data has been provided.
+     */
+    protected VariantFilter provideVariantData(VariantFilter filter, List<VariantEvaluation> variantEvaluations) {
+        if (filter instanceof VariantFilterDataProvider) {
+            VariantFilterDataProvider variantFilterDataProvider = (VariantFilterDataProvider) filter;
+            variantFilterDataProvider.provideVariantData(variantEvaluations);
+            return variantFilterDataProvider.getDecoratedFilter();
         }
+        return filter;
     }
 
     @Override
@@ -61,14 +61,19 @@ public List<VariantEvaluation> run(List<VariantFilter> filters, List<VariantEval
 
     @Override
     public List<VariantEvaluation> run(VariantFilter filter, List<VariantEvaluation> variantEvaluations) {
-        for (VariantEvaluation variantEvaluation : variantEvaluations) {
-            if (variantEvaluation.passedFilters()) {
-                run(filter, variantEvaluation);
-            }
-        }
+        runOverPassedVariants(filter, variantEvaluations);
         return makeListofFilteredVariants(variantEvaluations);
     }
 
+    private void runOverPassedVariants(VariantFilter filter, List<VariantEvaluation> variantEvaluations) {
+        //the only difference between sparse and full filtering is that only the variants which passed are run
+        List<VariantEvaluation> passedVariantEvaluations = makeListofFilteredVariants(variantEvaluations);
+        VariantFilter filterToRun = provideVariantData(filter, passedVariantEvaluations);
+        for (VariantEvaluation variantEvaluation : passedVariantEvaluations) {
+            run(filterToRun, variantEvaluation);
+        }
+    }
+
     private boolean ifThereAreNoFiltersToRun(List<VariantFilter> filters) {
         if (filters.isEmpty()) {
             logger.info("Unable to filter variants against empty Filter list - returning all variants");
@@ -79,13 +84,8 @@ private boolean ifThereAreNoFiltersToRun(List<VariantFilter> filters) {
 
     private List<VariantEvaluation> runFilters(List<VariantFilter> filters, List<VariantEvaluation> variantEvaluations) {
 
-        for (Filter filter : filters) {
-            for (VariantEvaluation variantEvaluation : variantEvaluations) {
-                //the only difference between sparse and full filtering is this if clause here...
-                if (variantEvaluation.passedFilters()) {
-                    run(filter, variantEvaluation);
-                }
-            }
+        for (VariantFilter filter : filters) {
+            runOverPassedVariants(filter, variantEvaluations);
         }
         return makeListofFilteredVariants(variantEvaluations);
     }
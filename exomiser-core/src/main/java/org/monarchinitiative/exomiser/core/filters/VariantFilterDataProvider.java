@@ -20,8 +20,11 @@
 
 package org.monarchinitiative.exomiser.core.filters;
 
+import org.monarchinitiative.exomiser.core.genome.VariantDataService;
 import org.monarchinitiative.exomiser.core.model.VariantEvaluation;
 
+import java.util.List;
+
 /**
  * Decorator interface to provide data for variants just in time for the filter 
  * which requires it.
@@ -36,8 +39,27 @@ public interface VariantFilterDataProvider extends VariantFilter {
      */
     void provideVariantData(VariantEvaluation variantEvaluation);
 
+    /**
+     * Provides a block of variantEvaluations with the implementation-specific data. Implementations should override
+     * this where the data can be retrieved more efficiently in bulk. Once this has been called the variants can be run
+     * directly through the {@link #getDecoratedFilter()}.
+     *
+     * @param variantEvaluations
+     */
+    default void provideVariantData(List<VariantEvaluation> variantEvaluations) {
+        for (VariantEvaluation variantEvaluation : variantEvaluations) {
+            provideVariantData(variantEvaluation);
+        }
+    }
+
     /**
      * @return the decorated filter which the DataProvider is providing data for.
      */
     VariantFilter getDecoratedFilter();
+
+    /**
+     * @return a copy of this provider which provides the same data for the same filter, but fetches it from the
+     * given variantDataService.
+     */
+    VariantFilterDataProvider withVariantDataService(VariantDataService variantDataService);
 }
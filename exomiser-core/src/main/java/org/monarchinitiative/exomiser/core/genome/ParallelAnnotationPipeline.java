@@ -0,0 +1,236 @@
+/*
+ * The Exomiser - A tool to annotate and prioritize genomic variants
+ *
+ * Copyright (c) 2016-2017 Queen Mary University of London.
+ * Copyright (c) 2012-2016 Charité Universitätsmedizin Berlin and Genome Research Ltd.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.monarchinitiative.exomiser.core.genome;
+
+import org.monarchinitiative.exomiser.core.model.VariantEvaluation;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Multi-threaded, order-preserving annotation of a stream of VCF records. A single reader thread pulls records from
+ * the source stream and hands them out in chunks to a fixed pool of annotation workers. The futures for each chunk are
+ * queued in the order they were read, so the returned stream emits {@link VariantEvaluation} in exactly the same order
+ * as the input VCF. Any lazy work in the source stream, such as decoding the genotypes, is performed on the reader
+ * thread, which also closes the source stream once it has stopped reading from it.
+ *
+ * @param <T> type of the source records.
+ * @author Jules Jacobsen <j.jacobsen@qmul.ac.uk>
+ */
+final class ParallelAnnotationPipeline<T> {
+
+    private static final Logger logger = LoggerFactory.getLogger(ParallelAnnotationPipeline.class);
+
+    static final int DEFAULT_CHUNK_SIZE = 1000;
+    //how long closing the pipeline waits for the reader to stop reading the source stream
+    private static final long READER_STOP_TIMEOUT_MILLIS = 10_000;
+
+    //marks the end of the input - compared by reference only
+    private static final Future<List<VariantEvaluation>> END_OF_INPUT = CompletableFuture.completedFuture(Collections.emptyList());
+
+    private final ExecutorService workers;
+    private final BlockingQueue<Future<List<VariantEvaluation>>> orderedChunks;
+    private final Thread readerThread;
+    private final Stream<T> recordStream;
+    private final Function<T, Stream<VariantEvaluation>> annotator;
+    private final int chunkSize;
+
+    private volatile boolean closed = false;
+
+    private ParallelAnnotationPipeline(Stream<T> recordStream, Function<T, Stream<VariantEvaluation>> annotator, int numWorkers, int chunkSize) {
+        this.recordStream = recordStream;
+        this.annotator = annotator;
+        this.chunkSize = chunkSize;
+        this.workers = Executors.newFixedThreadPool(numWorkers, daemonThreadFactory("variant-annotator-"));
+        //bound the number of chunks in flight so that the reader can't get too far ahead of the consumer
+        this.orderedChunks = new ArrayBlockingQueue<>(numWorkers * 2);
+        this.readerThread = daemonThreadFactory("variant-reader-").newThread(this::readChunks);
+    }
+
+    /**
+     * Annotates the input records using numWorkers threads. The returned stream must be closed in order to release the
+     * worker threads should it not be fully consumed.
+     *
+     * @param recordStream the source records, usually in VCF order.
+     * @param annotator    function converting a record into zero or more {@link VariantEvaluation}. This must be safe
+     *                     to call from multiple threads.
+     * @param numWorkers   number of annotation threads.
+     * @param chunkSize    number of records handed to a worker in one go.
+     * @return a sequential stream of {@link VariantEvaluation} in the same order as the input.
+     */
+    static <T> Stream<VariantEvaluation> annotate(Stream<T> recordStream, Function<T, Stream<VariantEvaluation>> annotator, int numWorkers, int chunkSize) {
+        if (numWorkers < 1) {
+            throw new IllegalArgumentException("Number of annotation workers must be greater than 0, but was " + numWorkers);
+        }
+        if (chunkSize < 1) {
+            throw new IllegalArgumentException("Chunk size must be greater than 0, but was " + chunkSize);
+        }
+        ParallelAnnotationPipeline<T> pipeline = new ParallelAnnotationPipeline<>(recordStream, annotator, numWorkers, chunkSize);
+        return pipeline.start();
+    }
+
+    private Stream<VariantEvaluation> start() {
+        logger.debug("Starting annotation pipeline with {} workers", ((ThreadPoolExecutor) workers).getCorePoolSize());
+        readerThread.start();
+        Iterator<List<VariantEvaluation>> chunkIterator = new OrderedChunkIterator();
+        Spliterator<List<VariantEvaluation>> spliterator = Spliterators.spliteratorUnknownSize(chunkIterator, Spliterator.ORDERED | Spliterator.NONNULL);
+        return StreamSupport.stream(spliterator, false)
+                .flatMap(List::stream)
+                .onClose(this::close);
+    }
+
+    private void readChunks() {
+        try {
+            //htsjdk lazily decodes genotypes using the shared, non-thread-safe VCFCodec, so anything touching these
+            //must happen in the source stream, which is consumed here on the reader thread.
+            Iterator<T> records = recordStream.iterator();
+            List<T> chunk = new ArrayList<>(chunkSize);
+            while (!closed && records.hasNext()) {
+                chunk.add(records.next());
+                if (chunk.size() == chunkSize) {
+                    submit(chunk);
+                    chunk = new ArrayList<>(chunkSize);
+                }
+            }
+            if (!chunk.isEmpty()) {
+                submit(chunk);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return;
+        } catch (RuntimeException e) {
+            CompletableFuture<List<VariantEvaluation>> failure = new CompletableFuture<>();
+            failure.completeExceptionally(e);
+            offerQuietly(failure);
+        } finally {
+            //htsjdk readers aren't thread-safe, so the source is only ever closed by the thread reading it
+            closeRecordStream();
+        }
+        offerQuietly(END_OF_INPUT);
+    }
+
+    private void closeRecordStream() {
+        try {
+            recordStream.close();
+        } catch (RuntimeException e) {
+            logger.error("Unable to close variant source", e);
+        }
+    }
+
+    private void submit(List<T> chunk) throws InterruptedException {
+        orderedChunks.put(workers.submit(() -> annotateChunk(chunk)));
+    }
+
+    private List<VariantEvaluation> annotateChunk(List<T> chunk) {
+        List<VariantEvaluation> variantEvaluations = new ArrayList<>(chunk.size());
+        for (T record : chunk) {
+            annotator.apply(record).forEach(variantEvaluations::add);
+        }
+        return variantEvaluations;
+    }
+
+    private void offerQuietly(Future<List<VariantEvaluation>> future) {
+        try {
+            orderedChunks.put(future);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void close() {
+        closed = true;
+        readerThread.interrupt();
+        workers.shutdownNow();
+        try {
+            readerThread.join(READER_STOP_TIMEOUT_MILLIS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (readerThread.isAlive()) {
+            logger.warn("Variant reader still running after {} ms - it will close the source once the current read returns", READER_STOP_TIMEOUT_MILLIS);
+        }
+    }
+
+    private static ThreadFactory daemonThreadFactory(String namePrefix) {
+        AtomicInteger threadCount = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, namePrefix + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    /**
+     * Consumes the futures in the order they were submitted by the reader, blocking until each is complete.
+     */
+    private class OrderedChunkIterator implements Iterator<List<VariantEvaluation>> {
+
+        private Future<List<VariantEvaluation>> next;
+
+        @Override
+        public boolean hasNext() {
+            if (next == null) {
+                next = takeNextChunk();
+            }
+            return next != END_OF_INPUT;
+        }
+
+        @Override
+        public List<VariantEvaluation> next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            Future<List<VariantEvaluation>> current = next;
+            next = null;
+            return getChunk(current);
+        }
+
+        private Future<List<VariantEvaluation>> takeNextChunk() {
+            try {
+                return orderedChunks.take();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrupted while waiting for annotated variants", e);
+            }
+        }
+
+        private List<VariantEvaluation> getChunk(Future<List<VariantEvaluation>> future) {
+            try {
+                return future.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrupted while waiting for annotated variants", e);
+            } catch (ExecutionException e) {
+                Throwable cause = e.getCause();
+                if (cause instanceof RuntimeException) {
+                    throw (RuntimeException) cause;
+                }
+                throw new IllegalStateException("Unable to annotate variants", cause);
+            }
+        }
+    }
+}
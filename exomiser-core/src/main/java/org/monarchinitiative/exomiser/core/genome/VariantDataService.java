@@ -33,6 +33,7 @@
 import org.monarchinitiative.exomiser.core.model.pathogenicity.PathogenicityData;
 import org.monarchinitiative.exomiser.core.model.pathogenicity.PathogenicitySource;
 
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Set;
 
@@ -44,6 +45,20 @@ public interface VariantDataService {
 
     FrequencyData getVariantFrequencyData(Variant variant, Set<FrequencySource> frequencySources);
 
+    /**
+     * Batch version of {@link #getVariantFrequencyData(Variant, Set)} for a block of variants, ideally sorted by
+     * position.
+     *
+     * @return a list of {@link FrequencyData} in the same order as the input variants.
+     */
+    default List<FrequencyData> getVariantFrequencyData(List<? extends Variant> variants, Set<FrequencySource> frequencySources) {
+        List<FrequencyData> frequencyData = new ArrayList<>(variants.size());
+        for (Variant variant : variants) {
+            frequencyData.add(getVariantFrequencyData(variant, frequencySources));
+        }
+        return frequencyData;
+    }
+
     PathogenicityData getVariantPathogenicityData(Variant variant, Set<PathogenicitySource> pathogenicitySources);
 
     List<RegulatoryFeature> getRegulatoryFeatures();
@@ -83,6 +83,26 @@ public FrequencyData getVariantFrequencyData(Variant variant, Set<FrequencySourc
         return frequencyDataFromSpecifiedSources(allFrequencyData.getRsId(), allFrequencies, frequencySources);
     }
 
+    @Override
+    public List<FrequencyData> getVariantFrequencyData(List<? extends Variant> variants, Set<FrequencySource> frequencySources) {
+        List<FrequencyData> defaultFrequencyData = defaultFrequencyDao.getFrequencyData(variants);
+        List<FrequencyData> localFrequencyData = null;
+        if (frequencySources.contains(FrequencySource.LOCAL)) {
+            localFrequencyData = localFrequencyDao.getFrequencyData(variants);
+        }
+
+        List<FrequencyData> results = new ArrayList<>(variants.size());
+        for (int i = 0; i < variants.size(); i++) {
+            FrequencyData allFrequencyData = defaultFrequencyData.get(i);
+            List<Frequency> allFrequencies = new ArrayList<>(allFrequencyData.getKnownFrequencies());
+            if (localFrequencyData != null) {
+                allFrequencies.addAll(localFrequencyData.get(i).getKnownFrequencies());
+            }
+            results.add(frequencyDataFromSpecifiedSources(allFrequencyData.getRsId(), allFrequencies, frequencySources));
+        }
+        return results;
+    }
+
     FrequencyData frequencyDataFromSpecifiedSources(RsId rsid, List<Frequency> allFrequencies, Set<FrequencySource> frequencySources) {
         Set<Frequency> wanted = allFrequencies.stream()
                 .filter(frequency -> frequencySources.contains(frequency.getSource()))
@@ -31,17 +31,17 @@
 import de.charite.compbio.jannovar.data.JannovarData;
 import de.charite.compbio.jannovar.reference.GenomeVariant;
 import de.charite.compbio.jannovar.reference.TranscriptModel;
-import htsjdk.variant.variantcontext.Allele;
 import htsjdk.variant.variantcontext.Genotype;
+import htsjdk.variant.variantcontext.GenotypesContext;
 import htsjdk.variant.variantcontext.VariantContext;
 import htsjdk.variant.vcf.VCFFileReader;
 import org.monarchinitiative.exomiser.core.model.AllelePosition;
+import org.monarchinitiative.exomiser.core.model.FilterStatus;
+import org.monarchinitiative.exomiser.core.model.SampleGenotypes;
 import org.monarchinitiative.exomiser.core.model.TranscriptAnnotation;
 import org.monarchinitiative.exomiser.core.model.VariantEvaluation;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.stereotype.Component;
 
 import java.nio.file.Path;
 import java.time.Duration;
@@ -50,28 +50,45 @@
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.Consumer;
 import java.util.function.Function;
-import java.util.function.Predicate;
 import java.util.stream.Stream;
 
 /**
- * Produces Variants from VCF files.
+ * Produces Variants from VCF files. By default the variants are annotated on the calling thread. Specifying more than
+ * one annotation thread will annotate the variants in parallel, whilst still returning them in the same order as they
+ * appear in the VCF file.
  *
  * @author Jules Jacobsen <jules.jacobsen@sanger.ac.uk>
  */
-@Component
 public class VariantFactory {
 
     private static final Logger logger = LoggerFactory.getLogger(VariantFactory.class);
 
     private final JannovarVariantAnnotator variantAnnotator;
+    private final int annotationThreads;
 
     //in cases where a variant cannot be positioned on a chromosome we're going to use 0 in order to fulfil the
     //requirement of a variant having an integer chromosome
     private static final int UNKNOWN_CHROMOSOME = 0;
 
-    @Autowired
     public VariantFactory(JannovarData jannovarData) {
+        this(jannovarData, 1);
+    }
+
+    /**
+     * @param jannovarData      transcript data used for annotating the variants.
+     * @param annotationThreads number of threads used to annotate the variants. A value of 1 will annotate the
+     *                          variants on the thread consuming the stream.
+     */
+    public VariantFactory(JannovarData jannovarData, int annotationThreads) {
+        if (annotationThreads < 1) {
+            throw new IllegalArgumentException("Number of annotation threads must be greater than 0, but was " + annotationThreads);
+        }
         this.variantAnnotator = new JannovarVariantAnnotator(jannovarData);
+        this.annotationThreads = annotationThreads;
+    }
+
+    public int getAnnotationThreads() {
+        return annotationThreads;
     }
 
     public Stream<VariantEvaluation> streamVariantEvaluations(Path vcfPath) {
@@ -81,13 +98,24 @@ public Stream<VariantEvaluation> streamVariantEvaluations(Path vcfPath) {
     public Stream<VariantEvaluation> streamVariantEvaluations(Stream<VariantContext> variantContextStream) {
         logger.info("Annotating variant records, trimming sequences and normalising positions...");
         VariantCounter counter = new VariantCounter();
-        return variantContextStream
+        //the compact genotypes are built as the records are read, so that the VariantContext can be discarded as soon
+        //as the record has been annotated
+        Stream<VcfRecord> vcfRecords = variantContextStream
                 .peek(counter.countVariantContext())
-                .flatMap(toVariantEvaluations())
+                .map(new VcfRecordReader());
+        return annotateVcfRecords(vcfRecords)
                 .peek(counter.countAnnotatedVariant())
                 .onClose(counter::logCount);
     }
 
+    private Stream<VariantEvaluation> annotateVcfRecords(Stream<VcfRecord> vcfRecords) {
+        if (annotationThreads == 1) {
+            return vcfRecords.flatMap(toVariantEvaluations());
+        }
+        logger.info("Using {} threads for variant annotation", annotationThreads);
+        return ParallelAnnotationPipeline.annotate(vcfRecords, toVariantEvaluations(), annotationThreads, ParallelAnnotationPipeline.DEFAULT_CHUNK_SIZE);
+    }
+
     public Stream<VariantContext> streamVariantContexts(Path vcfPath) {
         logger.info("Streaming variants from file {}", vcfPath);
         try (VCFFileReader vcfReader = new VCFFileReader(vcfPath.toFile(), false)) {
@@ -98,34 +126,23 @@ public Stream<VariantContext> streamVariantContexts(Path vcfPath) {
     /**
      * An Exomiser VariantEvaluation is a single-allele variant whereas the VariantContext can have multiple alleles.
      * This means that a multi allele Variant record in a VCF can result in several VariantEvaluations - one for each
-     * alternate allele.
+     * alternate allele. All of these will share the same {@link SampleGenotypes}.
      */
-    private Function<VariantContext, Stream<VariantEvaluation>> toVariantEvaluations() {
-        return variantContext -> variantContext.getAlternateAlleles().stream()
-                .map(buildAlleleVariantEvaluation(variantContext))
-                    .filter(Optional::isPresent)
-                    .map(Optional::get);
-    }
-
-    private Function<Allele, Optional<VariantEvaluation>> buildAlleleVariantEvaluation(VariantContext variantContext) {
-        return allele -> {
+    private Function<VcfRecord, Stream<VariantEvaluation>> toVariantEvaluations() {
+        return vcfRecord -> {
+            VariantContext variantContext = vcfRecord.variantContext;
+            SampleGenotypes sampleGenotypes = vcfRecord.sampleGenotypes;
+            List<VariantEvaluation> variantEvaluations = new ArrayList<>(variantContext.getAlternateAlleles().size());
             //alternate Alleles are always after the reference allele, which is 0
-            int altAlleleId = variantContext.getAlleleIndex(allele) - 1;
-            if (alleleIsObservedInGenotypes(allele, variantContext)) {
-                return Optional.of(buildVariantEvaluation(variantContext, altAlleleId));
+            for (int altAlleleId = 0; altAlleleId < variantContext.getAlternateAlleles().size(); altAlleleId++) {
+                if (sampleGenotypes.anySampleHasAllele(altAlleleId + 1)) {
+                    variantEvaluations.add(buildVariantEvaluation(variantContext, sampleGenotypes, vcfRecord.filterStatus, altAlleleId));
+                }
             }
-            return Optional.empty();
+            return variantEvaluations.stream();
         };
     }
 
-    private boolean alleleIsObservedInGenotypes(Allele allele, VariantContext variantContext) {
-        return variantContext.getGenotypes().stream().anyMatch(alleleObservedInGenotype(allele));
-    }
-
-    private Predicate<Genotype> alleleObservedInGenotype(Allele allele) {
-        return genotype -> genotype.getAlleles().stream().anyMatch(allele::equals);
-    }
-
     /**
      * Creates a VariantEvaluation made from all the relevant bits of the
      * VariantContext and VariantAnnotations for a given alternative allele.
@@ -135,11 +152,37 @@ private Predicate<Genotype> alleleObservedInGenotype(Allele allele) {
      * @return
      */
     VariantEvaluation buildVariantEvaluation(VariantContext variantContext, int altAlleleId) {
+        return buildVariantEvaluation(variantContext, SampleGenotypes.of(variantContext), vcfFilterStatusOf(variantContext), altAlleleId);
+    }
+
+    private VariantEvaluation buildVariantEvaluation(VariantContext variantContext, SampleGenotypes sampleGenotypes, FilterStatus filterStatus, int altAlleleId) {
         AllelePosition trimmedAllele = trimVcfAllele(variantContext, altAlleleId);
         VariantAnnotations variantAnnotations = getVariantAnnotations(variantContext, trimmedAllele);
+        VariantEvaluation.Builder builder;
         if (variantAnnotations.hasAnnotation()) {
-            return annotatedVariantEvaluation(variantContext, altAlleleId, trimmedAllele, variantAnnotations);
-        } else return unAnnotatedVariantEvaluation(variantContext, altAlleleId, trimmedAllele);
+            builder = annotatedVariantEvaluation(variantAnnotations, trimmedAllele);
+        } else {
+            builder = unAnnotatedVariantEvaluation(variantContext, trimmedAllele);
+        }
+        return builder
+                //HTSJDK derived data are only used for writing out the HTML (VariantEffectCounter) VCF/TSV-VARIANT
+                //formatted files and the InheritanceModeAnalyser. Rather than holding onto the VariantContext, which
+                //more than doubles the RAM usage, the genotypes are kept in a compact form and the writers re-read the
+                //original record from the VCF file.
+                .sampleGenotypes(sampleGenotypes)
+                .vcfFilterStatus(filterStatus)
+                .altAlleleId(altAlleleId)
+                .numIndividuals(variantContext.getNSamples())
+                //quality is the only value from the VCF file directly required for analysis
+                .quality(variantContext.getPhredScaledQual())
+                .build();
+    }
+
+    private static FilterStatus vcfFilterStatusOf(VariantContext variantContext) {
+        if (variantContext.filtersWereApplied()) {
+            return variantContext.isNotFiltered() ? FilterStatus.PASSED : FilterStatus.FAILED;
+        }
+        return FilterStatus.UNFILTERED;
     }
 
     private AllelePosition trimVcfAllele(VariantContext variantContext, int altAlleleId) {
@@ -154,7 +197,7 @@ private VariantAnnotations getVariantAnnotations(VariantContext variantContext,
         return variantAnnotator.getVariantAnnotations(contig, allelePosition);
     }
 
-    private VariantEvaluation annotatedVariantEvaluation(VariantContext variantContext, int altAlleleId, AllelePosition allelePosition, VariantAnnotations variantAnnotations) {
+    private VariantEvaluation.Builder annotatedVariantEvaluation(VariantAnnotations variantAnnotations, AllelePosition allelePosition) {
         int pos = allelePosition.getPos();
         String ref = allelePosition.getRef();
         String alt = allelePosition.getAlt();
@@ -167,24 +210,13 @@ private VariantEvaluation annotatedVariantEvaluation(VariantContext variantConte
         List<TranscriptAnnotation> annotations = buildTranscriptAnnotations(variantAnnotations.getAnnotations());
 
         return VariantEvaluation.builder(chr, pos, ref, alt)
-                //HTSJDK derived data are only used for writing out the
-                //HTML (VariantEffectCounter) VCF/TSV-VARIANT formatted files
-                //can be removed from InheritanceModeAnalyser as Jannovar 0.18+ is not reliant on the VariantContext
-                //need most/all of the info in order to write it all out again.
-                //TODO: remove this direct dependency without it the RAM usage can be halved such that a SPARSE analysis of the POMP sample can be held comfortably in 8GB RAM
-                .variantContext(variantContext)
-                .altAlleleId(altAlleleId)
-                .numIndividuals(variantContext.getNSamples())
-                //quality is the only value from the VCF file directly required for analysis
-                .quality(variantContext.getPhredScaledQual())
                 //jannovar derived data
                 .chromosomeName(genomeVariant.getChrName())
                 .isOffExome(variantEffect.isOffExome())
                 .geneSymbol(buildGeneSymbol(highestImpactAnnotation))
                 .geneId(buildGeneId(highestImpactAnnotation))
                 .variantEffect(variantEffect)
-                .annotations(annotations)
-                .build();
+                .annotations(annotations);
     }
 
     /**
@@ -192,12 +224,8 @@ private VariantEvaluation annotatedVariantEvaluation(VariantContext variantConte
      * VariantContext. These positions will not be trimmed or annotated by
      * Jannovar. This method is only provided for completeness so that users can
      * have a list of variants which were not used in any analyses.
-     *
-     * @param variantContext
-     * @param altAlleleId
-     * @return
      */
-    private VariantEvaluation unAnnotatedVariantEvaluation(VariantContext variantContext, int altAlleleId, AllelePosition allelePosition) {
+    private VariantEvaluation.Builder unAnnotatedVariantEvaluation(VariantContext variantContext, AllelePosition allelePosition) {
 
         int pos = allelePosition.getPos();
         String ref = allelePosition.getRef();
@@ -206,13 +234,7 @@ private VariantEvaluation unAnnotatedVariantEvaluation(VariantContext variantCon
         String chromosomeName = variantContext.getContig();
         logger.trace("Building unannotated variant for {} {} {} {} - assigning to chromosome {}", chromosomeName, pos, ref, alt, UNKNOWN_CHROMOSOME);
         return VariantEvaluation.builder(UNKNOWN_CHROMOSOME, pos, ref, alt)
-                .variantContext(variantContext)
-                .altAlleleId(altAlleleId)
-                .numIndividuals(variantContext.getNSamples())
-                //quality is the only value from the VCF file directly required for analysis
-                .quality(variantContext.getPhredScaledQual())
-                .chromosomeName(chromosomeName)
-                .build();
+                .chromosomeName(chromosomeName);
     }
 
     private List<TranscriptAnnotation> buildTranscriptAnnotations(List<Annotation> annotations) {
@@ -288,6 +310,57 @@ private String buildGeneSymbol(Annotation annotation) {
         }
     }
 
+    /**
+     * A VCF record paired with its compact genotypes.
+     */
+    private static class VcfRecord {
+        final VariantContext variantContext;
+        final SampleGenotypes sampleGenotypes;
+        final FilterStatus filterStatus;
+
+        VcfRecord(VariantContext variantContext, SampleGenotypes sampleGenotypes, FilterStatus filterStatus) {
+            this.variantContext = variantContext;
+            this.sampleGenotypes = sampleGenotypes;
+            this.filterStatus = filterStatus;
+        }
+    }
+
+    /**
+     * Stateful function tracking the ordinal of each record read from a VCF file and sharing a single list of sample
+     * names between all the records. This must be called sequentially, in the order the records are read.
+     */
+    private static class VcfRecordReader implements Function<VariantContext, VcfRecord> {
+
+        private int recordIndex = 0;
+        private List<String> sampleNames = Collections.emptyList();
+
+        @Override
+        public VcfRecord apply(VariantContext variantContext) {
+            GenotypesContext genotypes = variantContext.getGenotypes();
+            if (!hasSameSampleNames(genotypes)) {
+                List<String> names = new ArrayList<>(genotypes.size());
+                for (Genotype genotype : genotypes) {
+                    names.add(genotype.getSampleName());
+                }
+                sampleNames = Collections.unmodifiableList(names);
+            }
+            SampleGenotypes sampleGenotypes = SampleGenotypes.of(variantContext, recordIndex++, sampleNames);
+            return new VcfRecord(variantContext, sampleGenotypes, vcfFilterStatusOf(variantContext));
+        }
+
+        private boolean hasSameSampleNames(GenotypesContext genotypes) {
+            if (genotypes.size() != sampleNames.size()) {
+                return false;
+            }
+            for (int i = 0; i < genotypes.size(); i++) {
+                if (!sampleNames.get(i).equals(genotypes.get(i).getSampleName())) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
     /**
      * Data class for tracking number of annotated variants
      */
@@ -0,0 +1,300 @@
+/*
+ * The Exomiser - A tool to annotate and prioritize genomic variants
+ *
+ * Copyright (c) 2016-2017 Queen Mary University of London.
+ * Copyright (c) 2012-2016 Charité Universitätsmedizin Berlin and Genome Research Ltd.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.monarchinitiative.exomiser.core.genome.dao;
+
+import org.monarchinitiative.exomiser.core.model.Variant;
+import org.monarchinitiative.exomiser.core.model.frequency.Frequency;
+import org.monarchinitiative.exomiser.core.model.frequency.FrequencyData;
+import org.monarchinitiative.exomiser.core.model.frequency.FrequencySource;
+import org.monarchinitiative.exomiser.core.model.frequency.RsId;
+import org.monarchinitiative.exomiser.core.model.pathogenicity.*;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Read-only, memory-mapped store of the frequency and pathogenicity data for known alleles, keyed by chromosome,
+ * position, ref and alt. This is written by the {@link AlleleStoreWriter} and replaces the H2 frequency and variant
+ * tables. Lookups are a binary search over the mapped file, so no connection pool or caching is required and the
+ * store is safe to use from multiple threads.
+ * <p>
+ * The file layout is a fixed size header, followed by a position-sorted index of fixed size entries, followed by the
+ * variable length allele records:
+ * <pre>
+ * header:  long magic | int version | int unused | long numRecords | long dataOffset
+ * index:   byte chromosome | 3 bytes unused | int position | long recordOffset (relative to the dataOffset)
+ * records: short refLength | ref | short altLength | alt | int rsId | short frequencySources | float[] frequencies
+ *          | byte pathogenicitySources | float[] pathogenicityScores
+ * </pre>
+ * The sources are bit-masks of the {@link FrequencySource} ordinals and {@link #PATHOGENICITY_SOURCES} indices
+ * respectively, with one float per set bit in ascending order.
+ *
+ * @author Jules Jacobsen <j.jacobsen@qmul.ac.uk>
+ */
+public final class AlleleStore {
+
+    private static final Logger logger = LoggerFactory.getLogger(AlleleStore.class);
+
+    //'EXALLELE' in ASCII
+    static final long MAGIC = 0x4558414C4C454C45L;
+    static final int VERSION = 1;
+    static final int HEADER_SIZE = 32;
+    static final int INDEX_ENTRY_SIZE = 16;
+
+    public static final int MAX_ALLELE_LENGTH = 1024;
+    static final int MAX_RECORD_SIZE = 4096;
+
+    static final FrequencySource[] FREQUENCY_SOURCES = FrequencySource.values();
+    //the pathogenicity scores held in the store, in bit-mask order
+    static final PathogenicitySource[] PATHOGENICITY_SOURCES = {PathogenicitySource.SIFT, PathogenicitySource.POLYPHEN, PathogenicitySource.MUTATION_TASTER};
+
+    //a MappedByteBuffer can only address 2GB, so larger files are mapped in overlapping segments such that any record
+    //starting in a segment can be read in full from that segment.
+    private static final long SEGMENT_SIZE = 1L << 30;
+
+    private static final AlleleStore EMPTY = new AlleleStore(new ByteBuffer[0], 0, 0);
+
+    private final ByteBuffer[] segments;
+    private final long numRecords;
+    private final long dataOffset;
+
+    private AlleleStore(ByteBuffer[] segments, long numRecords, long dataOffset) {
+        this.segments = segments;
+        this.numRecords = numRecords;
+        this.dataOffset = dataOffset;
+    }
+
+    /**
+     * @return a store with no data, for use when an allele store has not been configured.
+     */
+    public static AlleleStore empty() {
+        return EMPTY;
+    }
+
+    /**
+     * Maps the allele store file into memory. The file is not read until the data is requested.
+     *
+     * @param alleleStorePath path to a file written by the {@link AlleleStoreWriter}.
+     * @throws AlleleStoreException if the file cannot be read, or is not an allele store.
+     */
+    public static AlleleStore open(Path alleleStorePath) {
+        try (FileChannel fileChannel = FileChannel.open(alleleStorePath, StandardOpenOption.READ)) {
+            long fileSize = fileChannel.size();
+            if (fileSize < HEADER_SIZE) {
+                throw new AlleleStoreException(alleleStorePath + " is too small to be an allele store");
+            }
+            List<ByteBuffer> segments = new ArrayList<>();
+            for (long segmentStart = 0; segmentStart < fileSize; segmentStart += SEGMENT_SIZE) {
+                long segmentSize = Math.min(SEGMENT_SIZE + MAX_RECORD_SIZE, fileSize - segmentStart);
+                segments.add(fileChannel.map(FileChannel.MapMode.READ_ONLY, segmentStart, segmentSize));
+            }
+            ByteBuffer header = segments.get(0);
+            if (header.getLong(0) != MAGIC) {
+                throw new AlleleStoreException(alleleStorePath + " is not an allele store");
+            }
+            int version = header.getInt(8);
+            if (version != VERSION) {
+                throw new AlleleStoreException(String.format("Unsupported allele store version %d in %s. Expected version %d", version, alleleStorePath, VERSION));
+            }
+            long numRecords = header.getLong(16);
+            long dataOffset = header.getLong(24);
+            logger.info("Opened allele store {} containing {} alleles", alleleStorePath, numRecords);
+            return new AlleleStore(segments.toArray(new ByteBuffer[segments.size()]), numRecords, dataOffset);
+        } catch (IOException e) {
+            throw new AlleleStoreException("Unable to open allele store " + alleleStorePath, e);
+        }
+    }
+
+    public long size() {
+        return numRecords;
+    }
+
+    public FrequencyData getFrequencyData(Variant variant) {
+        long recordOffset = findRecord(variant.getChromosome(), variant.getPosition(), variant.getRef(), variant.getAlt());
+        if (recordOffset < 0) {
+            return FrequencyData.empty();
+        }
+        long offset = skipAlleles(recordOffset);
+        int rsId = getInt(offset);
+        int frequencyMask = getShort(offset + 4) & 0xFFFF;
+        offset += 6;
+
+        List<Frequency> frequencies = new ArrayList<>(Integer.bitCount(frequencyMask));
+        for (int i = 0; i < FREQUENCY_SOURCES.length; i++) {
+            if ((frequencyMask & (1 << i)) != 0) {
+                frequencies.add(Frequency.valueOf(getFloat(offset), FREQUENCY_SOURCES[i]));
+                offset += 4;
+            }
+        }
+        if (rsId == 0 && frequencies.isEmpty()) {
+            return FrequencyData.empty();
+        }
+        RsId id = rsId == 0 ? RsId.empty() : RsId.valueOf(rsId);
+        return FrequencyData.of(id, frequencies);
+    }
+
+    public PathogenicityData getPathogenicityData(Variant variant) {
+        long recordOffset = findRecord(variant.getChromosome(), variant.getPosition(), variant.getRef(), variant.getAlt());
+        if (recordOffset < 0) {
+            return PathogenicityData.empty();
+        }
+        long offset = skipAlleles(recordOffset);
+        int frequencyMask = getShort(offset + 4) & 0xFFFF;
+        offset += 6 + Integer.bitCount(frequencyMask) * 4L;
+        int pathogenicityMask = getByte(offset);
+        offset += 1;
+
+        List<PathogenicityScore> scores = new ArrayList<>(Integer.bitCount(pathogenicityMask));
+        for (int i = 0; i < PATHOGENICITY_SOURCES.length; i++) {
+            if ((pathogenicityMask & (1 << i)) != 0) {
+                scores.add(makeScore(PATHOGENICITY_SOURCES[i], getFloat(offset)));
+                offset += 4;
+            }
+        }
+        if (scores.isEmpty()) {
+            return PathogenicityData.empty();
+        }
+        return PathogenicityData.of(scores);
+    }
+
+    private PathogenicityScore makeScore(PathogenicitySource source, float score) {
+        switch (source) {
+            case SIFT:
+                return SiftScore.valueOf(score);
+            case POLYPHEN:
+                return PolyPhenScore.valueOf(score);
+            default:
+                return MutationTasterScore.valueOf(score);
+        }
+    }
+
+    /**
+     * @return the absolute offset of the allele record, or -1 if the allele is not in the store.
+     */
+    private long findRecord(int chromosome, int position, String ref, String alt) {
+        //binary search for the first index entry at the position
+        long low = 0;
+        long high = numRecords;
+        while (low < high) {
+            long mid = (low + high) >>> 1;
+            if (compareIndexEntry(mid, chromosome, position) < 0) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        //there are usually only one or two alleles at a position
+        for (long entry = low; entry < numRecords && compareIndexEntry(entry, chromosome, position) == 0; entry++) {
+            long recordOffset = dataOffset + getLong(indexEntryOffset(entry) + 8);
+            if (allelesMatch(recordOffset, ref, alt)) {
+                return recordOffset;
+            }
+        }
+        return -1;
+    }
+
+    private long indexEntryOffset(long entry) {
+        return HEADER_SIZE + entry * INDEX_ENTRY_SIZE;
+    }
+
+    private int compareIndexEntry(long entry, int chromosome, int position) {
+        long entryOffset = indexEntryOffset(entry);
+        int entryChromosome = getByte(entryOffset);
+        if (entryChromosome != chromosome) {
+            return Integer.compare(entryChromosome, chromosome);
+        }
+        return Integer.compare(getInt(entryOffset + 4), position);
+    }
+
+    private boolean allelesMatch(long recordOffset, String ref, String alt) {
+        int refLength = getShort(recordOffset);
+        if (!bytesMatch(recordOffset + 2, refLength, ref)) {
+            return false;
+        }
+        long altOffset = recordOffset + 2 + refLength;
+        return bytesMatch(altOffset + 2, getShort(altOffset), alt);
+    }
+
+    //alleles are ASCII, so compare the bytes directly rather than decoding them
+    private boolean bytesMatch(long offset, int length, String allele) {
+        if (length != allele.length()) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            if (getByte(offset + i) != allele.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private long skipAlleles(long recordOffset) {
+        long altOffset = recordOffset + 2 + getShort(recordOffset);
+        return altOffset + 2 + getShort(altOffset);
+    }
+
+    private ByteBuffer segment(long offset) {
+        return segments[(int) (offset / SEGMENT_SIZE)];
+    }
+
+    private int local(long offset) {
+        return (int) (offset % SEGMENT_SIZE);
+    }
+
+    //absolute gets do not alter the state of the buffer, so are safe for concurrent reads
+    private byte getByte(long offset) {
+        return segment(offset).get(local(offset));
+    }
+
+    private short getShort(long offset) {
+        return segment(offset).getShort(local(offset));
+    }
+
+    private int getInt(long offset) {
+        return segment(offset).getInt(local(offset));
+    }
+
+    private long getLong(long offset) {
+        return segment(offset).getLong(local(offset));
+    }
+
+    private float getFloat(long offset) {
+        return segment(offset).getFloat(local(offset));
+    }
+
+    public static class AlleleStoreException extends RuntimeException {
+
+        public AlleleStoreException(String message) {
+            super(message);
+        }
+
+        public AlleleStoreException(String message, Throwable cause) {
+            super(message, cause);
+        }
+    }
+}
@@ -0,0 +1,50 @@
+/*
+ * The Exomiser - A tool to annotate and prioritize genomic variants
+ *
+ * Copyright (c) 2016-2017 Queen Mary University of London.
+ * Copyright (c) 2012-2016 Charité Universitätsmedizin Berlin and Genome Research Ltd.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package org.monarchinitiative.exomiser.core.genome.dao;
+
+import de.charite.compbio.jannovar.annotation.VariantEffect;
+import org.monarchinitiative.exomiser.core.model.Variant;
+import org.monarchinitiative.exomiser.core.model.pathogenicity.PathogenicityData;
+
+/**
+ * {@link PathogenicityDao} backed by the memory-mapped {@link AlleleStore}. Lookups are cheaper than a cache hit, so
+ * this is not cached.
+ *
+ * @author Jules Jacobsen <j.jacobsen@qmul.ac.uk>
+ */
+public class AlleleStorePathogenicityDao implements PathogenicityDao {
+
+    private final AlleleStore alleleStore;
+
+    public AlleleStorePathogenicityDao(AlleleStore alleleStore) {
+        this.alleleStore = alleleStore;
+    }
+
+    @Override
+    public PathogenicityData getPathogenicityData(Variant variant) {
+        //as for the DefaultPathogenicityDao, the SIFT, PolyPhen and MutationTaster scores only apply to missense variants
+        if (variant.getVariantEffect() != VariantEffect.MISSENSE_VARIANT) {
+            return PathogenicityData.empty();
+        }
+        return alleleStore.getPathogenicityData(variant);
+    }
+}
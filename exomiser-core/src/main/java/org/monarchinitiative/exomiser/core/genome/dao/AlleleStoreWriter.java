@@ -0,0 +1,199 @@
+/*
+ * The Exomiser - A tool to annotate and prioritize genomic variants
+ *
+ * Copyright (c) 2016-2017 Queen Mary University of London.
+ * Copyright (c) 2012-2016 Charité Universitätsmedizin Berlin and Genome Research Ltd.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.monarchinitiative.exomiser.core.genome.dao;
+
+import org.monarchinitiative.exomiser.core.genome.dao.AlleleStore.AlleleStoreException;
+import org.monarchinitiative.exomiser.core.model.frequency.FrequencySource;
+import org.monarchinitiative.exomiser.core.model.pathogenicity.PathogenicitySource;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+
+/**
+ * Writes the binary allele store read by the {@link AlleleStore}. The alleles must be written in ascending order of
+ * chromosome, position, ref and alt, with no duplicates. The index and records are written to temporary files next to
+ * the output file which are combined into the allele store when the writer is closed.
+ *
+ * @author Jules Jacobsen <j.jacobsen@qmul.ac.uk>
+ */
+public class AlleleStoreWriter implements Closeable {
+
+    private static final Logger logger = LoggerFactory.getLogger(AlleleStoreWriter.class);
+
+    private final Path outputPath;
+    private final Path indexPath;
+    private final Path dataPath;
+    private final DataOutputStream indexOutput;
+    private final DataOutputStream dataOutput;
+
+    private long numRecords = 0;
+    private long dataOffset = 0;
+
+    private int lastChromosome = 0;
+    private int lastPosition = 0;
+    private String lastRef = "";
+    private String lastAlt = "";
+
+    public AlleleStoreWriter(Path outputPath) {
+        this.outputPath = outputPath;
+        this.indexPath = outputPath.resolveSibling(outputPath.getFileName() + ".index.tmp");
+        this.dataPath = outputPath.resolveSibling(outputPath.getFileName() + ".data.tmp");
+        try {
+            this.indexOutput = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(indexPath)));
+            this.dataOutput = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(dataPath)));
+        } catch (IOException e) {
+            throw new AlleleStoreException("Unable to create allele store " + outputPath, e);
+        }
+    }
+
+    /**
+     * @return true if the allele can be written to the store.
+     */
+    public static boolean canStore(int chromosome, String ref, String alt) {
+        return chromosome > 0 && chromosome <= Byte.MAX_VALUE && ref.length() <= AlleleStore.MAX_ALLELE_LENGTH && alt.length() <= AlleleStore.MAX_ALLELE_LENGTH;
+    }
+
+    /**
+     * Writes a single allele to the store. Frequencies or pathogenicity scores for sources not held in the store are
+     * ignored, as are zero frequencies, in the same way as the database.
+     *
+     * @param rsId                the dbSNP rs id, or 0 if this is not known.
+     * @param frequencies         the known frequencies of the allele.
+     * @param pathogenicityScores the SIFT, PolyPhen and MutationTaster scores of the allele.
+     * @throws IllegalArgumentException if the allele cannot be stored or is out of order.
+     */
+    public void write(int chromosome, int position, String ref, String alt, int rsId, Map<FrequencySource, Float> frequencies, Map<PathogenicitySource, Float> pathogenicityScores) {
+        if (!canStore(chromosome, ref, alt)) {
+            throw new IllegalArgumentException(String.format("Unable to store allele %d-%d-%s-%s", chromosome, position, ref, alt));
+        }
+        checkOrder(chromosome, position, ref, alt);
+        try {
+            indexOutput.writeByte(chromosome);
+            indexOutput.write(new byte[3]);
+            indexOutput.writeInt(position);
+            indexOutput.writeLong(dataOffset);
+
+            dataOffset += writeRecord(ref, alt, rsId, frequencies, pathogenicityScores);
+        } catch (IOException e) {
+            throw new AlleleStoreException("Unable to write allele to " + outputPath, e);
+        }
+        numRecords++;
+        lastChromosome = chromosome;
+        lastPosition = position;
+        lastRef = ref;
+        lastAlt = alt;
+    }
+
+    private void checkOrder(int chromosome, int position, String ref, String alt) {
+        int comparison = Integer.compare(chromosome, lastChromosome);
+        if (comparison == 0) {
+            comparison = Integer.compare(position, lastPosition);
+        }
+        if (comparison == 0) {
+            comparison = ref.compareTo(lastRef);
+        }
+        if (comparison == 0) {
+            comparison = alt.compareTo(lastAlt);
+        }
+        if (comparison <= 0 && numRecords > 0) {
+            throw new IllegalArgumentException(String.format("Allele %d-%d-%s-%s is not after %d-%d-%s-%s", chromosome, position, ref, alt, lastChromosome, lastPosition, lastRef, lastAlt));
+        }
+    }
+
+    private int writeRecord(String ref, String alt, int rsId, Map<FrequencySource, Float> frequencies, Map<PathogenicitySource, Float> pathogenicityScores) throws IOException {
+        int bytesWritten = writeAllele(ref) + writeAllele(alt);
+
+        int frequencyMask = 0;
+        for (int i = 0; i < AlleleStore.FREQUENCY_SOURCES.length; i++) {
+            Float frequency = frequencies.get(AlleleStore.FREQUENCY_SOURCES[i]);
+            if (frequency != null && frequency != 0) {
+                frequencyMask |= 1 << i;
+            }
+        }
+        dataOutput.writeInt(rsId);
+        dataOutput.writeShort(frequencyMask);
+        bytesWritten += 6;
+        for (int i = 0; i < AlleleStore.FREQUENCY_SOURCES.length; i++) {
+            if ((frequencyMask & (1 << i)) != 0) {
+                dataOutput.writeFloat(frequencies.get(AlleleStore.FREQUENCY_SOURCES[i]));
+                bytesWritten += 4;
+            }
+        }
+
+        int pathogenicityMask = 0;
+        for (int i = 0; i < AlleleStore.PATHOGENICITY_SOURCES.length; i++) {
+            if (pathogenicityScores.get(AlleleStore.PATHOGENICITY_SOURCES[i]) != null) {
+                pathogenicityMask |= 1 << i;
+            }
+        }
+        dataOutput.writeByte(pathogenicityMask);
+        bytesWritten += 1;
+        for (int i = 0; i < AlleleStore.PATHOGENICITY_SOURCES.length; i++) {
+            if ((pathogenicityMask & (1 << i)) != 0) {
+                dataOutput.writeFloat(pathogenicityScores.get(AlleleStore.PATHOGENICITY_SOURCES[i]));
+                bytesWritten += 4;
+            }
+        }
+        return bytesWritten;
+    }
+
+    private int writeAllele(String allele) throws IOException {
+        byte[] bytes = allele.getBytes(StandardCharsets.US_ASCII);
+        dataOutput.writeShort(bytes.length);
+        dataOutput.write(bytes);
+        return 2 + bytes.length;
+    }
+
+    public long getNumRecords() {
+        return numRecords;
+    }
+
+    /**
+     * Combines the header, index and records into the final allele store file.
+     */
+    @Override
+    public void close() {
+        try {
+            indexOutput.close();
+            dataOutput.close();
+            long indexSize = numRecords * AlleleStore.INDEX_ENTRY_SIZE;
+            try (DataOutputStream output = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(outputPath)))) {
+                output.writeLong(AlleleStore.MAGIC);
+                output.writeInt(AlleleStore.VERSION);
+                output.writeInt(0);
+                output.writeLong(numRecords);
+                output.writeLong(AlleleStore.HEADER_SIZE + indexSize);
+                Files.copy(indexPath, output);
+                Files.copy(dataPath, output);
+            }
+            Files.delete(indexPath);
+            Files.delete(dataPath);
+            logger.info("Written {} alleles to {}", numRecords, outputPath);
+        } catch (IOException e) {
+            throw new AlleleStoreException("Unable to write allele store " + outputPath, e);
+        }
+    }
+}
@@ -56,7 +56,7 @@ public CaddDao(TabixDataSource caddInDelTabixDataSource, TabixDataSource caddSnv
         this.caddSnvTabixDataSource = caddSnvTabixDataSource;
     }
 
-    @Cacheable(value = "cadd")
+    @Cacheable(value = "cadd", sync = true)
     public PathogenicityData getPathogenicityData(Variant variant) {
         return processResults(variant);
     }
@@ -73,8 +73,8 @@ PathogenicityData processResults(Variant variant) {
     }
 
     private PathogenicityData getCaddPathogenicityData(TabixDataSource tabixDataSource, String chromosome, int start, String ref, String alt) {
+        TabixReader.Iterator results = tabixDataSource.query(chromosome + ":" + start + "-" + start);
         try {
-            TabixReader.Iterator results = tabixDataSource.query(chromosome + ":" + start + "-" + start);
             String line;
             //there can be 0 - N results in this format:
             //#Chrom  Pos     Ref     Alt     RawScore        PHRED
@@ -82,28 +82,21 @@ private PathogenicityData getCaddPathogenicityData(TabixDataSource tabixDataSour
             //2       14962   C       CAA     -0.155009       1.356
             //2       14962   CA      C       0.194173        4.618
             while ((line = results.next()) != null) {
-                String[] elements = line.split("\t");
-                String caddRef = elements[2];
-                String caddAlt = elements[3];
-                if (caddRef.equals(ref) && caddAlt.equals(alt)) {
-                    return makeCaddPathData(elements[5]);
+                if (TabixColumns.columnEquals(line, 2, ref) && TabixColumns.columnEquals(line, 3, alt)) {
+                    return makeCaddPathData(TabixColumns.parseFloat(line, 5));
                 }
             }
         } catch (IOException e) {
             logger.error("Unable to read from CADD tabix file {}", tabixDataSource.getSource(), e);
+        } finally {
+            tabixDataSource.release(results);
         }
         return PathogenicityData.empty();
     }
  
-    private PathogenicityData makeCaddPathData(String phredScaledCaddScore) {
-        CaddScore caddScore = parseCaddScore(phredScaledCaddScore);
-        return PathogenicityData.of(caddScore);
-    }
-
-    private CaddScore parseCaddScore(String phredScaledCaddScore) {
-        float score = Float.parseFloat(phredScaledCaddScore);
-        float cadd = rescaleLogTenBasedScore(score);
-        return CaddScore.valueOf(cadd);
+    private PathogenicityData makeCaddPathData(float phredScaledCaddScore) {
+        float cadd = rescaleLogTenBasedScore(phredScaledCaddScore);
+        return PathogenicityData.of(CaddScore.valueOf(cadd));
     }
  
     /**
@@ -34,6 +34,7 @@
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.cache.Cache;
 import org.springframework.cache.annotation.Cacheable;
 import org.springframework.stereotype.Repository;
 
@@ -42,14 +43,13 @@
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
-import java.util.EnumMap;
-import java.util.HashSet;
-import java.util.Map;
+import java.util.*;
 import java.util.Map.Entry;
-import java.util.Set;
 
 /**
- * Default implementation of the FrequencyDao. Can be configured to use caching.
+ * Default implementation of the FrequencyDao. Can be configured to use caching. Blocks of variants can be looked-up
+ * using a small number of range scans over the frequency table index, rather than a query per variant. The blocks
+ * share the 'frequency' cache of the single variant look-ups when this is supplied.
  *
  * @author Jules Jacobsen <jules.jacobsen@sanger.ac.uk>
  */
@@ -58,13 +58,43 @@ public class DefaultFrequencyDao implements FrequencyDao {
 
     private final Logger logger = LoggerFactory.getLogger(DefaultFrequencyDao.class);
 
+    //variants closer together than this will be fetched in the same range scan
+    private static final int MAX_RANGE_GAP = 1000;
+    //limit the width of a range so as not to read vast numbers of un-needed rows from densely populated regions
+    private static final int MAX_RANGE_WIDTH = 100_000;
+
+    // Added order by clause as sometimes have multiple rows for the same position, ref and alt and first row may have no freq data
+    // Can remove if future versions of database remove these duplicated rows
+    private static final String FREQUENCY_COLUMNS = "rsid, dbSNPmaf, espEAmaf, espAAmaf, espAllmaf, exacAFRmaf,  exacAMRmaf, exacEASmaf, exacFINmaf, exacNFEmaf, exacOTHmaf, exacSASmaf ";
+    private static final String FREQUENCY_ORDER = "dbsnpmaf desc, espeamaf desc, espaamaf desc, espallmaf desc ";
+
+    private static final String RANGE_QUERY = "SELECT position, ref, alt, " + FREQUENCY_COLUMNS
+            + "FROM frequency "
+            + "WHERE chromosome = ? "
+            + "AND position >= ? "
+            + "AND position <= ? "
+            + "ORDER BY position, ref, alt, " + FREQUENCY_ORDER;
+
     private final DataSource dataSource;
 
     private final Map<FrequencySource, String> frequencySourceColumnMappings;
 
+    //the cache backing the @Cacheable single variant look-ups, may be null
+    private final Cache frequencyCache;
+
     @Autowired
     public DefaultFrequencyDao(DataSource dataSource) {
+        this(dataSource, null);
+    }
+
+    /**
+     * @param dataSource     the frequency database
+     * @param frequencyCache the 'frequency' cache used by {@link #getFrequencyData(Variant)}, so that block look-ups
+     *                       only query for variants not already cached. Can be null.
+     */
+    public DefaultFrequencyDao(DataSource dataSource, Cache frequencyCache) {
         this.dataSource = dataSource;
+        this.frequencyCache = frequencyCache;
 
         Map<FrequencySource, String> frequencyMap = new EnumMap<>(FrequencySource.class);
         frequencyMap.put(FrequencySource.THOUSAND_GENOMES, "dbSNPmaf");
@@ -83,7 +113,7 @@ public DefaultFrequencyDao(DataSource dataSource) {
     }
 
 
-    @Cacheable(value = "frequency")
+    @Cacheable(value = "frequency", sync = true)
     @Override
     public FrequencyData getFrequencyData(Variant variant) {
 
@@ -105,13 +135,13 @@ private PreparedStatement createPreparedStatement(Connection connection, Variant
         // Can remove if future versions of database remove these duplicated rows
 
         //TODO: optimise this query to remove the order by 
-        String frequencyQuery = "SELECT rsid, dbSNPmaf, espEAmaf, espAAmaf, espAllmaf, exacAFRmaf,  exacAMRmaf, exacEASmaf, exacFINmaf, exacNFEmaf, exacOTHmaf, exacSASmaf "
+        String frequencyQuery = "SELECT " + FREQUENCY_COLUMNS
                 + "FROM frequency "
                 + "WHERE chromosome = ? "
                 + "AND position = ? "
                 + "AND ref = ? "
                 + "AND alt = ? "
-                + "ORDER BY dbsnpmaf desc, espeamaf desc, espaamaf desc, espallmaf desc ";
+                + "ORDER BY " + FREQUENCY_ORDER;
         PreparedStatement ps = connection.prepareStatement(frequencyQuery);
 
         ps.setInt(1, variant.getChromosome());
@@ -123,14 +153,15 @@ private PreparedStatement createPreparedStatement(Connection connection, Variant
     }
 
     private FrequencyData processResults(ResultSet rs) throws SQLException {
-
-        RsId rsId = RsId.empty();
-        Set<Frequency> frequencies = new HashSet<>();
-
         if (rs.next()) {
-            rsId = makeRsId(rs);
-            frequencies = makeFrequencies(rs, frequencies);
+            return makeFrequencyData(rs);
         }
+        return FrequencyData.empty();
+    }
+
+    private FrequencyData makeFrequencyData(ResultSet rs) throws SQLException {
+        RsId rsId = makeRsId(rs);
+        Set<Frequency> frequencies = makeFrequencies(rs, new HashSet<>());
 
         if (rsId.isEmpty() && frequencies.isEmpty()) {
             return FrequencyData.empty();
@@ -138,6 +169,112 @@ private FrequencyData processResults(ResultSet rs) throws SQLException {
         return FrequencyData.of(rsId, frequencies);
     }
 
+    /**
+     * Looks up the frequency data for a block of variants using a single connection. Variants already in the
+     * 'frequency' cache are taken from there, the remainder are sorted by position and grouped into ranges of nearby
+     * variants, each of which is fetched with a single range scan. The fetched data is then added to the cache.
+     */
+    @Override
+    public List<FrequencyData> getFrequencyData(List<? extends Variant> variants) {
+        FrequencyData[] results = new FrequencyData[variants.size()];
+        Arrays.fill(results, FrequencyData.empty());
+        List<Integer> uncachedIndices = new ArrayList<>(variants.size());
+        for (int i = 0; i < variants.size(); i++) {
+            FrequencyData cached = getCachedFrequencyData(variants.get(i));
+            if (cached == null) {
+                uncachedIndices.add(i);
+            } else {
+                results[i] = cached;
+            }
+        }
+        if (uncachedIndices.isEmpty()) {
+            return Arrays.asList(results);
+        }
+
+        sortIndicesByPosition(variants, uncachedIndices);
+        try (
+                Connection connection = dataSource.getConnection();
+                PreparedStatement rangeQuery = connection.prepareStatement(RANGE_QUERY)) {
+            int rangeStart = 0;
+            int numRanges = 0;
+            for (int i = 1; i <= uncachedIndices.size(); i++) {
+                if (i == uncachedIndices.size() || !isInSameRange(variants.get(uncachedIndices.get(rangeStart)), variants.get(uncachedIndices.get(i - 1)), variants.get(uncachedIndices.get(i)))) {
+                    queryRange(rangeQuery, variants, uncachedIndices.subList(rangeStart, i), results);
+                    numRanges++;
+                    rangeStart = i;
+                }
+            }
+            logger.debug("Fetched frequency data for {} of {} variants using {} range queries", uncachedIndices.size(), variants.size(), numRanges);
+        } catch (SQLException e) {
+            logger.error("Error executing frequency range query: ", e);
+            //don't cache the empty results of a failed query
+            return Arrays.asList(results);
+        }
+        cacheFrequencyData(variants, uncachedIndices, results);
+        return Arrays.asList(results);
+    }
+
+    private FrequencyData getCachedFrequencyData(Variant variant) {
+        if (frequencyCache == null) {
+            return null;
+        }
+        return frequencyCache.get(variant, FrequencyData.class);
+    }
+
+    private void cacheFrequencyData(List<? extends Variant> variants, List<Integer> indices, FrequencyData[] results) {
+        if (frequencyCache == null) {
+            return;
+        }
+        for (Integer index : indices) {
+            frequencyCache.put(variants.get(index), results[index]);
+        }
+    }
+
+    private void sortIndicesByPosition(List<? extends Variant> variants, List<Integer> indices) {
+        indices.sort(Comparator.comparingInt((Integer i) -> variants.get(i).getChromosome())
+                .thenComparingInt(i -> variants.get(i).getPosition()));
+    }
+
+    private boolean isInSameRange(Variant first, Variant previous, Variant current) {
+        return current.getChromosome() == first.getChromosome() &&
+                current.getPosition() - previous.getPosition() <= MAX_RANGE_GAP &&
+                current.getPosition() - first.getPosition() <= MAX_RANGE_WIDTH;
+    }
+
+    private void queryRange(PreparedStatement rangeQuery, List<? extends Variant> variants, List<Integer> rangeIndices, FrequencyData[] results) throws SQLException {
+        Variant first = variants.get(rangeIndices.get(0));
+        Variant last = variants.get(rangeIndices.get(rangeIndices.size() - 1));
+        //several variants in the block could have the same coordinates
+        Map<String, List<Integer>> variantIndicesByKey = new HashMap<>();
+        for (Integer index : rangeIndices) {
+            Variant variant = variants.get(index);
+            String key = makeKey(variant.getPosition(), variant.getRef(), variant.getAlt());
+            variantIndicesByKey.computeIfAbsent(key, k -> new ArrayList<>(1)).add(index);
+        }
+
+        rangeQuery.setInt(1, first.getChromosome());
+        rangeQuery.setInt(2, first.getPosition());
+        rangeQuery.setInt(3, last.getPosition());
+        try (ResultSet rs = rangeQuery.executeQuery()) {
+            while (rs.next()) {
+                String key = makeKey(rs.getInt("position"), rs.getString("ref"), rs.getString("alt"));
+                //rows are ordered so that the first row for duplicated coordinates is the one to use, the same as for
+                //the single variant query
+                List<Integer> indices = variantIndicesByKey.remove(key);
+                if (indices != null) {
+                    FrequencyData frequencyData = makeFrequencyData(rs);
+                    for (Integer index : indices) {
+                        results[index] = frequencyData;
+                    }
+                }
+            }
+        }
+    }
+
+    private String makeKey(int position, String ref, String alt) {
+        return position + "-" + ref + "-" + alt;
+    }
+
     private RsId makeRsId(ResultSet rs) throws SQLException {
         int dbSNPid = rs.getInt("rsid");
         if (!rs.wasNull() && dbSNPid != 0) {
@@ -56,7 +56,7 @@ public DefaultPathogenicityDao(DataSource dataSource) {
         this.dataSource = dataSource;
     }
 
-    @Cacheable(value = "pathogenicity")
+    @Cacheable(value = "pathogenicity", sync = true)
     @Override
     public PathogenicityData getPathogenicityData(Variant variant) {
 
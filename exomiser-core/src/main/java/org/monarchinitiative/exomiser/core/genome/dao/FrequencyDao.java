@@ -28,6 +28,9 @@
 import org.monarchinitiative.exomiser.core.model.Variant;
 import org.monarchinitiative.exomiser.core.model.frequency.FrequencyData;
 
+import java.util.ArrayList;
+import java.util.List;
+
 /**
  *
  * @author Jules Jacobsen <jules.jacobsen@sanger.ac.uk>
@@ -36,4 +39,20 @@ public interface FrequencyDao {
 
     FrequencyData getFrequencyData(Variant variant);
 
+    /**
+     * Batch version of {@link #getFrequencyData(Variant)}. Implementations should override this where a block of
+     * variants can be retrieved more efficiently than one at a time. The variants are best supplied in genomic order,
+     * although this is not a requirement.
+     *
+     * @param variants the variants for which the {@link FrequencyData} is required.
+     * @return a list of {@link FrequencyData} in the same order as the input variants.
+     */
+    default List<FrequencyData> getFrequencyData(List<? extends Variant> variants) {
+        List<FrequencyData> frequencyData = new ArrayList<>(variants.size());
+        for (Variant variant : variants) {
+            frequencyData.add(getFrequencyData(variant));
+        }
+        return frequencyData;
+    }
+
 }
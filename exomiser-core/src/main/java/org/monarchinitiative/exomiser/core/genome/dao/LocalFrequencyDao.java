@@ -49,7 +49,7 @@ public LocalFrequencyDao(TabixDataSource localFrequencyTabixDataSource) {
         this.tabixDataSource = localFrequencyTabixDataSource;
     }
 
-    @Cacheable(value = "local")
+    @Cacheable(value = "local", sync = true)
     @Override
     public FrequencyData getFrequencyData(Variant variant) {
         return processResults(variant);
@@ -72,8 +72,8 @@ private FrequencyData getPositionFrequencyData(String chromosome, int start, Str
         //note in the usual VCF format these would be on a single line
         //1 12345   AT   G   0.02  (an AT->G deletion on chr1 at position 12345 with frequency of 0.02%)
         //1 12345   T   .   0.03  (an T->. monomorphic site (no alt allele) on chr1 at position 12345 with frequency of 0.03%)
+        TabixReader.Iterator results = tabixDataSource.query(chromosome + ":" + start + "-" + start);
         try {
-            TabixReader.Iterator results = tabixDataSource.query(chromosome + ":" + start + "-" + start);
             String line;
             while ((line = results.next()) != null) {
                 String[] elements = line.split("\t");
@@ -85,6 +85,8 @@ private FrequencyData getPositionFrequencyData(String chromosome, int start, Str
             }
         } catch (IOException e) {
             logger.error("Unable to read from local frequency tabix file {}", tabixDataSource.getSource(), e);
+        } finally {
+            tabixDataSource.release(results);
         }
         return FrequencyData.empty();
     }
@@ -0,0 +1,628 @@
+/*
+ * The Exomiser - A tool to annotate and prioritize genomic variants
+ *
+ * Copyright (c) 2016-2017 Queen Mary University of London.
+ * Copyright (c) 2012-2016 Charité Universitätsmedizin Berlin and Genome Research Ltd.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.monarchinitiative.exomiser.core.genome.dao;
+
+import org.monarchinitiative.exomiser.core.model.Variant;
+import org.monarchinitiative.exomiser.core.model.frequency.FrequencyData;
+import org.monarchinitiative.exomiser.core.model.pathogenicity.PathogenicityData;
+import org.springframework.cache.Cache;
+import org.springframework.cache.support.SimpleValueWrapper;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Spring {@link Cache} for the variant frequency and pathogenicity data, which the DAOs cache using the variant as
+ * the key. Rather than holding on to the variant, each key is packed into a {@code long} using {@link VariantKey} and
+ * stored in an open-addressing table of primitive keys. Non-empty {@link FrequencyData} and {@link PathogenicityData}
+ * values are stored as a small byte array using the {@link VariantDataCodec} and decoded on each hit, empty values are
+ * stored as the shared empty instance.
+ * <p>
+ * A table slot costs 12 bytes - the key and a compressed reference to the value - plus a bit for the eviction clock,
+ * and the tables are kept between 3/8 and 3/4 full, so an entry with an empty value costs between 16 and 33 bytes. An
+ * encoded value adds a further 24 to 48 bytes for most variants, rather than the several hundred bytes of a boxed key,
+ * map node and {@link FrequencyData} or {@link PathogenicityData} object.
+ * <p>
+ * The table is split into segments, each with its own lock, so concurrent analyses don't contend on a single lock.
+ * The segments grow until they reach their share of the maximum size, after which an entry is evicted using the
+ * CLOCK algorithm each time a new one is added - entries which have been read since the clock hand last passed them
+ * are given another turn. Keys which cannot be packed are held in a small least-recently-used map using their
+ * coordinates.
+ *
+ * @author Jules Jacobsen <j.jacobsen@qmul.ac.uk>
+ */
+public class PackedVariantCache implements Cache {
+
+    private static final Object NULL_VALUE = new Object();
+
+    private static final int MAX_SEGMENTS = 64;
+    private static final int MIN_SEGMENT_BYTES = 4096;
+    //the unpackable variants are rare, so only need a small part of the cache
+    private static final int UNPACKED_SHARE = 16;
+
+    private final String name;
+    private final Segment[] segments;
+    private final int segmentShift;
+    private final UnpackedEntries unpackedEntries;
+    //loads in progress, so that concurrent callers of get(key, valueLoader) for the same key only load it once
+    private final ConcurrentMap<Object, CompletableFuture<Object>> loads = new ConcurrentHashMap<>();
+
+    private final LongAdder hitCount = new LongAdder();
+    private final LongAdder missCount = new LongAdder();
+
+    /**
+     * @param name     the name of the cache
+     * @param maxBytes the approximate number of bytes the entries of the cache may occupy
+     * @throws IllegalArgumentException if maxBytes is less than 1
+     */
+    public PackedVariantCache(String name, long maxBytes) {
+        if (maxBytes < 1) {
+            throw new IllegalArgumentException("Maximum bytes must be at least 1 but was " + maxBytes);
+        }
+        this.name = name;
+        long unpackedBytes = maxBytes / UNPACKED_SHARE;
+        long packedBytes = maxBytes - unpackedBytes;
+        int numSegments = numSegments(packedBytes);
+        this.segments = new Segment[numSegments];
+        for (int i = 0; i < numSegments; i++) {
+            segments[i] = new Segment(packedBytes / numSegments);
+        }
+        this.segmentShift = 64 - Integer.numberOfTrailingZeros(numSegments);
+        this.unpackedEntries = new UnpackedEntries(unpackedBytes);
+    }
+
+    private static int numSegments(long packedBytes) {
+        int wanted = Integer.highestOneBit(Math.min(MAX_SEGMENTS, 4 * Runtime.getRuntime().availableProcessors()));
+        int numSegments = 1;
+        while (numSegments < wanted && packedBytes / (numSegments * 2) >= MIN_SEGMENT_BYTES) {
+            numSegments *= 2;
+        }
+        return numSegments;
+    }
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public Object getNativeCache() {
+        return this;
+    }
+
+    @Override
+    public ValueWrapper get(Object key) {
+        Object stored = lookup(key);
+        if (stored == null) {
+            missCount.increment();
+            return null;
+        }
+        hitCount.increment();
+        return new SimpleValueWrapper(decode(stored));
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> T get(Object key, Class<T> type) {
+        ValueWrapper valueWrapper = get(key);
+        if (valueWrapper == null) {
+            return null;
+        }
+        Object value = valueWrapper.get();
+        if (value != null && type != null && !type.isInstance(value)) {
+            throw new IllegalStateException("Cached value is not of required type [" + type.getName() + "]: " + value);
+        }
+        return (T) value;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> T get(Object key, Callable<T> valueLoader) {
+        Object stored = lookup(key);
+        if (stored != null) {
+            hitCount.increment();
+            return (T) decode(stored);
+        }
+        //the loader is called outside of the segment locks, only callers of the same key wait for it
+        long packedKey = packKey(key);
+        Object loadKey = packedKey == VariantKey.NOT_PACKABLE ? unpackedKey(key) : packedKey;
+        CompletableFuture<Object> load = new CompletableFuture<>();
+        CompletableFuture<Object> inFlight = loads.putIfAbsent(loadKey, load);
+        if (inFlight != null) {
+            hitCount.increment();
+            return (T) decode(await(inFlight, key, valueLoader));
+        }
+        try {
+            //another caller may have stored the value between the lookup and claiming the load
+            stored = lookup(key);
+            if (stored == null) {
+                missCount.increment();
+                stored = encode(valueLoader.call());
+                store(key, stored);
+            }
+            load.complete(stored);
+        } catch (Exception e) {
+            load.completeExceptionally(e);
+            throw new ValueRetrievalException(key, valueLoader, e);
+        } finally {
+            loads.remove(loadKey, load);
+        }
+        return (T) decode(stored);
+    }
+
+    private static Object await(CompletableFuture<Object> load, Object key, Callable<?> valueLoader) {
+        try {
+            return load.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new ValueRetrievalException(key, valueLoader, e);
+        } catch (ExecutionException e) {
+            throw new ValueRetrievalException(key, valueLoader, e.getCause());
+        }
+    }
+
+    @Override
+    public void put(Object key, Object value) {
+        store(key, encode(value));
+    }
+
+    @Override
+    public ValueWrapper putIfAbsent(Object key, Object value) {
+        Object encoded = encode(value);
+        long packedKey = packKey(key);
+        Object existing = packedKey == VariantKey.NOT_PACKABLE
+                ? unpackedEntries.putIfAbsent(unpackedKey(key), encoded)
+                : segmentFor(packedKey).putIfAbsent(packedKey, encoded);
+        if (existing == null) {
+            return null;
+        }
+        return new SimpleValueWrapper(decode(existing));
+    }
+
+    @Override
+    public void evict(Object key) {
+        long packedKey = packKey(key);
+        if (packedKey == VariantKey.NOT_PACKABLE) {
+            unpackedEntries.remove(unpackedKey(key));
+        } else {
+            segmentFor(packedKey).remove(packedKey);
+        }
+    }
+
+    @Override
+    public void clear() {
+        for (Segment segment : segments) {
+            segment.clear();
+        }
+        unpackedEntries.clear();
+    }
+
+    public long size() {
+        long size = unpackedEntries.size();
+        for (Segment segment : segments) {
+            size += segment.size();
+        }
+        return size;
+    }
+
+    /**
+     * @return the approximate number of bytes occupied by the tables and values of the cache.
+     */
+    public long estimatedBytes() {
+        long bytes = unpackedEntries.estimatedBytes();
+        for (Segment segment : segments) {
+            bytes += segment.estimatedBytes();
+        }
+        return bytes;
+    }
+
+    public long getHitCount() {
+        return hitCount.sum();
+    }
+
+    public long getMissCount() {
+        return missCount.sum();
+    }
+
+    public long getEvictionCount() {
+        long evictionCount = unpackedEntries.getEvictionCount();
+        for (Segment segment : segments) {
+            evictionCount += segment.getEvictionCount();
+        }
+        return evictionCount;
+    }
+
+    private static long packKey(Object key) {
+        if (key instanceof Variant) {
+            return VariantKey.pack((Variant) key);
+        }
+        if (key instanceof Long) {
+            return (Long) key;
+        }
+        return VariantKey.NOT_PACKABLE;
+    }
+
+    //unpackable variants are keyed on their coordinates so that the variant itself isn't kept alive by the cache
+    private static Object unpackedKey(Object key) {
+        if (key instanceof Variant) {
+            Variant variant = (Variant) key;
+            return variant.getChromosome() + "-" + variant.getPosition() + "-" + variant.getRef() + "-" + variant.getAlt();
+        }
+        return key;
+    }
+
+    private Segment segmentFor(long packedKey) {
+        //the top bits of the mixed key pick the segment, the segment uses the bottom bits to pick the slot
+        return segments.length == 1 ? segments[0] : segments[(int) (mix(packedKey) >>> segmentShift)];
+    }
+
+    private Object lookup(Object key) {
+        long packedKey = packKey(key);
+        if (packedKey == VariantKey.NOT_PACKABLE) {
+            return unpackedEntries.get(unpackedKey(key));
+        }
+        return segmentFor(packedKey).get(packedKey);
+    }
+
+    private void store(Object key, Object encodedValue) {
+        long packedKey = packKey(key);
+        if (packedKey == VariantKey.NOT_PACKABLE) {
+            unpackedEntries.put(unpackedKey(key), encodedValue);
+        } else {
+            segmentFor(packedKey).put(packedKey, encodedValue);
+        }
+    }
+
+    private static long mix(long packedKey) {
+        //the low bits hold the bases and the high bits the position, so mix them together
+        return packedKey * 0x9E3779B97F4A7C15L;
+    }
+
+    private static Object encode(Object value) {
+        if (value == null) {
+            return NULL_VALUE;
+        }
+        if (value == FrequencyData.empty() || value == PathogenicityData.empty()) {
+            return value;
+        }
+        if (VariantDataCodec.canEncode(value)) {
+            return VariantDataCodec.encode(value);
+        }
+        return value;
+    }
+
+    private static Object decode(Object stored) {
+        if (stored == NULL_VALUE) {
+            return null;
+        }
+        if (stored instanceof byte[]) {
+            return VariantDataCodec.decode((byte[]) stored);
+        }
+        return stored;
+    }
+
+    /**
+     * @return the approximate bytes of heap used by a stored value which is not shared with other entries.
+     */
+    private static long valueBytes(Object stored) {
+        if (stored instanceof byte[]) {
+            //array header and length, padded to a multiple of 8 bytes
+            return 16 + ((((byte[]) stored).length + 7) & ~7);
+        }
+        if (stored == NULL_VALUE || stored == FrequencyData.empty() || stored == PathogenicityData.empty()) {
+            return 0;
+        }
+        //values the codec can't encode, which are rare
+        return 64;
+    }
+
+    /**
+     * An open-addressing table of packed keys using linear probing. Removed entries are filled by shifting back the
+     * following entries in the same probe sequence, so that no tombstones are needed. All access is synchronized on
+     * the segment.
+     */
+    private static final class Segment {
+
+        //empty slots are marked by a zero key, which can never be packed as the chromosome is always at least 1
+        private static final long EMPTY_SLOT = 0L;
+        private static final int MIN_CAPACITY = 16;
+        //the array headers and fields of the segment
+        private static final long SEGMENT_OVERHEAD = 96;
+
+        private final long maxBytes;
+
+        private long[] keys;
+        private Object[] values;
+        //one bit per slot, set when the entry is read and cleared as the clock hand passes over it
+        private long[] referenced;
+        private int size;
+        private long valueBytes;
+        private int clockHand;
+        private long evictionCount;
+
+        private Segment(long maxBytes) {
+            this.maxBytes = maxBytes;
+            allocate(MIN_CAPACITY);
+        }
+
+        private void allocate(int capacity) {
+            keys = new long[capacity];
+            values = new Object[capacity];
+            referenced = new long[Math.max(1, capacity / 64)];
+            clockHand = 0;
+        }
+
+        private static long tableBytes(int capacity) {
+            //8 byte key, 4 byte compressed value reference and the clock bit
+            return SEGMENT_OVERHEAD + 12L * capacity + capacity / 8;
+        }
+
+        synchronized Object get(long packedKey) {
+            int slot = findSlot(packedKey);
+            if (keys[slot] != packedKey) {
+                return null;
+            }
+            referenced[slot >>> 6] |= 1L << slot;
+            return values[slot];
+        }
+
+        synchronized Object putIfAbsent(long packedKey, Object value) {
+            int slot = findSlot(packedKey);
+            if (keys[slot] == packedKey) {
+                referenced[slot >>> 6] |= 1L << slot;
+                return values[slot];
+            }
+            insert(packedKey, value);
+            return null;
+        }
+
+        synchronized void put(long packedKey, Object value) {
+            int slot = findSlot(packedKey);
+            if (keys[slot] == packedKey) {
+                valueBytes += valueBytes(value) - valueBytes(values[slot]);
+                values[slot] = value;
+                evictWhileOverBudget();
+                return;
+            }
+            insert(packedKey, value);
+        }
+
+        private void insert(long packedKey, Object value) {
+            //keep the load factor at or below 3/4 so that probe sequences stay short
+            if ((size + 1) * 4L > keys.length * 3L) {
+                if (tableBytes(keys.length * 2) + valueBytes + valueBytes(value) <= maxBytes) {
+                    resize(keys.length * 2);
+                } else {
+                    evictOne();
+                }
+            }
+            int slot = findSlot(packedKey);
+            keys[slot] = packedKey;
+            values[slot] = value;
+            size++;
+            valueBytes += valueBytes(value);
+            evictWhileOverBudget();
+        }
+
+        synchronized void remove(long packedKey) {
+            int slot = findSlot(packedKey);
+            if (keys[slot] == packedKey) {
+                removeSlot(slot);
+            }
+        }
+
+        synchronized void clear() {
+            allocate(MIN_CAPACITY);
+            size = 0;
+            valueBytes = 0;
+        }
+
+        synchronized int size() {
+            return size;
+        }
+
+        synchronized long estimatedBytes() {
+            return tableBytes(keys.length) + valueBytes;
+        }
+
+        synchronized long getEvictionCount() {
+            return evictionCount;
+        }
+
+        /**
+         * Linear probing from the hashed slot.
+         *
+         * @return the slot containing the key, or the empty slot where it would be inserted.
+         */
+        private int findSlot(long packedKey) {
+            int mask = keys.length - 1;
+            int slot = slotHash(packedKey) & mask;
+            while (keys[slot] != EMPTY_SLOT && keys[slot] != packedKey) {
+                slot = (slot + 1) & mask;
+            }
+            return slot;
+        }
+
+        private static int slotHash(long packedKey) {
+            long hash = mix(packedKey);
+            return (int) (hash ^ (hash >>> 32));
+        }
+
+        private void evictWhileOverBudget() {
+            while (size > 0 && tableBytes(keys.length) + valueBytes > maxBytes) {
+                evictOne();
+            }
+        }
+
+        /**
+         * Advances the clock hand to the first entry which has not been read since the hand last passed it, giving
+         * each entry it passes over another turn, and evicts it.
+         */
+        private void evictOne() {
+            int mask = keys.length - 1;
+            while (true) {
+                int slot = clockHand;
+                if (keys[slot] != EMPTY_SLOT) {
+                    long bit = 1L << slot;
+                    if ((referenced[slot >>> 6] & bit) == 0) {
+                        //the hand stays put, as the next entry of the probe sequence may have moved into the slot
+                        removeSlot(slot);
+                        evictionCount++;
+                        return;
+                    }
+                    referenced[slot >>> 6] &= ~bit;
+                }
+                clockHand = (slot + 1) & mask;
+            }
+        }
+
+        private void removeSlot(int slot) {
+            int mask = keys.length - 1;
+            valueBytes -= valueBytes(values[slot]);
+            int gap = slot;
+            int next = (gap + 1) & mask;
+            while (keys[next] != EMPTY_SLOT) {
+                int home = slotHash(keys[next]) & mask;
+                //move the entry back if the gap lies cyclically between its home slot and its current slot
+                if (((next - home) & mask) >= ((next - gap) & mask)) {
+                    keys[gap] = keys[next];
+                    values[gap] = values[next];
+                    setReferenced(gap, isReferenced(next));
+                    gap = next;
+                }
+                next = (next + 1) & mask;
+            }
+            keys[gap] = EMPTY_SLOT;
+            values[gap] = null;
+            setReferenced(gap, false);
+            size--;
+        }
+
+        private boolean isReferenced(int slot) {
+            return (referenced[slot >>> 6] & (1L << slot)) != 0;
+        }
+
+        private void setReferenced(int slot, boolean isReferenced) {
+            if (isReferenced) {
+                referenced[slot >>> 6] |= 1L << slot;
+            } else {
+                referenced[slot >>> 6] &= ~(1L << slot);
+            }
+        }
+
+        private void resize(int capacity) {
+            long[] oldKeys = keys;
+            Object[] oldValues = values;
+            long[] oldReferenced = referenced;
+            allocate(capacity);
+            for (int i = 0; i < oldKeys.length; i++) {
+                if (oldKeys[i] != EMPTY_SLOT) {
+                    int slot = findSlot(oldKeys[i]);
+                    keys[slot] = oldKeys[i];
+                    values[slot] = oldValues[i];
+                    setReferenced(slot, (oldReferenced[i >>> 6] & (1L << i)) != 0);
+                }
+            }
+        }
+    }
+
+    /**
+     * Entries for the keys which can't be packed, evicting the least recently used once they are over their share of
+     * the cache. All access is synchronized on this.
+     */
+    private static final class UnpackedEntries {
+
+        //the map entry, its links and the key string
+        private static final long ENTRY_OVERHEAD = 96;
+
+        private final long maxBytes;
+        private final LinkedHashMap<Object, Object> entries = new LinkedHashMap<>(16, 0.75f, true);
+        private long bytes;
+        private long evictionCount;
+
+        private UnpackedEntries(long maxBytes) {
+            this.maxBytes = maxBytes;
+        }
+
+        private static long entryBytes(Object key, Object value) {
+            long keyBytes = key instanceof String ? 2L * ((String) key).length() : 0;
+            return ENTRY_OVERHEAD + keyBytes + valueBytes(value);
+        }
+
+        synchronized Object get(Object key) {
+            return entries.get(key);
+        }
+
+        synchronized Object putIfAbsent(Object key, Object value) {
+            Object existing = entries.get(key);
+            if (existing != null) {
+                return existing;
+            }
+            put(key, value);
+            return null;
+        }
+
+        synchronized void put(Object key, Object value) {
+            Object previous = entries.put(key, value);
+            if (previous != null) {
+                bytes -= entryBytes(key, previous);
+            }
+            bytes += entryBytes(key, value);
+            Iterator<Map.Entry<Object, Object>> eldest = entries.entrySet().iterator();
+            while (bytes > maxBytes && eldest.hasNext()) {
+                Map.Entry<Object, Object> entry = eldest.next();
+                bytes -= entryBytes(entry.getKey(), entry.getValue());
+                eldest.remove();
+                evictionCount++;
+            }
+        }
+
+        synchronized void remove(Object key) {
+            Object previous = entries.remove(key);
+            if (previous != null) {
+                bytes -= entryBytes(key, previous);
+            }
+        }
+
+        synchronized void clear() {
+            entries.clear();
+            bytes = 0;
+        }
+
+        synchronized int size() {
+            return entries.size();
+        }
+
+        synchronized long estimatedBytes() {
+            return bytes;
+        }
+
+        synchronized long getEvictionCount() {
+            return evictionCount;
+        }
+    }
+}
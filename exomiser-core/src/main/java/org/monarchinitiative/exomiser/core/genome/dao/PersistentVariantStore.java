@@ -0,0 +1,370 @@
+/*
+ * The Exomiser - A tool to annotate and prioritize genomic variants
+ *
+ * Copyright (c) 2016-2017 Queen Mary University of London.
+ * Copyright (c) 2012-2016 Charité Universitätsmedizin Berlin and Genome Research Ltd.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.monarchinitiative.exomiser.core.genome.dao;
+
+import org.mapdb.Atomic;
+import org.mapdb.DB;
+import org.mapdb.DBMaker;
+import org.mapdb.Serializer;
+import org.monarchinitiative.exomiser.core.model.Variant;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.cache.Cache;
+import org.springframework.cache.support.SimpleValueWrapper;
+
+import java.io.Closeable;
+import java.io.IOError;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Persistent, memory-mapped MapDB store of the variant frequency and pathogenicity data which survives between runs.
+ * Each named cache is a separate map of {@link VariantKey} packed keys to {@link VariantDataCodec} encoded values.
+ * <p>
+ * The store is stamped with the version of the data it was built from. When opened with a different version, for
+ * instance after a new data release, all the cached data is dropped. Only variants which can be packed into a key and
+ * values which can be encoded are stored, anything else is left to the in-memory caches and the DAOs.
+ * <p>
+ * Writes are not transactional, so a store which was not closed cleanly, for instance after the process was killed,
+ * or which can't be read is deleted and created afresh. MapDB doesn't guard against several processes using the same
+ * files, so the store holds a lock on a sidecar {@code .lock} file for as long as it is open.
+ *
+ * @author Jules Jacobsen <j.jacobsen@qmul.ac.uk>
+ */
+public class PersistentVariantStore implements Closeable {
+
+    private static final Logger logger = LoggerFactory.getLogger(PersistentVariantStore.class);
+
+    private static final String DATA_VERSION = "dataVersion";
+    //set while the store is open, so a store left open by a killed process can be spotted
+    private static final String IN_USE = "inUse";
+    //included in the version stamp so that any change to the encoding also invalidates the store
+    private static final String ENCODING_VERSION = "1";
+
+    private final Path storePath;
+    private final DB db;
+    private final FileLock lock;
+    private final Thread shutdownHook;
+    private final Map<String, PersistentVariantCache> caches = new ConcurrentHashMap<>();
+
+    private PersistentVariantStore(Path storePath, DB db, FileLock lock) {
+        this.storePath = storePath;
+        this.db = db;
+        this.lock = lock;
+        this.shutdownHook = new Thread(this::close, "persistent-cache-shutdown");
+        Runtime.getRuntime().addShutdownHook(shutdownHook);
+    }
+
+    /**
+     * Opens or creates the store at the given path, dropping any data from a different data version.
+     *
+     * @param dataVersion identifies the release of the data being cached.
+     * @throws PersistentVariantStoreException if the store is in use by another process.
+     */
+    public static PersistentVariantStore open(Path storePath, String dataVersion) {
+        return tryOpen(storePath, dataVersion)
+                .orElseThrow(() -> new PersistentVariantStoreException(storePath + " is in use by another process"));
+    }
+
+    /**
+     * Opens or creates the store at the given path, dropping any data from a different data version.
+     *
+     * @param dataVersion identifies the release of the data being cached.
+     * @return the store, or an empty optional if the store is already in use by another process or store.
+     */
+    public static Optional<PersistentVariantStore> tryOpen(Path storePath, String dataVersion) {
+        FileLock lock = tryLock(storePath);
+        if (lock == null) {
+            logger.warn("Persistent cache {} is in use by another process", storePath);
+            return Optional.empty();
+        }
+        boolean opened = false;
+        try {
+            DB db = openOrRecreate(storePath);
+            String versionStamp = ENCODING_VERSION + ":" + dataVersion;
+            Atomic.String storedVersion = db.getAtomicString(DATA_VERSION);
+            if (!versionStamp.equals(storedVersion.get())) {
+                List<String> names = new ArrayList<>(db.getAll().keySet());
+                names.remove(DATA_VERSION);
+                names.remove(IN_USE);
+                if (!names.isEmpty()) {
+                    logger.info("Clearing persistent cache {} built from a different data version", storePath);
+                }
+                names.forEach(db::delete);
+                storedVersion.set(versionStamp);
+            }
+            db.getAtomicBoolean(IN_USE).set(true);
+            db.commit();
+            PersistentVariantStore persistentVariantStore = new PersistentVariantStore(storePath, db, lock);
+            opened = true;
+            logger.info("Opened persistent cache {}", storePath);
+            return Optional.of(persistentVariantStore);
+        } finally {
+            if (!opened) {
+                release(lock);
+            }
+        }
+    }
+
+    private static FileLock tryLock(Path storePath) {
+        Path lockPath = storePath.resolveSibling(storePath.getFileName() + ".lock");
+        FileChannel channel = null;
+        try {
+            channel = FileChannel.open(lockPath, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+            FileLock lock = channel.tryLock();
+            if (lock == null) {
+                channel.close();
+            }
+            return lock;
+        } catch (OverlappingFileLockException e) {
+            //the lock is held by another store in this JVM
+            closeQuietly(channel);
+            return null;
+        } catch (IOException e) {
+            closeQuietly(channel);
+            throw new PersistentVariantStoreException("Unable to lock persistent cache " + lockPath, e);
+        }
+    }
+
+    private static void release(FileLock lock) {
+        //closing the channel releases the lock
+        closeQuietly(lock.channel());
+    }
+
+    private static void closeQuietly(FileChannel channel) {
+        if (channel == null) {
+            return;
+        }
+        try {
+            channel.close();
+        } catch (IOException e) {
+            logger.debug("Unable to close {}", channel, e);
+        }
+    }
+
+    private static DB openOrRecreate(Path storePath) {
+        DB db = null;
+        try {
+            db = makeDb(storePath);
+            if (!db.getAtomicBoolean(IN_USE).get()) {
+                return db;
+            }
+            logger.warn("Persistent cache {} was not closed cleanly - recreating it", storePath);
+            db.close();
+        } catch (RuntimeException | IOError | InternalError e) {
+            //MapDB reports a corrupt store with any of these
+            logger.warn("Unable to read persistent cache {} - recreating it", storePath, e);
+            closeDbQuietly(db);
+        }
+        deleteStoreFiles(storePath);
+        return makeDb(storePath);
+    }
+
+    private static DB makeDb(Path storePath) {
+        return DBMaker.newFileDB(storePath.toFile())
+                .mmapFileEnableIfSupported()
+                .transactionDisable()
+                .make();
+    }
+
+    private static void closeDbQuietly(DB db) {
+        if (db == null || db.isClosed()) {
+            return;
+        }
+        try {
+            db.close();
+        } catch (RuntimeException | IOError | InternalError e) {
+            logger.debug("Unable to close persistent cache", e);
+        }
+    }
+
+    private static void deleteStoreFiles(Path storePath) {
+        //MapDB keeps the index in the named file and the records in the .p file, with a .t log for transactions
+        for (String suffix : new String[]{"", ".p", ".t"}) {
+            Path storeFile = storePath.resolveSibling(storePath.getFileName() + suffix);
+            try {
+                Files.deleteIfExists(storeFile);
+            } catch (IOException e) {
+                throw new PersistentVariantStoreException("Unable to delete persistent cache file " + storeFile, e);
+            }
+        }
+    }
+
+    public Cache getCache(String name) {
+        return caches.computeIfAbsent(name, this::createCache);
+    }
+
+    private PersistentVariantCache createCache(String name) {
+        Map<Long, byte[]> map = db.createHashMap(name)
+                .keySerializer(Serializer.LONG)
+                .valueSerializer(Serializer.BYTE_ARRAY)
+                .makeOrGet();
+        return new PersistentVariantCache(name, map);
+    }
+
+    @Override
+    public synchronized void close() {
+        if (db.isClosed()) {
+            return;
+        }
+        caches.values().forEach(cache -> logger.info("Persistent cache '{}' hits: {} misses: {}", cache.getName(), cache.hitCount.get(), cache.missCount.get()));
+        db.getAtomicBoolean(IN_USE).set(false);
+        db.commit();
+        db.close();
+        release(lock);
+        try {
+            Runtime.getRuntime().removeShutdownHook(shutdownHook);
+        } catch (IllegalStateException e) {
+            //the JVM is already shutting down, which is how the hook came to call this
+        }
+        logger.info("Closed persistent cache {}", storePath);
+    }
+
+    public static class PersistentVariantStoreException extends RuntimeException {
+
+        public PersistentVariantStoreException(String message) {
+            super(message);
+        }
+
+        public PersistentVariantStoreException(String message, Throwable cause) {
+            super(message, cause);
+        }
+    }
+
+    private static class PersistentVariantCache implements Cache {
+
+        private final String name;
+        private final Map<Long, byte[]> map;
+
+        private final AtomicLong hitCount = new AtomicLong();
+        private final AtomicLong missCount = new AtomicLong();
+
+        private PersistentVariantCache(String name, Map<Long, byte[]> map) {
+            this.name = name;
+            this.map = map;
+        }
+
+        @Override
+        public String getName() {
+            return name;
+        }
+
+        @Override
+        public Object getNativeCache() {
+            return map;
+        }
+
+        private static long packKey(Object key) {
+            if (key instanceof Variant) {
+                return VariantKey.pack((Variant) key);
+            }
+            if (key instanceof Long) {
+                return (Long) key;
+            }
+            return VariantKey.NOT_PACKABLE;
+        }
+
+        @Override
+        public ValueWrapper get(Object key) {
+            long packedKey = packKey(key);
+            byte[] bytes = packedKey == VariantKey.NOT_PACKABLE ? null : map.get(packedKey);
+            if (bytes == null) {
+                missCount.incrementAndGet();
+                return null;
+            }
+            hitCount.incrementAndGet();
+            return new SimpleValueWrapper(VariantDataCodec.decode(bytes));
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public <T> T get(Object key, Class<T> type) {
+            ValueWrapper valueWrapper = get(key);
+            if (valueWrapper == null) {
+                return null;
+            }
+            Object value = valueWrapper.get();
+            if (value != null && type != null && !type.isInstance(value)) {
+                throw new IllegalStateException("Cached value is not of required type [" + type.getName() + "]: " + value);
+            }
+            return (T) value;
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public <T> T get(Object key, Callable<T> valueLoader) {
+            ValueWrapper valueWrapper = get(key);
+            if (valueWrapper != null) {
+                return (T) valueWrapper.get();
+            }
+            T value;
+            try {
+                value = valueLoader.call();
+            } catch (Exception e) {
+                throw new ValueRetrievalException(key, valueLoader, e);
+            }
+            put(key, value);
+            return value;
+        }
+
+        @Override
+        public void put(Object key, Object value) {
+            long packedKey = packKey(key);
+            if (packedKey != VariantKey.NOT_PACKABLE && VariantDataCodec.canEncode(value)) {
+                map.put(packedKey, VariantDataCodec.encode(value));
+            }
+        }
+
+        @Override
+        public ValueWrapper putIfAbsent(Object key, Object value) {
+            ValueWrapper existing = get(key);
+            if (existing == null) {
+                put(key, value);
+            }
+            return existing;
+        }
+
+        @Override
+        public void evict(Object key) {
+            long packedKey = packKey(key);
+            if (packedKey != VariantKey.NOT_PACKABLE) {
+                map.remove(packedKey);
+            }
+        }
+
+        @Override
+        public void clear() {
+            map.clear();
+        }
+    }
+}
@@ -0,0 +1,186 @@
+/*
+ * The Exomiser - A tool to annotate and prioritize genomic variants
+ *
+ * Copyright (c) 2016-2017 Queen Mary University of London.
+ * Copyright (c) 2012-2016 Charité Universitätsmedizin Berlin and Genome Research Ltd.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.monarchinitiative.exomiser.core.genome.dao;
+
+import htsjdk.tribble.readers.TabixReader;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.function.Supplier;
+
+/**
+ * Thread-safe {@link TabixDataSource} backed by a bounded pool of data sources over the same tabix file. The HTSJDK
+ * TabixReader holds an open file and the current seek position, so a single reader cannot be shared between
+ * concurrent analyses. Here each query borrows a data source from the pool and hands back its live results. The data
+ * source is returned to the pool once the results have been read through to the end, a read fails, or the caller
+ * calls {@link #release(TabixReader.Iterator)}. Callers which stop reading early must release the results, otherwise
+ * the data source is lost to the pool.
+ * <p>
+ * Data sources are only created when all the existing ones are in use, up to the maximum size of the pool, after
+ * which queries will wait for one to be returned.
+ *
+ * @author Jules Jacobsen <j.jacobsen@qmul.ac.uk>
+ */
+public class PooledTabixDataSource implements TabixDataSource {
+
+    private static final Logger logger = LoggerFactory.getLogger(PooledTabixDataSource.class);
+
+    private final Supplier<TabixDataSource> tabixDataSourceFactory;
+    private final int maxSize;
+    private final String source;
+
+    private final BlockingQueue<TabixDataSource> idleDataSources = new LinkedBlockingQueue<>();
+    private final List<TabixDataSource> allDataSources = new CopyOnWriteArrayList<>();
+
+    /**
+     * @param tabixDataSourceFactory creates a new data source for the tabix file each time it is called.
+     * @param maxSize                the maximum number of data sources which will be opened.
+     * @throws IllegalArgumentException if the maxSize is less than 1.
+     */
+    public PooledTabixDataSource(Supplier<TabixDataSource> tabixDataSourceFactory, int maxSize) {
+        if (maxSize < 1) {
+            throw new IllegalArgumentException("Pool size must be at least 1 but was " + maxSize);
+        }
+        this.tabixDataSourceFactory = tabixDataSourceFactory;
+        this.maxSize = maxSize;
+        //open the first data source eagerly so that a missing or unreadable file is reported straight away
+        TabixDataSource first = tabixDataSourceFactory.get();
+        this.source = first.getSource();
+        allDataSources.add(first);
+        idleDataSources.add(first);
+    }
+
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    /**
+     * @return the number of data sources which have been opened.
+     */
+    public int size() {
+        return allDataSources.size();
+    }
+
+    @Override
+    public TabixReader.Iterator query(String query) {
+        TabixDataSource tabixDataSource = borrow();
+        return pooledResults(tabixDataSource, () -> tabixDataSource.query(query));
+    }
+
+    @Override
+    public TabixReader.Iterator query(String chromosome, int start, int end) {
+        TabixDataSource tabixDataSource = borrow();
+        return pooledResults(tabixDataSource, () -> tabixDataSource.query(chromosome, start, end));
+    }
+
+    private TabixReader.Iterator pooledResults(TabixDataSource tabixDataSource, Supplier<TabixReader.Iterator> query) {
+        try {
+            return new PooledIterator(tabixDataSource, query.get());
+        } catch (RuntimeException e) {
+            idleDataSources.add(tabixDataSource);
+            throw e;
+        }
+    }
+
+    @Override
+    public void release(TabixReader.Iterator results) {
+        if (results instanceof PooledIterator) {
+            ((PooledIterator) results).release();
+        }
+    }
+
+    private TabixDataSource borrow() {
+        TabixDataSource tabixDataSource = idleDataSources.poll();
+        if (tabixDataSource != null) {
+            return tabixDataSource;
+        }
+        synchronized (this) {
+            if (allDataSources.size() < maxSize) {
+                TabixDataSource created = tabixDataSourceFactory.get();
+                allDataSources.add(created);
+                logger.debug("Opened tabix data source {} of {} for {}", allDataSources.size(), maxSize, source);
+                return created;
+            }
+        }
+        try {
+            return idleDataSources.take();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted waiting for a tabix data source for " + source, e);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        for (TabixDataSource tabixDataSource : allDataSources) {
+            tabixDataSource.close();
+        }
+    }
+
+    @Override
+    public String getSource() {
+        return source;
+    }
+
+    /**
+     * Live results which return the borrowed data source to the pool once they are finished with.
+     */
+    private class PooledIterator implements TabixReader.Iterator {
+
+        private final TabixReader.Iterator results;
+        private TabixDataSource tabixDataSource;
+
+        private PooledIterator(TabixDataSource tabixDataSource, TabixReader.Iterator results) {
+            this.tabixDataSource = tabixDataSource;
+            this.results = results;
+        }
+
+        @Override
+        public String next() throws IOException {
+            if (tabixDataSource == null) {
+                return null;
+            }
+            try {
+                String line = results.next();
+                if (line == null) {
+                    release();
+                }
+                return line;
+            } catch (IOException | RuntimeException e) {
+                release();
+                throw e;
+            }
+        }
+
+        private void release() {
+            if (tabixDataSource != null) {
+                tabixDataSource.release(results);
+                idleDataSources.add(tabixDataSource);
+                tabixDataSource = null;
+            }
+        }
+    }
+}
@@ -54,7 +54,7 @@ public RemmDao(TabixDataSource remmTabixDataSource) {
         this.remmTabixDataSource = remmTabixDataSource;
     }
 
-    @Cacheable(value = "remm")
+    @Cacheable(value = "remm", sync = true)
     public PathogenicityData getPathogenicityData(Variant variant) {
         // REMM has not been trained on missense variants so skip these
         if (variant.getVariantEffect() == VariantEffect.MISSENSE_VARIANT) {
@@ -101,17 +101,17 @@ private static boolean isInsertion(int refLength, int altLength) {
     }
 
     private PathogenicityData getRemmData(String chromosome, int start, int end) {
+        TabixReader.Iterator results = remmTabixDataSource.query(chromosome + ":" + start + "-" + end);
         try {
             float remm = Float.NaN;
             String line;
 //            logger.info("Running tabix with " + chromosome + ":" + start + "-" + end);
-            TabixReader.Iterator results = remmTabixDataSource.query(chromosome + ":" + start + "-" + end);
             while ((line = results.next()) != null) {
-                String[] elements = line.split("\t");
+                float score = TabixColumns.parseFloat(line, 2);
                 if (Float.isNaN(remm)) {
-                    remm = Float.parseFloat(elements[2]);
+                    remm = score;
                 } else {
-                    remm = Math.max(remm, Float.parseFloat(elements[2]));
+                    remm = Math.max(remm, score);
                 }
             }
             //logger.info("Final score " + remm);
@@ -120,6 +120,8 @@ private PathogenicityData getRemmData(String chromosome, int start, int end) {
             }
         } catch (IOException e) {
             logger.error("Unable to read from REMM tabix file {}", remmTabixDataSource.getSource(), e);
+        } finally {
+            remmTabixDataSource.release(results);
         }
         return PathogenicityData.empty();
     }
@@ -0,0 +1,197 @@
+/*
+ * The Exomiser - A tool to annotate and prioritize genomic variants
+ *
+ * Copyright (c) 2016-2017 Queen Mary University of London.
+ * Copyright (c) 2012-2016 Charité Universitätsmedizin Berlin and Genome Research Ltd.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.monarchinitiative.exomiser.core.genome.dao;
+
+import htsjdk.tribble.readers.TabixReader;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Cursor-based {@link TabixDataSource} for walking through a tabix file in sorted order, as happens when annotating
+ * the position-sorted variants of a VCF file. Rather than seeking with the index and decompressing a fresh block for
+ * each query, a single open iterator is moved forwards through the chromosome and the lines read past the end of a
+ * query are kept for the next one. A new seek is only made when the chromosome changes, a query moves backwards or a
+ * query jumps further ahead than would be worth reading through.
+ * <p>
+ * This is intended for files with one position per line, such as the CADD and REMM files, where the second column is
+ * the position. Queries out of order return the same results as the wrapped data source, only slower. As with the
+ * HTSJDK TabixReader this class is not thread-safe and each returned iterator must be finished with before the next
+ * query is made.
+ *
+ * @author Jules Jacobsen <j.jacobsen@qmul.ac.uk>
+ */
+public class StreamingTabixDataSource implements TabixDataSource {
+
+    private static final Logger logger = LoggerFactory.getLogger(StreamingTabixDataSource.class);
+
+    private static final int POSITION_COLUMN = 1;
+
+    /**
+     * Default number of bases worth reading through before seeking. A CADD SNV block of 64KB covers about 700 bases.
+     */
+    public static final int DEFAULT_MAX_SCAN_DISTANCE = 2_000;
+
+    private final TabixDataSource tabixDataSource;
+    private final int maxScanDistance;
+
+    private String currentChromosome;
+    private TabixReader.Iterator cursor;
+    private boolean cursorExhausted;
+    //lines read from the cursor which have not yet been passed by a query
+    private final List<String> window = new ArrayList<>();
+    private int windowStart;
+    private int furthestPosition;
+
+    private long seeks = 0;
+    private long queries = 0;
+
+    public StreamingTabixDataSource(TabixDataSource tabixDataSource) {
+        this(tabixDataSource, DEFAULT_MAX_SCAN_DISTANCE);
+    }
+
+    public StreamingTabixDataSource(TabixDataSource tabixDataSource, int maxScanDistance) {
+        this.tabixDataSource = tabixDataSource;
+        this.maxScanDistance = maxScanDistance;
+    }
+
+    /**
+     * Accepts queries in the form chr:start-end. Any other form of query is passed on to the wrapped data source.
+     */
+    @Override
+    public TabixReader.Iterator query(String query) {
+        int colon = query.lastIndexOf(':');
+        int dash = query.lastIndexOf('-');
+        if (colon < 0 || dash < colon) {
+            return tabixDataSource.query(query);
+        }
+        try {
+            int start = Integer.parseInt(query.substring(colon + 1, dash));
+            int end = Integer.parseInt(query.substring(dash + 1));
+            return query(query.substring(0, colon), start, end);
+        } catch (NumberFormatException e) {
+            return tabixDataSource.query(query);
+        }
+    }
+
+    @Override
+    public TabixReader.Iterator query(String chromosome, int start, int end) {
+        queries++;
+        if (needsSeek(chromosome, start)) {
+            seek(chromosome, start);
+        } else {
+            dropLinesBefore(start);
+        }
+        windowStart = start;
+        return new WindowIterator(start, end);
+    }
+
+    private boolean needsSeek(String chromosome, int start) {
+        return cursor == null
+                || !chromosome.equals(currentChromosome)
+                || start < windowStart
+                || start - furthestPosition > maxScanDistance;
+    }
+
+    private void seek(String chromosome, int start) {
+        seeks++;
+        window.clear();
+        currentChromosome = chromosome;
+        furthestPosition = start;
+        cursorExhausted = false;
+        //HTSJDK takes a zero-based start here, and the unbounded end reads through to the end of the chromosome. Any
+        //lines before the start are skipped by the cursor.
+        cursor = tabixDataSource.query(chromosome, Math.max(0, start - 1), Integer.MAX_VALUE);
+    }
+
+    private void dropLinesBefore(int start) {
+        int numToDrop = 0;
+        while (numToDrop < window.size() && position(window.get(numToDrop)) < start) {
+            numToDrop++;
+        }
+        window.subList(0, numToDrop).clear();
+    }
+
+    private static int position(String line) {
+        return TabixColumns.parseInt(line, POSITION_COLUMN);
+    }
+
+    /**
+     * @return the next line from the cursor at or after the start, or null if the end of the chromosome has been
+     * reached.
+     */
+    private String advanceCursor(int start) throws IOException {
+        while (!cursorExhausted) {
+            String line = cursor.next();
+            if (line == null) {
+                cursorExhausted = true;
+                return null;
+            }
+            int position = position(line);
+            furthestPosition = position;
+            if (position >= start) {
+                window.add(line);
+                return line;
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public void close() throws IOException {
+        logger.debug("Made {} seeks for {} queries of {}", seeks, queries, getSource());
+        tabixDataSource.close();
+    }
+
+    @Override
+    public String getSource() {
+        return tabixDataSource.getSource();
+    }
+
+    /**
+     * Returns the lines in the window followed by those read from the cursor, stopping at the first line after the
+     * end of the query. That line is left in the window for the next query.
+     */
+    private class WindowIterator implements TabixReader.Iterator {
+
+        private final int start;
+        private final int end;
+        private int index = 0;
+
+        private WindowIterator(int start, int end) {
+            this.start = start;
+            this.end = end;
+        }
+
+        @Override
+        public String next() throws IOException {
+            String line = index < window.size() ? window.get(index) : advanceCursor(start);
+            if (line == null || position(line) > end) {
+                return null;
+            }
+            index++;
+            return line;
+        }
+    }
+}
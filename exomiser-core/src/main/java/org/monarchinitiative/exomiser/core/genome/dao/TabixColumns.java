@@ -0,0 +1,102 @@
+/*
+ * The Exomiser - A tool to annotate and prioritize genomic variants
+ *
+ * Copyright (c) 2016-2017 Queen Mary University of London.
+ * Copyright (c) 2012-2016 Charité Universitätsmedizin Berlin and Genome Research Ltd.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.monarchinitiative.exomiser.core.genome.dao;
+
+/**
+ * Reads the tab-separated columns of a tabix line in place, rather than splitting the whole line into a
+ * {@code String[]} for the sake of one or two of the columns. Columns are numbered from zero.
+ *
+ * @author Jules Jacobsen <j.jacobsen@qmul.ac.uk>
+ */
+final class TabixColumns {
+
+    private TabixColumns() {
+        //static utility class
+    }
+
+    /**
+     * @return the index of the first character of the column, or -1 if the line has fewer columns.
+     */
+    static int columnStart(String line, int column) {
+        int start = 0;
+        for (int i = 0; i < column; i++) {
+            int tab = line.indexOf('\t', start);
+            if (tab < 0) {
+                return -1;
+            }
+            start = tab + 1;
+        }
+        return start;
+    }
+
+    private static int columnEnd(String line, int columnStart) {
+        int tab = line.indexOf('\t', columnStart);
+        return tab < 0 ? line.length() : tab;
+    }
+
+    /**
+     * @return true if the column is present and exactly matches the value.
+     */
+    static boolean columnEquals(String line, int column, String value) {
+        int start = columnStart(line, column);
+        if (start < 0) {
+            return false;
+        }
+        int length = columnEnd(line, start) - start;
+        return length == value.length() && line.regionMatches(start, value, 0, length);
+    }
+
+    /**
+     * Parses an unsigned integer column, such as the position, without creating a substring.
+     *
+     * @throws NumberFormatException if the column is missing or is not an unsigned integer.
+     */
+    static int parseInt(String line, int column) {
+        int start = columnStart(line, column);
+        if (start < 0) {
+            throw new NumberFormatException("No column " + column + " in line " + line);
+        }
+        int end = columnEnd(line, start);
+        if (start == end) {
+            throw new NumberFormatException("Empty column " + column + " in line " + line);
+        }
+        int value = 0;
+        for (int i = start; i < end; i++) {
+            int digit = line.charAt(i) - '0';
+            if (digit < 0 || digit > 9) {
+                throw new NumberFormatException("Column " + column + " is not an integer in line " + line);
+            }
+            value = value * 10 + digit;
+        }
+        return value;
+    }
+
+    /**
+     * @throws NumberFormatException if the column is missing or is not a number.
+     */
+    static float parseFloat(String line, int column) {
+        int start = columnStart(line, column);
+        if (start < 0) {
+            throw new NumberFormatException("No column " + column + " in line " + line);
+        }
+        return Float.parseFloat(line.substring(start, columnEnd(line, start)));
+    }
+}
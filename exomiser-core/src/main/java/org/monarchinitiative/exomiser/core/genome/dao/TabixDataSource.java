@@ -39,4 +39,15 @@ public interface TabixDataSource extends Closeable {
 
     public String getSource();
 
+    /**
+     * Signals that the caller has finished with the results of a query, whether or not these were read through to
+     * the end. Implementations which hold a resource for the lifetime of the results release it here. This does
+     * nothing by default.
+     *
+     * @param results the iterator returned from a query on this data source, may be null
+     */
+    public default void release(TabixReader.Iterator results) {
+        //nothing to release
+    }
+
 }
\ No newline at end of file
@@ -0,0 +1,140 @@
+/*
+ * The Exomiser - A tool to annotate and prioritize genomic variants
+ *
+ * Copyright (c) 2016-2017 Queen Mary University of London.
+ * Copyright (c) 2012-2016 Charité Universitätsmedizin Berlin and Genome Research Ltd.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.monarchinitiative.exomiser.core.genome.dao;
+
+import org.monarchinitiative.exomiser.core.model.frequency.Frequency;
+import org.monarchinitiative.exomiser.core.model.frequency.FrequencyData;
+import org.monarchinitiative.exomiser.core.model.frequency.FrequencySource;
+import org.monarchinitiative.exomiser.core.model.frequency.RsId;
+import org.monarchinitiative.exomiser.core.model.pathogenicity.*;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Compact binary encoding of the {@link FrequencyData} and {@link PathogenicityData} held in the variant caches. The
+ * first byte tags the type of data, followed by the source ordinal and value of each frequency or score.
+ *
+ * @author Jules Jacobsen <j.jacobsen@qmul.ac.uk>
+ */
+final class VariantDataCodec {
+
+    private static final byte FREQUENCY_DATA = 0;
+    private static final byte PATHOGENICITY_DATA = 1;
+    private static final FrequencySource[] FREQUENCY_SOURCES = FrequencySource.values();
+    private static final PathogenicitySource[] PATHOGENICITY_SOURCES = PathogenicitySource.values();
+
+    private VariantDataCodec() {
+        //static utility class
+    }
+
+    /**
+     * @return true if the value is FrequencyData or PathogenicityData without a VARIANT_TYPE score.
+     */
+    static boolean canEncode(Object value) {
+        if (value instanceof FrequencyData) {
+            return true;
+        }
+        return value instanceof PathogenicityData && !((PathogenicityData) value).hasPredictedScore(PathogenicitySource.VARIANT_TYPE);
+    }
+
+    /**
+     * @throws IllegalArgumentException if the value cannot be encoded.
+     */
+    static byte[] encode(Object value) {
+        if (value instanceof FrequencyData) {
+            return encodeFrequencyData((FrequencyData) value);
+        }
+        if (canEncode(value)) {
+            return encodePathogenicityData((PathogenicityData) value);
+        }
+        throw new IllegalArgumentException("Unable to encode " + value);
+    }
+
+    static Object decode(byte[] bytes) {
+        return bytes[0] == FREQUENCY_DATA ? decodeFrequencyData(bytes) : decodePathogenicityData(bytes);
+    }
+
+    //tag | int rsId | (byte source | float frequency)*
+    private static byte[] encodeFrequencyData(FrequencyData frequencyData) {
+        List<Frequency> frequencies = frequencyData.getKnownFrequencies();
+        ByteBuffer buffer = ByteBuffer.allocate(5 + 5 * frequencies.size());
+        buffer.put(FREQUENCY_DATA);
+        buffer.putInt(frequencyData.getRsId().getId());
+        for (Frequency frequency : frequencies) {
+            buffer.put((byte) frequency.getSource().ordinal());
+            buffer.putFloat(frequency.getFrequency());
+        }
+        return buffer.array();
+    }
+
+    private static FrequencyData decodeFrequencyData(byte[] bytes) {
+        ByteBuffer buffer = ByteBuffer.wrap(bytes, 1, bytes.length - 1);
+        int rsId = buffer.getInt();
+        List<Frequency> frequencies = new ArrayList<>(buffer.remaining() / 5);
+        while (buffer.hasRemaining()) {
+            FrequencySource source = FREQUENCY_SOURCES[buffer.get()];
+            frequencies.add(Frequency.valueOf(buffer.getFloat(), source));
+        }
+        return FrequencyData.of(rsId == 0 ? RsId.empty() : RsId.valueOf(rsId), frequencies);
+    }
+
+    //tag | (byte source | float score)*
+    private static byte[] encodePathogenicityData(PathogenicityData pathogenicityData) {
+        List<PathogenicityScore> scores = pathogenicityData.getPredictedPathogenicityScores();
+        ByteBuffer buffer = ByteBuffer.allocate(1 + 5 * scores.size());
+        buffer.put(PATHOGENICITY_DATA);
+        for (PathogenicityScore score : scores) {
+            buffer.put((byte) score.getSource().ordinal());
+            buffer.putFloat(score.getScore());
+        }
+        return buffer.array();
+    }
+
+    private static PathogenicityData decodePathogenicityData(byte[] bytes) {
+        ByteBuffer buffer = ByteBuffer.wrap(bytes, 1, bytes.length - 1);
+        List<PathogenicityScore> scores = new ArrayList<>(buffer.remaining() / 5);
+        while (buffer.hasRemaining()) {
+            PathogenicitySource source = PATHOGENICITY_SOURCES[buffer.get()];
+            scores.add(makeScore(source, buffer.getFloat()));
+        }
+        return scores.isEmpty() ? PathogenicityData.empty() : PathogenicityData.of(scores);
+    }
+
+    private static PathogenicityScore makeScore(PathogenicitySource source, float score) {
+        switch (source) {
+            case SIFT:
+                return SiftScore.valueOf(score);
+            case POLYPHEN:
+                return PolyPhenScore.valueOf(score);
+            case MUTATION_TASTER:
+                return MutationTasterScore.valueOf(score);
+            case CADD:
+                return CaddScore.valueOf(score);
+            case REMM:
+                return RemmScore.valueOf(score);
+            default:
+                //VARIANT_TYPE scores are never encoded
+                throw new IllegalArgumentException("Unable to decode pathogenicity score for source " + source);
+        }
+    }
+}
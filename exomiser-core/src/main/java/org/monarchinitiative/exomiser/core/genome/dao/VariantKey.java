@@ -0,0 +1,94 @@
+/*
+ * The Exomiser - A tool to annotate and prioritize genomic variants
+ *
+ * Copyright (c) 2016-2017 Queen Mary University of London.
+ * Copyright (c) 2012-2016 Charité Universitätsmedizin Berlin and Genome Research Ltd.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.monarchinitiative.exomiser.core.genome.dao;
+
+import org.monarchinitiative.exomiser.core.model.Variant;
+
+/**
+ * Packs the chromosome, position, ref and alt of a variant into a single {@code long} for use as a cache key. Short
+ * alleles are encoded exactly at two bits per base, so two different variants can never share a key. Variants which
+ * cannot be packed, such as those with long or ambiguous alleles, return {@link #NOT_PACKABLE}.
+ * <pre>
+ * bit 63: 0 | 62-58: chromosome | 57-30: position | 29-27: ref length | 26-24: alt length | 23-0: ref then alt bases
+ * </pre>
+ *
+ * @author Jules Jacobsen <j.jacobsen@qmul.ac.uk>
+ */
+public final class VariantKey {
+
+    public static final long NOT_PACKABLE = -1L;
+
+    private static final int MAX_CHROMOSOME = (1 << 5) - 1;
+    private static final int MAX_POSITION = (1 << 28) - 1;
+    private static final int MAX_ALLELE_LENGTH = (1 << 3) - 1;
+    private static final int MAX_TOTAL_BASES = 12;
+
+    private VariantKey() {
+        //static utility class
+    }
+
+    public static long pack(Variant variant) {
+        return pack(variant.getChromosome(), variant.getPosition(), variant.getRef(), variant.getAlt());
+    }
+
+    /**
+     * @return the packed key, or {@link #NOT_PACKABLE} if the variant cannot be packed. Packed keys are always positive.
+     */
+    public static long pack(int chromosome, int position, String ref, String alt) {
+        int refLength = ref.length();
+        int altLength = alt.length();
+        if (chromosome < 1 || chromosome > MAX_CHROMOSOME || position < 0 || position > MAX_POSITION
+                || refLength > MAX_ALLELE_LENGTH || altLength > MAX_ALLELE_LENGTH || refLength + altLength > MAX_TOTAL_BASES) {
+            return NOT_PACKABLE;
+        }
+        long bases = 0;
+        for (int i = 0; i < refLength; i++) {
+            int base = encodeBase(ref.charAt(i));
+            if (base < 0) {
+                return NOT_PACKABLE;
+            }
+            bases = (bases << 2) | base;
+        }
+        for (int i = 0; i < altLength; i++) {
+            int base = encodeBase(alt.charAt(i));
+            if (base < 0) {
+                return NOT_PACKABLE;
+            }
+            bases = (bases << 2) | base;
+        }
+        return ((long) chromosome << 58) | ((long) position << 30) | ((long) refLength << 27) | ((long) altLength << 24) | bases;
+    }
+
+    private static int encodeBase(char base) {
+        switch (base) {
+            case 'A':
+                return 0;
+            case 'C':
+                return 1;
+            case 'G':
+                return 2;
+            case 'T':
+                return 3;
+            default:
+                return -1;
+        }
+    }
+}
@@ -95,7 +95,8 @@ public class Gene implements Comparable<Gene>, Filterable, Inheritable {
      */
     private float combinedScore = 0f;
 
-    private final Map<PriorityType, PriorityResult> priorityResultsMap = new EnumMap<>(PriorityType.class);
+    //prioritisers of different types may add their results to the same gene concurrently
+    private final Map<PriorityType, PriorityResult> priorityResultsMap = Collections.synchronizedMap(new EnumMap<>(PriorityType.class));
     private Set<ModeOfInheritance> inheritanceModes = EnumSet.noneOf(ModeOfInheritance.class);
 
     private final GeneIdentifier geneIdentifier;
@@ -0,0 +1,283 @@
+/*
+ * The Exomiser - A tool to annotate and prioritize genomic variants
+ *
+ * Copyright (c) 2016-2017 Queen Mary University of London.
+ * Copyright (c) 2012-2016 Charité Universitätsmedizin Berlin and Genome Research Ltd.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.monarchinitiative.exomiser.core.model;
+
+import htsjdk.variant.variantcontext.Allele;
+import htsjdk.variant.variantcontext.Genotype;
+import htsjdk.variant.variantcontext.GenotypesContext;
+import htsjdk.variant.variantcontext.VariantContext;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * Compact representation of the genotype calls of all the samples of a single VCF record. This replaces holding onto
+ * the full htsjdk {@link VariantContext} and is shared between all the single-allele {@link VariantEvaluation} derived
+ * from the same record.
+ * <p>
+ * Each sample has two allele slots holding the index of the called allele in the original record i.e. 0 for the REF
+ * allele, 1 for the first ALT allele etc. Un-called alleles are represented by {@link #NO_CALL} and the unused second
+ * slot of a haploid call is represented by {@link #NOT_PRESENT}. Calls with a ploidy greater than two are truncated to
+ * the first two alleles. Records with calls for an allele index greater than {@link Byte#MAX_VALUE} cannot be
+ * represented and are rejected.
+ *
+ * @author Jules Jacobsen <j.jacobsen@qmul.ac.uk>
+ */
+public final class SampleGenotypes {
+
+    public static final byte NO_CALL = -1;
+    public static final byte NOT_PRESENT = -2;
+
+    private static final int MAX_ALLELE_INDEX = Byte.MAX_VALUE;
+
+    //ordinal of the record in the source VCF file, or -1 if not known
+    private final int recordIndex;
+    //the un-trimmed start position of the source record
+    private final int recordStart;
+    //this will be the same instance for all records from a VCF file
+    private final List<String> sampleNames;
+    private final byte[] alleleCalls;
+
+    private SampleGenotypes(int recordIndex, int recordStart, List<String> sampleNames, byte[] alleleCalls) {
+        this.recordIndex = recordIndex;
+        this.recordStart = recordStart;
+        this.sampleNames = sampleNames;
+        this.alleleCalls = alleleCalls;
+    }
+
+    /**
+     * @param recordIndex ordinal of the record in the source VCF file, or -1 if not known.
+     * @param recordStart start position of the source record.
+     * @param sampleNames names of the samples in the order of the VCF file. This ought to be a shared instance.
+     * @param alleleCalls two allele indices per sample.
+     */
+    public static SampleGenotypes of(int recordIndex, int recordStart, List<String> sampleNames, byte[] alleleCalls) {
+        Objects.requireNonNull(sampleNames, "Sample names cannot be null");
+        Objects.requireNonNull(alleleCalls, "Allele calls cannot be null");
+        if (alleleCalls.length != sampleNames.size() * 2) {
+            throw new IllegalArgumentException(String.format("Expected %d allele calls for %d samples but got %d", sampleNames
+                    .size() * 2, sampleNames.size(), alleleCalls.length));
+        }
+        return new SampleGenotypes(recordIndex, recordStart, sampleNames, alleleCalls);
+    }
+
+    /**
+     * Creates the compact genotypes for the supplied {@link VariantContext}. This will decode the genotypes of the
+     * record if these have not already been decoded.
+     *
+     * @param variantContext the source record.
+     * @param recordIndex    ordinal of the record in the source VCF file, or -1 if not known.
+     * @param sampleNames    names of the samples in the same order as the genotypes of the record. This ought to be
+     *                       a shared instance.
+     */
+    public static SampleGenotypes of(VariantContext variantContext, int recordIndex, List<String> sampleNames) {
+        GenotypesContext genotypes = variantContext.getGenotypes();
+        if (genotypes.size() != sampleNames.size()) {
+            throw new IllegalArgumentException(String.format("Expected %d sample names but got %d for record %s", genotypes
+                    .size(), sampleNames.size(), variantContext.toStringWithoutGenotypes()));
+        }
+        byte[] alleleCalls = new byte[sampleNames.size() * 2];
+        for (int sampleId = 0; sampleId < sampleNames.size(); sampleId++) {
+            List<Allele> alleles = genotypes.get(sampleId).getAlleles();
+            int offset = sampleId * 2;
+            alleleCalls[offset] = alleles.isEmpty() ? NO_CALL : toAlleleCall(variantContext, alleles.get(0));
+            alleleCalls[offset + 1] = alleles.size() < 2 ? NOT_PRESENT : toAlleleCall(variantContext, alleles.get(1));
+        }
+        return new SampleGenotypes(recordIndex, variantContext.getStart(), sampleNames, alleleCalls);
+    }
+
+    /**
+     * Convenience method for when the record does not come from a VCF file, or a shared list of sample names is
+     * not available. The samples will be in the same order as the genotypes of the record.
+     */
+    public static SampleGenotypes of(VariantContext variantContext) {
+        List<String> sampleNames = new ArrayList<>(variantContext.getNSamples());
+        for (Genotype genotype : variantContext.getGenotypes()) {
+            sampleNames.add(genotype.getSampleName());
+        }
+        return of(variantContext, -1, sampleNames);
+    }
+
+    private static byte toAlleleCall(VariantContext variantContext, Allele allele) {
+        if (allele.isNoCall()) {
+            return NO_CALL;
+        }
+        int alleleIndex = variantContext.getAlleleIndex(allele);
+        if (alleleIndex < 0) {
+            return NO_CALL;
+        }
+        if (alleleIndex > MAX_ALLELE_INDEX) {
+            throw new IllegalArgumentException(String.format("Allele index %d exceeds the maximum of %d supported for record %s", alleleIndex, MAX_ALLELE_INDEX, variantContext
+                    .toStringWithoutGenotypes()));
+        }
+        return (byte) alleleIndex;
+    }
+
+    public int getRecordIndex() {
+        return recordIndex;
+    }
+
+    public boolean hasRecordIndex() {
+        return recordIndex >= 0;
+    }
+
+    public int getRecordStart() {
+        return recordStart;
+    }
+
+    public List<String> getSampleNames() {
+        return sampleNames;
+    }
+
+    public int getNumberOfSamples() {
+        return sampleNames.size();
+    }
+
+    /**
+     * @return 1 or 2 depending on the number of allele slots used for the sample.
+     */
+    public int getPloidy(int sampleId) {
+        return alleleCalls[sampleId * 2 + 1] == NOT_PRESENT ? 1 : 2;
+    }
+
+    /**
+     * @return the allele index called in the slot (0 or 1) for the sample, or {@link #NO_CALL}/{@link #NOT_PRESENT}.
+     */
+    public int getAlleleCall(int sampleId, int slot) {
+        return alleleCalls[sampleId * 2 + slot];
+    }
+
+    public boolean isNoCall(int sampleId) {
+        int offset = sampleId * 2;
+        return alleleCalls[offset] == NO_CALL || alleleCalls[offset + 1] == NO_CALL;
+    }
+
+    /**
+     * Matches the behaviour of the htsjdk {@link Genotype#isHet()} i.e. the sample has two different called alleles.
+     */
+    public boolean isHet(int sampleId) {
+        int offset = sampleId * 2;
+        byte first = alleleCalls[offset];
+        byte second = alleleCalls[offset + 1];
+        return first >= 0 && second >= 0 && first != second;
+    }
+
+    /**
+     * Matches the behaviour of the htsjdk {@link Genotype#isHomVar()} i.e. all the called alleles are the same
+     * non-reference allele.
+     */
+    public boolean isHomVar(int sampleId) {
+        int offset = sampleId * 2;
+        byte first = alleleCalls[offset];
+        byte second = alleleCalls[offset + 1];
+        return first > 0 && (second == first || second == NOT_PRESENT);
+    }
+
+    public boolean isHomRef(int sampleId) {
+        int offset = sampleId * 2;
+        byte first = alleleCalls[offset];
+        byte second = alleleCalls[offset + 1];
+        return first == 0 && (second == 0 || second == NOT_PRESENT);
+    }
+
+    /**
+     * @param sampleId    index of the sample
+     * @param alleleIndex index of the allele in the source record, where 0 is the REF allele.
+     * @return true if the sample has a call for the allele in either slot.
+     */
+    public boolean sampleHasAllele(int sampleId, int alleleIndex) {
+        int offset = sampleId * 2;
+        return alleleCalls[offset] == alleleIndex || alleleCalls[offset + 1] == alleleIndex;
+    }
+
+    /**
+     * @return true if any of the samples has a call for the allele.
+     */
+    public boolean anySampleHasAllele(int alleleIndex) {
+        for (byte alleleCall : alleleCalls) {
+            if (alleleCall == alleleIndex) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Returns the genotypes of all samples relative to the given allele, where '1' is the given allele, '0' is any
+     * other allele and '.' is a no-call. e.g. 0/1:1/1:0/0
+     */
+    public String getGenotypeString(int alleleIndex) {
+        StringBuilder stringBuilder = new StringBuilder();
+        for (int sampleId = 0; sampleId < sampleNames.size(); sampleId++) {
+            if (sampleId > 0) {
+                stringBuilder.append(':');
+            }
+            char first = toGenotypeChar(alleleCalls[sampleId * 2], alleleIndex);
+            if (getPloidy(sampleId) == 1) {
+                stringBuilder.append(first);
+                continue;
+            }
+            char second = toGenotypeChar(alleleCalls[sampleId * 2 + 1], alleleIndex);
+            //normalise 1/0 to 0/1
+            if (first == '1' && second == '0') {
+                stringBuilder.append("0/1");
+            } else {
+                stringBuilder.append(first).append('/').append(second);
+            }
+        }
+        return stringBuilder.toString();
+    }
+
+    private char toGenotypeChar(byte alleleCall, int alleleIndex) {
+        if (alleleCall == NO_CALL) {
+            return '.';
+        }
+        return alleleCall == alleleIndex ? '1' : '0';
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        SampleGenotypes that = (SampleGenotypes) o;
+        return recordIndex == that.recordIndex &&
+                recordStart == that.recordStart &&
+                Objects.equals(sampleNames, that.sampleNames) &&
+                Arrays.equals(alleleCalls, that.alleleCalls);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(recordIndex, recordStart, sampleNames, Arrays.hashCode(alleleCalls));
+    }
+
+    @Override
+    public String toString() {
+        return "SampleGenotypes{" +
+                "recordIndex=" + recordIndex +
+                ", recordStart=" + recordStart +
+                ", sampleNames=" + sampleNames +
+                ", genotypes=" + getGenotypeString(1) +
+                '}';
+    }
+}
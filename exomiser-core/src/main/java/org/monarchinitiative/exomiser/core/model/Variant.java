@@ -84,6 +84,8 @@ default boolean isNonCodingVariant() {
 
     boolean isYChromosomal();
 
+    boolean isMitochondrial();
+
     boolean isOffExome();
 
     VariantEffect getVariantEffect();
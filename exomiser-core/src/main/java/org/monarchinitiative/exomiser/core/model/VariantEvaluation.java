@@ -21,10 +21,9 @@
 package org.monarchinitiative.exomiser.core.model;
 
 import com.fasterxml.jackson.annotation.JsonIgnore;
-import com.google.common.base.Joiner;
 import de.charite.compbio.jannovar.annotation.VariantEffect;
 import de.charite.compbio.jannovar.mendel.ModeOfInheritance;
-import htsjdk.variant.variantcontext.*;
+import htsjdk.variant.variantcontext.VariantContext;
 import org.monarchinitiative.exomiser.core.filters.FilterResult;
 import org.monarchinitiative.exomiser.core.filters.FilterType;
 import org.monarchinitiative.exomiser.core.model.frequency.FrequencyData;
@@ -50,11 +49,14 @@ public class VariantEvaluation implements Comparable<VariantEvaluation>, Filtera
     //threshold over which a variant effect score is considered pathogenic
     private static final float DEFAULT_PATHOGENICITY_THRESHOLD = 0.5f;
 
-    // HTSJDK {@link VariantContext} instance of this allele
+    // compact genotypes of the source VCF record - this is shared by all the alleles of the record
     @JsonIgnore
-    private final VariantContext variantContext;
+    private final SampleGenotypes sampleGenotypes;
+    // state of the FILTER field of the source VCF record
+    @JsonIgnore
+    private final FilterStatus vcfFilterStatus;
 
-    // numeric index of the alternative allele in {@link #vc}.
+    // numeric index of the alternative allele in the source VCF record.
     private final int altAlleleId;
 
     //VariantCoordinates variables - these are a minimal requirement for describing a variant
@@ -104,7 +106,8 @@ private VariantEvaluation(Builder builder) {
         geneSymbol = builder.geneSymbol;
         entrezGeneId = builder.entrezGeneId;
 
-        variantContext = builder.variantContext;
+        sampleGenotypes = builder.sampleGenotypes;
+        vcfFilterStatus = builder.vcfFilterStatus;
         altAlleleId = builder.altAlleleId;
 
         passedFilterTypes = EnumSet.copyOf(builder.passedFilterTypes);
@@ -156,8 +159,20 @@ public String getAlt() {
         return alt;
     }
 
-    public VariantContext getVariantContext() {
-        return variantContext;
+    /**
+     * @return the genotypes of all the samples in the source VCF record. Note that these are the calls for the whole
+     * record, so for multi-allelic sites the allele index of this variant is {@link #getAltAlleleId()} + 1.
+     */
+    public SampleGenotypes getSampleGenotypes() {
+        return sampleGenotypes;
+    }
+
+    /**
+     * @return {@link FilterStatus#PASSED} or {@link FilterStatus#FAILED} according to the FILTER field of the source
+     * VCF record, or {@link FilterStatus#UNFILTERED} if no filters were applied.
+     */
+    public FilterStatus getVcfFilterStatus() {
+        return vcfFilterStatus;
     }
 
     public int getAltAlleleId() {
@@ -217,6 +232,11 @@ public boolean isYChromosomal() {
         return chr == 24;
     }
 
+    @Override
+    public boolean isMitochondrial() {
+        return chr == 25;
+    }
+
     /**
      * @return true if the variant belongs to a class that is non-exonic and
      * non-splicing.
@@ -261,36 +281,7 @@ public String getHgvsGenome() {
     }
 
     public String getGenotypeString() {
-        // collect genotype string list
-        List<String> gtStrings = new ArrayList<>();
-        for (Genotype gt : variantContext.getGenotypes()) {
-            boolean firstAllele = true;
-            StringBuilder builder = new StringBuilder();
-            for (Allele allele : gt.getAlleles()) {
-                if (firstAllele) {
-                    firstAllele = false;
-                } else {
-                    builder.append('/');
-                }
-
-                if (allele.isNoCall()) {
-                    builder.append('.');
-                } else if (allele.equals(variantContext.getAlternateAllele(altAlleleId))) {
-                    builder.append('1');
-                } else {
-                    builder.append('0');
-                }
-            }
-            gtStrings.add(builder.toString());
-        }
-
-        // normalize 1/0 to 0/1 and join genotype strings with colon
-        for (int i = 0; i < gtStrings.size(); ++i) {
-            if (gtStrings.get(i).equals("1/0")) {
-                gtStrings.set(i, "0/1");
-            }
-        }
-        return Joiner.on(":").join(gtStrings);
+        return sampleGenotypes.getGenotypeString(altAlleleId + 1);
     }
 
     /**
@@ -603,6 +594,30 @@ public String toString() {
                 + " compatibleWith=" + inheritanceModes + "}";
     }
 
+    /**
+     * Copies the coordinates, genotypes and annotations of this variant, but none of the filter results, frequency,
+     * pathogenicity or inheritance mode data. This allows a variant which has been annotated once to be analysed
+     * independently for more than one proband.
+     *
+     * @return a new unfiltered VariantEvaluation of the same allele.
+     */
+    public VariantEvaluation unfilteredCopy() {
+        Builder builder = new Builder(chr, pos, ref, alt)
+                .chromosomeName(chromosomeName)
+                .sampleGenotypes(sampleGenotypes)
+                .vcfFilterStatus(vcfFilterStatus)
+                .altAlleleId(altAlleleId)
+                .quality(phredScore)
+                .numIndividuals(numIndividuals)
+                .isOffExome(isOffExome)
+                .variantEffect(variantEffect)
+                .annotations(annotations)
+                .geneId(entrezGeneId);
+        //the symbol has already been split by the builder
+        builder.geneSymbol = geneSymbol;
+        return builder.build();
+    }
+
     public static Builder builder(int chr, int pos, String ref, String alt) {
         return new Builder(chr, pos, ref, alt);
     }
@@ -612,6 +627,8 @@ public static Builder builder(int chr, int pos, String ref, String alt) {
      */
     public static class Builder {
 
+        private static final List<String> DEFAULT_SAMPLE_NAMES = Collections.singletonList("sample");
+
         private int chr;
         private String chromosomeName;
         private int pos;
@@ -627,7 +644,8 @@ public static class Builder {
         private String geneSymbol = ".";
         private int entrezGeneId = GeneIdentifier.NULL_ENTREZ_ID;
 
-        private VariantContext variantContext;
+        private SampleGenotypes sampleGenotypes;
+        private FilterStatus vcfFilterStatus = FilterStatus.UNFILTERED;
         private int altAlleleId;
 
         private PathogenicityData pathogenicityData = PathogenicityData.empty();
@@ -679,8 +697,23 @@ private String buildChromosomeName(int chr) {
             }
         }
 
+        /**
+         * Convenience method which sets the {@link SampleGenotypes} and VCF filter status from the
+         * {@link VariantContext}. The {@link VariantContext} itself is not retained.
+         */
         public Builder variantContext(VariantContext variantContext) {
-            this.variantContext = variantContext;
+            this.sampleGenotypes = SampleGenotypes.of(variantContext);
+            this.vcfFilterStatus = vcfFilterStatusOf(variantContext);
+            return this;
+        }
+
+        public Builder sampleGenotypes(SampleGenotypes sampleGenotypes) {
+            this.sampleGenotypes = sampleGenotypes;
+            return this;
+        }
+
+        public Builder vcfFilterStatus(FilterStatus vcfFilterStatus) {
+            this.vcfFilterStatus = vcfFilterStatus;
             return this;
         }
 
@@ -760,34 +793,25 @@ public VariantEvaluation build() {
                 chromosomeName = buildChromosomeName(chr);
             }
 
-            if (variantContext == null) {
-                variantContext = buildVariantContext(chr, pos, ref, alt, phredScore);
+            if (sampleGenotypes == null) {
+                sampleGenotypes = buildSampleGenotypes(pos, altAlleleId);
             }
             return new VariantEvaluation(this);
         }
 
         /**
-         * @return a generic one-based position variant context with a heterozygous genotype having no attributes.
+         * @return genotypes for a single sample heterozygous for this allele.
          */
-        private VariantContext buildVariantContext(int chr, int pos, String ref, String alt, double qual) {
-            Allele refAllele = Allele.create(ref, true);
-            Allele altAllele = Allele.create(alt);
-            List<Allele> alleles = Arrays.asList(refAllele, altAllele);
-
-            VariantContextBuilder vcBuilder = new VariantContextBuilder();
-
-            // build Genotype
-            GenotypeBuilder gtBuilder = new GenotypeBuilder("sample").noAttributes();
-            //default to HETEROZYGOUS
-            gtBuilder.alleles(alleles);
-
-            // build VariantContext
-            vcBuilder.loc("chr" + chr, pos, pos - 1L + ref.length());
-            vcBuilder.alleles(alleles);
-            vcBuilder.genotypes(gtBuilder.make());
-            vcBuilder.log10PError(-0.1 * qual);
+        private SampleGenotypes buildSampleGenotypes(int pos, int altAlleleId) {
+            byte[] alleleCalls = {0, (byte) (altAlleleId + 1)};
+            return SampleGenotypes.of(-1, pos, DEFAULT_SAMPLE_NAMES, alleleCalls);
+        }
 
-            return vcBuilder.make();
+        private static FilterStatus vcfFilterStatusOf(VariantContext variantContext) {
+            if (variantContext.filtersWereApplied()) {
+                return variantContext.isNotFiltered() ? FilterStatus.PASSED : FilterStatus.FAILED;
+            }
+            return FilterStatus.UNFILTERED;
         }
 
     }
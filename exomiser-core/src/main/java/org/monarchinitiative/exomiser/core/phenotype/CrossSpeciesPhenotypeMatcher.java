@@ -26,8 +26,6 @@
 import org.slf4j.LoggerFactory;
 
 import java.util.*;
-import java.util.function.Function;
-import java.util.stream.Stream;
 
 import static java.util.Comparator.comparingDouble;
 import static java.util.stream.Collectors.*;
@@ -48,10 +46,18 @@ public class CrossSpeciesPhenotypeMatcher implements PhenotypeMatcher {
 
     private final QueryPhenotypeMatch queryPhenotypeMatch;
 
-    private final Set<String> matchedOrganismPhenotypeIds;
-    private final Set<String> matchedQueryPhenotypeIds;
+    //The PhenotypeMatches are indexed for scoring the models. The query and matched organism phenotype ids are
+    //interned to dense ints, ordered by id, and the matches stored as a sparse matrix in compressed row format with a
+    //row for each matched organism phenotype. A row holds the matches to each query phenotype in query index order.
+    private final int numQueryPhenotypes;
+    private final Map<String, Integer> matchPhenotypeIndex;
+    private final int[] rowOffsets;
+    private final int[] queryIndices;
+    private final double[] scores;
+    private final PhenotypeMatch[] matches;
 
-    private final Map<String, PhenotypeMatch> mappedTerms;
+    //re-used by matchPhenotypeIdScores so that scoring a model allocates no arrays
+    private final ThreadLocal<double[]> bestForwardScoresBuffer;
 
     /**
      * @param organism - The organism for which these PhenotypeMatches are associated.
@@ -64,17 +70,48 @@ public CrossSpeciesPhenotypeMatcher(Organism organism, Map<PhenotypeTerm, Set<Ph
 
         this.queryPhenotypeMatch = new QueryPhenotypeMatch(this.organism, this.termPhenotypeMatches);
 
-        this.matchedOrganismPhenotypeIds = queryTermPhenotypeMatches
-                .values().stream()
-                .flatMap(set -> set.stream().map(PhenotypeMatch::getMatchPhenotypeId))
-                .collect(collectingAndThen(toCollection(TreeSet::new), Collections::unmodifiableSet));
+        Map<String, List<PhenotypeMatch>> matchesByQueryId = termPhenotypeMatches.values().stream()
+                .flatMap(Collection::stream)
+                .collect(groupingBy(PhenotypeMatch::getQueryPhenotypeId, TreeMap::new, toList()));
+        this.numQueryPhenotypes = matchesByQueryId.size();
+
+        //'mpId' : [phenotypeMatch] in hpId order
+        Map<String, List<PhenotypeMatch>> matchesByMatchId = new TreeMap<>();
+        int numMatches = 0;
+        for (List<PhenotypeMatch> queryMatches : matchesByQueryId.values()) {
+            for (PhenotypeMatch match : queryMatches) {
+                matchesByMatchId.computeIfAbsent(match.getMatchPhenotypeId(), key -> new ArrayList<>()).add(match);
+                numMatches++;
+            }
+        }
 
-        this.matchedQueryPhenotypeIds = queryTermPhenotypeMatches
-                .keySet().stream()
-                .map(PhenotypeTerm::getId)
-                .collect(collectingAndThen(toCollection(TreeSet::new), Collections::unmodifiableSet));
+        Map<String, Integer> queryPhenotypeIndex = indexKeys(matchesByQueryId);
+        this.matchPhenotypeIndex = indexKeys(matchesByMatchId);
+        this.rowOffsets = new int[matchesByMatchId.size() + 1];
+        this.queryIndices = new int[numMatches];
+        this.scores = new double[numMatches];
+        this.matches = new PhenotypeMatch[numMatches];
+        int row = 0;
+        int entry = 0;
+        for (List<PhenotypeMatch> rowMatches : matchesByMatchId.values()) {
+            rowOffsets[row++] = entry;
+            for (PhenotypeMatch match : rowMatches) {
+                queryIndices[entry] = queryPhenotypeIndex.get(match.getQueryPhenotypeId());
+                scores[entry] = match.getScore();
+                matches[entry] = match;
+                entry++;
+            }
+        }
+        rowOffsets[row] = entry;
+        this.bestForwardScoresBuffer = ThreadLocal.withInitial(() -> new double[numQueryPhenotypes]);
+    }
 
-        this.mappedTerms = getCompoundKeyIndexedPhenotypeMatches();
+    private static Map<String, Integer> indexKeys(Map<String, ?> sortedMap) {
+        Map<String, Integer> index = new HashMap<>();
+        for (String key : sortedMap.keySet()) {
+            index.put(key, index.size());
+        }
+        return Collections.unmodifiableMap(index);
     }
 
     @Override
@@ -92,19 +129,6 @@ public Map<PhenotypeTerm, Set<PhenotypeMatch>> getTermPhenotypeMatches() {
         return termPhenotypeMatches;
     }
 
-    private Map<String, PhenotypeMatch> getCompoundKeyIndexedPhenotypeMatches() {
-        //'hpId + mpId' : phenotypeMatch
-        return termPhenotypeMatches.values().stream()
-                .flatMap(Collection::stream)
-                .collect(collectingAndThen(
-                        toMap(makeKey(), Function.identity()),
-                        Collections::unmodifiableMap));
-    }
-
-    private Function<PhenotypeMatch, String> makeKey() {
-        return match -> String.join("", match.getQueryPhenotypeId() + match.getMatchPhenotypeId());
-    }
-
     /**
      * Calculates the best forward and reverse matches for a given set of model phenotypes against the sub-graph of matches
      * for the query phenotypes against this organism. The best forward and reverse matches are not necessarily the same.
@@ -113,77 +137,111 @@ private Function<PhenotypeMatch, String> makeKey() {
      */
     @Override
     public PhenodigmMatchRawScore matchPhenotypeIds(List<String> modelPhenotypes) {
-        List<String> matchedModelPhenotypeIds = getMatchingPhenotypes(modelPhenotypes);
-
-        //hpId
-        Set<String> hpIdsWithPhenotypeMatch = new TreeSet<>();
-        for (PhenotypeMatch match : getBestPhenotypeMatches()) {
-            hpIdsWithPhenotypeMatch.add(match.getQueryPhenotypeId());
+        ImmutableList.Builder<String> matchedModelPhenotypeIds = ImmutableList.builder();
+
+        //forward hits - the best match for each query phenotype
+        double[] bestForwardScores = new double[numQueryPhenotypes];
+        PhenotypeMatch[] bestForwardMatches = new PhenotypeMatch[numQueryPhenotypes];
+        for (String mpId : modelPhenotypes) {
+            Integer row = matchPhenotypeIndex.get(mpId);
+            if (row != null) {
+                matchedModelPhenotypeIds.add(mpId);
+                for (int i = rowOffsets[row]; i < rowOffsets[row + 1]; i++) {
+                    int queryIndex = queryIndices[i];
+                    if (scores[i] > bestForwardScores[queryIndex]) {
+                        bestForwardScores[queryIndex] = scores[i];
+                        bestForwardMatches[queryIndex] = matches[i];
+                    }
+                }
+            }
         }
 
         double maxModelMatchScore = 0;
         double sumModelBestMatchScores = 0;
-
-        final Map<PhenotypeTerm, PhenotypeMatch> bestPhenotypeMatchForTerms = new LinkedHashMap<>();
-        for (String hpId : hpIdsWithPhenotypeMatch) {
-            double bestMatchScore = 0;
-            for (String mpId : matchedModelPhenotypeIds) {
-                String matchIds = hpId + mpId;
-                if (mappedTerms.containsKey(matchIds)) {
-                    PhenotypeMatch match = mappedTerms.get(matchIds);
-                    double matchScore = match.getScore();
-                    // identify best match
-                    bestMatchScore = Math.max(matchScore, bestMatchScore);
-                    if (matchScore > 0) {
-                        addMatchIfAbsentOrBetterThanCurrent(match, bestPhenotypeMatchForTerms);
-                    }
-                }
-            }
+        ImmutableList.Builder<PhenotypeMatch> bestPhenotypeMatchForTerms = ImmutableList.builder();
+        for (int queryIndex = 0; queryIndex < numQueryPhenotypes; queryIndex++) {
+            double bestMatchScore = bestForwardScores[queryIndex];
             if (bestMatchScore > 0) {
                 sumModelBestMatchScores += bestMatchScore;
                 maxModelMatchScore = Math.max(bestMatchScore, maxModelMatchScore);
+                bestPhenotypeMatchForTerms.add(bestForwardMatches[queryIndex]);
             }
         }
-        // Reciprocal hits
-        for (String mpId : matchedModelPhenotypeIds) {
-            double bestMatchScore = 0;
-            for (String hpId : hpIdsWithPhenotypeMatch) {
-                String matchIds = hpId + mpId;
-                if (mappedTerms.containsKey(matchIds)) {
-                    PhenotypeMatch match = mappedTerms.get(matchIds);
-                    double matchScore = match.getScore();
-                    // identify best match
-                    bestMatchScore = Math.max(matchScore, bestMatchScore);
-                    if (matchScore > 0) {
-                        addMatchIfAbsentOrBetterThanCurrent(match, bestPhenotypeMatchForTerms);
+
+        // Reciprocal hits - the best match for each model phenotype. These can't improve on the forward matches for a
+        // query term, so only contribute to the scores.
+        for (String mpId : modelPhenotypes) {
+            Integer row = matchPhenotypeIndex.get(mpId);
+            if (row != null) {
+                double bestMatchScore = 0;
+                for (int i = rowOffsets[row]; i < rowOffsets[row + 1]; i++) {
+                    bestMatchScore = Math.max(scores[i], bestMatchScore);
+                }
+                if (bestMatchScore > 0) {
+                    sumModelBestMatchScores += bestMatchScore;
+                    maxModelMatchScore = Math.max(bestMatchScore, maxModelMatchScore);
+                }
+            }
+        }
+
+        return new PhenodigmMatchRawScore(maxModelMatchScore, sumModelBestMatchScores, matchedModelPhenotypeIds.build(), bestPhenotypeMatchForTerms
+                .build());
+    }
+
+    /**
+     * Calculates the same scores as {@link #matchPhenotypeIds(List)} for the model phenotypes, but without collecting
+     * the matched phenotypes or best matches. This is much cheaper for the large number of models which will not
+     * be amongst the best matches.
+     *
+     * @param modelPhenotypes
+     * @return a {@link PhenodigmMatchRawScore} with the scores and number of matching phenotypes only.
+     */
+    @Override
+    public PhenodigmMatchRawScore matchPhenotypeIdScores(List<String> modelPhenotypes) {
+        double[] bestForwardScores = bestForwardScoresBuffer.get();
+        Arrays.fill(bestForwardScores, 0);
+
+        //forward hits - the best match for each query phenotype
+        int numMatchedModelPhenotypes = 0;
+        for (String mpId : modelPhenotypes) {
+            Integer row = matchPhenotypeIndex.get(mpId);
+            if (row != null) {
+                numMatchedModelPhenotypes++;
+                for (int i = rowOffsets[row]; i < rowOffsets[row + 1]; i++) {
+                    int queryIndex = queryIndices[i];
+                    if (scores[i] > bestForwardScores[queryIndex]) {
+                        bestForwardScores[queryIndex] = scores[i];
                     }
                 }
             }
+        }
+
+        //the scores are summed in the same order as matchPhenotypeIds so that the results are identical
+        double maxModelMatchScore = 0;
+        double sumModelBestMatchScores = 0;
+        for (double bestMatchScore : bestForwardScores) {
             if (bestMatchScore > 0) {
                 sumModelBestMatchScores += bestMatchScore;
                 maxModelMatchScore = Math.max(bestMatchScore, maxModelMatchScore);
             }
         }
 
-        return new PhenodigmMatchRawScore(maxModelMatchScore, sumModelBestMatchScores, matchedModelPhenotypeIds, ImmutableList
-                .copyOf(bestPhenotypeMatchForTerms.values()));
-    }
-
-    private void addMatchIfAbsentOrBetterThanCurrent(PhenotypeMatch match, Map<PhenotypeTerm, PhenotypeMatch> bestPhenotypeMatchForTerms) {
-        PhenotypeTerm matchQueryTerm = match.getQueryPhenotype();
-        if (!bestPhenotypeMatchForTerms.containsKey(matchQueryTerm) || bestPhenotypeMatchForTerms.get(matchQueryTerm).getScore() < match.getScore()) {
-            bestPhenotypeMatchForTerms.put(matchQueryTerm, match);
-        }
-    }
-
-    private List<String> getMatchingPhenotypes(List<String> phenotypeIds) {
-        ImmutableList.Builder<String> matchedPhenotypes = ImmutableList.builder();
-        for (String phenotypeId : phenotypeIds) {
-            if (matchedOrganismPhenotypeIds.contains(phenotypeId)) {
-                matchedPhenotypes.add(phenotypeId);
+        // Reciprocal hits - the best match for each model phenotype
+        for (String mpId : modelPhenotypes) {
+            Integer row = matchPhenotypeIndex.get(mpId);
+            if (row != null) {
+                double bestMatchScore = 0;
+                for (int i = rowOffsets[row]; i < rowOffsets[row + 1]; i++) {
+                    bestMatchScore = Math.max(scores[i], bestMatchScore);
+                }
+                if (bestMatchScore > 0) {
+                    sumModelBestMatchScores += bestMatchScore;
+                    maxModelMatchScore = Math.max(bestMatchScore, maxModelMatchScore);
+                }
             }
         }
-        return matchedPhenotypes.build();
+
+        return new PhenodigmMatchRawScore(maxModelMatchScore, sumModelBestMatchScores, numMatchedModelPhenotypes);
     }
 
     /**
@@ -192,37 +250,33 @@ private List<String> getMatchingPhenotypes(List<String> phenotypeIds) {
      * @return
      */
      List<PhenotypeMatch> calculateBestForwardAndReciprocalMatches(List<String> modelPhenotypes) {
-        List<String> matchedModelPhenotypeIds = modelPhenotypes.stream()
-                .filter(matchedOrganismPhenotypeIds::contains)
-                .collect(toList());
-
-        //loop - 191, 206, 211, 293, 260, 221, 229, 247, 203, 204. (226 ms)
-        //stream - 1208, 773, 1231, 799, 655, 566, 467, 1037, 792, 722. (825 ms)
-        //This takes ~0.7 secs compared to ~0.2 secs using the original loop implementation, although it is now returning
-        //the values. Can it be made faster? Do we care?
-        List<PhenotypeMatch> forwardMatches = matchedQueryPhenotypeIds.stream()
-                .map(hp -> matchedModelPhenotypeIds.stream()
-                        .map(mp -> String.join("", hp, mp))
-                        .map(mappedTerms::get)
-                        .filter(Objects::nonNull)
-                        .max(comparingDouble(PhenotypeMatch::getScore)))
-                .filter(Optional::isPresent)
-                .map(Optional::get)
-                .collect(toList());
-
-        //CAUTION!!! This looks very similar to the forward match statement but there are several important differences...
-        List<PhenotypeMatch> reciprocalMatches = matchedModelPhenotypeIds.stream()
-                .map(mp -> matchedQueryPhenotypeIds.stream()
-                        .map(hp -> String.join("", hp, mp))
-                        .map(mappedTerms::get)
-                        .filter(Objects::nonNull)
-                        .max(comparingDouble(PhenotypeMatch::getScore)))
-                .filter(Optional::isPresent)
-                .map(Optional::get)
-                .collect(toList());
+        PhenotypeMatch[] forwardMatches = new PhenotypeMatch[numQueryPhenotypes];
+        List<PhenotypeMatch> reciprocalMatches = new ArrayList<>();
+        for (String mpId : modelPhenotypes) {
+            Integer row = matchPhenotypeIndex.get(mpId);
+            if (row == null) {
+                continue;
+            }
+            PhenotypeMatch bestReciprocalMatch = null;
+            for (int i = rowOffsets[row]; i < rowOffsets[row + 1]; i++) {
+                int queryIndex = queryIndices[i];
+                if (forwardMatches[queryIndex] == null || scores[i] > forwardMatches[queryIndex].getScore()) {
+                    forwardMatches[queryIndex] = matches[i];
+                }
+                if (bestReciprocalMatch == null || scores[i] > bestReciprocalMatch.getScore()) {
+                    bestReciprocalMatch = matches[i];
+                }
+            }
+            reciprocalMatches.add(bestReciprocalMatch);
+        }
 
-         return Stream.concat(forwardMatches.stream(), reciprocalMatches.stream())
-                 .collect(ImmutableList.toImmutableList());
+        ImmutableList.Builder<PhenotypeMatch> bestForwardAndReciprocalMatches = ImmutableList.builder();
+        for (PhenotypeMatch forwardMatch : forwardMatches) {
+            if (forwardMatch != null) {
+                bestForwardAndReciprocalMatches.add(forwardMatch);
+            }
+        }
+        return bestForwardAndReciprocalMatches.addAll(reciprocalMatches).build();
     }
 
     /**
@@ -28,4 +28,12 @@ public interface ModelScorer {
 
     ModelPhenotypeMatch scoreModel(Model model);
 
+    /**
+     * Calculates only the score of the model, without the phenotype matches which explain it. This returns the same
+     * value as {@code scoreModel(model).getScore()}, but implementations may be able to calculate it more cheaply.
+     */
+    default double calculateScore(Model model) {
+        return scoreModel(model).getScore();
+    }
+
 }
@@ -20,6 +20,7 @@
 
 package org.monarchinitiative.exomiser.core.phenotype;
 
+import java.util.Collections;
 import java.util.List;
 import java.util.Objects;
 
@@ -33,16 +34,29 @@ public class PhenodigmMatchRawScore {
 
     private double maxModelMatchScore;
     private double sumModelBestMatchScores;
+    private int numMatchingPhenotypes;
     private List<String> matchingPhenotypes;
     private List<PhenotypeMatch> bestPhenotypeMatches;
 
     PhenodigmMatchRawScore(double maxModelMatchScore, double sumModelBestMatchScores, List<String> matchingPhenotypes, List<PhenotypeMatch> bestPhenotypeMatches) {
         this.maxModelMatchScore = maxModelMatchScore;
         this.sumModelBestMatchScores = sumModelBestMatchScores;
+        this.numMatchingPhenotypes = matchingPhenotypes.size();
         this.matchingPhenotypes = matchingPhenotypes;
         this.bestPhenotypeMatches = bestPhenotypeMatches;
     }
 
+    /**
+     * Score only version, without the matching phenotypes or best phenotype matches.
+     */
+    PhenodigmMatchRawScore(double maxModelMatchScore, double sumModelBestMatchScores, int numMatchingPhenotypes) {
+        this.maxModelMatchScore = maxModelMatchScore;
+        this.sumModelBestMatchScores = sumModelBestMatchScores;
+        this.numMatchingPhenotypes = numMatchingPhenotypes;
+        this.matchingPhenotypes = Collections.emptyList();
+        this.bestPhenotypeMatches = Collections.emptyList();
+    }
+
     double getMaxModelMatchScore() {
         return maxModelMatchScore;
     }
@@ -51,6 +65,10 @@ public class PhenodigmMatchRawScore {
         return sumModelBestMatchScores;
     }
 
+    int getNumMatchingPhenotypes() {
+        return numMatchingPhenotypes;
+    }
+
     List<String> getMatchingPhenotypes() {
         return matchingPhenotypes;
     }
@@ -66,13 +84,14 @@ public boolean equals(Object o) {
         PhenodigmMatchRawScore that = (PhenodigmMatchRawScore) o;
         return Double.compare(that.maxModelMatchScore, maxModelMatchScore) == 0 &&
                 Double.compare(that.sumModelBestMatchScores, sumModelBestMatchScores) == 0 &&
+                numMatchingPhenotypes == that.numMatchingPhenotypes &&
                 Objects.equals(matchingPhenotypes, that.matchingPhenotypes) &&
                 Objects.equals(bestPhenotypeMatches, that.bestPhenotypeMatches);
     }
 
     @Override
     public int hashCode() {
-        return Objects.hash(maxModelMatchScore, sumModelBestMatchScores, matchingPhenotypes, bestPhenotypeMatches);
+        return Objects.hash(maxModelMatchScore, sumModelBestMatchScores, numMatchingPhenotypes, matchingPhenotypes, bestPhenotypeMatches);
     }
 
     @Override
@@ -80,6 +99,7 @@ public String toString() {
         return "PhenodigmMatchRawScore{" +
                 "maxModelMatchScore=" + maxModelMatchScore +
                 ", sumModelBestMatchScores=" + sumModelBestMatchScores +
+                ", numMatchingPhenotypes=" + numMatchingPhenotypes +
                 ", matchingPhenotypes=" + matchingPhenotypes +
                 ", bestPhenotypeMatches=" + bestPhenotypeMatches +
                 '}';
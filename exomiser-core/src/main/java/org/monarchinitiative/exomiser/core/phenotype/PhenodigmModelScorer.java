@@ -136,10 +136,16 @@ public ModelPhenotypeMatch scoreModel(Model model) {
         return ModelPhenotypeMatch.of(score, model, rawModelScore.getBestPhenotypeMatches());
     }
 
+    @Override
+    public double calculateScore(Model model) {
+        PhenodigmMatchRawScore rawModelScore = organismPhenotypeMatcher.matchPhenotypeIdScores(model.getPhenotypeIds());
+        return calculateCombinedScore(rawModelScore);
+    }
+
     private double calculateCombinedScore(PhenodigmMatchRawScore rawModelScore) {
         double maxModelMatchScore = rawModelScore.getMaxModelMatchScore();
         double sumModelBestMatchScores = rawModelScore.getSumModelBestMatchScores();
-        int numMatchingPhenotypesForModel = rawModelScore.getMatchingPhenotypes().size();
+        int numMatchingPhenotypesForModel = rawModelScore.getNumMatchingPhenotypes();
 
         /*
          * hpIdsWithPhenotypeMatch.size() = no. of HPO disease annotations for human and the no. of annotations with an entry in hp_*_mappings table for other species
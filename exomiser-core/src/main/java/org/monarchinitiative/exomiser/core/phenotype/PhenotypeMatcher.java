@@ -31,6 +31,14 @@ public interface PhenotypeMatcher {
 
     PhenodigmMatchRawScore matchPhenotypeIds(List<String> phenotypeIds);
 
+    /**
+     * Calculates the same scores as {@link #matchPhenotypeIds(List)} without recording which phenotypes matched, for
+     * use when only the score of a model is required.
+     */
+    default PhenodigmMatchRawScore matchPhenotypeIdScores(List<String> phenotypeIds) {
+        return matchPhenotypeIds(phenotypeIds);
+    }
+
     Organism getOrganism();
 
     List<PhenotypeTerm> getQueryTerms();
@@ -30,6 +30,7 @@
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Repository;
 
 import javax.sql.DataSource;
@@ -50,10 +51,20 @@ public class MousePhenotypeOntologyDao implements OntologyDao {
     private static final Logger logger = LoggerFactory.getLogger(MousePhenotypeOntologyDao.class);
 
     private final DataSource dataSource;
+    private final PhenotypeMatchIndexLoader phenotypeMatchIndexLoader;
 
     @Autowired
     public MousePhenotypeOntologyDao(DataSource dataSource) {
         this.dataSource = dataSource;
+        this.phenotypeMatchIndexLoader = new PhenotypeMatchIndexLoader(dataSource, "hp_mp_mappings", "mp_id", "mp_term");
+    }
+
+    /**
+     * Sets whether the bulk-loaded HP-MP mappings are stored outside of the Java heap.
+     */
+    @Value("${exomiser.phenotype-mappings-off-heap:false}")
+    public void setPhenotypeMappingsOffHeap(boolean offHeap) {
+        phenotypeMatchIndexLoader.setOffHeap(offHeap);
     }
 
     @Override
@@ -72,22 +83,17 @@ public Set<PhenotypeTerm> getAllTerms() {
         return Collections.emptySet();
     }
 
+    /**
+     * Returns the pre-computed HP-MP matches for the HPO term. The whole of the mapping table is loaded into memory on
+     * the first call, so subsequent calls do not touch the database.
+     */
     @Override
     public Set<PhenotypeMatch> getPhenotypeMatchesForHpoTerm(PhenotypeTerm hpoTerm) {
-        String mappingQuery = "SELECT simj, ic, score, mp_id AS hit_id, mp_term AS hit_term, lcs_id, lcs_term FROM hp_mp_mappings WHERE hp_id = ?";
-
-        try (
-                Connection connection = dataSource.getConnection();
-                PreparedStatement ps = PreparedStatementSetter.prepareStatement(connection, mappingQuery, setter -> setter
-                        .setString(1, hpoTerm.getId()));
-                ResultSet rs = ps.executeQuery()) {
-
-            return OntologyDaoResultSetProcessor.processOntologyTermMatchResultSet(rs, hpoTerm);
-            
-        } catch (SQLException e) {
-            logger.error("Unable to execute query '{}' for HP-MP match terms", mappingQuery, e);
+        PhenotypeMatchIndex phenotypeMatchIndex = phenotypeMatchIndexLoader.getIndex();
+        if (phenotypeMatchIndex == null) {
+            return Collections.emptySet();
         }
-        return Collections.emptySet();
+        return phenotypeMatchIndex.getPhenotypeMatches(hpoTerm);
     }
 
 }
@@ -26,7 +26,6 @@
 package org.monarchinitiative.exomiser.core.phenotype.dao;
 
 import com.google.common.collect.ImmutableSet;
-import org.monarchinitiative.exomiser.core.phenotype.PhenotypeMatch;
 import org.monarchinitiative.exomiser.core.phenotype.PhenotypeTerm;
 
 import java.sql.ResultSet;
@@ -56,14 +55,16 @@ static Set<PhenotypeTerm> processOntologyTermsResultSet(ResultSet rs) throws SQL
         return termsCache.build();
     }
 
-    static Set<PhenotypeMatch> processOntologyTermMatchResultSet(ResultSet rs, PhenotypeTerm queryPhenotype) throws SQLException {
-        ImmutableSet.Builder<PhenotypeMatch> phenotypeMatches = ImmutableSet.builder();
+    static PhenotypeMatchIndex processOntologyTermMatchIndexResultSet(ResultSet rs, int expectedSize, boolean offHeap) throws SQLException {
+        PhenotypeMatchIndex.Builder phenotypeMatchIndex = PhenotypeMatchIndex.builder(expectedSize, offHeap);
         while (rs.next()) {
-            //simj, ic, score, hp_id_hit AS hit_id, hp_hit_term AS hit_term, lcs_id, lcs_term 
+            //hp_id, simj, ic, score, hit_id, hit_term, lcs_id, lcs_term
+            String queryId = rs.getString("hp_id");
+
             String matchId = rs.getString("hit_id");
             String matchTerm = rs.getString("hit_term");
             PhenotypeTerm matchPhenotype = PhenotypeTerm.of(matchId, matchTerm);
-            
+
             String lcsId = rs.getString("lcs_id");
             String lcsTerm = rs.getString("lcs_term");
             PhenotypeTerm lcsPhenotype = PhenotypeTerm.of(lcsId, lcsTerm);
@@ -71,17 +72,9 @@ static Set<PhenotypeMatch> processOntologyTermMatchResultSet(ResultSet rs, Pheno
             double ic = rs.getDouble("ic");
             double simj = rs.getDouble("simj");
             double score = rs.getDouble("score");
-            PhenotypeMatch match = PhenotypeMatch.builder()
-                    .query(queryPhenotype)
-                    .match(matchPhenotype)
-                    .lcs(lcsPhenotype)
-                    .simj(simj)
-                    .ic(ic)
-                    .score(score)
-                    .build();
-            phenotypeMatches.add(match);
+            phenotypeMatchIndex.add(queryId, matchPhenotype, lcsPhenotype, simj, ic, score);
         }
-        return phenotypeMatches.build();
+        return phenotypeMatchIndex.build();
     }
 
 }
@@ -0,0 +1,184 @@
+/*
+ * The Exomiser - A tool to annotate and prioritize genomic variants
+ *
+ * Copyright (c) 2016-2017 Queen Mary University of London.
+ * Copyright (c) 2012-2016 Charité Universitätsmedizin Berlin and Genome Research Ltd.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.monarchinitiative.exomiser.core.phenotype.dao;
+
+import com.google.common.collect.ImmutableSet;
+import org.monarchinitiative.exomiser.core.phenotype.PhenotypeMatch;
+import org.monarchinitiative.exomiser.core.phenotype.PhenotypeTerm;
+
+import java.nio.ByteBuffer;
+import java.util.*;
+
+/**
+ * Memory-resident index of the pre-computed phenotype matches of every HPO term to the terms of an organism's
+ * phenotype ontology. This replaces a database query per HPO term with a lookup of the term's slice of an adjacency
+ * list.
+ * <p>
+ * The matched and LCS terms are interned, so each match is stored as a fixed size record of the form:
+ * <pre>
+ * int matchTerm | int lcsTerm | double simJ | double ic | double score
+ * </pre>
+ * The records are grouped by query HPO id in a single {@link ByteBuffer}, which can be allocated outside of the heap
+ * for the larger mapping tables.
+ *
+ * @author Jules Jacobsen <j.jacobsen@qmul.ac.uk>
+ */
+final class PhenotypeMatchIndex {
+
+    static final int RECORD_SIZE = 32;
+
+    private final Map<String, Integer> queryIdRows;
+    private final int[] rowOffsets;
+    private final PhenotypeTerm[] terms;
+    private final ByteBuffer records;
+
+    private PhenotypeMatchIndex(Map<String, Integer> queryIdRows, int[] rowOffsets, PhenotypeTerm[] terms, ByteBuffer records) {
+        this.queryIdRows = queryIdRows;
+        this.rowOffsets = rowOffsets;
+        this.terms = terms;
+        this.records = records;
+    }
+
+    static Builder builder(int expectedSize, boolean offHeap) {
+        return new Builder(expectedSize, offHeap);
+    }
+
+    /**
+     * @return the number of phenotype matches held in the index.
+     */
+    int size() {
+        return rowOffsets[rowOffsets.length - 1];
+    }
+
+    int numQueryTerms() {
+        return queryIdRows.size();
+    }
+
+    boolean isOffHeap() {
+        return records.isDirect();
+    }
+
+    Set<PhenotypeMatch> getPhenotypeMatches(PhenotypeTerm queryPhenotype) {
+        Integer row = queryIdRows.get(queryPhenotype.getId());
+        if (row == null) {
+            return Collections.emptySet();
+        }
+        ImmutableSet.Builder<PhenotypeMatch> phenotypeMatches = ImmutableSet.builder();
+        for (int record = rowOffsets[row]; record < rowOffsets[row + 1]; record++) {
+            //absolute gets do not alter the state of the buffer, so are safe for concurrent reads
+            int offset = record * RECORD_SIZE;
+            PhenotypeMatch match = PhenotypeMatch.builder()
+                    .query(queryPhenotype)
+                    .match(terms[records.getInt(offset)])
+                    .lcs(terms[records.getInt(offset + 4)])
+                    .simj(records.getDouble(offset + 8))
+                    .ic(records.getDouble(offset + 16))
+                    .score(records.getDouble(offset + 24))
+                    .build();
+            phenotypeMatches.add(match);
+        }
+        return phenotypeMatches.build();
+    }
+
+    static class Builder {
+
+        private final boolean offHeap;
+
+        private final Map<String, Integer> queryIdRows = new HashMap<>();
+        private final Map<PhenotypeTerm, Integer> termIndex = new HashMap<>();
+        private final List<PhenotypeTerm> terms = new ArrayList<>();
+
+        private ByteBuffer records;
+        private int[] recordRows;
+        private int numRecords = 0;
+
+        private Builder(int expectedSize, boolean offHeap) {
+            this.offHeap = offHeap;
+            int capacity = Math.max(expectedSize, 16);
+            this.records = ByteBuffer.allocate(capacity * RECORD_SIZE);
+            this.recordRows = new int[capacity];
+        }
+
+        Builder add(String queryId, PhenotypeTerm matchPhenotype, PhenotypeTerm lcsPhenotype, double simj, double ic, double score) {
+            if (numRecords == recordRows.length) {
+                grow();
+            }
+            Integer row = queryIdRows.get(queryId);
+            if (row == null) {
+                row = queryIdRows.size();
+                queryIdRows.put(queryId, row);
+            }
+            recordRows[numRecords] = row;
+            records.putInt(internTerm(matchPhenotype))
+                    .putInt(internTerm(lcsPhenotype))
+                    .putDouble(simj)
+                    .putDouble(ic)
+                    .putDouble(score);
+            numRecords++;
+            return this;
+        }
+
+        private int internTerm(PhenotypeTerm phenotypeTerm) {
+            Integer index = termIndex.get(phenotypeTerm);
+            if (index == null) {
+                index = terms.size();
+                termIndex.put(phenotypeTerm, index);
+                terms.add(phenotypeTerm);
+            }
+            return index;
+        }
+
+        private void grow() {
+            int capacity = recordRows.length * 2;
+            recordRows = Arrays.copyOf(recordRows, capacity);
+            ByteBuffer grown = ByteBuffer.allocate(capacity * RECORD_SIZE);
+            records.flip();
+            grown.put(records);
+            records = grown;
+        }
+
+        /**
+         * Groups the records by query id, keeping the order in which they were added within each group.
+         */
+        PhenotypeMatchIndex build() {
+            int numRows = queryIdRows.size();
+            int[] rowOffsets = new int[numRows + 1];
+            for (int i = 0; i < numRecords; i++) {
+                rowOffsets[recordRows[i] + 1]++;
+            }
+            for (int row = 0; row < numRows; row++) {
+                rowOffsets[row + 1] += rowOffsets[row];
+            }
+            int[] nextPosition = Arrays.copyOf(rowOffsets, numRows);
+            ByteBuffer groupedRecords = offHeap ? ByteBuffer.allocateDirect(numRecords * RECORD_SIZE) : ByteBuffer.allocate(numRecords * RECORD_SIZE);
+            ByteBuffer source = records.duplicate();
+            for (int i = 0; i < numRecords; i++) {
+                int target = nextPosition[recordRows[i]]++;
+                source.limit((i + 1) * RECORD_SIZE).position(i * RECORD_SIZE);
+                groupedRecords.position(target * RECORD_SIZE);
+                groupedRecords.put(source);
+            }
+            groupedRecords.clear();
+            PhenotypeTerm[] termArray = terms.toArray(new PhenotypeTerm[terms.size()]);
+            return new PhenotypeMatchIndex(Collections.unmodifiableMap(new HashMap<>(queryIdRows)), rowOffsets, termArray, groupedRecords);
+        }
+    }
+}
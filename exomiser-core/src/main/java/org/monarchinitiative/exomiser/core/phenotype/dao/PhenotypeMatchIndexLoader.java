@@ -0,0 +1,140 @@
+/*
+ * The Exomiser - A tool to annotate and prioritize genomic variants
+ *
+ * Copyright (c) 2016-2017 Queen Mary University of London.
+ * Copyright (c) 2012-2016 Charité Universitätsmedizin Berlin and Genome Research Ltd.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.monarchinitiative.exomiser.core.phenotype.dao;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+/**
+ * Bulk loads the whole of a phenotype mapping table into a {@link PhenotypeMatchIndex} the first time it is needed.
+ * Should the load fail, the error is logged and the failure remembered so that requests arriving in the meantime don't
+ * each re-run the query. The load is re-tried once the back-off has passed, which doubles after each consecutive
+ * failure up to a maximum.
+ *
+ * @author Jules Jacobsen <j.jacobsen@qmul.ac.uk>
+ */
+class PhenotypeMatchIndexLoader {
+
+    private static final Logger logger = LoggerFactory.getLogger(PhenotypeMatchIndexLoader.class);
+
+    static final long INITIAL_RETRY_DELAY_NANOS = TimeUnit.SECONDS.toNanos(30);
+    static final long MAX_RETRY_DELAY_NANOS = TimeUnit.MINUTES.toNanos(30);
+
+    private final DataSource dataSource;
+    private final String mappingTable;
+    private final String hitIdColumn;
+    private final String hitTermColumn;
+    private final LongSupplier nanoClock;
+
+    private volatile boolean offHeap = false;
+    private volatile PhenotypeMatchIndex phenotypeMatchIndex;
+
+    //guarded by this
+    private long retryDelayNanos = 0;
+    private long nextRetryNanos = 0;
+
+    /**
+     * @param mappingTable  the name of the table mapping HPO terms to the organism ontology terms e.g. hp_mp_mappings
+     * @param hitIdColumn   the column containing the organism ontology term id e.g. mp_id
+     * @param hitTermColumn the column containing the organism ontology term label e.g. mp_term
+     */
+    PhenotypeMatchIndexLoader(DataSource dataSource, String mappingTable, String hitIdColumn, String hitTermColumn) {
+        this(dataSource, mappingTable, hitIdColumn, hitTermColumn, System::nanoTime);
+    }
+
+    PhenotypeMatchIndexLoader(DataSource dataSource, String mappingTable, String hitIdColumn, String hitTermColumn, LongSupplier nanoClock) {
+        this.dataSource = dataSource;
+        this.mappingTable = mappingTable;
+        this.hitIdColumn = hitIdColumn;
+        this.hitTermColumn = hitTermColumn;
+        this.nanoClock = nanoClock;
+    }
+
+    /**
+     * Sets whether the index records are stored outside of the Java heap. This only has an effect if set before the
+     * index is first loaded.
+     */
+    void setOffHeap(boolean offHeap) {
+        this.offHeap = offHeap;
+    }
+
+    /**
+     * @return the loaded index, or null if the mapping table could not be read or the last failed load is still
+     * backing off.
+     */
+    PhenotypeMatchIndex getIndex() {
+        PhenotypeMatchIndex index = phenotypeMatchIndex;
+        if (index == null) {
+            synchronized (this) {
+                index = phenotypeMatchIndex;
+                if (index == null && isRetryDue()) {
+                    index = loadIndex();
+                    if (index == null) {
+                        recordFailure();
+                    } else {
+                        phenotypeMatchIndex = index;
+                    }
+                }
+            }
+        }
+        return index;
+    }
+
+    private boolean isRetryDue() {
+        return retryDelayNanos == 0 || nanoClock.getAsLong() - nextRetryNanos >= 0;
+    }
+
+    private void recordFailure() {
+        retryDelayNanos = retryDelayNanos == 0 ? INITIAL_RETRY_DELAY_NANOS : Math.min(retryDelayNanos * 2, MAX_RETRY_DELAY_NANOS);
+        nextRetryNanos = nanoClock.getAsLong() + retryDelayNanos;
+        logger.warn("Phenotype mappings from {} unavailable - will retry in {} seconds", mappingTable, TimeUnit.NANOSECONDS.toSeconds(retryDelayNanos));
+    }
+
+    private PhenotypeMatchIndex loadIndex() {
+        String countQuery = "SELECT COUNT(*) FROM " + mappingTable;
+        String mappingQuery = String.format("SELECT hp_id, simj, ic, score, %s AS hit_id, %s AS hit_term, lcs_id, lcs_term FROM %s", hitIdColumn, hitTermColumn, mappingTable);
+        logger.info("Loading phenotype mappings from {}", mappingTable);
+        try (
+                Connection connection = dataSource.getConnection();
+                PreparedStatement countStatement = connection.prepareStatement(countQuery);
+                ResultSet countRs = countStatement.executeQuery();
+                PreparedStatement mappingStatement = connection.prepareStatement(mappingQuery);
+                ResultSet rs = mappingStatement.executeQuery()) {
+
+            int expectedSize = countRs.next() ? countRs.getInt(1) : 0;
+            PhenotypeMatchIndex index = OntologyDaoResultSetProcessor.processOntologyTermMatchIndexResultSet(rs, expectedSize, offHeap);
+            logger.info("Loaded {} phenotype mappings for {} HPO terms from {}{}", index.size(), index.numQueryTerms(), mappingTable, index
+                    .isOffHeap() ? " off-heap" : "");
+            return index;
+        } catch (SQLException e) {
+            logger.error("Unable to execute query '{}' for phenotype mappings", mappingQuery, e);
+        }
+        return null;
+    }
+}
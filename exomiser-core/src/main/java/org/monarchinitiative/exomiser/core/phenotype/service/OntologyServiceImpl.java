@@ -25,16 +25,21 @@
  */
 package org.monarchinitiative.exomiser.core.phenotype.service;
 
+import org.monarchinitiative.exomiser.core.phenotype.Organism;
 import org.monarchinitiative.exomiser.core.phenotype.PhenotypeMatch;
 import org.monarchinitiative.exomiser.core.phenotype.PhenotypeTerm;
 import org.monarchinitiative.exomiser.core.phenotype.dao.HumanPhenotypeOntologyDao;
 import org.monarchinitiative.exomiser.core.phenotype.dao.MousePhenotypeOntologyDao;
+import org.monarchinitiative.exomiser.core.phenotype.dao.OntologyDao;
 import org.monarchinitiative.exomiser.core.phenotype.dao.ZebraFishPhenotypeOntologyDao;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.cache.annotation.Cacheable;
 import org.springframework.stereotype.Service;
 
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * Service for retrieving phenotype data from the database for use by the
@@ -45,10 +50,16 @@
 @Service
 public class OntologyServiceImpl implements OntologyService {
 
+    private static final Logger logger = LoggerFactory.getLogger(OntologyServiceImpl.class);
+
     private final HumanPhenotypeOntologyDao hpoDao;
     private final MousePhenotypeOntologyDao mpoDao;
     private final ZebraFishPhenotypeOntologyDao zpoDao;
 
+    //the ontologies are loaded on first use and held for the lifetime of the service. Empty loads are not held as this
+    //is what the DAOs return when the database could not be read.
+    private final Map<Organism, OntologyTermIndex> termIndexes = new ConcurrentHashMap<>();
+
     @Autowired
     public OntologyServiceImpl(HumanPhenotypeOntologyDao hpoDao, MousePhenotypeOntologyDao mpoDao, ZebraFishPhenotypeOntologyDao zpoDao) {
         this.hpoDao = hpoDao;
@@ -56,22 +67,53 @@ public OntologyServiceImpl(HumanPhenotypeOntologyDao hpoDao, MousePhenotypeOntol
         this.zpoDao = zpoDao;
     }
 
-    @Cacheable(value = "hpo")
     @Override
     public Set<PhenotypeTerm> getHpoTerms() {
-        return hpoDao.getAllTerms();
+        return getTermIndex(Organism.HUMAN).getTerms();
     }
 
-    @Cacheable(value = "mpo")
     @Override
     public Set<PhenotypeTerm> getMpoTerms() {
-        return mpoDao.getAllTerms();
+        return getTermIndex(Organism.MOUSE).getTerms();
     }
 
-    @Cacheable(value = "zpo")
     @Override
     public Set<PhenotypeTerm> getZpoTerms() {
-        return zpoDao.getAllTerms();
+        return getTermIndex(Organism.FISH).getTerms();
+    }
+
+    private OntologyTermIndex getTermIndex(Organism organism) {
+        OntologyTermIndex termIndex = termIndexes.get(organism);
+        if (termIndex != null) {
+            return termIndex;
+        }
+        OntologyTermIndex loadedTermIndex = loadTermIndex(organism);
+        if (loadedTermIndex.isEmpty()) {
+            return loadedTermIndex;
+        }
+        OntologyTermIndex existingTermIndex = termIndexes.putIfAbsent(organism, loadedTermIndex);
+        return existingTermIndex == null ? loadedTermIndex : existingTermIndex;
+    }
+
+    private OntologyTermIndex loadTermIndex(Organism organism) {
+        OntologyTermIndex termIndex = OntologyTermIndex.of(getOntologyDao(organism).getAllTerms());
+        if (termIndex.isEmpty()) {
+            logger.warn("No {} ontology terms found - these will be re-loaded on the next request", organism);
+        } else {
+            logger.info("Loaded {} {} ontology terms", termIndex.size(), organism);
+        }
+        return termIndex;
+    }
+
+    private OntologyDao getOntologyDao(Organism organism) {
+        switch (organism) {
+            case MOUSE:
+                return mpoDao;
+            case FISH:
+                return zpoDao;
+            default:
+                return hpoDao;
+        }
     }
 
     @Override
@@ -91,19 +133,15 @@ public Set<PhenotypeMatch> getZpoMatchesForHpoTerm(PhenotypeTerm hpoTerm) {
 
     /**
      * Returns the matching HPO PhenotypeTerm for a given HPO id or null if the
-     * term cannot be found.
+     * term cannot be found. The same PhenotypeTerm instance is returned for
+     * every call with the same id.
      *
      * @param hpoId
      * @return
      */
     @Override
     public PhenotypeTerm getPhenotypeTermForHpoId(String hpoId) {
-        for (PhenotypeTerm hpoTerm : getHpoTerms()) {
-            if (hpoTerm.getId().equals(hpoId)) {
-                return hpoTerm;
-            }
-        }
-        return null;
+        return getTermIndex(Organism.HUMAN).getTerm(hpoId);
     }
 
 }
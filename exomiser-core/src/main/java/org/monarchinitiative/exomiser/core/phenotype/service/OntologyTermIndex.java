@@ -0,0 +1,90 @@
+/*
+ * The Exomiser - A tool to annotate and prioritize genomic variants
+ *
+ * Copyright (c) 2016-2017 Queen Mary University of London.
+ * Copyright (c) 2012-2016 Charité Universitätsmedizin Berlin and Genome Research Ltd.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.monarchinitiative.exomiser.core.phenotype.service;
+
+import com.google.common.collect.ImmutableSet;
+import org.monarchinitiative.exomiser.core.phenotype.PhenotypeTerm;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Immutable index of the terms of a phenotype ontology by their id. Each id maps to a single shared
+ * {@link PhenotypeTerm} instance, so resolving an id is a hash lookup which creates no new objects.
+ *
+ * @author Jules Jacobsen <j.jacobsen@qmul.ac.uk>
+ */
+final class OntologyTermIndex {
+
+    private static final OntologyTermIndex EMPTY = new OntologyTermIndex(new HashMap<>(), ImmutableSet.of());
+
+    private final Map<String, PhenotypeTerm> termsById;
+    private final Set<PhenotypeTerm> terms;
+
+    private OntologyTermIndex(Map<String, PhenotypeTerm> termsById, Set<PhenotypeTerm> terms) {
+        this.termsById = termsById;
+        this.terms = terms;
+    }
+
+    static OntologyTermIndex empty() {
+        return EMPTY;
+    }
+
+    /**
+     * Indexes the terms by id. Where an id occurs more than once the first term with that id is kept.
+     */
+    static OntologyTermIndex of(Collection<PhenotypeTerm> phenotypeTerms) {
+        if (phenotypeTerms == null || phenotypeTerms.isEmpty()) {
+            return EMPTY;
+        }
+        Map<String, PhenotypeTerm> termsById = new HashMap<>(phenotypeTerms.size() * 4 / 3 + 1);
+        for (PhenotypeTerm phenotypeTerm : phenotypeTerms) {
+            termsById.putIfAbsent(phenotypeTerm.getId(), phenotypeTerm);
+        }
+        return new OntologyTermIndex(termsById, ImmutableSet.copyOf(phenotypeTerms));
+    }
+
+    /**
+     * @return the term with the given id, or null if there is no such term.
+     */
+    PhenotypeTerm getTerm(String id) {
+        return termsById.get(id);
+    }
+
+    Set<PhenotypeTerm> getTerms() {
+        return terms;
+    }
+
+    int size() {
+        return termsById.size();
+    }
+
+    boolean isEmpty() {
+        return termsById.isEmpty();
+    }
+
+    @Override
+    public String toString() {
+        return "OntologyTermIndex{" + "terms=" + termsById.size() + '}';
+    }
+}
@@ -21,7 +21,6 @@
 package org.monarchinitiative.exomiser.core.prioritisers;
 
 import com.google.common.collect.ArrayListMultimap;
-import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.ListMultimap;
 import org.monarchinitiative.exomiser.core.model.Gene;
@@ -29,6 +28,7 @@
 import org.monarchinitiative.exomiser.core.prioritisers.model.GeneMatch;
 import org.monarchinitiative.exomiser.core.prioritisers.model.GeneModel;
 import org.monarchinitiative.exomiser.core.prioritisers.model.GeneModelPhenotypeMatch;
+import org.monarchinitiative.exomiser.core.prioritisers.service.PhenotypeQuery;
 import org.monarchinitiative.exomiser.core.prioritisers.service.PriorityService;
 import org.monarchinitiative.exomiser.core.prioritisers.util.DataMatrix;
 import org.monarchinitiative.exomiser.core.prioritisers.util.HiPhiveProteinInteractionScorer;
@@ -39,9 +39,9 @@
 import java.time.Instant;
 import java.util.*;
 import java.util.function.Function;
+import java.util.stream.IntStream;
 import java.util.stream.Stream;
 
-import static java.util.Comparator.comparingDouble;
 import static java.util.stream.Collectors.*;
 
 /**
@@ -132,90 +132,93 @@ private HiPhiveProteinInteractionScorer makeHiPhiveProteinInteractionScorer(List
 
     private ListMultimap<Integer, GeneModelPhenotypeMatch> makeBestGeneModelsForOrganisms(List<PhenotypeTerm> hpoPhenotypeTerms, Organism referenceOrganism, Set<Organism> organismsToCompare, Set<Integer> wantedGeneIds) {
 
+        PhenotypeQuery phenotypeQuery = getPhenotypeQuery(hpoPhenotypeTerms);
         //CAUTION!! this must always run in order that the best score is set - HUMAN runs first as we are comparing HP to other phenotype ontology terms.
-        PhenotypeMatcher referenceOrganismPhenotypeMatcher = priorityService.getPhenotypeMatcherForOrganism(hpoPhenotypeTerms, referenceOrganism);
+        PhenotypeMatcher referenceOrganismPhenotypeMatcher = phenotypeQuery.getPhenotypeMatcher(referenceOrganism);
         QueryPhenotypeMatch bestQueryPhenotypeMatch = referenceOrganismPhenotypeMatcher.getQueryPhenotypeMatch();
         if (bestQueryPhenotypeMatch.getBestPhenotypeMatches().isEmpty()) {
             logger.warn("{} has no phenotype matches for input set {}", bestQueryPhenotypeMatch, hpoPhenotypeTerms);
         }
-        List<PhenotypeMatcher> bestOrganismPhenotypeMatches = getBestOrganismPhenotypeMatches(hpoPhenotypeTerms, referenceOrganismPhenotypeMatcher, organismsToCompare);
 
+        //each organism is scored independently of the others so these can run in parallel. When this is run from within
+        //a ForkJoinPool, as it is by the analysis runners, the parallel stream will use that pool.
+        organismsToCompare.parallelStream()
+                .forEach(organism -> scoreUnscoredGeneModels(phenotypeQuery, bestQueryPhenotypeMatch, organism, wantedGeneIds));
+
+        //the results are merged in the order of the organisms so that the models for each gene are always in the same order
         ListMultimap<Integer, GeneModelPhenotypeMatch> bestGeneModels = ArrayListMultimap.create();
-        for (PhenotypeMatcher organismPhenotypeMatcher : bestOrganismPhenotypeMatches) {
-            Set<GeneModel> modelsToScore = priorityService.getModelsForOrganism(organismPhenotypeMatcher.getOrganism())
-                    .stream()
-                    .filter(model -> wantedGeneIds.contains(model.getEntrezGeneId()))
-                    .collect(toSet());
-
-            List<GeneModelPhenotypeMatch> geneModelPhenotypeMatches = scoreModels(bestQueryPhenotypeMatch, organismPhenotypeMatcher, modelsToScore);
-            Map<Integer, GeneModelPhenotypeMatch> bestGeneModelsForOrganism = mapBestModelByGene(geneModelPhenotypeMatches);
-            bestGeneModelsForOrganism.entrySet().forEach(entry -> bestGeneModels.put(entry.getKey(), entry.getValue()));
+        for (Organism organism : organismsToCompare) {
+            for (Integer entrezGeneId : wantedGeneIds) {
+                GeneModelPhenotypeMatch bestGeneModel = phenotypeQuery.getBestGeneModel(organism, entrezGeneId);
+                if (bestGeneModel != null) {
+                    bestGeneModels.put(entrezGeneId, bestGeneModel);
+                }
+            }
         }
 
         return bestGeneModels;
     }
 
-    private List<PhenotypeMatcher> getBestOrganismPhenotypeMatches(List<PhenotypeTerm> hpoPhenotypeTerms, PhenotypeMatcher referenceOrganismPhenotypeMatcher, Set<Organism> organismsToCompare) {
-        ImmutableList.Builder<PhenotypeMatcher> bestPossibleOrganismPhenotypeMatches = ImmutableList.builder();
-        for (Organism organism : organismsToCompare) {
-            if (organism == referenceOrganismPhenotypeMatcher.getOrganism()) {
-                //no need to re-query the database for these
-                bestPossibleOrganismPhenotypeMatches.add(referenceOrganismPhenotypeMatcher);
-            } else {
-                PhenotypeMatcher bestOrganismPhenotypes = priorityService.getPhenotypeMatcherForOrganism(hpoPhenotypeTerms, organism);
-                bestPossibleOrganismPhenotypeMatches.add(bestOrganismPhenotypes);
-            }
+    private void scoreUnscoredGeneModels(PhenotypeQuery phenotypeQuery, QueryPhenotypeMatch bestQueryPhenotypeMatch, Organism organism, Set<Integer> wantedGeneIds) {
+        //genes scored by an earlier analysis with the same phenotypes do not need to be scored again
+        Set<Integer> unscoredGeneIds = phenotypeQuery.getUnscoredGeneIds(organism, wantedGeneIds);
+        if (unscoredGeneIds.isEmpty()) {
+            logger.info("Using previously scored {} models", organism);
+            return;
         }
-        return bestPossibleOrganismPhenotypeMatches.build();
-    }
+        PhenotypeMatcher organismPhenotypeMatcher = phenotypeQuery.getPhenotypeMatcher(organism);
+        List<GeneModel> modelsToScore = priorityService.getModelsForOrganismAndGenes(organism, unscoredGeneIds);
 
-    //returns a map of geneId to best model
-    private Map<Integer, GeneModelPhenotypeMatch> mapBestModelByGene(List<GeneModelPhenotypeMatch> organismModels) {
-        return getBestModelsByGene(organismModels)
-                .filter(Optional::isPresent)
-                .map(Optional::get)
-                .collect(toMap(GeneModelPhenotypeMatch::getEntrezGeneId, Function.identity()));
+        Map<Integer, GeneModelPhenotypeMatch> bestGeneModelsForOrganism = scoreBestModelsByGene(bestQueryPhenotypeMatch, organismPhenotypeMatcher, modelsToScore);
+        phenotypeQuery.addBestGeneModels(organism, unscoredGeneIds, bestGeneModelsForOrganism);
     }
 
-    private Stream<Optional<GeneModelPhenotypeMatch>> getBestModelsByGene(List<GeneModelPhenotypeMatch> organismModels) {
+    private PhenotypeQuery getPhenotypeQuery(List<PhenotypeTerm> hpoPhenotypeTerms) {
         if (options.isBenchmarkingEnabled()) {
-            return organismModels.parallelStream()
-                    .filter(model -> model.getScore() > 0)
-                    // catch hit to known disease-gene association for purposes of benchmarking i.e to simulate novel gene discovery performance
-                    .filter(model -> !options.isBenchmarkHit(model))
-                    .collect(groupingByConcurrent(GeneModelPhenotypeMatch::getEntrezGeneId, maxBy(comparingDouble(GeneModelPhenotypeMatch::getScore))))
-                    .values()
-                    .stream();
+            //benchmarking removes the known disease-gene hits from the best models, so these cannot be shared
+            return priorityService.makePhenotypeQuery(hpoPhenotypeTerms);
         }
-        return organismModels.parallelStream()
-                .filter(model -> model.getScore() > 0)
-                .collect(groupingByConcurrent(GeneModelPhenotypeMatch::getEntrezGeneId, maxBy(comparingDouble(GeneModelPhenotypeMatch::getScore))))
-                .values()
-                .stream();
+        return priorityService.getPhenotypeQuery(hpoPhenotypeTerms);
     }
 
     // n.b. this is *almost* identical to PhivePriority.scoreModels() the only difference is in HiPhive we're comparing the input terms
     // against all possible models (disease, mouse, fish), whereas in Phive we're only comparing against mouse.
     // For HiPhive the bestQueryPhenotypeMatch is going to be an HPO self-hit for every term in the query set so the
     // scoreModelPhenotypeMatch uses hpoIds.size() as the numMatchedQueryPhenotypes.
-    private List<GeneModelPhenotypeMatch> scoreModels(QueryPhenotypeMatch bestQueryPhenotypeMatch, PhenotypeMatcher organismPhenotypeMatcher, Collection<GeneModel> models) {
+    private Map<Integer, GeneModelPhenotypeMatch> scoreBestModelsByGene(QueryPhenotypeMatch bestQueryPhenotypeMatch, PhenotypeMatcher organismPhenotypeMatcher, List<GeneModel> models) {
         Organism organism = organismPhenotypeMatcher.getOrganism();
 
         ModelScorer modelScorer = PhenodigmModelScorer.forMultiCrossSpecies(bestQueryPhenotypeMatch, organismPhenotypeMatcher);
 
         logger.info("Scoring {} models", organism);
         Instant timeStart = Instant.now();
-        //running this in parallel here can cut the overall time for this method in half or better - ~650ms -> ~350ms on Pfeiffer test set.
-        List<GeneModelPhenotypeMatch> geneModelPhenotypeMatches = models.parallelStream()
+        //Most models score zero or are beaten by another model for the same gene, so only the scores are calculated
+        //here. Running this in parallel can cut the overall time for this method in half or better.
+        double[] modelScores = new double[models.size()];
+        IntStream.range(0, models.size()).parallel()
+                .forEach(i -> modelScores[i] = modelScorer.calculateScore(models.get(i)));
+
+        Map<Integer, Integer> bestModelIndexByGene = new HashMap<>();
+        for (int i = 0; i < modelScores.length; i++) {
+            GeneModel model = models.get(i);
+            // catch hit to known disease-gene association for purposes of benchmarking i.e to simulate novel gene discovery performance
+            if (modelScores[i] > 0 && !(options.isBenchmarkingEnabled() && options.isBenchmarkHit(model))) {
+                bestModelIndexByGene.merge(model.getEntrezGeneId(), i, (best, current) -> modelScores[current] > modelScores[best] ? current : best);
+            }
+        }
+
+        //the best phenotype matches are only needed for the best model of each gene
+        Map<Integer, GeneModelPhenotypeMatch> bestGeneModels = bestModelIndexByGene.values().parallelStream()
+                .map(models::get)
                 .map(model -> {
                     ModelPhenotypeMatch score = modelScorer.scoreModel(model);
                     return new GeneModelPhenotypeMatch(score.getScore(), model, score.getBestPhenotypeMatches());
                 })
-                .collect(toList());
+                .collect(toMap(GeneModelPhenotypeMatch::getEntrezGeneId, Function.identity()));
 
         Duration duration = Duration.between(timeStart, Instant.now());
         logger.info("Scored {} {} models - {} ms", models.size(), organism, duration.toMillis());
-        return geneModelPhenotypeMatches;
+        return bestGeneModels;
     }
 
     @Override
@@ -0,0 +1,341 @@
+/*
+ * The Exomiser - A tool to annotate and prioritize genomic variants
+ *
+ * Copyright (c) 2016-2017 Queen Mary University of London.
+ * Copyright (c) 2012-2016 Charité Universitätsmedizin Berlin and Genome Research Ltd.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.monarchinitiative.exomiser.core.prioritisers;
+
+import hpo.HPOutils;
+import ontologizer.go.*;
+import org.monarchinitiative.exomiser.core.prioritisers.util.PhenixSnapshot;
+import org.monarchinitiative.exomiser.core.prioritisers.util.PhenixSnapshot.PhenixSnapshotException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import similarity.SimilarityUtilities;
+import similarity.concepts.ResnikSimilarity;
+import similarity.objects.InformationContentObjectSimilarity;
+import sonumina.math.graph.SlimDirectedGraphView;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.*;
+import java.util.stream.Collectors;
+
+import static java.util.stream.Collectors.toMap;
+
+/**
+ * Holds the HPO, gene annotations and term information content used by the {@link PhenixPriority}. These are slow to
+ * create so should be loaded once and shared between all the PhenixPriority instances. Once loaded the data is not
+ * modified, so can be used from multiple threads.
+ * <p>
+ * The annotations and information content can be read from a {@link PhenixSnapshot}, written to the PhenIX data
+ * directory by running the {@link #main(String[])} method, instead of being re-calculated from the source files.
+ *
+ * @author Jules Jacobsen <j.jacobsen@qmul.ac.uk>
+ */
+public final class PhenixEngine {
+
+    private static final Logger logger = LoggerFactory.getLogger(PhenixEngine.class);
+
+    static final String HPO_OBO_FILE = "hp.obo";
+    static final String HPO_ANNOTATION_FILE = "ALL_SOURCES_ALL_FREQUENCIES_genes_to_phenotype.txt";
+    static final String SNAPSHOT_FILE = "phenix.snapshot";
+
+    /**
+     * The HPO as Ontologizer-Ontology object
+     */
+    private final Ontology hpo;
+    private final Map<String, ArrayList<Term>> geneId2annotations;
+    private final HashMap<Term, Double> term2ic;
+    private final String scoreDistributionFolder;
+
+    //the Ontologizer similarity measures are not documented as being thread-safe, so each thread gets its own
+    private final ThreadLocal<InformationContentObjectSimilarity> asymmetricSimilarityMeasure;
+    private final ThreadLocal<InformationContentObjectSimilarity> symmetricSimilarityMeasure;
+
+    private PhenixEngine(Ontology hpo, Map<String, ArrayList<Term>> geneId2annotations, HashMap<Term, Double> term2ic, String scoreDistributionFolder) {
+        this.hpo = hpo;
+        this.geneId2annotations = geneId2annotations;
+        this.term2ic = term2ic;
+        this.scoreDistributionFolder = scoreDistributionFolder;
+        this.asymmetricSimilarityMeasure = ThreadLocal.withInitial(() -> makeSimilarityMeasure(false));
+        this.symmetricSimilarityMeasure = ThreadLocal.withInitial(() -> makeSimilarityMeasure(true));
+    }
+
+    /**
+     * Loads the PhenIX data from the directory. This must contain the files "hp.obo" (obtained from
+     * {@code http://compbio.charite.de/hudson/job/hpo/}) and "ALL_SOURCES_ALL_FREQUENCIES_genes_to_phenotype.txt"
+     * (obtained from {@code http://compbio.charite.de/hudson/job/hpo.annotations.monthly/lastSuccessfulBuild/artifact/annotation/}),
+     * as well as the score distribution files "*.out", all of which can be downloaded from the HPO hudson server. If the
+     * directory also contains a current phenix.snapshot file this will be used in place of the annotation file.
+     *
+     * @param phenixDataDirectory
+     * @throws PhenixEngineException if the required files are missing.
+     */
+    public static PhenixEngine load(Path phenixDataDirectory) {
+        return load(phenixDataDirectory, true);
+    }
+
+    private static PhenixEngine load(Path phenixDataDirectory, boolean useSnapshot) {
+        Path hpoOboFile = phenixDataDirectory.resolve(HPO_OBO_FILE);
+        Path hpoAnnotationFile = phenixDataDirectory.resolve(HPO_ANNOTATION_FILE);
+        if (!Files.isRegularFile(hpoOboFile) || !Files.isRegularFile(hpoAnnotationFile)) {
+            throw new PhenixEngineException(String.format("PhenIX data directory %s must contain the files %s and %s", phenixDataDirectory, HPO_OBO_FILE, HPO_ANNOTATION_FILE));
+        }
+        String scoreDistributionFolder = phenixDataDirectory.toString();
+        if (!scoreDistributionFolder.endsWith(File.separator)) {
+            scoreDistributionFolder += File.separator;
+        }
+
+        Ontology hpo = parseOntology(hpoOboFile.toString());
+        //The HPO as SlimDirectedGraph (fast access to ancestors etc.)
+        SlimDirectedGraphView<Term> hpoSlim = hpo.getSlimGraphView();
+
+        Path snapshotFile = phenixDataDirectory.resolve(SNAPSHOT_FILE);
+        if (useSnapshot && Files.isRegularFile(snapshotFile)) {
+            Optional<PhenixEngine> snapshotEngine = loadFromSnapshot(snapshotFile, hpoOboFile, hpoAnnotationFile, hpo, scoreDistributionFolder);
+            if (snapshotEngine.isPresent()) {
+                return snapshotEngine.get();
+            }
+        }
+
+        Map<String, ArrayList<Term>> geneId2annotations = parseAnnotations(hpoAnnotationFile.toString(), hpo, hpoSlim);
+        HashMap<Term, Double> term2ic = calculateTermIC(hpo, hpoSlim, geneId2annotations);
+        return new PhenixEngine(hpo, geneId2annotations, term2ic, scoreDistributionFolder);
+    }
+
+    private static Optional<PhenixEngine> loadFromSnapshot(Path snapshotFile, Path hpoOboFile, Path hpoAnnotationFile, Ontology hpo, String scoreDistributionFolder) {
+        try {
+            PhenixSnapshot snapshot = PhenixSnapshot.read(snapshotFile);
+            if (!snapshot.isCurrentFor(hpoOboFile, hpoAnnotationFile)) {
+                logger.warn("PhenIX snapshot {} is out of date - re-calculating data from {} and {}", snapshotFile, hpoOboFile, hpoAnnotationFile);
+                return Optional.empty();
+            }
+            Map<String, Term> termsById = new HashMap<>();
+            HashMap<Term, Double> term2ic = new HashMap<>();
+            for (Map.Entry<String, Double> entry : snapshot.getTermInformationContent().entrySet()) {
+                Term term = hpo.getTermIncludingAlternatives(entry.getKey());
+                if (term == null) {
+                    logger.warn("PhenIX snapshot {} contains term {} which is not in the HPO - re-calculating data", snapshotFile, entry.getKey());
+                    return Optional.empty();
+                }
+                termsById.put(entry.getKey(), term);
+                term2ic.put(term, entry.getValue());
+            }
+            Map<String, ArrayList<Term>> geneId2annotations = new HashMap<>();
+            for (Map.Entry<String, List<String>> entry : snapshot.getGeneAnnotations().entrySet()) {
+                ArrayList<Term> annotations = entry.getValue().stream()
+                        .map(termsById::get)
+                        .collect(Collectors.toCollection(ArrayList::new));
+                geneId2annotations.put(entry.getKey(), annotations);
+            }
+            logger.info("Loaded PhenIX annotations for {} genes from snapshot {}", geneId2annotations.size(), snapshotFile);
+            return Optional.of(new PhenixEngine(hpo, geneId2annotations, term2ic, scoreDistributionFolder));
+        } catch (PhenixSnapshotException e) {
+            logger.warn("Unable to use PhenIX snapshot - re-calculating data", e);
+            return Optional.empty();
+        }
+    }
+
+    /**
+     * Writes the gene annotations and term information content to a snapshot file, which will be used by later calls
+     * to {@link #load(Path)} until the source files change.
+     */
+    public void writeSnapshot(Path snapshotFile, Path hpoOboFile, Path hpoAnnotationFile) {
+        Map<String, Double> termInformationContent = new LinkedHashMap<>();
+        term2ic.forEach((term, ic) -> termInformationContent.put(term.getIDAsString(), ic));
+        Map<String, List<String>> geneAnnotations = new LinkedHashMap<>();
+        geneId2annotations.forEach((geneId, terms) -> geneAnnotations.put(geneId, terms.stream()
+                .map(Term::getIDAsString)
+                .collect(Collectors.toList())));
+        PhenixSnapshot.of(hpoOboFile, hpoAnnotationFile, termInformationContent, geneAnnotations).write(snapshotFile);
+    }
+
+    /**
+     * Build step for creating the phenix.snapshot file in the PhenIX data directory, run by the exomiser-db build. This
+     * should be re-run whenever the hp.obo or annotation files are updated, although a stale snapshot will be ignored.
+     *
+     * @param phenixDataDirectory directory containing the hp.obo, annotation and score distribution files.
+     * @throws PhenixEngineException if the required files are missing.
+     */
+    public static void buildSnapshot(Path phenixDataDirectory) {
+        PhenixEngine phenixEngine = load(phenixDataDirectory, false);
+        phenixEngine.writeSnapshot(phenixDataDirectory.resolve(SNAPSHOT_FILE), phenixDataDirectory.resolve(HPO_OBO_FILE), phenixDataDirectory.resolve(HPO_ANNOTATION_FILE));
+    }
+
+    private InformationContentObjectSimilarity makeSimilarityMeasure(boolean symmetric) {
+        ResnikSimilarity resnik = new ResnikSimilarity(hpo, term2ic);
+        return new InformationContentObjectSimilarity(resnik, symmetric, false);
+    }
+
+    /**
+     * Parses the human-phenotype-ontology.obo file (or equivalently, the hp.obo
+     * file from our Hudosn server).
+     *
+     * @param hpoOboFile path to the hp.obo file.
+     */
+    private static Ontology parseOntology(String hpoOboFile) {
+        OBOParser oboParser = new OBOParser(hpoOboFile, OBOParser.PARSE_XREFS);
+
+        try {
+            String parseInfo = oboParser.doParse();
+            logger.info(parseInfo);
+        } catch (IOException | OBOParserException e) {
+            logger.error("Error parsing HPO OBO file", e);
+        }
+
+        TermContainer termContainer = new TermContainer(oboParser.getTermMap(), oboParser.getFormatVersion(), oboParser.getDate());
+        Ontology hpoOntology = new Ontology(termContainer);
+        hpoOntology.setRelevantSubontology(termContainer.get(HPOutils.organAbnormalityRootId).getName());
+        return hpoOntology;
+    }
+
+    /**
+     * Parse the HPO phenotype annotation file (e.g., phenotype_annotation.tab).
+     * The point of this is to get the links between diseases and HPO phenotype
+     * terms. The hpoAnnotationFile is The
+     * ALL_SOURCES_ALL_FREQUENCIES_genes_to_phenotype.txt-file
+     *
+     * @param hpoAnnotationFile path to the file
+     */
+    private static Map<String, ArrayList<Term>> parseAnnotations(String hpoAnnotationFile, Ontology hpo, SlimDirectedGraphView<Term> hpoSlim) {
+        Map<String, ArrayList<Term>> geneAnnotations = new HashMap<>();
+        logger.info("Parsing Annotations file {}", hpoAnnotationFile);
+
+        try (BufferedReader bufferedReader = Files.newBufferedReader(Paths.get(hpoAnnotationFile))) {
+            String line;
+            while ((line = bufferedReader.readLine()) != null) {
+                if (line.startsWith("#")) {
+                    continue;
+                }
+
+                String[] split = line.split("\t");
+                String entrez = split[0];
+                Term term = null;
+                try {
+                /* split[4] is the HPO term field of an annotation line. */
+                    term = hpo.getTermIncludingAlternatives(split[3]);
+                } catch (IllegalArgumentException e) {
+                    logger.error("Unable to get term for line \n{}\n", line);
+                    logger.error("The offending field was '{}'", split[3]);
+                    for (int k = 0; k < split.length; ++k) {
+                        logger.error("{} '{}'", k, split[k]);
+                    }
+                    logger.error("", e);
+                }
+                if (term != null) {
+                    geneAnnotations.computeIfAbsent(entrez, annotations -> new ArrayList<>()).add(term);
+                }
+            }
+        } catch (IOException e) {
+            logger.error("Error parsing annotation file {}", hpoAnnotationFile, e);
+        }
+
+        // cleanup annotations
+        for (Map.Entry<String, ArrayList<Term>> entry : geneAnnotations.entrySet()) {
+            String entrezId = entry.getKey();
+            ArrayList<Term> uniqueTerms = entry.getValue().stream().distinct().collect(Collectors.toCollection(ArrayList::new));
+            List<Term> mostSpecificTerms = HPOutils.cleanUpAssociation(uniqueTerms, hpoSlim, hpo.getRootTerm());
+            geneAnnotations.put(entrezId, new ArrayList<>(mostSpecificTerms));
+        }
+        logger.info("Made HPO annotations for {} genes", geneAnnotations.size());
+        return geneAnnotations;
+    }
+
+    private static HashMap<Term, Double> calculateTermIC(Ontology ontology, SlimDirectedGraphView<Term> hpoSlim, Map<String, ArrayList<Term>> geneId2annotations) {
+
+        // prepare IC computation
+        // here we store which objects have been annotated with this term
+        final Map<Term, Set<String>> annotationTerm2geneIds = new HashMap<>();
+        for (Map.Entry<String, ArrayList<Term>> entry : geneId2annotations.entrySet()) {
+            String entrezId = entry.getKey();
+            List<Term> annotations = entry.getValue();
+            for (Term annot : annotations) {
+                List<Term> termAndAncestors = hpoSlim.getAncestors(annot);
+                for (Term term : termAndAncestors) {
+                    annotationTerm2geneIds.computeIfAbsent(term, objectsAnnotatedByTerm -> new HashSet<>()).add(entrezId);
+                }
+            }
+        }
+
+        Map<Term, Integer> termFrequencies = annotationTerm2geneIds.entrySet().stream()
+                .collect(toMap(Map.Entry::getKey, entry -> entry.getValue().size()));
+
+        Term root = ontology.getRootTerm();
+        int maxFreq = termFrequencies.get(root);
+        double ICzeroCountTerms = -1 * (Math.log(1 / (double) maxFreq));
+
+        HashMap<Term, Double> term2informationContent = (HashMap<Term, Double>) SimilarityUtilities.caculateInformationContent(maxFreq, (HashMap<Term, Integer>) termFrequencies);
+        int frequencyZeroCounter = 0;
+        for (Term t : ontology) {
+            if (!termFrequencies.containsKey(t)) {
+                ++frequencyZeroCounter;
+                term2informationContent.put(t, ICzeroCountTerms);
+            }
+        }
+
+        logger.info("WARNING: Frequency of {} terms was zero!! Set IC of these to : {}", frequencyZeroCounter, ICzeroCountTerms);
+        return term2informationContent;
+    }
+
+    /**
+     * @return the term, or null if the id is not recognised.
+     */
+    public Term getTerm(String termId) {
+        return hpo.getTermIncludingAlternatives(termId);
+    }
+
+    /**
+     * @return the most specific terms annotated to the gene, or an empty list if the gene has no annotations.
+     */
+    public List<Term> getGeneAnnotations(String entrezGeneId) {
+        List<Term> geneAnnotations = geneId2annotations.get(entrezGeneId);
+        return geneAnnotations == null ? Collections.emptyList() : geneAnnotations;
+    }
+
+    public int getNumAnnotatedGenes() {
+        return geneId2annotations.size();
+    }
+
+    public String getScoreDistributionFolder() {
+        return scoreDistributionFolder;
+    }
+
+    /**
+     * Calculates the semantic similarity of the query terms to the terms annotated to a gene.
+     */
+    public double computeObjectSimilarity(List<Term> queryTerms, List<Term> geneAnnotations, boolean symmetric) {
+        InformationContentObjectSimilarity similarityMeasure = symmetric ? symmetricSimilarityMeasure.get() : asymmetricSimilarityMeasure.get();
+        return similarityMeasure.computeObjectSimilarity(toArrayList(queryTerms), toArrayList(geneAnnotations));
+    }
+
+    private static ArrayList<Term> toArrayList(List<Term> terms) {
+        return terms instanceof ArrayList ? (ArrayList<Term>) terms : new ArrayList<>(terms);
+    }
+
+    public static class PhenixEngineException extends RuntimeException {
+
+        public PhenixEngineException(String message) {
+            super(message);
+        }
+    }
+}
@@ -20,22 +20,14 @@
 
 package org.monarchinitiative.exomiser.core.prioritisers;
 
-import hpo.HPOutils;
-import ontologizer.go.*;
+import ontologizer.go.Term;
 import org.monarchinitiative.exomiser.core.model.Gene;
 import org.monarchinitiative.exomiser.core.prioritisers.util.ScoreDistribution;
 import org.monarchinitiative.exomiser.core.prioritisers.util.ScoreDistributionContainer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import similarity.SimilarityUtilities;
-import similarity.concepts.ResnikSimilarity;
-import similarity.objects.InformationContentObjectSimilarity;
-import sonumina.math.graph.SlimDirectedGraphView;
-
-import java.io.BufferedReader;
-import java.io.File;
-import java.io.IOException;
-import java.nio.file.Files;
+
+import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.*;
 import java.util.function.Function;
@@ -61,26 +53,15 @@ public class PhenixPriority implements Prioritiser {
     private static final Logger logger = LoggerFactory.getLogger(PhenixPriority.class);
 
     private static final PriorityType PRIORITY_TYPE = PriorityType.PHENIX_PRIORITY;
-    /**
-     * The HPO as Ontologizer-Ontology object
-     */
-    private Ontology hpo;
-
-    /**
-     * The semantic similarity measure used to calculate phenotypic similarity
-     */
-    private InformationContentObjectSimilarity similarityMeasure;
 
     private static final double DEFAULT_SCORE = 0;
 
-    private Map<String, List<Term>> geneId2annotations;
-
-    private boolean symmetric;
     /**
-     * Path to the directory that has the files needed to calculate the score
-     * distribution.
+     * The HPO, gene annotations and information content shared by all instances.
      */
-    private String scoredistributionFolder;
+    private PhenixEngine phenixEngine;
+
+    private boolean symmetric;
 
 //counters for stats
     /**
@@ -100,36 +81,29 @@ public class PhenixPriority implements Prioritiser {
 
 
     /**
-     * Create a new instance of the PhenixPriority.
+     * Create a new instance of the PhenixPriority. This loads all the PhenIX data, so where possible a shared
+     * {@link PhenixEngine} should be used with the {@link #PhenixPriority(PhenixEngine, boolean)} constructor.
      *
      * @param scoreDistributionFolder Folder which contains the score
      * distributions (e.g. 3.out, 3_symmetric.out, 4.out, 4_symmetric.out). It
-     * must also contain the files hp.obo (obtained from
-     * {@code http://compbio.charite.de/hudson/job/hpo/}) and
-     * ALL_SOURCES_ALL_FREQUENCIES_genes_to_phenotype.txt-file (obtained from
-     * {@code http://compbio.charite.de/hudson/job/hpo.annotations.monthly/lastSuccessfulBuild/artifact/annotation/}).
+     * must also contain the files hp.obo and
+     * ALL_SOURCES_ALL_FREQUENCIES_genes_to_phenotype.txt-file.
      * @param symmetric Flag to indicate if the semantic similarity score should
      * be calculated using the symmetrix formula.
-     * @see <a href="http://purl.obolibrary.org/obo/hp/uberpheno/">Uberpheno
-     * Hudson page</a>
+     * @see PhenixEngine#load(Path)
      */
     public PhenixPriority(String scoreDistributionFolder, boolean symmetric) {
+        this(PhenixEngine.load(Paths.get(scoreDistributionFolder)), symmetric);
+    }
 
-        if (!scoreDistributionFolder.endsWith(File.separator)) {
-            scoreDistributionFolder += File.separator;
-        }
-        this.scoredistributionFolder = scoreDistributionFolder;
+    /**
+     * @param phenixEngine the loaded PhenIX data.
+     * @param symmetric Flag to indicate if the semantic similarity score should
+     * be calculated using the symmetrix formula.
+     */
+    public PhenixPriority(PhenixEngine phenixEngine, boolean symmetric) {
+        this.phenixEngine = phenixEngine;
         this.symmetric = symmetric;
-
-        String hpoOboFile = String.format("%s%s", scoreDistributionFolder, "hp.obo");
-        String hpoAnnotationFile = String.format("%s%s", scoreDistributionFolder, "ALL_SOURCES_ALL_FREQUENCIES_genes_to_phenotype.txt");
-        //The phenixData directory must contain the files "hp.obo", "ALL_SOURCES_ALL_FREQUENCIES_genes_to_phenotype.txt"
-        //as well as the score distribution files "*.out", all of which can be downloaded from the HPO hudson server.
-        this.hpo = parseOntology(hpoOboFile);
-        //The HPO as SlimDirectedGraph (fast access to ancestors etc.)
-        SlimDirectedGraphView<Term> hpoSlim = hpo.getSlimGraphView();
-        this.geneId2annotations = parseAnnotations(hpoAnnotationFile, hpo, hpoSlim);
-        this.similarityMeasure = calculateInformationContentSimilarityMeasures(symmetric, hpo, hpoSlim, geneId2annotations);
     }
 
     /**
@@ -140,122 +114,6 @@ protected PhenixPriority(boolean symmetric) {
         this.symmetric = symmetric;
     }
 
-    private InformationContentObjectSimilarity calculateInformationContentSimilarityMeasures(boolean symmetric, Ontology hpo, SlimDirectedGraphView<Term> hpoSlim, Map<String, List<Term>> geneId2annotations) {
-        Map<Term, Double> term2ic = calculateTermIC(hpo, hpoSlim, geneId2annotations);
-        ResnikSimilarity resnik = new ResnikSimilarity(hpo, (HashMap<Term, Double>) term2ic);
-        return new InformationContentObjectSimilarity(resnik, symmetric, false);
-    }
-
-    /**
-     * Parses the human-phenotype-ontology.obo file (or equivalently, the hp.obo
-     * file from our Hudosn server).
-     *
-     * @param hpoOboFile path to the hp.obo file.
-     */
-    private Ontology parseOntology(String hpoOboFile) {
-        OBOParser oboParser = new OBOParser(hpoOboFile, OBOParser.PARSE_XREFS);
-
-        try {
-            String parseInfo = oboParser.doParse();
-            logger.info(parseInfo);
-        } catch (IOException | OBOParserException e) {
-            logger.error("Error parsing HPO OBO file", e);
-        }
-
-        TermContainer termContainer = new TermContainer(oboParser.getTermMap(), oboParser.getFormatVersion(), oboParser.getDate());
-        Ontology hpoOntology = new Ontology(termContainer);
-        hpoOntology.setRelevantSubontology(termContainer.get(HPOutils.organAbnormalityRootId).getName());
-        return hpoOntology;
-    }
-
-    /**
-     * Parse the HPO phenotype annotation file (e.g., phenotype_annotation.tab).
-     * The point of this is to get the links between diseases and HPO phenotype
-     * terms. The hpoAnnotationFile is The
-     * ALL_SOURCES_ALL_FREQUENCIES_genes_to_phenotype.txt-file
-     *
-     * @param hpoAnnotationFile path to the file
-     */
-    private Map<String, List<Term>> parseAnnotations(String hpoAnnotationFile, Ontology hpo, SlimDirectedGraphView<Term> hpoSlim) {
-        Map<String, List<Term>> geneAnnotations = new HashMap<>();
-        logger.info("Parsing Annotations file {}", hpoAnnotationFile);
-
-        try (BufferedReader bufferedReader = Files.newBufferedReader(Paths.get(hpoAnnotationFile))) {
-            String line;
-            while ((line = bufferedReader.readLine()) != null) {
-                if (line.startsWith("#")) {
-                    continue;
-                }
-
-                String[] split = line.split("\t");
-                String entrez = split[0];
-                Term term = null;
-                try {
-                /* split[4] is the HPO term field of an annotation line. */
-                    term = hpo.getTermIncludingAlternatives(split[3]);
-                } catch (IllegalArgumentException e) {
-                    logger.error("Unable to get term for line \n{}\n", line);
-                    logger.error("The offending field was '{}'", split[3]);
-                    for (int k = 0; k < split.length; ++k) {
-                        logger.error("{} '{}'", k, split[k]);
-                    }
-                    logger.error("", e);
-                }
-                if (term != null) {
-                    geneAnnotations.computeIfAbsent(entrez, annotations -> new ArrayList<>()).add(term);
-                }
-            }
-        } catch (IOException e) {
-            logger.error("Error parsing annotation file {}", hpoAnnotationFile, e);
-        }
-
-        // cleanup annotations
-        for (Map.Entry<String, List<Term>> entry : geneAnnotations.entrySet()) {
-            String entrezId = entry.getKey();
-            List<Term> uniqueTerms = entry.getValue().stream().distinct().collect(Collectors.toCollection(ArrayList::new));
-            List<Term> mostSpecificTerms = HPOutils.cleanUpAssociation((ArrayList<Term>) uniqueTerms, hpoSlim, hpo.getRootTerm());
-            geneAnnotations.put(entrezId, mostSpecificTerms);
-        }
-        logger.info("Made HPO annotations for {} genes", geneAnnotations.size());
-        return geneAnnotations;
-    }
-
-    private Map<Term, Double> calculateTermIC(Ontology ontology, SlimDirectedGraphView<Term> hpoSlim, Map<String, List<Term>> geneId2annotations) {
-
-        // prepare IC computation
-        // here we store which objects have been annotated with this term
-        final Map<Term, Set<String>> annotationTerm2geneIds = new HashMap<>();
-        for (Map.Entry<String, List<Term>> entry : geneId2annotations.entrySet()) {
-            String entrezId = entry.getKey();
-            List<Term> annotations = entry.getValue();
-            for (Term annot : annotations) {
-                List<Term> termAndAncestors = hpoSlim.getAncestors(annot);
-                for (Term term : termAndAncestors) {
-                    annotationTerm2geneIds.computeIfAbsent(term, objectsAnnotatedByTerm -> new HashSet<>()).add(entrezId);
-                }
-            }
-        }
-
-        Map<Term, Integer> termFrequencies = annotationTerm2geneIds.entrySet().stream()
-                .collect(toMap(Map.Entry::getKey, entry -> entry.getValue().size()));
-
-        Term root = ontology.getRootTerm();
-        int maxFreq = termFrequencies.get(root);
-        double ICzeroCountTerms = -1 * (Math.log(1 / (double) maxFreq));
-
-        Map<Term, Double> term2informationContent = SimilarityUtilities.caculateInformationContent(maxFreq, (HashMap<Term, Integer>) termFrequencies);
-        int frequencyZeroCounter = 0;
-        for (Term t : ontology) {
-            if (!termFrequencies.containsKey(t)) {
-                ++frequencyZeroCounter;
-                term2informationContent.put(t, ICzeroCountTerms);
-            }
-        }
-
-        logger.info("WARNING: Frequency of {} terms was zero!! Set IC of these to : {}", frequencyZeroCounter, ICzeroCountTerms);
-        return term2informationContent;
-    }
-
     /**
      * Flag to output results of filtering against Uberpheno data.
      */
@@ -274,7 +132,7 @@ public Stream<PhenixPriorityResult> prioritise(List<String> hpoIds, List<Gene> g
         List<Term> hpoQueryTerms = makeHpoQueryTerms(hpoIds);
         logger.info("Created HPO query terms {}", hpoQueryTerms);
 
-        ScoreDistributionContainer scoredistributionContainer = new ScoreDistributionContainer(scoredistributionFolder, symmetric, hpoQueryTerms.size());
+        ScoreDistributionContainer scoredistributionContainer = new ScoreDistributionContainer(phenixEngine.getScoreDistributionFolder(), symmetric, hpoQueryTerms.size());
 
         Map<Gene, PhenixScore> geneScores = genes.stream().collect(toMap(Function.identity(), scoreGene(hpoQueryTerms, scoredistributionContainer)));
 
@@ -282,7 +140,7 @@ public Stream<PhenixPriorityResult> prioritise(List<String> hpoIds, List<Gene> g
         double maxNegLogP = geneScores.values().stream().mapToDouble(PhenixScore::getNegativeLogP).max().orElse(DEFAULT_SCORE);
         double normalisationFactor = calculateNormalisationFactor(maxSemSimScore);
 
-        logger.info("Data investigated in HPO for {} genes. No data for {} genes", genes.size(), geneId2annotations.keySet().size());
+        logger.info("Data investigated in HPO for {} genes. No data for {} genes", genes.size(), phenixEngine.getNumAnnotatedGenes());
         return geneScores.entrySet().stream()
                 .map(entry -> {
                     Gene gene = entry.getKey();
@@ -295,7 +153,7 @@ public Stream<PhenixPriorityResult> prioritise(List<String> hpoIds, List<Gene> g
     private List<Term> makeHpoQueryTerms(List<String> hpoIds) {
         return hpoIds.stream()
                 .map(termIdString -> {
-                    Term term = hpo.getTermIncludingAlternatives(termIdString);
+                    Term term = phenixEngine.getTerm(termIdString);
                     if (term == null) {
                         logger.error("Unrecognised HPO input term {}. This will not be used in the analysis.", termIdString);
                     }
@@ -311,12 +169,12 @@ private Function<Gene, PhenixScore> scoreGene(List<Term> queryTerms, ScoreDistri
             int entrezGeneId = gene.getEntrezGeneID();
             String geneIdString = Integer.toString(entrezGeneId);
 
-            if (!geneId2annotations.containsKey(geneIdString)) {
+            List<Term> geneAnnotations = phenixEngine.getGeneAnnotations(geneIdString);
+            if (geneAnnotations.isEmpty()) {
                 return new PhenixScore(DEFAULT_SCORE, DEFAULT_SCORE);
             }
 
-            List<Term> geneAnnotations = geneId2annotations.get(geneIdString);
-            double semanticSimilarityScore = similarityMeasure.computeObjectSimilarity( (ArrayList<Term>) queryTerms, (ArrayList<Term>) geneAnnotations);
+            double semanticSimilarityScore = phenixEngine.computeObjectSimilarity(queryTerms, geneAnnotations, symmetric);
 
             if (Double.isNaN(semanticSimilarityScore)) {
                 logger.error("Score was NaN for geneId: {} : ", entrezGeneId, queryTerms);
@@ -84,9 +84,7 @@ public Stream<PhivePriorityResult> prioritise(List<String> hpoIds, List<Gene> ge
 
         Set<Integer> wantedGeneIds = genes.stream().map(Gene::getEntrezGeneID).collect(ImmutableSet.toImmutableSet());
 
-        Set<GeneModel> modelsToScore = priorityService.getModelsForOrganism(Organism.MOUSE).stream()
-                .filter(model -> wantedGeneIds.contains(model.getEntrezGeneId()))
-                .collect(ImmutableSet.toImmutableSet());
+        List<GeneModel> modelsToScore = priorityService.getModelsForOrganismAndGenes(Organism.MOUSE, wantedGeneIds);
 
         List<GeneModelPhenotypeMatch> scoredModels = scoreModels(humanMousePhenotypeMatcher, modelsToScore);
 
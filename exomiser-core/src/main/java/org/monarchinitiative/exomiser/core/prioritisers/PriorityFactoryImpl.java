@@ -25,6 +25,8 @@
  */
 package org.monarchinitiative.exomiser.core.prioritisers;
 
+import com.google.common.base.Supplier;
+import com.google.common.base.Suppliers;
 import org.monarchinitiative.exomiser.core.prioritisers.service.PriorityService;
 import org.monarchinitiative.exomiser.core.prioritisers.util.DataMatrix;
 import org.slf4j.Logger;
@@ -49,7 +51,8 @@ public class PriorityFactoryImpl implements PriorityFactory {
 
     private final PriorityService priorityService;
     private final DataMatrix randomWalkMatrix;
-    private final Path phenixDataDirectory;
+    //the PhenIX data is slow to load and isn't always required, so it is loaded once on first use and then shared
+    private final Supplier<PhenixEngine> phenixEngine;
 
     // The randomWalkMatrix takes about 1min to load into RAM and isn't always required, so @Lazy is used to defer loading
     // until it is required.
@@ -58,7 +61,7 @@ public class PriorityFactoryImpl implements PriorityFactory {
     public PriorityFactoryImpl(PriorityService priorityService, DataMatrix randomWalkMatrix, Path phenixDataDirectory) {
         this.priorityService = priorityService;
         this.randomWalkMatrix = randomWalkMatrix;
-        this.phenixDataDirectory = phenixDataDirectory;
+        this.phenixEngine = Suppliers.memoize(() -> PhenixEngine.load(phenixDataDirectory));
     }
 
     /**
@@ -118,7 +121,7 @@ public OMIMPriority makeOmimPrioritiser() {
     @Override
     public PhenixPriority makePhenixPrioritiser() {
         boolean symmetric = false;
-        return new PhenixPriority(phenixDataDirectory.toString(), symmetric);
+        return new PhenixPriority(phenixEngine.get(), symmetric);
     }
 
     @Override
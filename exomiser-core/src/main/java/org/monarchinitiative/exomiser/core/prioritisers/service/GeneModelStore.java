@@ -0,0 +1,218 @@
+/*
+ * The Exomiser - A tool to annotate and prioritize genomic variants
+ *
+ * Copyright (c) 2016-2017 Queen Mary University of London.
+ * Copyright (c) 2012-2016 Charité Universitätsmedizin Berlin and Genome Research Ltd.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.monarchinitiative.exomiser.core.prioritisers.service;
+
+import org.monarchinitiative.exomiser.core.phenotype.Organism;
+import org.monarchinitiative.exomiser.core.prioritisers.model.GeneDiseaseModel;
+import org.monarchinitiative.exomiser.core.prioritisers.model.GeneModel;
+import org.monarchinitiative.exomiser.core.prioritisers.model.GeneOrthologModel;
+
+import java.util.*;
+
+/**
+ * Memory-resident store of the {@link GeneModel} for an organism, indexed by entrez gene id. This is built once from
+ * the models returned by the database so that each prioritiser run only needs to look up the models for the genes it
+ * is interested in, rather than re-reading and filtering every model.
+ * <p>
+ * The models are held in entrez gene id order with a column of the distinct gene ids and the offset of their first
+ * model, so finding the models for a gene is a binary search. The phenotype ids of every model are interned and stored
+ * as slices of a single shared int array, with each model's phenotype id list being a read-only view over its slice.
+ * This saves a String and a List per model phenotype across the hundreds of thousands of models.
+ *
+ * @author Jules Jacobsen <j.jacobsen@qmul.ac.uk>
+ */
+public final class GeneModelStore {
+
+    private final Organism organism;
+    //distinct entrez gene ids in ascending order and the offset of their first model in the models
+    private final int[] geneIds;
+    private final int[] geneOffsets;
+    private final GeneModel[] models;
+    private final int numPhenotypeIds;
+
+    private GeneModelStore(Organism organism, int[] geneIds, int[] geneOffsets, GeneModel[] models, int numPhenotypeIds) {
+        this.organism = organism;
+        this.geneIds = geneIds;
+        this.geneOffsets = geneOffsets;
+        this.models = models;
+        this.numPhenotypeIds = numPhenotypeIds;
+    }
+
+    public static GeneModelStore empty(Organism organism) {
+        return of(organism, Collections.emptyList());
+    }
+
+    public static GeneModelStore of(Organism organism, Collection<GeneModel> geneModels) {
+        GeneModel[] sortedModels = geneModels.toArray(new GeneModel[geneModels.size()]);
+        //this is a stable sort, so models for the same gene remain in the order they were supplied
+        Arrays.sort(sortedModels, Comparator.comparingInt(GeneModel::getEntrezGeneId));
+
+        int numPhenotypes = 0;
+        for (GeneModel model : sortedModels) {
+            numPhenotypes += model.getPhenotypeIds().size();
+        }
+        int[] phenotypePool = new int[numPhenotypes];
+        Map<String, Integer> phenotypeIndex = new HashMap<>();
+        List<String> phenotypeIds = new ArrayList<>();
+        int[] phenotypeOffsets = new int[sortedModels.length + 1];
+        int position = 0;
+        for (int i = 0; i < sortedModels.length; i++) {
+            phenotypeOffsets[i] = position;
+            for (String phenotypeId : sortedModels[i].getPhenotypeIds()) {
+                Integer index = phenotypeIndex.get(phenotypeId);
+                if (index == null) {
+                    index = phenotypeIds.size();
+                    phenotypeIndex.put(phenotypeId, index);
+                    phenotypeIds.add(phenotypeId);
+                }
+                phenotypePool[position++] = index;
+            }
+        }
+        phenotypeOffsets[sortedModels.length] = position;
+
+        String[] phenotypeDictionary = phenotypeIds.toArray(new String[phenotypeIds.size()]);
+        for (int i = 0; i < sortedModels.length; i++) {
+            List<String> modelPhenotypeIds = new PhenotypeIdSlice(phenotypeDictionary, phenotypePool, phenotypeOffsets[i], phenotypeOffsets[i + 1]);
+            sortedModels[i] = withPhenotypeIds(sortedModels[i], modelPhenotypeIds);
+        }
+
+        int numGenes = 0;
+        int[] geneIds = new int[sortedModels.length];
+        int[] geneOffsets = new int[sortedModels.length + 1];
+        for (int i = 0; i < sortedModels.length; i++) {
+            int entrezGeneId = sortedModels[i].getEntrezGeneId();
+            if (numGenes == 0 || geneIds[numGenes - 1] != entrezGeneId) {
+                geneIds[numGenes] = entrezGeneId;
+                geneOffsets[numGenes] = i;
+                numGenes++;
+            }
+        }
+        geneOffsets[numGenes] = sortedModels.length;
+        return new GeneModelStore(organism, Arrays.copyOf(geneIds, numGenes), Arrays.copyOf(geneOffsets, numGenes + 1), sortedModels, phenotypeDictionary.length);
+    }
+
+    private static GeneModel withPhenotypeIds(GeneModel model, List<String> phenotypeIds) {
+        if (model instanceof GeneDiseaseModel) {
+            GeneDiseaseModel diseaseModel = (GeneDiseaseModel) model;
+            return new GeneDiseaseModel(model.getId(), model.getOrganism(), model.getEntrezGeneId(), model.getHumanGeneSymbol(), diseaseModel
+                    .getDiseaseId(), diseaseModel.getDiseaseTerm(), phenotypeIds);
+        }
+        if (model instanceof GeneOrthologModel) {
+            GeneOrthologModel orthologModel = (GeneOrthologModel) model;
+            return new GeneOrthologModel(model.getId(), model.getOrganism(), model.getEntrezGeneId(), model.getHumanGeneSymbol(), orthologModel
+                    .getModelGeneId(), orthologModel.getModelGeneSymbol(), phenotypeIds);
+        }
+        //we don't know how to copy this, so leave it be
+        return model;
+    }
+
+    public Organism getOrganism() {
+        return organism;
+    }
+
+    public int size() {
+        return models.length;
+    }
+
+    public int numGenes() {
+        return geneIds.length;
+    }
+
+    public int numPhenotypeIds() {
+        return numPhenotypeIds;
+    }
+
+    public boolean isEmpty() {
+        return models.length == 0;
+    }
+
+    /**
+     * @return all the models, in entrez gene id order.
+     */
+    public List<GeneModel> getModels() {
+        return Collections.unmodifiableList(Arrays.asList(models));
+    }
+
+    public List<GeneModel> getModelsForGene(int entrezGeneId) {
+        int geneIndex = Arrays.binarySearch(geneIds, entrezGeneId);
+        if (geneIndex < 0) {
+            return Collections.emptyList();
+        }
+        return Collections.unmodifiableList(Arrays.asList(models).subList(geneOffsets[geneIndex], geneOffsets[geneIndex + 1]));
+    }
+
+    /**
+     * @return the models associated with any of the genes. Genes without any models are ignored.
+     */
+    public List<GeneModel> getModelsForGenes(Collection<Integer> entrezGeneIds) {
+        List<GeneModel> geneModels = new ArrayList<>();
+        for (Integer entrezGeneId : entrezGeneIds) {
+            int geneIndex = Arrays.binarySearch(geneIds, entrezGeneId);
+            if (geneIndex >= 0) {
+                for (int i = geneOffsets[geneIndex]; i < geneOffsets[geneIndex + 1]; i++) {
+                    geneModels.add(models[i]);
+                }
+            }
+        }
+        return geneModels;
+    }
+
+    @Override
+    public String toString() {
+        return "GeneModelStore{" +
+                "organism=" + organism +
+                ", models=" + models.length +
+                ", genes=" + geneIds.length +
+                ", phenotypeIds=" + numPhenotypeIds +
+                '}';
+    }
+
+    /**
+     * Read-only view of the interned phenotype ids of a model.
+     */
+    private static final class PhenotypeIdSlice extends AbstractList<String> implements RandomAccess {
+
+        private final String[] phenotypeDictionary;
+        private final int[] phenotypePool;
+        private final int start;
+        private final int end;
+
+        private PhenotypeIdSlice(String[] phenotypeDictionary, int[] phenotypePool, int start, int end) {
+            this.phenotypeDictionary = phenotypeDictionary;
+            this.phenotypePool = phenotypePool;
+            this.start = start;
+            this.end = end;
+        }
+
+        @Override
+        public String get(int index) {
+            if (index < 0 || index >= size()) {
+                throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size());
+            }
+            return phenotypeDictionary[phenotypePool[start + index]];
+        }
+
+        @Override
+        public int size() {
+            return end - start;
+        }
+    }
+}
@@ -25,6 +25,7 @@
  */
 package org.monarchinitiative.exomiser.core.prioritisers.service;
 
+import org.monarchinitiative.exomiser.core.phenotype.Organism;
 import org.monarchinitiative.exomiser.core.prioritisers.model.GeneModel;
 
 import java.util.List;
@@ -42,4 +43,9 @@ public interface ModelService {
 
     List<GeneModel> getFishGeneOrthologModels();
 
+    /**
+     * @return the models for the organism indexed by entrez gene id.
+     */
+    GeneModelStore getModelStore(Organism organism);
+
 }
@@ -25,6 +25,8 @@
  */
 package org.monarchinitiative.exomiser.core.prioritisers.service;
 
+import com.google.common.base.Supplier;
+import com.google.common.base.Suppliers;
 import org.monarchinitiative.exomiser.core.phenotype.Organism;
 import org.monarchinitiative.exomiser.core.prioritisers.model.GeneDiseaseModel;
 import org.monarchinitiative.exomiser.core.prioritisers.model.GeneModel;
@@ -39,9 +41,8 @@
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
-import java.util.ArrayList;
-import java.util.Arrays;
-import java.util.List;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  *
@@ -55,8 +56,51 @@ public class ModelServiceImpl implements ModelService {
     @Autowired
     private DataSource dataSource;
 
+    //the models are only read from the database once, after which they are held in memory for the lifetime of the service.
+    //The load happens in the memoising supplier rather than inside computeIfAbsent so that the map isn't locked for the
+    //duration of the query and a failed load isn't remembered.
+    private final Map<Organism, Supplier<GeneModelStore>> modelStores = new ConcurrentHashMap<>();
+
     @Override
     public List<GeneModel> getHumanGeneDiseaseModels() {
+        return getModelStore(Organism.HUMAN).getModels();
+    }
+
+    @Override
+    public List<GeneModel> getMouseGeneOrthologModels() {
+        return getModelStore(Organism.MOUSE).getModels();
+    }
+
+    @Override
+    public List<GeneModel> getFishGeneOrthologModels() {
+        return getModelStore(Organism.FISH).getModels();
+    }
+
+    @Override
+    public GeneModelStore getModelStore(Organism organism) {
+        return modelStores.computeIfAbsent(organism, key -> Suppliers.memoize(() -> loadModelStore(key))).get();
+    }
+
+    private GeneModelStore loadModelStore(Organism organism) {
+        GeneModelStore modelStore = GeneModelStore.of(organism, loadModels(organism));
+        logger.info("Loaded {}", modelStore);
+        return modelStore;
+    }
+
+    private Collection<GeneModel> loadModels(Organism organism) {
+        switch (organism) {
+            case HUMAN:
+                return loadHumanGeneDiseaseModels();
+            case MOUSE:
+                return loadMouseGeneOrthologModels();
+            case FISH:
+                return loadFishGeneOrthologModels();
+            default:
+                return Collections.emptyList();
+        }
+    }
+
+    private Set<GeneModel> loadHumanGeneDiseaseModels() {
         // We only connect to human2mouse_orthologs to get the human_gene_symbol but if there is no orthology mapping we get 0 results and no disease hit at all - this is daft!
         // Tried to replace with the below - should be more successful
         String modelQuery = "SELECT distinct 'HUMAN' as organism, gene_id as entrez_id, symbol as human_gene_symbol, d.disease_id as disease_id, d.diseasename as disease_term, hp_id as pheno_ids FROM entrez2sym e, disease_hp M, disease d WHERE e.entrezid=d.gene_id and M.disease_id=d.disease_id"; 
@@ -64,20 +108,19 @@ public List<GeneModel> getHumanGeneDiseaseModels() {
         return runGeneDiseaseModelQuery(modelQuery);
     }
 
-    @Override
-    public List<GeneModel> getMouseGeneOrthologModels() {
+    private Set<GeneModel> loadMouseGeneOrthologModels() {
         String modelQuery = "SELECT 'MOUSE' as organism, entrez_id, human_gene_symbol, mouse_model_id as model_id, M.mgi_gene_id as model_gene_id, M.mgi_gene_symbol as model_gene_symbol, mp_id as pheno_ids FROM mgi_mp M, human2mouse_orthologs H WHERE M.mgi_gene_id=H.mgi_gene_id and human_gene_symbol != 'null'";
         return runGeneOrthologModelQuery(modelQuery);
     }
 
-    @Override
-    public List<GeneModel> getFishGeneOrthologModels() {
+    private Set<GeneModel> loadFishGeneOrthologModels() {
         String modelQuery = "SELECT 'FISH' as organism, entrez_id, human_gene_symbol, zfin_model_id as model_id, M.zfin_gene_id as model_gene_id, M.zfin_gene_symbol as model_gene_symbol, zp_id as pheno_ids FROM zfin_zp M, human2fish_orthologs H WHERE M.zfin_gene_id=H.zfin_gene_id and human_gene_symbol != 'null'";
         return runGeneOrthologModelQuery(modelQuery);
     }
 
-    private List<GeneModel> runGeneDiseaseModelQuery(String modelQuery) {
-        List<GeneModel> models = new ArrayList<>();
+    private Set<GeneModel> runGeneDiseaseModelQuery(String modelQuery) {
+        //a model can be returned more than once by the joins, so these are de-duplicated in the order they were read
+        Set<GeneModel> models = new LinkedHashSet<>();
         try (Connection connection = dataSource.getConnection();
                 PreparedStatement findAnnotationStatement = connection.prepareStatement(modelQuery);
                 ResultSet rs = findAnnotationStatement.executeQuery()) {
@@ -108,8 +151,9 @@ private List<GeneModel> runGeneDiseaseModelQuery(String modelQuery) {
         return models;
     }
         
-    private List<GeneModel> runGeneOrthologModelQuery(String modelQuery) {
-        List<GeneModel> models = new ArrayList<>();
+    private Set<GeneModel> runGeneOrthologModelQuery(String modelQuery) {
+        //a model can be returned more than once by the joins, so these are de-duplicated in the order they were read
+        Set<GeneModel> models = new LinkedHashSet<>();
         try (Connection connection = dataSource.getConnection();
                 PreparedStatement findAnnotationStatement = connection.prepareStatement(modelQuery);
                 ResultSet rs = findAnnotationStatement.executeQuery()) {
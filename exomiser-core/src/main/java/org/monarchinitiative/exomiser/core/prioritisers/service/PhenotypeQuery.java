@@ -0,0 +1,151 @@
+/*
+ * The Exomiser - A tool to annotate and prioritize genomic variants
+ *
+ * Copyright (c) 2016-2017 Queen Mary University of London.
+ * Copyright (c) 2012-2016 Charité Universitätsmedizin Berlin and Genome Research Ltd.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.monarchinitiative.exomiser.core.prioritisers.service;
+
+import com.google.common.collect.ImmutableList;
+import org.monarchinitiative.exomiser.core.phenotype.Organism;
+import org.monarchinitiative.exomiser.core.phenotype.PhenotypeMatch;
+import org.monarchinitiative.exomiser.core.phenotype.PhenotypeMatcher;
+import org.monarchinitiative.exomiser.core.phenotype.PhenotypeTerm;
+import org.monarchinitiative.exomiser.core.prioritisers.model.GeneModelPhenotypeMatch;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.BiFunction;
+import java.util.function.Consumer;
+
+/**
+ * Holds the work done scoring a set of query HPO terms against the organism phenotypes and models so that it can be
+ * re-used by later analyses with the same query terms. The {@link PhenotypeMatcher} for each organism is built on
+ * first request and the best scoring model for each gene is recorded as the genes are scored, so a repeat query only
+ * needs to score genes which have not been seen before.
+ * <p>
+ * This class is thread-safe.
+ *
+ * @author Jules Jacobsen <j.jacobsen@qmul.ac.uk>
+ */
+public final class PhenotypeQuery {
+
+    //approximate bytes used by the query itself and each of the entries it holds, including the map or set nodes
+    private static final long BASE_BYTES = 512;
+    private static final long QUERY_TERM_BYTES = 64;
+    private static final long PHENOTYPE_MATCH_BYTES = 160;
+    private static final long SCORED_GENE_BYTES = 48;
+    private static final long BEST_GENE_MODEL_BYTES = 128;
+    private static final long REFERENCE_BYTES = 8;
+
+    private final List<PhenotypeTerm> queryTerms;
+    private final BiFunction<List<PhenotypeTerm>, Organism, PhenotypeMatcher> phenotypeMatcherFactory;
+    private final Consumer<PhenotypeQuery> updateListener;
+
+    private final Map<Organism, PhenotypeMatcher> phenotypeMatchers = new ConcurrentHashMap<>();
+    private final Map<Organism, Map<Integer, GeneModelPhenotypeMatch>> bestGeneModels = new ConcurrentHashMap<>();
+    private final Map<Organism, Set<Integer>> scoredGeneIds = new ConcurrentHashMap<>();
+
+    PhenotypeQuery(List<PhenotypeTerm> queryTerms, BiFunction<List<PhenotypeTerm>, Organism, PhenotypeMatcher> phenotypeMatcherFactory) {
+        this(queryTerms, phenotypeMatcherFactory, query -> {});
+    }
+
+    /**
+     * @param updateListener called each time the query records a new phenotype matcher or scored genes.
+     */
+    PhenotypeQuery(List<PhenotypeTerm> queryTerms, BiFunction<List<PhenotypeTerm>, Organism, PhenotypeMatcher> phenotypeMatcherFactory, Consumer<PhenotypeQuery> updateListener) {
+        this.queryTerms = ImmutableList.copyOf(queryTerms);
+        this.phenotypeMatcherFactory = phenotypeMatcherFactory;
+        this.updateListener = updateListener;
+    }
+
+    public List<PhenotypeTerm> getQueryTerms() {
+        return queryTerms;
+    }
+
+    public PhenotypeMatcher getPhenotypeMatcher(Organism organism) {
+        PhenotypeMatcher phenotypeMatcher = phenotypeMatchers.get(organism);
+        if (phenotypeMatcher != null) {
+            return phenotypeMatcher;
+        }
+        phenotypeMatcher = phenotypeMatchers.computeIfAbsent(organism, key -> phenotypeMatcherFactory.apply(queryTerms, key));
+        updateListener.accept(this);
+        return phenotypeMatcher;
+    }
+
+    /**
+     * @return the genes from those supplied which have not yet been scored against the organism's models.
+     */
+    public Set<Integer> getUnscoredGeneIds(Organism organism, Collection<Integer> entrezGeneIds) {
+        Set<Integer> organismScoredGeneIds = scoredGeneIds.getOrDefault(organism, Collections.emptySet());
+        Set<Integer> unscoredGeneIds = new LinkedHashSet<>();
+        for (Integer entrezGeneId : entrezGeneIds) {
+            if (!organismScoredGeneIds.contains(entrezGeneId)) {
+                unscoredGeneIds.add(entrezGeneId);
+            }
+        }
+        return unscoredGeneIds;
+    }
+
+    /**
+     * Records the best models for the scored genes. Scored genes with no entry in the bestGeneModels have no model
+     * which matches the query.
+     */
+    public void addBestGeneModels(Organism organism, Collection<Integer> scoredEntrezGeneIds, Map<Integer, GeneModelPhenotypeMatch> bestGeneModelsForOrganism) {
+        //the models must be visible before the genes are marked as scored
+        bestGeneModels.computeIfAbsent(organism, key -> new ConcurrentHashMap<>()).putAll(bestGeneModelsForOrganism);
+        scoredGeneIds.computeIfAbsent(organism, key -> ConcurrentHashMap.newKeySet()).addAll(scoredEntrezGeneIds);
+        updateListener.accept(this);
+    }
+
+    /**
+     * @return the best scoring model of the organism for the gene, or null if the gene has no matching model.
+     */
+    public GeneModelPhenotypeMatch getBestGeneModel(Organism organism, Integer entrezGeneId) {
+        return bestGeneModels.getOrDefault(organism, Collections.emptyMap()).get(entrezGeneId);
+    }
+
+    /**
+     * @return the approximate number of bytes held by the query, its phenotype matchers and the recorded gene scores.
+     */
+    long estimateSizeInBytes() {
+        long bytes = BASE_BYTES + queryTerms.size() * QUERY_TERM_BYTES;
+        for (PhenotypeMatcher phenotypeMatcher : phenotypeMatchers.values()) {
+            for (Set<PhenotypeMatch> termMatches : phenotypeMatcher.getTermPhenotypeMatches().values()) {
+                bytes += termMatches.size() * PHENOTYPE_MATCH_BYTES;
+            }
+        }
+        for (Set<Integer> organismScoredGeneIds : scoredGeneIds.values()) {
+            bytes += organismScoredGeneIds.size() * SCORED_GENE_BYTES;
+        }
+        for (Map<Integer, GeneModelPhenotypeMatch> organismBestGeneModels : bestGeneModels.values()) {
+            for (GeneModelPhenotypeMatch bestGeneModel : organismBestGeneModels.values()) {
+                //the phenotype matches themselves are shared with the phenotype matcher
+                bytes += BEST_GENE_MODEL_BYTES + bestGeneModel.getBestModelPhenotypeMatches().size() * REFERENCE_BYTES;
+            }
+        }
+        return bytes;
+    }
+
+    @Override
+    public String toString() {
+        return "PhenotypeQuery{" +
+                "queryTerms=" + queryTerms +
+                ", organisms=" + phenotypeMatchers.keySet() +
+                '}';
+    }
+}
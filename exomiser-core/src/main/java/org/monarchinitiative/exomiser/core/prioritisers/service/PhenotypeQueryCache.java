@@ -0,0 +1,132 @@
+/*
+ * The Exomiser - A tool to annotate and prioritize genomic variants
+ *
+ * Copyright (c) 2016-2017 Queen Mary University of London.
+ * Copyright (c) 2012-2016 Charité Universitätsmedizin Berlin and Genome Research Ltd.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.monarchinitiative.exomiser.core.prioritisers.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import com.google.common.collect.ImmutableList;
+import org.monarchinitiative.exomiser.core.phenotype.Organism;
+import org.monarchinitiative.exomiser.core.phenotype.PhenotypeMatcher;
+import org.monarchinitiative.exomiser.core.phenotype.PhenotypeTerm;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+import java.util.function.BiFunction;
+
+/**
+ * Bounded cache of {@link PhenotypeQuery} keyed by the query HPO ids, so that analyses re-run with the same phenotypes
+ * but different filter settings do not repeat the phenotype scoring. The ids are sorted to make the key independent
+ * of the input order. The phenotype data is loaded once and never changes while the application is running, so the
+ * entries never need to be invalidated.
+ * <p>
+ * A query grows as more genes are scored against it, so rather than counting the queries the cache is bounded by their
+ * approximate size in bytes. Each query is re-weighed whenever it records new scores and the least valuable queries
+ * are evicted once the cache is full. A maximum size of zero disables the cache.
+ *
+ * @author Jules Jacobsen <j.jacobsen@qmul.ac.uk>
+ */
+@Component
+public class PhenotypeQueryCache {
+
+    private static final Logger logger = LoggerFactory.getLogger(PhenotypeQueryCache.class);
+
+    public static final int DEFAULT_MAX_MB = 64;
+
+    private final long maxBytes;
+    private final Cache<List<String>, PhenotypeQuery> cache;
+
+    /**
+     * @param maxMb the approximate number of megabytes the cached queries may occupy
+     */
+    @Autowired
+    public PhenotypeQueryCache(@Value("${exomiser.phenotype-query-cache-max-mb:" + DEFAULT_MAX_MB + "}") int maxMb) {
+        this(maxMb * 1024L * 1024L);
+        logger.info("Phenotype query cache maximum size set to {} MB", maxMb);
+    }
+
+    PhenotypeQueryCache(long maxBytes) {
+        this.maxBytes = Math.max(maxBytes, 0);
+        this.cache = Caffeine.newBuilder()
+                .maximumWeight(this.maxBytes)
+                .weigher((List<String> key, PhenotypeQuery query) -> weigh(query))
+                .recordStats()
+                .build();
+    }
+
+    private static int weigh(PhenotypeQuery query) {
+        return (int) Math.min(query.estimateSizeInBytes(), Integer.MAX_VALUE);
+    }
+
+    /**
+     * Returns the cached query for the terms, creating a new one if there is none.
+     *
+     * @param queryTerms              HPO terms of the query.
+     * @param phenotypeMatcherFactory creates the {@link PhenotypeMatcher} for the terms and an organism.
+     */
+    public PhenotypeQuery get(List<PhenotypeTerm> queryTerms, BiFunction<List<PhenotypeTerm>, Organism, PhenotypeMatcher> phenotypeMatcherFactory) {
+        if (maxBytes == 0) {
+            return new PhenotypeQuery(queryTerms, phenotypeMatcherFactory);
+        }
+        //sorted by id, keeping any duplicates as these contribute to the scores. The order of the terms only affects
+        //the order in which the scores are summed, so the first query is used as given.
+        List<String> key = queryTerms.stream().map(PhenotypeTerm::getId).sorted().collect(ImmutableList.toImmutableList());
+        PhenotypeQuery phenotypeQuery = cache.get(key, newKey -> new PhenotypeQuery(queryTerms, phenotypeMatcherFactory, updatedQuery -> reweigh(newKey, updatedQuery)));
+        logger.debug("Phenotype query cache {}", cache.stats());
+        return phenotypeQuery;
+    }
+
+    /**
+     * Replacing the query with itself makes the cache re-calculate its weight. This is a no-op if the query has
+     * already been evicted.
+     */
+    private void reweigh(List<String> key, PhenotypeQuery phenotypeQuery) {
+        cache.asMap().replace(key, phenotypeQuery, phenotypeQuery);
+    }
+
+    public long size() {
+        cache.cleanUp();
+        return cache.estimatedSize();
+    }
+
+    /**
+     * @return the approximate number of bytes occupied by the cached queries.
+     */
+    public long weightedSize() {
+        cache.cleanUp();
+        return cache.policy().eviction().map(eviction -> eviction.weightedSize().orElse(0L)).orElse(0L);
+    }
+
+    /**
+     * @return the hit, miss and eviction counts of the cache.
+     */
+    public CacheStats getStats() {
+        return cache.stats();
+    }
+
+    public void clear() {
+        cache.invalidateAll();
+    }
+}
@@ -36,11 +36,10 @@
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.cache.annotation.Cacheable;
 import org.springframework.stereotype.Service;
 
-import java.util.Collections;
 import java.util.List;
+import java.util.Set;
 
 /**
  * Service class which offers a single interface to other services required by
@@ -56,12 +55,18 @@ public class PriorityService {
     private final ModelService modelService;
     private final PhenotypeMatchService phenotypeMatchService;
     private final DiseaseDao diseaseDao;
+    private final PhenotypeQueryCache phenotypeQueryCache;
 
-    @Autowired
     public PriorityService(ModelService modelService, PhenotypeMatchService phenotypeMatchService, DiseaseDao diseaseDao) {
+        this(modelService, phenotypeMatchService, diseaseDao, new PhenotypeQueryCache(PhenotypeQueryCache.DEFAULT_MAX_MB));
+    }
+
+    @Autowired
+    public PriorityService(ModelService modelService, PhenotypeMatchService phenotypeMatchService, DiseaseDao diseaseDao, PhenotypeQueryCache phenotypeQueryCache) {
         this.modelService = modelService;
         this.phenotypeMatchService = phenotypeMatchService;
         this.diseaseDao = diseaseDao;
+        this.phenotypeQueryCache = phenotypeQueryCache;
     }
 
     public List<String> getHpoIdsForDiseaseId(String diseaseId) {
@@ -85,19 +90,27 @@ public PhenotypeMatcher getPhenotypeMatcherForOrganism(List<PhenotypeTerm> query
         }
     }
 
-    @Cacheable(value = "models", key = "#species", cacheResolver = "modelCacheResolver")
-    public List<GeneModel> getModelsForOrganism(Organism species) {
-        logger.info("Fetching disease/gene model phenotype annotations and HUMAN-{} gene orthologs", species);
-        switch (species) {
-            case HUMAN:
-                return modelService.getHumanGeneDiseaseModels();
-            case MOUSE:
-                return modelService.getMouseGeneOrthologModels();
-            case FISH:
-                return modelService.getFishGeneOrthologModels();
-            default:
-                return Collections.emptyList();
-        }
+    /**
+     * Returns the cached {@link PhenotypeQuery} for the query terms, so that the phenotype matchers and model scores
+     * computed by an earlier analysis with the same terms are re-used.
+     */
+    public PhenotypeQuery getPhenotypeQuery(List<PhenotypeTerm> queryHpoPhenotypes) {
+        return phenotypeQueryCache.get(queryHpoPhenotypes, this::getPhenotypeMatcherForOrganism);
+    }
+
+    /**
+     * Returns a new {@link PhenotypeQuery} for the query terms which is not shared with any other analysis.
+     */
+    public PhenotypeQuery makePhenotypeQuery(List<PhenotypeTerm> queryHpoPhenotypes) {
+        return new PhenotypeQuery(queryHpoPhenotypes, this::getPhenotypeMatcherForOrganism);
+    }
+
+    /**
+     * Returns the models for the organism which are associated with any of the given genes. This is a direct lookup of
+     * the genes in the in-memory model store rather than a filter over all of the organism's models.
+     */
+    public List<GeneModel> getModelsForOrganismAndGenes(Organism species, Set<Integer> entrezGeneIds) {
+        return modelService.getModelStore(species).getModelsForGenes(entrezGeneIds);
     }
 
     public List<Disease> getDiseaseDataAssociatedWithGeneId(int geneId) {
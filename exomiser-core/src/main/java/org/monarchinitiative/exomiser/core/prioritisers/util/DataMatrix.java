@@ -29,7 +29,8 @@
 import java.util.Objects;
 
 /**
- * Contains the random walk relationships and the entrez-id to index relations.
+ * Contains the random walk relationships and the entrez-id to index relations. See {@link MappedDataMatrix} for a
+ * version which reads the relationships from a memory-mapped file on demand.
  *
  * @author Sebastian Köhler <dr.sebastian.koehler@gmail.com>
  * @author Jules Jacobsen <jules.jacobsen@sanger.ac.uk>
@@ -56,6 +57,10 @@ public FloatMatrix getMatrix() {
         return matrix;
     }
 
+    public int getNumRows() {
+        return matrix.getRows();
+    }
+
     public boolean containsGene(Integer entrezGeneId) {
         return entrezIdToRowIndex.containsKey(entrezGeneId);
     }
@@ -25,6 +25,12 @@
 import org.slf4j.LoggerFactory;
 
 import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.zip.GZIPInputStream;
@@ -50,6 +56,62 @@ public static DataMatrix loadDataMatrix(String matrixFileZip, String entrezId2in
         return new DataMatrix(floatMatrix, index);
     }
 
+    /**
+     * Maps a binary matrix file written by {@link #writeBinaryMatrix(DataMatrix, Path)} into memory. Unlike
+     * {@link #loadDataMatrix(String, String, boolean)} this doesn't read the matrix, so returns almost immediately.
+     *
+     * @param binaryMatrixFile      the binary matrix file.
+     * @param entrezId2indexFileZip the same index file used to load the original matrix.
+     */
+    public static DataMatrix loadMappedDataMatrix(String binaryMatrixFile, String entrezId2indexFileZip) {
+        Map<Integer, Integer> index = createIndex(entrezId2indexFileZip);
+        return MappedDataMatrix.open(Paths.get(binaryMatrixFile), index);
+    }
+
+    /**
+     * Writes the matrix to the binary format read by the {@link MappedDataMatrix}. Values are written as they are held
+     * in memory, so a matrix loaded with the exponent will be written with the exponent applied.
+     */
+    public static void writeBinaryMatrix(DataMatrix dataMatrix, Path binaryMatrixFile) {
+        FloatMatrix matrix = dataMatrix.getMatrix();
+        try (FileChannel fileChannel = FileChannel.open(binaryMatrixFile, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            ByteBuffer header = ByteBuffer.allocate(MappedDataMatrix.HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+            header.putLong(MappedDataMatrix.MAGIC).putInt(matrix.rows).putInt(matrix.columns).flip();
+            writeFully(fileChannel, header);
+            ByteBuffer column = ByteBuffer.allocate(matrix.rows * 4).order(ByteOrder.LITTLE_ENDIAN);
+            for (int j = 0; j < matrix.columns; j++) {
+                column.clear();
+                //jblas stores the data in column-major order
+                column.asFloatBuffer().put(matrix.data, j * matrix.rows, matrix.rows);
+                writeFully(fileChannel, column);
+            }
+        } catch (IOException e) {
+            throw new DataMatrixIoException("Unable to write binary data matrix " + binaryMatrixFile, e);
+        }
+        logger.info("Written {} rows * {} columns to {}", matrix.rows, matrix.columns, binaryMatrixFile);
+    }
+
+    private static void writeFully(FileChannel fileChannel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            fileChannel.write(buffer);
+        }
+    }
+
+    /**
+     * One-time conversion of the gzipped text random walk matrix to the binary matrix format. The exponent is applied
+     * to the values in the same way as when the text matrix is loaded for HiPHIVE and ExomeWalker.
+     * <p>
+     * Usage: DataMatrixIO rw_string_9_05.gz rw_string_9_05_id2index.gz rw_string_9_05.bin
+     */
+    public static void main(String[] args) {
+        if (args.length != 3) {
+            logger.error("Usage: DataMatrixIO <matrix.gz> <id2index.gz> <output.bin>");
+            return;
+        }
+        DataMatrix dataMatrix = loadDataMatrix(args[0], args[1], true);
+        writeBinaryMatrix(dataMatrix, Paths.get(args[2]));
+    }
+
     private static Map<Integer, Integer> createIndex(String object2idxFileZip) {
         Map<Integer, Integer> index = new HashMap();
         File indexFile = new File(object2idxFileZip);
@@ -226,6 +288,10 @@ public static void writeMatrixInclHeaderAndRowIDs(FloatMatrix matrix, String fil
 
     public static class DataMatrixIoException extends RuntimeException {
 
+        public DataMatrixIoException(String message) {
+            super(message);
+        }
+
         public DataMatrixIoException(Throwable cause) {
             super(cause);
         }
@@ -22,13 +22,12 @@
 
 import com.google.common.collect.ArrayListMultimap;
 import com.google.common.collect.ListMultimap;
-import com.google.common.collect.Lists;
-import org.jblas.FloatMatrix;
 import org.monarchinitiative.exomiser.core.prioritisers.model.GeneMatch;
 import org.monarchinitiative.exomiser.core.prioritisers.model.GeneModelPhenotypeMatch;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.LinkedHashMap;
 import java.util.List;
@@ -43,14 +42,17 @@ public class HiPhiveProteinInteractionScorer {
 
     public static final HiPhiveProteinInteractionScorer EMPTY = new HiPhiveProteinInteractionScorer();
 
+    private static final int NO_HIT = -1;
+
     private final DataMatrix dataMatrix;
 
     private final ListMultimap<Integer, GeneModelPhenotypeMatch> bestGeneModels;
     private final double highQualityPhenoScoreCutOff;
 
     private final Map<Integer, Double> highQualityPhenoMatchedGeneScores;
-    private final List<Integer> highQualityPhenoMatchedGeneIds;
-    private final FloatMatrix weightedHighQualityMatrix;
+    //the best weighted PPI score and the entrez id of the seed gene producing it for each row of the dataMatrix.
+    private final float[] bestRowScores;
+    private final int[] bestRowGeneIds;
 
     private HiPhiveProteinInteractionScorer() {
         this.dataMatrix = DataMatrix.EMPTY;
@@ -60,8 +62,8 @@ private HiPhiveProteinInteractionScorer() {
         this.highQualityPhenoScoreCutOff = 0.0;
         //should be used to produce these wrapped in some matcher or some-such:
         highQualityPhenoMatchedGeneScores = Collections.emptyMap();
-        highQualityPhenoMatchedGeneIds = Collections.emptyList();
-        weightedHighQualityMatrix = FloatMatrix.EMPTY;
+        bestRowScores = new float[0];
+        bestRowGeneIds = new int[0];
     }
 
     public HiPhiveProteinInteractionScorer(DataMatrix dataMatrix, ListMultimap<Integer, GeneModelPhenotypeMatch> bestGeneModels, double highQualityPhenoScoreCutOff) {
@@ -70,8 +72,11 @@ public HiPhiveProteinInteractionScorer(DataMatrix dataMatrix, ListMultimap<Integ
         this.highQualityPhenoScoreCutOff = highQualityPhenoScoreCutOff;
 
         highQualityPhenoMatchedGeneScores = getHighestGeneIdPhenoScores();
-        highQualityPhenoMatchedGeneIds = Lists.newArrayList(highQualityPhenoMatchedGeneScores.keySet());
-        weightedHighQualityMatrix = makeWeightedProteinInteractionMatrix();
+        //the matrix is square
+        int rows = dataMatrix.getNumRows();
+        bestRowScores = new float[rows];
+        bestRowGeneIds = new int[rows];
+        findBestWeightedSeedGenes();
     }
 
     private Map<Integer, Double> getHighestGeneIdPhenoScores() {
@@ -92,53 +97,55 @@ private Map<Integer, Double> getHighestGeneIdPhenoScores() {
         return Collections.unmodifiableMap(highestGeneIdPhenoScores);
     }
 
-    //todo: If this returned a DataMatrix things might be a bit more convenient later on...
-    private FloatMatrix makeWeightedProteinInteractionMatrix() {
-        logger.info("Making weighted-score Protein-Protein interaction sub-matrix from high quality phenotypic gene matches...");
-        logger.info("Original data matrix ({} rows * {} columns)", dataMatrix.getMatrix()
-                .getRows(), dataMatrix.getMatrix().getColumns());
-        int rows = dataMatrix.getMatrix().getRows();
-        int cols = highQualityPhenoMatchedGeneScores.size();
-        FloatMatrix highQualityPpiMatrix = FloatMatrix.zeros(rows, cols);
-        int c = 0;
+    /**
+     * Finds the most phenotypically similar interacting seed gene for every gene in the dataMatrix in a single pass over
+     * the columns of the high quality seed genes. This replaces building a weighted rows * seed genes sub-matrix and
+     * then walking along each row of it for every gene queried. Only positive scores are counted as a hit, ties are
+     * won by the first seed gene and a seed gene is never a hit for itself.
+     */
+    private void findBestWeightedSeedGenes() {
+        logger.info("Finding best weighted Protein-Protein interactions from {} high quality phenotypic gene matches across {} genes...", highQualityPhenoMatchedGeneScores
+                .size(), bestRowScores.length);
+        Arrays.fill(bestRowGeneIds, NO_HIT);
         for (Map.Entry<Integer, Double> entry : highQualityPhenoMatchedGeneScores.entrySet()) {
             Integer seedGeneEntrezId = entry.getKey();
-            //TODO: the original DataMatrix is a symmetrical matrix this new one is asymmetrical with the original rows but only high-quality columns.
-            if (dataMatrix.containsGene(seedGeneEntrezId)) {
-                FloatMatrix column = dataMatrix.getColumnMatrixForGene(seedGeneEntrezId);
-                // weight column by phenoScore
-                //get the best model score for the gene from the highQualityPhenoMatchedGenes
-                Double score = entry.getValue();
-                column = column.mul(score.floatValue());
-                highQualityPpiMatrix.putColumn(c, column);
+            if (!dataMatrix.containsGene(seedGeneEntrezId)) {
+                continue;
+            }
+            //the PPI float matrix is symmetrical so the seed gene's column holds its interactions with every gene
+            float[] column = dataMatrix.getColumnMatrixForGene(seedGeneEntrezId).data;
+            float weight = entry.getValue().floatValue();
+            int seedRowIndex = dataMatrix.getRowIndexForGene(seedGeneEntrezId);
+            for (int row = 0; row < bestRowScores.length; row++) {
+                float cellScore = column[row] * weight;
+                //avoid self-hits now are testing genes with direct pheno-evidence as well
+                if (cellScore > bestRowScores[row] && row != seedRowIndex) {
+                    bestRowScores[row] = cellScore;
+                    bestRowGeneIds[row] = seedGeneEntrezId;
+                }
             }
-            c++;
         }
-        logger.info("Made high quality interaction matrix ({} rows * {} columns)", highQualityPpiMatrix.getRows(), highQualityPpiMatrix
-                .getColumns());
-        return highQualityPpiMatrix;
     }
 
     public GeneMatch getClosestPhenoMatchInNetwork(Integer entrezGeneId) {
-        if (!dataMatrix.containsGene(entrezGeneId) || highQualityPhenoMatchedGeneIds.isEmpty()) {
+        if (!dataMatrix.containsGene(entrezGeneId) || highQualityPhenoMatchedGeneScores.isEmpty()) {
             return GeneMatch.NO_HIT;
         }
         int rowIndex = dataMatrix.getRowIndexForGene(entrezGeneId);
-        int columnIndex = getColumnIndexOfMostPhenotypicallySimilarGene(entrezGeneId);
+        int closestGeneId = bestRowGeneIds[rowIndex];
 
         /* Changed method to return -1 if no hit as otherwise could not distinguish between
         no hit or hit to 1st entry in column (entrezGene 50640). When querying with 50640 this
         resulted in a self-hit being returned with a PPI score of 0.5+0.7=1.2 and also lots of
         low-scoring (0.5) PPI hits to 50640 for other genes with no PPI match
          */
-        if (columnIndex == -1){
+        if (closestGeneId == NO_HIT) {
             return GeneMatch.NO_HIT;
         }
 
         // optimal adjustment based on benchmarking to allow walker scores to compete with low phenotype scores
-        double walkerScore = 0.5 + weightedHighQualityMatrix.get(rowIndex, columnIndex);
+        double walkerScore = 0.5 + bestRowScores[rowIndex];
 
-        Integer closestGeneId = highQualityPhenoMatchedGeneIds.get(columnIndex);
         List<GeneModelPhenotypeMatch> models = bestGeneModels.get(closestGeneId);
 
         return GeneMatch.builder()
@@ -149,39 +156,4 @@ public GeneMatch getClosestPhenoMatchInNetwork(Integer entrezGeneId) {
                 .build();
     }
 
-    /**
-     * This function retrieves the random walk similarity score for the gene
-     *
-     * @param entrezGeneId for which the random walk score is to be retrieved
-     */
-    //TODO: speed this up? This bit is slow. This can be done in a single operation without having to pre-compute the high-quality matrix.
-    private int getColumnIndexOfMostPhenotypicallySimilarGene(int entrezGeneId) {
-        int geneIndex = dataMatrix.getRowIndexForGene(entrezGeneId);
-        int columnIndex = 0;
-        double bestScore = 0;
-        int bestHitIndex = -1;
-        //TODO: here were walking along all the columns of a row from the high quality matches, i.e. traversing a list to find the value and position of the highest value in that list.
-        //The matrix is (12511 rows * 303 columns)
-        // The output of this function (assigned to columnIndex) is used to:
-        // define the walkerScore:
-        // walkerScore = 0.5 + weightedHighQualityMatrix.get(rowIndex, columnIndex);
-        //
-        // Integer closestGeneId = highQualityPhenoMatchedGeneIds.get(columnIndex);
-        // closestPhysicallyInteractingGeneModels = bestGeneModels.get(closestGeneId);
-        for (Integer similarGeneEntrezId : highQualityPhenoMatchedGeneIds) {
-            if (!dataMatrix.containsGene(similarGeneEntrezId) || similarGeneEntrezId == entrezGeneId) {
-                //avoid self-hits now are testing genes with direct pheno-evidence as well
-                columnIndex++;
-            } else {
-                double cellScore = weightedHighQualityMatrix.get(geneIndex, columnIndex);
-                if (cellScore > bestScore) {
-                    bestScore = cellScore;
-                    bestHitIndex = columnIndex;
-                }
-                columnIndex++;
-            }
-        }
-        return bestHitIndex;
-    }
-
 }
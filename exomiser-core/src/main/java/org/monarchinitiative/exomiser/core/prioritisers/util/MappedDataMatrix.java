@@ -0,0 +1,163 @@
+/*
+ * The Exomiser - A tool to annotate and prioritize genomic variants
+ *
+ * Copyright (c) 2016-2017 Queen Mary University of London.
+ * Copyright (c) 2012-2016 Charité Universitätsmedizin Berlin and Genome Research Ltd.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.monarchinitiative.exomiser.core.prioritisers.util;
+
+import org.jblas.FloatMatrix;
+import org.monarchinitiative.exomiser.core.prioritisers.util.DataMatrixIO.DataMatrixIoException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * {@link DataMatrix} backed by a memory-mapped binary matrix file written by
+ * {@link DataMatrixIO#writeBinaryMatrix(DataMatrix, Path)}. Opening the file only maps it into memory, the columns are
+ * read from the operating system's page cache when they are requested. This means start-up takes milliseconds rather
+ * than the minute needed to parse the text matrix, and the page cache is shared by all the JVMs on a host using the
+ * same file.
+ * <p>
+ * The file is a 16 byte header followed by the matrix as little-endian floats in column-major order, the same order
+ * as the data in a jblas {@link FloatMatrix}, so each column is a contiguous block of the file:
+ * <pre>
+ * long magic | int rows | int columns | float[rows * columns]
+ * </pre>
+ *
+ * @author Jules Jacobsen <j.jacobsen@qmul.ac.uk>
+ */
+public class MappedDataMatrix extends DataMatrix {
+
+    private static final Logger logger = LoggerFactory.getLogger(MappedDataMatrix.class);
+
+    //'EXRWMTX1' in ASCII
+    static final long MAGIC = 0x455852574D545831L;
+    static final int HEADER_SIZE = 16;
+
+    private final Path matrixPath;
+    private final int rows;
+    private final int columns;
+    //a MappedByteBuffer can only address 2GB, so larger matrices are mapped in segments of whole columns
+    private final ByteBuffer[] segments;
+    private final int columnsPerSegment;
+
+    private FloatMatrix matrix;
+
+    private MappedDataMatrix(Path matrixPath, Map<Integer, Integer> entrezIdToRowIndex, int rows, int columns, ByteBuffer[] segments, int columnsPerSegment) {
+        super(FloatMatrix.EMPTY, entrezIdToRowIndex);
+        this.matrixPath = matrixPath;
+        this.rows = rows;
+        this.columns = columns;
+        this.segments = segments;
+        this.columnsPerSegment = columnsPerSegment;
+    }
+
+    /**
+     * @throws DataMatrixIoException if the file cannot be read, is not a binary matrix or does not match the index.
+     */
+    public static MappedDataMatrix open(Path matrixPath, Map<Integer, Integer> entrezIdToRowIndex) {
+        try (FileChannel fileChannel = FileChannel.open(matrixPath, StandardOpenOption.READ)) {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+            fileChannel.read(header, 0);
+            header.flip();
+            if (header.remaining() < HEADER_SIZE || header.getLong() != MAGIC) {
+                throw new DataMatrixIoException(matrixPath + " is not a binary data matrix");
+            }
+            int rows = header.getInt();
+            int columns = header.getInt();
+            long columnSize = rows * 4L;
+            if (fileChannel.size() != HEADER_SIZE + columnSize * columns) {
+                throw new DataMatrixIoException(String.format("%s is not the expected size for a %d * %d matrix", matrixPath, rows, columns));
+            }
+            if (entrezIdToRowIndex.size() > rows) {
+                throw new DataMatrixIoException(String.format("Index of %d genes does not fit %s with %d rows", entrezIdToRowIndex.size(), matrixPath, rows));
+            }
+            int columnsPerSegment = (int) Math.max(1, Math.min(columns, Integer.MAX_VALUE / Math.max(1, columnSize)));
+            int numSegments = columns == 0 ? 0 : (columns + columnsPerSegment - 1) / columnsPerSegment;
+            ByteBuffer[] segments = new ByteBuffer[numSegments];
+            for (int i = 0; i < numSegments; i++) {
+                long start = HEADER_SIZE + i * columnsPerSegment * columnSize;
+                long size = Math.min(columnsPerSegment, columns - i * columnsPerSegment) * columnSize;
+                segments[i] = fileChannel.map(FileChannel.MapMode.READ_ONLY, start, size).order(ByteOrder.LITTLE_ENDIAN);
+            }
+            logger.info("Mapped {} ({} rows * {} columns)", matrixPath, rows, columns);
+            return new MappedDataMatrix(matrixPath, entrezIdToRowIndex, rows, columns, segments, columnsPerSegment);
+        } catch (IOException e) {
+            throw new DataMatrixIoException("Unable to read binary data matrix " + matrixPath, e);
+        }
+    }
+
+    @Override
+    public int getNumRows() {
+        return rows;
+    }
+
+    @Override
+    public FloatMatrix getColumnMatrixForGene(int entrezGeneId) {
+        //the PPI float matrix is symmetrical so this will work here.
+        Integer rowIndex = getRowIndexForGene(entrezGeneId);
+        return readColumn(rowIndex);
+    }
+
+    private FloatMatrix readColumn(int columnIndex) {
+        FloatMatrix column = new FloatMatrix(rows, 1);
+        //duplicate the segment so that concurrent reads don't share a position
+        ByteBuffer segment = segments[columnIndex / columnsPerSegment].duplicate().order(ByteOrder.LITTLE_ENDIAN);
+        segment.position((columnIndex % columnsPerSegment) * rows * 4);
+        segment.asFloatBuffer().get(column.data, 0, rows);
+        return column;
+    }
+
+    /**
+     * Reads the whole matrix into memory. This defeats the purpose of mapping the file, so should be avoided.
+     */
+    @Override
+    public synchronized FloatMatrix getMatrix() {
+        if (matrix == null) {
+            logger.warn("Reading whole of {} into memory", matrixPath);
+            FloatMatrix fullMatrix = new FloatMatrix(rows, columns);
+            for (int i = 0; i < columns; i++) {
+                fullMatrix.putColumn(i, readColumn(i));
+            }
+            matrix = fullMatrix;
+        }
+        return matrix;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof MappedDataMatrix)) return false;
+        MappedDataMatrix that = (MappedDataMatrix) o;
+        return Objects.equals(matrixPath, that.matrixPath) &&
+                Objects.equals(getEntrezIdToRowIndex(), that.getEntrezIdToRowIndex());
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(matrixPath, getEntrezIdToRowIndex());
+    }
+}
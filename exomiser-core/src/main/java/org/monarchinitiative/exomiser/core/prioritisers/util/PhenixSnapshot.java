@@ -0,0 +1,261 @@
+/*
+ * The Exomiser - A tool to annotate and prioritize genomic variants
+ *
+ * Copyright (c) 2016-2017 Queen Mary University of London.
+ * Copyright (c) 2012-2016 Charité Universitätsmedizin Berlin and Genome Research Ltd.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.monarchinitiative.exomiser.core.prioritisers.util;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+
+/**
+ * Binary snapshot of the data calculated by the PhenIX prioritiser from the hp.obo and gene annotation files, namely the
+ * information content of each HPO term and the most specific HPO terms annotated to each gene. Reading this is much
+ * quicker than parsing the annotations and re-calculating the information content each time the prioritiser is loaded.
+ * <p>
+ * The snapshot records the size and SHA-256 digest of the content of the files it was created from so that a stale
+ * snapshot can be detected and ignored. Modification times are not used as these change whenever the files are copied
+ * or re-downloaded without changing the data. The file layout is:
+ * <pre>
+ * header:      long magic | int version | long hpoSize | byte[32] hpoDigest | long annotationsSize | byte[32] annotationsDigest
+ * terms:       int numTerms | (UTF termId | double informationContent) * numTerms
+ * annotations: int numGenes | (UTF geneId | int numAnnotations | int[] termIndices) * numGenes
+ * </pre>
+ * The term indices refer to the position of the term in the terms section.
+ *
+ * @author Jules Jacobsen <j.jacobsen@qmul.ac.uk>
+ */
+public final class PhenixSnapshot {
+
+    private static final Logger logger = LoggerFactory.getLogger(PhenixSnapshot.class);
+
+    //'PHENIXSS' in ASCII
+    static final long MAGIC = 0x5048454E49585353L;
+    static final int VERSION = 2;
+
+    private final SourceFingerprint sourceFingerprint;
+    private final Map<String, Double> termInformationContent;
+    private final Map<String, List<String>> geneAnnotations;
+
+    /**
+     * @param termInformationContent map of HPO term id to information content. Every annotated term must be present.
+     * @param geneAnnotations        map of entrez gene id to the ids of the HPO terms annotated to the gene.
+     */
+    private PhenixSnapshot(SourceFingerprint sourceFingerprint, Map<String, Double> termInformationContent, Map<String, List<String>> geneAnnotations) {
+        this.sourceFingerprint = sourceFingerprint;
+        this.termInformationContent = termInformationContent;
+        this.geneAnnotations = geneAnnotations;
+    }
+
+    /**
+     * Creates a snapshot of the data calculated from the hp.obo and annotation files.
+     */
+    public static PhenixSnapshot of(Path hpoOboFile, Path hpoAnnotationFile, Map<String, Double> termInformationContent, Map<String, List<String>> geneAnnotations) {
+        SourceFingerprint sourceFingerprint = SourceFingerprint.of(hpoOboFile, hpoAnnotationFile);
+        return new PhenixSnapshot(sourceFingerprint, new LinkedHashMap<>(termInformationContent), new LinkedHashMap<>(geneAnnotations));
+    }
+
+    public Map<String, Double> getTermInformationContent() {
+        return Collections.unmodifiableMap(termInformationContent);
+    }
+
+    public Map<String, List<String>> getGeneAnnotations() {
+        return Collections.unmodifiableMap(geneAnnotations);
+    }
+
+    /**
+     * @return true if the snapshot was made from the current versions of the hp.obo and annotation files.
+     */
+    public boolean isCurrentFor(Path hpoOboFile, Path hpoAnnotationFile) {
+        return sourceFingerprint.matches(hpoOboFile, hpoAnnotationFile);
+    }
+
+    public void write(Path snapshotFile) {
+        Map<String, Integer> termIndices = new HashMap<>();
+        try (DataOutputStream output = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(snapshotFile)))) {
+            output.writeLong(MAGIC);
+            output.writeInt(VERSION);
+            sourceFingerprint.write(output);
+
+            output.writeInt(termInformationContent.size());
+            for (Map.Entry<String, Double> entry : termInformationContent.entrySet()) {
+                termIndices.put(entry.getKey(), termIndices.size());
+                output.writeUTF(entry.getKey());
+                output.writeDouble(entry.getValue());
+            }
+
+            output.writeInt(geneAnnotations.size());
+            for (Map.Entry<String, List<String>> entry : geneAnnotations.entrySet()) {
+                output.writeUTF(entry.getKey());
+                output.writeInt(entry.getValue().size());
+                for (String termId : entry.getValue()) {
+                    Integer termIndex = termIndices.get(termId);
+                    if (termIndex == null) {
+                        throw new PhenixSnapshotException(String.format("Gene %s is annotated with term %s which has no information content", entry.getKey(), termId));
+                    }
+                    output.writeInt(termIndex);
+                }
+            }
+        } catch (IOException e) {
+            throw new PhenixSnapshotException("Unable to write PhenIX snapshot " + snapshotFile, e);
+        }
+        logger.info("Written {} terms and annotations for {} genes to {}", termInformationContent.size(), geneAnnotations.size(), snapshotFile);
+    }
+
+    public static PhenixSnapshot read(Path snapshotFile) {
+        try (DataInputStream input = new DataInputStream(new BufferedInputStream(Files.newInputStream(snapshotFile)))) {
+            if (input.readLong() != MAGIC) {
+                throw new PhenixSnapshotException(snapshotFile + " is not a PhenIX snapshot");
+            }
+            int version = input.readInt();
+            if (version != VERSION) {
+                throw new PhenixSnapshotException(String.format("Unsupported PhenIX snapshot version %d in %s. Expected version %d", version, snapshotFile, VERSION));
+            }
+            SourceFingerprint sourceFingerprint = SourceFingerprint.read(input);
+
+            int numTerms = input.readInt();
+            String[] termIds = new String[numTerms];
+            Map<String, Double> termInformationContent = new LinkedHashMap<>();
+            for (int i = 0; i < numTerms; i++) {
+                termIds[i] = input.readUTF();
+                termInformationContent.put(termIds[i], input.readDouble());
+            }
+
+            int numGenes = input.readInt();
+            Map<String, List<String>> geneAnnotations = new LinkedHashMap<>();
+            for (int i = 0; i < numGenes; i++) {
+                String geneId = input.readUTF();
+                int numAnnotations = input.readInt();
+                List<String> annotations = new ArrayList<>(numAnnotations);
+                for (int j = 0; j < numAnnotations; j++) {
+                    annotations.add(termIds[input.readInt()]);
+                }
+                geneAnnotations.put(geneId, annotations);
+            }
+            logger.info("Read {} terms and annotations for {} genes from {}", numTerms, numGenes, snapshotFile);
+            return new PhenixSnapshot(sourceFingerprint, termInformationContent, geneAnnotations);
+        } catch (IOException e) {
+            throw new PhenixSnapshotException("Unable to read PhenIX snapshot " + snapshotFile, e);
+        }
+    }
+
+    /**
+     * The sizes and content digests of the source files.
+     */
+    private static class SourceFingerprint {
+
+        private static final String DIGEST_ALGORITHM = "SHA-256";
+        private static final int DIGEST_LENGTH = 32;
+
+        private final long[] sizes;
+        private final byte[][] digests;
+
+        private SourceFingerprint(long[] sizes, byte[][] digests) {
+            this.sizes = sizes;
+            this.digests = digests;
+        }
+
+        private static SourceFingerprint of(Path... sourceFiles) {
+            long[] sizes = new long[sourceFiles.length];
+            byte[][] digests = new byte[sourceFiles.length][];
+            for (int i = 0; i < sourceFiles.length; i++) {
+                sizes[i] = size(sourceFiles[i]);
+                digests[i] = digest(sourceFiles[i]);
+            }
+            return new SourceFingerprint(sizes, digests);
+        }
+
+        /**
+         * Compares the sizes of all the files before digesting any of them, as a change in size is by far the most
+         * likely sign of a new release and is much cheaper to check.
+         */
+        private boolean matches(Path... sourceFiles) {
+            if (sourceFiles.length != sizes.length) {
+                return false;
+            }
+            for (int i = 0; i < sourceFiles.length; i++) {
+                if (size(sourceFiles[i]) != sizes[i]) {
+                    return false;
+                }
+            }
+            for (int i = 0; i < sourceFiles.length; i++) {
+                if (!MessageDigest.isEqual(digest(sourceFiles[i]), digests[i])) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private static long size(Path sourceFile) {
+            try {
+                return Files.size(sourceFile);
+            } catch (IOException e) {
+                throw new PhenixSnapshotException("Unable to read attributes of " + sourceFile, e);
+            }
+        }
+
+        private static byte[] digest(Path sourceFile) {
+            try (InputStream input = Files.newInputStream(sourceFile)) {
+                MessageDigest messageDigest = MessageDigest.getInstance(DIGEST_ALGORITHM);
+                byte[] buffer = new byte[64 * 1024];
+                int read;
+                while ((read = input.read(buffer)) != -1) {
+                    messageDigest.update(buffer, 0, read);
+                }
+                return messageDigest.digest();
+            } catch (IOException | NoSuchAlgorithmException e) {
+                throw new PhenixSnapshotException("Unable to read contents of " + sourceFile, e);
+            }
+        }
+
+        private void write(DataOutputStream output) throws IOException {
+            for (int i = 0; i < sizes.length; i++) {
+                output.writeLong(sizes[i]);
+                output.write(digests[i]);
+            }
+        }
+
+        private static SourceFingerprint read(DataInputStream input) throws IOException {
+            long[] sizes = new long[2];
+            byte[][] digests = new byte[2][DIGEST_LENGTH];
+            for (int i = 0; i < sizes.length; i++) {
+                sizes[i] = input.readLong();
+                input.readFully(digests[i]);
+            }
+            return new SourceFingerprint(sizes, digests);
+        }
+    }
+
+    public static class PhenixSnapshotException extends RuntimeException {
+
+        public PhenixSnapshotException(String message) {
+            super(message);
+        }
+
+        public PhenixSnapshotException(String message, Throwable cause) {
+            super(message, cause);
+        }
+    }
+}
@@ -0,0 +1,93 @@
+/*
+ * The Exomiser - A tool to annotate and prioritize genomic variants
+ *
+ * Copyright (c) 2016-2017 Queen Mary University of London.
+ * Copyright (c) 2012-2016 Charité Universitätsmedizin Berlin and Genome Research Ltd.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.monarchinitiative.exomiser.core.prioritisers.util;
+
+import org.monarchinitiative.exomiser.core.prioritisers.PriorityResult;
+
+import java.util.*;
+import java.util.stream.Collector;
+
+/**
+ * {@link Collector} implementations for streams of {@link PriorityResult}.
+ *
+ * @author Jules Jacobsen <j.jacobsen@qmul.ac.uk>
+ */
+public final class PriorityResultCollectors {
+
+    private PriorityResultCollectors() {
+        //static utility class
+    }
+
+    /**
+     * Collects the best results from the stream in their natural order, i.e. highest score first. Only the best
+     * {@code limit} results are held while the stream is consumed, so this is much cheaper than sorting the whole
+     * stream and then applying a limit when there are many more results than are wanted.
+     *
+     * @param limit the maximum number of results to return. A limit of zero or less will return all the results.
+     */
+    public static <T extends PriorityResult> Collector<T, ?, List<T>> toTopResults(int limit) {
+        if (limit <= 0) {
+            return Collector.<T, List<T>, List<T>>of(ArrayList::new, List::add, (left, right) -> {
+                left.addAll(right);
+                return left;
+            }, results -> {
+                results.sort(Comparator.naturalOrder());
+                return results;
+            });
+        }
+        return Collector.of(() -> new TopResults<T>(limit), TopResults::add, TopResults::addAll, TopResults::toList);
+    }
+
+    /**
+     * Bounded heap whose head is the worst of the retained results, so a new result only needs to be compared with
+     * the head to know if it is amongst the best seen so far.
+     */
+    private static class TopResults<T extends PriorityResult> {
+
+        private final int limit;
+        private final PriorityQueue<T> heap;
+
+        private TopResults(int limit) {
+            this.limit = limit;
+            this.heap = new PriorityQueue<>(limit + 1, Comparator.<T>naturalOrder().reversed());
+        }
+
+        private void add(T result) {
+            if (heap.size() < limit) {
+                heap.add(result);
+            } else if (result.compareTo(heap.peek()) < 0) {
+                heap.poll();
+                heap.add(result);
+            }
+        }
+
+        private TopResults<T> addAll(TopResults<T> other) {
+            other.heap.forEach(this::add);
+            return this;
+        }
+
+        private List<T> toList() {
+            List<T> results = new ArrayList<>(heap);
+            results.sort(Comparator.naturalOrder());
+            return results;
+        }
+    }
+}
@@ -74,6 +74,20 @@ public static String makeOutputFilename(Path vcfPath, String outputPrefix, Outpu
         return String.format("%s.%s", outputPrefix, outputFormat.getFileExtension());
     }
 
+    /**
+     * Makes the default output prefix for the results of one of several probands analysed from the same VCF, so that
+     * their results are not written to the same files.
+     *
+     * @param vcfPath
+     * @param probandSampleName
+     * @return the default output prefix for the VCF, followed by the proband sample name.
+     */
+    public static String makeProbandOutputPrefix(Path vcfPath, String probandSampleName) {
+        //sample names can contain characters which are not safe to use in a file name
+        String safeSampleName = probandSampleName.replaceAll("[^A-Za-z0-9._-]", "_");
+        return String.format("%s/%s-%s-exomiser-results", ResultsWriterUtils.DEFAULT_OUTPUT_DIR, vcfPath.getFileName(), safeSampleName);
+    }
+
     /**
      * Make a {@code VariantTypeCounter} object from the list of
      * {@code VariantEvaluation}. We use this to print out a table of variant
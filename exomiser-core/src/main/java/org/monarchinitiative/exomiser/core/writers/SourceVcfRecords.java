@@ -0,0 +1,173 @@
+/*
+ * The Exomiser - A tool to annotate and prioritize genomic variants
+ *
+ * Copyright (c) 2016-2017 Queen Mary University of London.
+ * Copyright (c) 2012-2016 Charité Universitätsmedizin Berlin and Genome Research Ltd.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.monarchinitiative.exomiser.core.writers;
+
+import htsjdk.samtools.util.CloseableIterator;
+import htsjdk.variant.variantcontext.*;
+import htsjdk.variant.vcf.VCFFileReader;
+import org.monarchinitiative.exomiser.core.model.AllelePosition;
+import org.monarchinitiative.exomiser.core.model.SampleGenotypes;
+import org.monarchinitiative.exomiser.core.model.VariantEvaluation;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+
+/**
+ * Provides the original VCF records for the {@link VariantEvaluation} being written out. As the
+ * {@link VariantEvaluation} only hold a compact form of the genotypes, the source VCF is streamed alongside the
+ * variants sorted by the record index of their {@link SampleGenotypes} and each record is handed over as soon as it
+ * has been read, so the callers need only keep the records of the variants they are writing out, in whichever order
+ * they write them. Where the source record is not available, for instance the variants were not read from a file, a
+ * minimal record can be built from the {@link VariantEvaluation} instead.
+ *
+ * @author Jules Jacobsen <j.jacobsen@qmul.ac.uk>
+ */
+final class SourceVcfRecords {
+
+    private static final Logger logger = LoggerFactory.getLogger(SourceVcfRecords.class);
+
+    private SourceVcfRecords() {
+        //static utility class
+    }
+
+    /**
+     * Calls the action for each of the items in the order of their source records in the VCF file. Items without a
+     * record index come first in their original order, followed by the remaining items in record order. The action is
+     * given the source record of the item's variant, or null where this is not available.
+     *
+     * @param vcfPath   the VCF file the variants were read from, may be null
+     * @param items     the items to write out
+     * @param variantOf the variant used to locate the source record of an item
+     * @param action    called with each item and its source record
+     */
+    static <T> void forEachInRecordOrder(Path vcfPath, List<T> items, Function<T, VariantEvaluation> variantOf, BiConsumer<T, VariantContext> action) {
+        List<T> indexedItems = new ArrayList<>(items.size());
+        for (T item : items) {
+            if (variantOf.apply(item).getSampleGenotypes().hasRecordIndex()) {
+                indexedItems.add(item);
+            } else {
+                action.accept(item, null);
+            }
+        }
+        if (indexedItems.isEmpty()) {
+            return;
+        }
+        //a stable sort so that items sharing a record keep their original relative order
+        indexedItems.sort(Comparator.comparingInt(item -> variantOf.apply(item).getSampleGenotypes().getRecordIndex()));
+        int written = 0;
+        if (vcfPath != null && Files.isRegularFile(vcfPath)) {
+            written = streamRecords(vcfPath, indexedItems, variantOf, action);
+        }
+        //anything remaining was not found in the file
+        for (int i = written; i < indexedItems.size(); i++) {
+            action.accept(indexedItems.get(i), null);
+        }
+    }
+
+    private static <T> int streamRecords(Path vcfPath, List<T> sortedItems, Function<T, VariantEvaluation> variantOf, BiConsumer<T, VariantContext> action) {
+        logger.debug("Streaming source records for {} items from {}", sortedItems.size(), vcfPath);
+        int next = 0;
+        try (VCFFileReader vcfReader = new VCFFileReader(vcfPath.toFile(), false);
+             CloseableIterator<VariantContext> records = vcfReader.iterator()) {
+            for (int recordIndex = 0; next < sortedItems.size() && records.hasNext(); recordIndex++) {
+                VariantContext variantContext = records.next();
+                while (next < sortedItems.size() && recordIndexOf(sortedItems.get(next), variantOf) == recordIndex) {
+                    T item = sortedItems.get(next++);
+                    action.accept(item, isSourceOf(variantContext, variantOf.apply(item)) ? variantContext : null);
+                }
+            }
+        } catch (RuntimeException e) {
+            logger.error("Unable to read source records from {} - writing minimal records instead", vcfPath, e);
+        }
+        return next;
+    }
+
+    private static <T> int recordIndexOf(T item, Function<T, VariantEvaluation> variantOf) {
+        return variantOf.apply(item).getSampleGenotypes().getRecordIndex();
+    }
+
+    /**
+     * Guards against the file having changed since it was analysed.
+     */
+    static boolean isSourceOf(VariantContext variantContext, VariantEvaluation variantEvaluation) {
+        int altAlleleId = variantEvaluation.getAltAlleleId();
+        if (variantContext.getStart() != variantEvaluation.getSampleGenotypes().getRecordStart() || altAlleleId >= variantContext.getAlternateAlleles().size()) {
+            return false;
+        }
+        String ref = variantContext.getReference().getBaseString();
+        String alt = variantContext.getAlternateAllele(altAlleleId).getBaseString();
+        AllelePosition allelePosition = AllelePosition.trim(variantContext.getStart(), ref, alt);
+        return allelePosition.getPos() == variantEvaluation.getPosition() &&
+                allelePosition.getRef().equals(variantEvaluation.getRef()) &&
+                allelePosition.getAlt().equals(variantEvaluation.getAlt());
+    }
+
+    /**
+     * @return a one-based position variant context for the single allele with the called genotypes and no attributes.
+     */
+    static VariantContext buildMinimalRecord(VariantEvaluation variantEvaluation) {
+        String ref = variantEvaluation.getRef();
+        int pos = variantEvaluation.getPosition();
+        Allele refAllele = Allele.create(ref, true);
+        Allele altAllele = Allele.create(variantEvaluation.getAlt());
+
+        SampleGenotypes sampleGenotypes = variantEvaluation.getSampleGenotypes();
+        int altAlleleIndex = variantEvaluation.getAltAlleleId() + 1;
+        List<Genotype> genotypes = new ArrayList<>(sampleGenotypes.getNumberOfSamples());
+        for (int sampleId = 0; sampleId < sampleGenotypes.getNumberOfSamples(); sampleId++) {
+            List<Allele> alleles = new ArrayList<>(2);
+            for (int slot = 0; slot < sampleGenotypes.getPloidy(sampleId); slot++) {
+                alleles.add(toAllele(sampleGenotypes.getAlleleCall(sampleId, slot), altAlleleIndex, refAllele, altAllele));
+            }
+            genotypes.add(new GenotypeBuilder(sampleGenotypes.getSampleNames().get(sampleId), alleles).noAttributes().make());
+        }
+
+        return new VariantContextBuilder()
+                .loc(buildContig(variantEvaluation), pos, pos - 1L + ref.length())
+                .alleles(Arrays.asList(refAllele, altAllele))
+                .genotypes(genotypes)
+                .log10PError(-0.1 * variantEvaluation.getPhredScore())
+                .make();
+    }
+
+    private static Allele toAllele(int alleleCall, int altAlleleIndex, Allele refAllele, Allele altAllele) {
+        if (alleleCall == 0) {
+            return refAllele;
+        }
+        if (alleleCall == altAlleleIndex) {
+            return altAllele;
+        }
+        //other alleles from the same record can't be represented here
+        return Allele.NO_CALL;
+    }
+
+    private static String buildContig(VariantEvaluation variantEvaluation) {
+        //un-annotated variants have an unknown chromosome, so use the original name
+        if (variantEvaluation.getChromosome() == 0) {
+            return variantEvaluation.getChromosomeName();
+        }
+        return "chr" + variantEvaluation.getChromosomeName();
+    }
+}
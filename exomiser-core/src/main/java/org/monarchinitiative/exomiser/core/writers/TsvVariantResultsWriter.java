@@ -21,6 +21,7 @@
 package org.monarchinitiative.exomiser.core.writers;
 
 import com.google.common.base.Joiner;
+import htsjdk.variant.variantcontext.Allele;
 import htsjdk.variant.variantcontext.VariantContext;
 import org.apache.commons.csv.CSVFormat;
 import org.apache.commons.csv.CSVPrinter;
@@ -44,6 +45,7 @@
 import java.nio.file.Paths;
 import java.text.DecimalFormat;
 import java.util.*;
+import java.util.function.Function;
 
 /**
  * @author Max Schubach <max.schubach@charite.de>
@@ -98,41 +100,41 @@ public String writeString(Analysis analysis, AnalysisResults analysisResults, Ou
     private void writeData(Analysis analysis, AnalysisResults analysisResults, boolean writeOnlyPassVariants, CSVPrinter printer) throws IOException {
         if (writeOnlyPassVariants) {
             logger.info("Writing out only PASS variants");
-            for (Gene gene : analysisResults.getGenes()) {
-                writeOnlyPassVariantsOfGene(gene, printer);
-            }
-        } else {
-            for (Gene gene : analysisResults.getGenes()) {
-                writeAllVariantsOfGene(gene, printer);
-            }
+        }
+        List<VariantEvaluation> variantsToWrite = new ArrayList<>();
+        for (Gene gene : analysisResults.getGenes()) {
+            variantsToWrite.addAll(variantsToWrite(gene, writeOnlyPassVariants));
+        }
+        //only the few columns taken from the source records are kept while streaming these, so that the rows can still be written in gene order
+        Map<VariantEvaluation, SourceColumns> sourceColumns = new IdentityHashMap<>(variantsToWrite.size());
+        SourceVcfRecords.forEachInRecordOrder(analysisResults.getVcfPath(), variantsToWrite, Function.identity(),
+                (ve, sourceRecord) -> sourceColumns.put(ve, new SourceColumns(ve, sourceRecord == null ? SourceVcfRecords.buildMinimalRecord(ve) : sourceRecord)));
+        for (Gene gene : analysisResults.getGenes()) {
+            writeVariantsOfGene(gene, variantsToWrite(gene, writeOnlyPassVariants), sourceColumns, printer);
         }
     }
 
-    private void writeOnlyPassVariantsOfGene(Gene gene, CSVPrinter printer) throws IOException {
-        for (VariantEvaluation ve : gene.getPassedVariantEvaluations()) {
-            List<Object> record = getRecordOfVariant(ve, gene);
-            printer.printRecord(record);
-        }
+    private List<VariantEvaluation> variantsToWrite(Gene gene, boolean writeOnlyPassVariants) {
+        return writeOnlyPassVariants ? gene.getPassedVariantEvaluations() : gene.getVariantEvaluations();
     }
 
-    private void writeAllVariantsOfGene(Gene gene, CSVPrinter printer) throws IOException {
-        for (VariantEvaluation ve : gene.getVariantEvaluations()) {
-            List<Object> record = getRecordOfVariant(ve, gene);
+    private void writeVariantsOfGene(Gene gene, List<VariantEvaluation> variantEvaluations, Map<VariantEvaluation, SourceColumns> sourceColumns, CSVPrinter printer) throws IOException {
+        for (VariantEvaluation ve : variantEvaluations) {
+            List<Object> record = getRecordOfVariant(ve, gene, sourceColumns.get(ve));
             printer.printRecord(record);
         }
     }
 
-    private List<Object> getRecordOfVariant(VariantEvaluation ve, Gene gene) {
+    private List<Object> getRecordOfVariant(VariantEvaluation ve, Gene gene, SourceColumns sourceColumns) {
         List<Object> record = new ArrayList<>();
-        VariantContext variantContext = ve.getVariantContext();
         // CHROM
-        record.add(variantContext.getContig());
+        record.add(sourceColumns.chrom);
         // POS
-        record.add(variantContext.getStart());
+        record.add(sourceColumns.pos);
         // REF
-        record.add(variantContext.getReference().getDisplayString());
+        record.add(sourceColumns.ref);
         // ALT
-        record.add(variantContext.getAlternateAllele(ve.getAltAlleleId()).getDisplayString());
+        record.add(sourceColumns.alt);
         // QUAL
         record.add(formatter.format(ve.getPhredScore()));
         // FILTER
@@ -140,7 +142,7 @@ private List<Object> getRecordOfVariant(VariantEvaluation ve, Gene gene) {
         // GENOTYPE
         record.add(ve.getGenotypeString());
         // COVERAGE
-        record.add(variantContext.getCommonInfo().getAttributeAsString("DP", "0"));
+        record.add(sourceColumns.coverage);
         // FUNCTIONAL_CLASS
         record.add(ve.getVariantEffect().getSequenceOntologyTerm());
         // HGVS
@@ -254,4 +256,32 @@ private String getRepresentativeAnnotation(List<TranscriptAnnotation> annotation
                 anno.getHgvsProtein());
     }
 
+    /**
+     * The columns of a variant row which are taken from its source VCF record.
+     */
+    private static final class SourceColumns {
+
+        private final String chrom;
+        private final int pos;
+        private final String ref;
+        private final String alt;
+        private final String coverage;
+
+        private SourceColumns(VariantEvaluation ve, VariantContext variantContext) {
+            this.chrom = variantContext.getContig();
+            this.pos = variantContext.getStart();
+            this.ref = variantContext.getReference().getDisplayString();
+            this.alt = getAltAllele(ve, variantContext).getDisplayString();
+            this.coverage = variantContext.getCommonInfo().getAttributeAsString("DP", "0");
+        }
+
+        private static Allele getAltAllele(VariantEvaluation ve, VariantContext variantContext) {
+            //minimal records only have the one alternate allele
+            if (variantContext.getAlternateAlleles().size() == 1) {
+                return variantContext.getAlternateAllele(0);
+            }
+            return variantContext.getAlternateAllele(ve.getAltAlleleId());
+        }
+    }
+
 }
@@ -23,8 +23,7 @@
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 import de.charite.compbio.jannovar.annotation.VariantEffect;
-import htsjdk.variant.variantcontext.Genotype;
-import htsjdk.variant.variantcontext.VariantContext;
+import org.monarchinitiative.exomiser.core.model.SampleGenotypes;
 import org.monarchinitiative.exomiser.core.model.VariantEvaluation;
 
 import java.util.*;
@@ -53,21 +52,15 @@ public void put(VariantEvaluation variant) {
         if (effect == null) {
             return;
         }
-        VariantContext variantContext = variant.getVariantContext();
-        int numSamples = variant.getNumberOfIndividuals();
+        SampleGenotypes sampleGenotypes = variant.getSampleGenotypes();
+        int altAlleleIndex = variant.getAltAlleleId() + 1;
+        int numSamples = Math.min(variant.getNumberOfIndividuals(), sampleGenotypes.getNumberOfSamples());
         for (int sampleIdx = 0; sampleIdx < numSamples; ++sampleIdx) {
-            final Genotype gt = variantContext.getGenotype(sampleIdx);
-            if (gt.getAlleles().size() != 2) {
+            if (sampleGenotypes.getPloidy(sampleIdx) != 2) {
                 // counted as no-call
                 continue;
             }
-            boolean isAltAllele = false;
-            for (int i = 0; i < 2; ++i) {
-                if (gt.getAllele(i).equals(variantContext.getAlternateAllele(variant.getAltAlleleId()))) {
-                    isAltAllele = true;
-                }
-            }
-            if (!isAltAllele) {
+            if (!sampleGenotypes.sampleHasAllele(sampleIdx, altAlleleIndex)) {
                 // does not have correct alternative allele
                 continue;
             }
@@ -20,9 +20,6 @@
 
 package org.monarchinitiative.exomiser.core.writers;
 
-import com.google.common.collect.ArrayListMultimap;
-import com.google.common.collect.Lists;
-import com.google.common.collect.Multimap;
 import de.charite.compbio.jannovar.htsjdk.VariantContextWriterConstructionHelper;
 import htsjdk.variant.variantcontext.VariantContext;
 import htsjdk.variant.variantcontext.VariantContextBuilder;
@@ -30,7 +27,6 @@
 import htsjdk.variant.vcf.*;
 import org.monarchinitiative.exomiser.core.analysis.Analysis;
 import org.monarchinitiative.exomiser.core.analysis.AnalysisResults;
-import org.monarchinitiative.exomiser.core.analysis.util.InheritanceModeAnalyser;
 import org.monarchinitiative.exomiser.core.filters.FilterType;
 import org.monarchinitiative.exomiser.core.model.Gene;
 import org.monarchinitiative.exomiser.core.model.VariantEvaluation;
@@ -43,7 +39,6 @@
 import java.nio.file.Paths;
 import java.util.*;
 
-import static java.util.stream.Collectors.toList;
 import static java.util.stream.Collectors.toSet;
 
 // TODO(holtgrew): Write out to sorting VariantContextWriter?
@@ -136,93 +131,82 @@ public String writeString(Analysis analysis, AnalysisResults analysisResults, Ou
         return new String(baos.toByteArray(), StandardCharsets.UTF_8);
     }
 
-    private void writeData(AnalysisResults analysisResults, boolean writeOnlyPassVariants, VariantContextWriter writer) {
-        writeUnannotatedVariants(analysisResults, writer);
-        // actually write the data and close writer again
-        if (writeOnlyPassVariants) {
-            logger.info("Writing out only PASS variants");
-            writeOnlyPassSampleData(analysisResults, writer);
-        } else {
-            writeAllSampleData(analysisResults, writer);
-        }
-    }
-
-    private void writeUnannotatedVariants(AnalysisResults analysisResults, VariantContextWriter writer) {
-        List<VariantContext> updatedRecords = updateGeneVariantRecords(null, analysisResults.getUnAnnotatedVariantEvaluations());
-        updatedRecords.forEach(writer::add);
-    }
-
-    private void writeOnlyPassSampleData(AnalysisResults analysisResults, VariantContextWriter writer) {
-        for (Gene gene : analysisResults.getGenes()) {
-            List<VariantContext> updatedRecords = updateGeneVariantRecords(gene, gene.getPassedVariantEvaluations());
-            updatedRecords.forEach(writer::add);
-        }
-    }
-
     /**
      * Write the <code>analysisResults</code> as VCF to <code>writer</code>.
      *
      * <code>writer</code> is already completely initialized, including all
      * headers, so data is written out directly for each
-     * {@link VariantEvaluation} in <code>analysisResults</code>.
+     * {@link VariantEvaluation} in <code>analysisResults</code>. The source records
+     * are read from the VCF file in a single pass before being written out in
+     * gene order.
      *
      * @param analysisResults data set to write out
+     * @param writeOnlyPassVariants only write out the variants which passed the filters
      * @param writer writer to write to
      */
-    private void writeAllSampleData(AnalysisResults analysisResults, VariantContextWriter writer) {
+    private void writeData(AnalysisResults analysisResults, boolean writeOnlyPassVariants, VariantContextWriter writer) {
+        if (writeOnlyPassVariants) {
+            logger.info("Writing out only PASS variants");
+        }
+        List<RecordGroup> recordGroups = new ArrayList<>();
+        addRecordGroups(recordGroups, null, analysisResults.getUnAnnotatedVariantEvaluations());
         for (Gene gene : analysisResults.getGenes()) {
             logger.debug("updating variant records for gene {}", gene);
-            List<VariantContext> updatedRecords = updateGeneVariantRecords(gene, gene.getVariantEvaluations());
-            updatedRecords.forEach(writer::add);
+            addRecordGroups(recordGroups, gene, writeOnlyPassVariants ? gene.getPassedVariantEvaluations() : gene.getVariantEvaluations());
+        }
+        //only the records being written out are held, the remainder of the file is skipped over
+        Map<RecordGroup, VariantContext> sourceRecords = new IdentityHashMap<>(recordGroups.size());
+        SourceVcfRecords.forEachInRecordOrder(analysisResults.getVcfPath(), recordGroups, RecordGroup::getFirstVariant, sourceRecords::put);
+        for (RecordGroup recordGroup : recordGroups) {
+            writeRecordGroup(recordGroup, sourceRecords.get(recordGroup), writer);
         }
     }
 
-    //this needs a MultiMap<VariantContext, VariantEvaluation> (see InheritanceModeAnalyser for this)
-    private List<VariantContext> updateGeneVariantRecords(Gene gene, List<VariantEvaluation> variants) {
-        if (variants.isEmpty()) {
-            return Collections.emptyList();
+    /**
+     * The alleles of a multi-allelic site share the same source record, so these are grouped to be written back out on
+     * a single line.
+     */
+    private void addRecordGroups(List<RecordGroup> recordGroups, Gene gene, List<VariantEvaluation> variantEvaluations) {
+        //the order of the values (alleles) must be preserved so that they match the order listed in the ALT field
+        Map<String, List<VariantEvaluation>> geneVariants = new LinkedHashMap<>();
+        for (VariantEvaluation variantEvaluation : variantEvaluations) {
+            geneVariants.computeIfAbsent(recordKeyValue(variantEvaluation), key -> new ArrayList<>()).add(variantEvaluation);
+        }
+        for (List<VariantEvaluation> alleles : geneVariants.values()) {
+            recordGroups.add(new RecordGroup(gene, alleles));
         }
-//        maybe check if the variant is multi-allelic first?
-        Multimap<String, VariantEvaluation> variantContextToEvaluations = mapVariantEvaluationsToVariantContextString(variants);
-        return variantContextToEvaluations.asMap()
-                .values()
-                .stream()
-                .map(variantEvaluations -> updateRecord(Lists.newArrayList(variantEvaluations), gene))
-                .collect(toList());
     }
 
-    private Multimap<String, VariantEvaluation> mapVariantEvaluationsToVariantContextString(List<VariantEvaluation> variantEvaluations) {
-        //using ArrayListMultimap is important as the order of the values (alleles) must be preserved so that they match the order listed in the ALT field
-        ArrayListMultimap<String, VariantEvaluation> geneVariants = ArrayListMultimap.create();
-        for (VariantEvaluation variantEvaluation : variantEvaluations) {
-            geneVariants.put(variantContextKeyValue(variantEvaluation.getVariantContext()), variantEvaluation);
+    private String recordKeyValue(VariantEvaluation variantEvaluation) {
+        if (variantEvaluation.getSampleGenotypes().hasRecordIndex()) {
+            return "record-" + variantEvaluation.getSampleGenotypes().getRecordIndex();
         }
-        return geneVariants;
+        // 10-123256215-T-G
+        return variantEvaluation.getChromosomeName() + '-' +
+                variantEvaluation.getPosition() + '-' +
+                variantEvaluation.getRef() + '-' +
+                variantEvaluation.getAlt();
     }
 
     /**
-     * A {@link VariantContext} cannot be used directly as a key in a Map or put into a Set as it does not override equals or hashCode.
-     * Also simply using toString isn't an option as the compatible variants returned from the
-     * {@link InheritanceModeAnalyser#checkInheritanceCompatibilityOfPassedVariants(Gene)}
-     * are different instances and have had their genotype strings changed. This method solves these problems.
+     * Where the source record is not available each allele is written out on its own minimal line.
      */
-    private String variantContextKeyValue(VariantContext variantContext) {
-        //using StringBuilder instead of String.format as the performance is better and we're going to be doing this for every variant in the VCF
-        // chr10-123256215-T*-[G, A]
-        // chr5-11-AC*-[AT]
-        return variantContext.getContig() + '-' +
-                variantContext.getStart() + '-' +
-                variantContext.getReference() + '-' +
-                variantContext.getAlternateAlleles();
+    private void writeRecordGroup(RecordGroup recordGroup, VariantContext sourceRecord, VariantContextWriter writer) {
+        if (sourceRecord != null) {
+            writer.add(updateRecord(recordGroup.getAlleles(), recordGroup.getGene(), sourceRecord));
+            return;
+        }
+        for (VariantEvaluation variantEvaluation : recordGroup.getAlleles()) {
+            VariantContext minimalRecord = SourceVcfRecords.buildMinimalRecord(variantEvaluation);
+            writer.add(updateRecord(Collections.singletonList(variantEvaluation), recordGroup.getGene(), minimalRecord));
+        }
     }
 
-    private VariantContext updateRecord(List<VariantEvaluation> variantEvaluations, Gene gene) {
+    private VariantContext updateRecord(List<VariantEvaluation> variantEvaluations, Gene gene, VariantContext variantContext) {
         // create a new VariantContextBuilder, based on the original line
-        // n.b. variantContexts with alternative alleles will be shared between
+        // n.b. the source record of multi-allelic sites will be shared between
         // the alternative allele variant objects - Exomiser works on a 1 Variant = 1 Allele principle
         VariantEvaluation variantEvaluation = variantEvaluations.get(0);
-
-        VariantContext variantContext = variantEvaluation.getVariantContext();
         VariantContextBuilder builder = new VariantContextBuilder(variantContext);
         // update filter and info fields and write out to writer.
         updateFilterField(builder, variantEvaluation);
@@ -357,4 +341,30 @@ private String getContributingVariantFlag(VariantEvaluation variantEvaluation) {
         return variantEvaluation.contributesToGeneScore() ? ExomiserVcfInfoField.ALLELE_CONTRIBUTES.getId() : ".";
     }
 
+    /**
+     * The alleles of a gene which share a source record.
+     */
+    private static final class RecordGroup {
+
+        private final Gene gene;
+        private final List<VariantEvaluation> alleles;
+
+        private RecordGroup(Gene gene, List<VariantEvaluation> alleles) {
+            this.gene = gene;
+            this.alleles = alleles;
+        }
+
+        Gene getGene() {
+            return gene;
+        }
+
+        List<VariantEvaluation> getAlleles() {
+            return alleles;
+        }
+
+        VariantEvaluation getFirstVariant() {
+            return alleles.get(0);
+        }
+    }
+
 }
@@ -0,0 +1,200 @@
+/*
+ * The Exomiser - A tool to annotate and prioritize genomic variants
+ *
+ * Copyright (c) 2016-2017 Queen Mary University of London.
+ * Copyright (c) 2012-2016 Charité Universitätsmedizin Berlin and Genome Research Ltd.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.monarchinitiative.exomiser.core.analysis;
+
+import de.charite.compbio.jannovar.mendel.ModeOfInheritance;
+import org.junit.Test;
+import org.monarchinitiative.exomiser.core.filters.InheritanceFilter;
+import org.monarchinitiative.exomiser.core.filters.PriorityScoreFilter;
+import org.monarchinitiative.exomiser.core.model.Gene;
+import org.monarchinitiative.exomiser.core.prioritisers.MockPrioritiser;
+import org.monarchinitiative.exomiser.core.prioritisers.OMIMPriorityResult;
+import org.monarchinitiative.exomiser.core.prioritisers.PriorityResult;
+import org.monarchinitiative.exomiser.core.prioritisers.PriorityType;
+
+import java.util.*;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+/**
+ * @author Jules Jacobsen <j.jacobsen@qmul.ac.uk>
+ */
+public class AnalysisStepSchedulerTest {
+
+    private final AnalysisStepScheduler instance = new AnalysisStepScheduler(new ForkJoinPool(2));
+
+    private final Gene fgfr2 = new Gene("FGFR2", 2263);
+    private final Gene shh = new Gene("SHH", 6469);
+    private final List<Gene> genes = Arrays.asList(fgfr2, shh);
+
+    private final List<String> steps = new ArrayList<>();
+
+    private MockPrioritiser makePrioritiser(PriorityType priorityType, float fgfr2Score, float shhScore) {
+        Map<String, Float> geneSymbolScores = new HashMap<>();
+        geneSymbolScores.put("FGFR2", fgfr2Score);
+        geneSymbolScores.put("SHH", shhScore);
+        return new MockPrioritiser(priorityType, geneSymbolScores);
+    }
+
+    private float getScore(Gene gene, PriorityType priorityType) {
+        PriorityResult priorityResult = gene.getPriorityResult(priorityType);
+        return priorityResult == null ? -1f : (float) priorityResult.getScore();
+    }
+
+    private void runSteps(List<List<AnalysisStep>> analysisStepGroups) {
+        instance.runSteps(analysisStepGroups, Collections.emptyList(), genes, () -> steps.add("inheritance"), analysisStep -> steps.add(analysisStep.getClass().getSimpleName()));
+    }
+
+    @Test
+    public void testNoSteps() {
+        runSteps(Collections.emptyList());
+        assertThat(steps.isEmpty(), equalTo(true));
+        assertThat(fgfr2.getPriorityResults().isEmpty(), equalTo(true));
+    }
+
+    @Test
+    public void testPrioritisersInDifferentGroupsAddResultsToGenes() {
+        MockPrioritiser omim = makePrioritiser(PriorityType.OMIM_PRIORITY, 1f, 0.5f);
+        MockPrioritiser hiPhive = makePrioritiser(PriorityType.HIPHIVE_PRIORITY, 0.9f, 0.2f);
+
+        runSteps(Arrays.asList(Collections.singletonList(omim), Collections.singletonList(hiPhive)));
+
+        assertThat(getScore(fgfr2, PriorityType.OMIM_PRIORITY), equalTo(1f));
+        assertThat(getScore(fgfr2, PriorityType.HIPHIVE_PRIORITY), equalTo(0.9f));
+        assertThat(getScore(shh, PriorityType.OMIM_PRIORITY), equalTo(0.5f));
+        assertThat(getScore(shh, PriorityType.HIPHIVE_PRIORITY), equalTo(0.2f));
+    }
+
+    @Test
+    public void testPrioritiserResultsOfTheSameTypeAreAddedInStepOrder() {
+        MockPrioritiser first = makePrioritiser(PriorityType.HIPHIVE_PRIORITY, 0.1f, 0.1f);
+        MockPrioritiser second = makePrioritiser(PriorityType.HIPHIVE_PRIORITY, 0.8f, 0.8f);
+
+        runSteps(Collections.singletonList(Arrays.asList(first, second)));
+
+        assertThat(getScore(fgfr2, PriorityType.HIPHIVE_PRIORITY), equalTo(0.8f));
+        assertThat(getScore(shh, PriorityType.HIPHIVE_PRIORITY), equalTo(0.8f));
+    }
+
+    @Test
+    public void testPrioritiserOverridingPrioritizeGenesIsUsed() {
+        MockPrioritiser omim = new MockPrioritiser(PriorityType.OMIM_PRIORITY, Collections.emptyMap()) {
+            @Override
+            public void prioritizeGenes(List<String> hpoIds, List<Gene> genes) {
+                genes.forEach(gene -> gene.addPriorityResult(new OMIMPriorityResult(gene.getEntrezGeneID(), gene.getGeneSymbol(), 0.5, Collections.emptyList())));
+            }
+        };
+
+        runSteps(Collections.singletonList(Collections.singletonList(omim)));
+
+        assertThat(getScore(fgfr2, PriorityType.OMIM_PRIORITY), equalTo(0.5f));
+        assertThat(getScore(shh, PriorityType.OMIM_PRIORITY), equalTo(0.5f));
+    }
+
+    @Test
+    public void testFailedPrioritiserStopsFollowingStepsFromRunning() {
+        MockPrioritiser failing = new MockPrioritiser(PriorityType.HIPHIVE_PRIORITY, Collections.emptyMap()) {
+            @Override
+            public void prioritizeGenes(List<String> hpoIds, List<Gene> genes) {
+                throw new IllegalStateException("Prioritiser failed");
+            }
+        };
+        MockPrioritiser omim = makePrioritiser(PriorityType.OMIM_PRIORITY, 1f, 0.5f);
+        PriorityScoreFilter priorityScoreFilter = new PriorityScoreFilter(PriorityType.OMIM_PRIORITY, 0.5f);
+
+        try {
+            runSteps(Collections.singletonList(Arrays.asList(failing, omim, priorityScoreFilter)));
+            fail("Expected the prioritiser failure to be thrown");
+        } catch (IllegalStateException e) {
+            assertThat(e.getMessage(), equalTo("Prioritiser failed"));
+        }
+        assertThat(steps.isEmpty(), equalTo(true));
+    }
+
+    @Test
+    public void testFailureIsThrownOnceRunningPrioritisersHaveFinished() {
+        CountDownLatch failed = new CountDownLatch(1);
+        MockPrioritiser failing = new MockPrioritiser(PriorityType.HIPHIVE_PRIORITY, Collections.emptyMap()) {
+            @Override
+            public void prioritizeGenes(List<String> hpoIds, List<Gene> genes) {
+                failed.countDown();
+                throw new IllegalStateException("Prioritiser failed");
+            }
+        };
+        MockPrioritiser omim = new MockPrioritiser(PriorityType.OMIM_PRIORITY, Collections.emptyMap()) {
+            @Override
+            public void prioritizeGenes(List<String> hpoIds, List<Gene> genes) {
+                try {
+                    failed.await();
+                    Thread.sleep(100);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                genes.forEach(gene -> gene.addPriorityResult(new OMIMPriorityResult(gene.getEntrezGeneID(), gene.getGeneSymbol(), 0.5, Collections.emptyList())));
+            }
+        };
+
+        try {
+            runSteps(Collections.singletonList(Arrays.asList(failing, omim)));
+            fail("Expected the prioritiser failure to be thrown");
+        } catch (IllegalStateException e) {
+            assertThat(e.getMessage(), equalTo("Prioritiser failed"));
+        }
+        assertThat(getScore(fgfr2, PriorityType.OMIM_PRIORITY), equalTo(0.5f));
+        assertThat(getScore(shh, PriorityType.OMIM_PRIORITY), equalTo(0.5f));
+    }
+
+    @Test
+    public void testPrioritiserResultsAreAddedBeforeFollowingFilterIsRun() {
+        MockPrioritiser hiPhive = makePrioritiser(PriorityType.HIPHIVE_PRIORITY, 0.9f, 0.2f);
+        PriorityScoreFilter priorityScoreFilter = new PriorityScoreFilter(PriorityType.HIPHIVE_PRIORITY, 0.5f);
+
+        List<Float> scoresSeenByFilter = new ArrayList<>();
+        instance.runSteps(Collections.singletonList(Arrays.asList(hiPhive, priorityScoreFilter)), Collections.emptyList(), genes,
+                () -> steps.add("inheritance"),
+                analysisStep -> scoresSeenByFilter.add(getScore(fgfr2, PriorityType.HIPHIVE_PRIORITY)));
+
+        assertThat(scoresSeenByFilter, equalTo(Collections.singletonList(0.9f)));
+    }
+
+    @Test
+    public void testFiltersAndInheritanceModeAnalysisRunInOrder() {
+        MockPrioritiser omim = makePrioritiser(PriorityType.OMIM_PRIORITY, 1f, 0.5f);
+        InheritanceFilter inheritanceFilter = new InheritanceFilter(ModeOfInheritance.AUTOSOMAL_DOMINANT);
+        PriorityScoreFilter priorityScoreFilter = new PriorityScoreFilter(PriorityType.OMIM_PRIORITY, 0.5f);
+
+        List<List<AnalysisStep>> groups = Arrays.asList(
+                Arrays.asList(inheritanceFilter, omim),
+                Collections.singletonList(priorityScoreFilter),
+                Collections.singletonList(inheritanceFilter)
+        );
+        runSteps(groups);
+
+        assertThat(steps, equalTo(Arrays.asList("inheritance", "InheritanceFilter", "PriorityScoreFilter", "inheritance", "InheritanceFilter")));
+        assertThat(getScore(shh, PriorityType.OMIM_PRIORITY), equalTo(0.5f));
+        assertThat(shh.getPriorityResult(PriorityType.HIPHIVE_PRIORITY), nullValue());
+    }
+}
@@ -23,17 +23,23 @@
 import de.charite.compbio.jannovar.mendel.ModeOfInheritance;
 import org.junit.Test;
 import org.monarchinitiative.exomiser.core.filters.*;
+import org.monarchinitiative.exomiser.core.genome.VariantDataService;
+import org.monarchinitiative.exomiser.core.genome.VariantDataServiceStub;
 import org.monarchinitiative.exomiser.core.model.FilterStatus;
 import org.monarchinitiative.exomiser.core.model.Gene;
 import org.monarchinitiative.exomiser.core.model.GeneticInterval;
+import org.monarchinitiative.exomiser.core.model.Variant;
 import org.monarchinitiative.exomiser.core.model.VariantEvaluation;
+import org.monarchinitiative.exomiser.core.model.frequency.FrequencyData;
+import org.monarchinitiative.exomiser.core.model.frequency.FrequencySource;
+import org.monarchinitiative.exomiser.core.model.pathogenicity.PathogenicityData;
+import org.monarchinitiative.exomiser.core.model.pathogenicity.PathogenicitySource;
 import org.monarchinitiative.exomiser.core.prioritisers.MockPrioritiser;
 import org.monarchinitiative.exomiser.core.prioritisers.Prioritiser;
 import org.monarchinitiative.exomiser.core.prioritisers.PriorityType;
 
-import java.util.EnumSet;
-import java.util.HashMap;
-import java.util.Map;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static org.hamcrest.CoreMatchers.*;
 import static org.hamcrest.MatcherAssert.assertThat;
@@ -354,4 +360,107 @@ public void testRunAnalysis_VariantFilterPrioritiserPriorityScoreFilterVariantFi
         assertThat(rbm8Variant2.passedFilter(FilterType.INHERITANCE_FILTER), is(true));
     }
 
+    @Test
+    public void testRunAnalysis_ReportsProgressToListener() {
+        VariantFilter intervalFilter = new IntervalFilter(new GeneticInterval(1, 145508800, 145508800));
+        Analysis analysis = makeAnalysis(vcfPath, intervalFilter);
+
+        List<String> steps = new ArrayList<>();
+        int[] variantCounts = new int[2];
+        AnalysisProgressListener progressListener = new AnalysisProgressListener() {
+            @Override
+            public void stepStarted(String description) {
+                steps.add(description);
+            }
+
+            @Override
+            public void variantsLoaded(int numLoaded, int numPassed) {
+                variantCounts[0] = numLoaded;
+                variantCounts[1] = numPassed;
+            }
+        };
+        instance.run(analysis, progressListener);
+
+        assertThat(steps, hasItems("Loading and filtering variants", "Scoring genes"));
+        assertThat(variantCounts[0], equalTo(3));
+        assertThat(variantCounts[1], equalTo(1));
+    }
+
+    private Analysis makeProbandAnalysis(String probandSampleName, VariantDataService variantDataService) {
+        Map<String, Float> hiPhiveGeneScores = new HashMap<>();
+        hiPhiveGeneScores.put("GNRHR2", 0.75f);
+        hiPhiveGeneScores.put("RBM8A", 0.65f);
+        return Analysis.builder()
+                .vcfPath(inheritanceFilterVCFPath)
+                .pedPath(twoAffectedPedPath)
+                .probandSampleName(probandSampleName)
+                .modeOfInheritance(ModeOfInheritance.AUTOSOMAL_RECESSIVE)
+                .addStep(new QualityFilter(1))
+                .addStep(new FrequencyDataProvider(variantDataService, EnumSet.allOf(FrequencySource.class), new FrequencyFilter(1f)))
+                .addStep(new PathogenicityDataProvider(variantDataService, EnumSet.allOf(PathogenicitySource.class), new PathogenicityFilter(true)))
+                .addStep(new MockPrioritiser(PriorityType.HIPHIVE_PRIORITY, hiPhiveGeneScores))
+                .addStep(new InheritanceFilter(ModeOfInheritance.AUTOSOMAL_RECESSIVE))
+                .build();
+    }
+
+    @Test
+    public void testRunCohort_ResultsAreTheSameAsRunningEachAnalysis() {
+        List<Analysis> analyses = Arrays.asList(makeProbandAnalysis("Seth", stubDataService), makeProbandAnalysis("Adam", stubDataService), makeAnalysis(vcfPath));
+
+        List<CohortAnalysisResult> cohortResults = instance.runCohort(analyses, AnalysisProgressListener.NONE);
+
+        assertThat(cohortResults.size(), equalTo(analyses.size()));
+        for (int i = 0; i < analyses.size(); i++) {
+            AnalysisResults expected = instance.run(analyses.get(i));
+            assertThat(cohortResults.get(i).isFailed(), is(false));
+            AnalysisResults actual = cohortResults.get(i).getAnalysisResults();
+            assertThat(actual.getProbandSampleName(), equalTo(expected.getProbandSampleName()));
+            assertThat(actual.getGenes().toString(), equalTo(expected.getGenes().toString()));
+            assertThat(actual.getVariantEvaluations().toString(), equalTo(expected.getVariantEvaluations().toString()));
+        }
+    }
+
+    @Test
+    public void testRunCohort_FailedAnalysisDoesNotStopTheOthers() {
+        Analysis unknownProband = makeProbandAnalysis("Nobody", stubDataService);
+        Analysis seth = makeProbandAnalysis("Seth", stubDataService);
+
+        List<CohortAnalysisResult> cohortResults = instance.runCohort(Arrays.asList(unknownProband, seth), AnalysisProgressListener.NONE);
+
+        assertThat(cohortResults.size(), equalTo(2));
+        assertThat(cohortResults.get(0).getAnalysis(), sameInstance(unknownProband));
+        assertThat(cohortResults.get(0).isFailed(), is(true));
+        assertThat(cohortResults.get(0).getAnalysisResults(), nullValue());
+        assertThat(cohortResults.get(1).getAnalysis(), sameInstance(seth));
+        assertThat(cohortResults.get(1).isFailed(), is(false));
+        assertThat(cohortResults.get(1).getAnalysisResults().getProbandSampleName(), equalTo("Seth"));
+    }
+
+    @Test
+    public void testRunCohort_VariantDataIsFetchedOnceForAllProbands() {
+        AtomicInteger numLookups = new AtomicInteger();
+        VariantDataService countingDataService = new VariantDataServiceStub() {
+            @Override
+            public FrequencyData getVariantFrequencyData(Variant variant, Set<FrequencySource> frequencySources) {
+                numLookups.incrementAndGet();
+                return super.getVariantFrequencyData(variant, frequencySources);
+            }
+
+            @Override
+            public PathogenicityData getVariantPathogenicityData(Variant variant, Set<PathogenicitySource> pathogenicitySources) {
+                numLookups.incrementAndGet();
+                return super.getVariantPathogenicityData(variant, pathogenicitySources);
+            }
+        };
+        SimpleAnalysisRunner countingInstance = new SimpleAnalysisRunner(geneFactory, variantFactory, countingDataService);
+
+        countingInstance.run(makeProbandAnalysis("Seth", countingDataService));
+        int singleAnalysisLookups = numLookups.getAndSet(0);
+
+        countingInstance.runCohort(Arrays.asList(makeProbandAnalysis("Seth", countingDataService), makeProbandAnalysis("Adam", countingDataService)), AnalysisProgressListener.NONE);
+
+        assertThat(singleAnalysisLookups > 0, is(true));
+        assertThat(numLookups.get(), equalTo(singleAnalysisLookups));
+    }
+
 }
@@ -0,0 +1,94 @@
+/*
+ * The Exomiser - A tool to annotate and prioritize genomic variants
+ *
+ * Copyright (c) 2016-2017 Queen Mary University of London.
+ * Copyright (c) 2012-2016 Charité Universitätsmedizin Berlin and Genome Research Ltd.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.monarchinitiative.exomiser.core.analysis.util;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.zip.GZIPOutputStream;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.Matchers.both;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.lessThan;
+import static org.junit.Assert.assertThat;
+
+/**
+ * @author Jules Jacobsen <j.jacobsen@qmul.ac.uk>
+ */
+public class VariantCountEstimatorTest {
+
+    @Rule
+    public TemporaryFolder tmpFolder = new TemporaryFolder();
+
+    private void writeVcf(Writer writer, int numRecords) throws IOException {
+        writer.write("##fileformat=VCFv4.1\n");
+        writer.write("#CHROM\tPOS\tID\tREF\tALT\tQUAL\tFILTER\tINFO\tFORMAT\tsample\n");
+        for (int i = 1; i <= numRecords; i++) {
+            writer.write(String.format("1\t%d\t.\tA\tT\t100\tPASS\t.\tGT\t0/1%n", i * 100));
+        }
+    }
+
+    private Path plainVcf(int numRecords) throws IOException {
+        Path vcfPath = tmpFolder.newFile().toPath();
+        try (Writer writer = Files.newBufferedWriter(vcfPath)) {
+            writeVcf(writer, numRecords);
+        }
+        return vcfPath;
+    }
+
+    private Path gzippedVcf(int numRecords) throws IOException {
+        Path vcfPath = tmpFolder.newFile("test.vcf.gz").toPath();
+        try (Writer writer = new BufferedWriter(new OutputStreamWriter(new GZIPOutputStream(Files.newOutputStream(vcfPath)), StandardCharsets.US_ASCII))) {
+            writeVcf(writer, numRecords);
+        }
+        return vcfPath;
+    }
+
+    @Test
+    public void testEmptyVcf() throws Exception {
+        assertThat(VariantCountEstimator.estimateVariantCount(plainVcf(0)), equalTo(0L));
+    }
+
+    @Test
+    public void testSmallVcfIsCountedExactly() throws Exception {
+        assertThat(VariantCountEstimator.estimateVariantCount(plainVcf(123)), equalTo(123L));
+    }
+
+    @Test
+    public void testSmallGzippedVcfIsCountedExactly() throws Exception {
+        assertThat(VariantCountEstimator.estimateVariantCount(gzippedVcf(123)), equalTo(123L));
+    }
+
+    @Test
+    public void testLargeVcfIsEstimated() throws Exception {
+        long estimate = VariantCountEstimator.estimateVariantCount(plainVcf(100_000));
+        assertThat(estimate, both(greaterThan(90_000L)).and(lessThan(110_000L)));
+    }
+}
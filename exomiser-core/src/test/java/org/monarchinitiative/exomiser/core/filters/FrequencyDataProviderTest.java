@@ -29,6 +29,7 @@
 import org.monarchinitiative.exomiser.core.model.frequency.FrequencySource;
 import org.monarchinitiative.exomiser.core.model.frequency.RsId;
 
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.EnumSet;
 import java.util.Set;
@@ -146,4 +147,33 @@ public void testGetDecoratedFilter() {
         instance = new FrequencyDataProvider(variantDataService, EnumSet.noneOf(FrequencySource.class), decoratedFilter);
         assertThat(instance.getDecoratedFilter(), equalTo(decoratedFilter));
     }
+
+    @Test
+    public void testProvidesFrequencyDataForBlockOfVariants() {
+        VariantEvaluation otherVariant = VariantEvaluation.builder(1, 2, "A", "T").build();
+        FrequencyData expectedData = FrequencyData.of(RsId.valueOf(123456), Frequency.valueOf(1.0f, ESP_ALL));
+        variantDataService.put(otherVariant, expectedData);
+
+        instance = new FrequencyDataProvider(variantDataService, EnumSet.allOf(FrequencySource.class), new KnownVariantFilter());
+        instance.provideVariantData(Arrays.asList(variant, otherVariant));
+
+        assertThat(variant.getFrequencyData(), equalTo(FrequencyData.empty()));
+        assertThat(otherVariant.getFrequencyData(), equalTo(expectedData));
+    }
+
+    @Test
+    public void testWithVariantDataServiceFetchesDataFromOtherService() {
+        FrequencyData expectedData = FrequencyData.of(RsId.valueOf(123456), Frequency.valueOf(1.0f, ESP_ALL));
+        VariantDataServiceMock otherVariantDataService = new VariantDataServiceMock();
+        otherVariantDataService.put(variant, expectedData);
+        VariantFilter decoratedFilter = new KnownVariantFilter();
+
+        instance = new FrequencyDataProvider(variantDataService, EnumSet.allOf(FrequencySource.class), decoratedFilter);
+        FrequencyDataProvider otherInstance = instance.withVariantDataService(otherVariantDataService);
+        otherInstance.runFilter(variant);
+
+        assertThat(otherInstance.getDecoratedFilter(), equalTo(decoratedFilter));
+        assertThat(variant.getFrequencyData(), equalTo(expectedData));
+    }
+
 }
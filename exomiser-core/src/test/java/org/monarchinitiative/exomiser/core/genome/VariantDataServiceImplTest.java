@@ -228,6 +228,18 @@ public void serviceReturnsEmptyFrequencyDataWhenSpecifiedFrequencyDataIsUnavaila
         assertThat(result, equalTo(FrequencyData.empty()));
     }
 
+    @Test
+    public void serviceReturnsFrequencyDataForBatchOfVariantsIncludingLocalData() {
+        VariantEvaluation otherVariant = VariantEvaluation.builder(1, 2, "A", "T").build();
+        List<VariantEvaluation> variants = Arrays.asList(variant, otherVariant);
+        FrequencyData localFrequencyData = FrequencyData.of(RsId.empty(), Frequency.valueOf(2f, FrequencySource.LOCAL));
+        Mockito.when(defaultFrequencyDao.getFrequencyData(variants)).thenReturn(Arrays.asList(FREQ_DATA, FrequencyData.empty()));
+        Mockito.when(localFrequencyDao.getFrequencyData(variants)).thenReturn(Arrays.asList(FrequencyData.empty(), localFrequencyData));
+
+        List<FrequencyData> result = instance.getVariantFrequencyData(variants, EnumSet.of(FrequencySource.ESP_AFRICAN_AMERICAN, FrequencySource.LOCAL));
+        assertThat(result, equalTo(Arrays.asList(FREQ_DATA, localFrequencyData)));
+    }
+
     @Test
     public void serviceReturnsRegulatoryFeatures() {
         List<RegulatoryFeature> regulatoryFeatures = Arrays.asList(new RegulatoryFeature(1, 10, 100, RegulatoryFeature.FeatureType.ENHANCER));
@@ -110,6 +110,15 @@ public FrequencyData getVariantFrequencyData(Variant variant, Set<FrequencySourc
         return frequencyDataFromSpecifiedSources(allFrequencyData.getRsId(), allFrequencyData.getKnownFrequencies(), frequencySources);
     }
 
+    @Override
+    public List<FrequencyData> getVariantFrequencyData(List<? extends Variant> variants, Set<FrequencySource> frequencySources) {
+        List<FrequencyData> frequencyData = new ArrayList<>(variants.size());
+        for (Variant variant : variants) {
+            frequencyData.add(getVariantFrequencyData(variant, frequencySources));
+        }
+        return frequencyData;
+    }
+
     @Override
     public PathogenicityData getVariantPathogenicityData(Variant variant, Set<PathogenicitySource> pathogenicitySources) {
         PathogenicityData pathData = expectedPathogenicityData.getOrDefault(variant, PathogenicityData.empty());
@@ -28,9 +28,6 @@
 import de.charite.compbio.jannovar.annotation.VariantEffect;
 import de.charite.compbio.jannovar.data.JannovarData;
 import htsjdk.tribble.TribbleException;
-import htsjdk.variant.variantcontext.Genotype;
-import htsjdk.variant.variantcontext.GenotypeType;
-import htsjdk.variant.variantcontext.GenotypesContext;
 import htsjdk.variant.variantcontext.VariantContext;
 import htsjdk.variant.vcf.VCFCodec;
 import htsjdk.variant.vcf.VCFHeader;
@@ -43,7 +40,9 @@
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.function.Consumer;
+import java.util.stream.IntStream;
 import java.util.stream.Stream;
 
 import static java.util.stream.Collectors.toList;
@@ -64,11 +63,9 @@ public VariantFactoryTest() {
 
     private Consumer<VariantEvaluation> printVariant() {
         return variant -> {
-            GenotypesContext genotypes = variant.getVariantContext().getGenotypes();
-            List<GenotypeType> genotypeTypes = genotypes.stream().map(Genotype::getType).collect(toList());
-            System.out.printf("%s %s %s %s %s %s %s offExome=%s gene=%s %s%n", variant.getChromosome(), variant.getPosition(), variant
-                    .getRef(), variant.getAlt(), variant.getGenotypeString(), genotypes, genotypeTypes, variant.isOffExome(), variant
-                    .getGeneSymbol(), variant.getVariantContext());
+            System.out.printf("%s %s %s %s %s offExome=%s gene=%s %s%n", variant.getChromosome(), variant.getPosition(), variant
+                    .getRef(), variant.getAlt(), variant.getGenotypeString(), variant.isOffExome(), variant
+                    .getGeneSymbol(), variant.getSampleGenotypes());
         };
     }
 
@@ -332,6 +329,72 @@ public void testMultiSampleMultiPositionOnlyOneAltAlleleIsPresentInSamplesProduc
         assertThat(variantEvaluation.getVariantEffect(), equalTo(VariantEffect.INTERGENIC_VARIANT));
     }
 
+    @Test(expected = IllegalArgumentException.class)
+    public void testZeroAnnotationThreadsThrowsException() {
+        new VariantFactory(TestFactory.buildDefaultJannovarData(), 0);
+    }
+
+    @Test
+    public void testParallelAnnotationReturnsSameVariantsInSameOrderAsSingleThreaded() {
+        Path vcfPath = Paths.get("src/test/resources/multiAlleleGenotypes.vcf");
+        List<VariantEvaluation> expected = instance.streamVariantEvaluations(vcfPath).collect(toList());
+
+        VariantFactory parallelFactory = new VariantFactory(TestFactory.buildDefaultJannovarData(), 4);
+        List<VariantEvaluation> variants;
+        try (Stream<VariantEvaluation> variantStream = parallelFactory.streamVariantEvaluations(vcfPath)) {
+            variants = variantStream.collect(toList());
+        }
+
+        assertThat(variants, equalTo(expected));
+        for (int i = 0; i < expected.size(); i++) {
+            assertThat(variants.get(i).toString(), equalTo(expected.get(i).toString()));
+            assertThat(variants.get(i).getAnnotations(), equalTo(expected.get(i).getAnnotations()));
+        }
+    }
+
+    @Test
+    public void testParallelAnnotationPreservesOrderAcrossManySmallChunks() {
+        Stream<Integer> positions = IntStream.range(0, 250).mapToObj(i -> 120612040 + i);
+
+        List<VariantEvaluation> variants;
+        try (Stream<VariantEvaluation> variantStream = ParallelAnnotationPipeline.annotate(positions, position -> Stream
+                .of(VariantEvaluation.builder(1, position, "T", "C").build()), 3, 7)) {
+            variants = variantStream.collect(toList());
+        }
+
+        assertThat(variants.size(), equalTo(250));
+        for (int i = 0; i < variants.size(); i++) {
+            assertThat(variants.get(i).getPosition(), equalTo(120612040 + i));
+        }
+    }
+
+    @Test
+    public void testClosingParallelAnnotationClosesSourceOnReaderThread() {
+        AtomicReference<String> closingThreadName = new AtomicReference<>();
+        Stream<Integer> positions = Stream.iterate(120612040, position -> position + 1)
+                .onClose(() -> closingThreadName.set(Thread.currentThread().getName()));
+
+        Stream<VariantEvaluation> variantStream = ParallelAnnotationPipeline.annotate(positions, position -> Stream
+                .of(VariantEvaluation.builder(1, position, "T", "C").build()), 2, 10);
+        assertThat(variantStream.iterator().next().getPosition(), equalTo(120612040));
+        variantStream.close();
+
+        assertThat(closingThreadName.get(), startsWith("variant-reader-"));
+    }
+
+    @Test
+    public void testAllelesFromSameRecordShareSampleGenotypes() {
+        Path vcfPath = Paths.get("src/test/resources/multiAlleleGenotypes.vcf");
+        List<VariantEvaluation> variants = instance.streamVariantEvaluations(vcfPath).collect(toList());
+        //1/2 HETEROZYGOUS_ALT
+        VariantEvaluation altAlleleOne = variants.get(3);
+        VariantEvaluation altAlleleTwo = variants.get(4);
+        assertThat(altAlleleOne.getSampleGenotypes(), sameInstance(altAlleleTwo.getSampleGenotypes()));
+        assertThat(altAlleleOne.getSampleGenotypes().getRecordIndex(), equalTo(4));
+        assertThat(altAlleleOne.getGenotypeString(), equalTo("0/1"));
+        assertThat(altAlleleTwo.getGenotypeString(), equalTo("0/1"));
+    }
+
     private static class VcfParser {
 
         private final VCFCodec vcfCodec;
@@ -0,0 +1,147 @@
+/*
+ * The Exomiser - A tool to annotate and prioritize genomic variants
+ *
+ * Copyright (c) 2016-2017 Queen Mary University of London.
+ * Copyright (c) 2012-2016 Charité Universitätsmedizin Berlin and Genome Research Ltd.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+
+package org.monarchinitiative.exomiser.core.genome.dao;
+
+import de.charite.compbio.jannovar.annotation.VariantEffect;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.monarchinitiative.exomiser.core.model.Variant;
+import org.monarchinitiative.exomiser.core.model.VariantEvaluation;
+import org.monarchinitiative.exomiser.core.model.frequency.Frequency;
+import org.monarchinitiative.exomiser.core.model.frequency.FrequencyData;
+import org.monarchinitiative.exomiser.core.model.frequency.FrequencySource;
+import org.monarchinitiative.exomiser.core.model.frequency.RsId;
+import org.monarchinitiative.exomiser.core.model.pathogenicity.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.Map;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.junit.Assert.assertThat;
+
+/**
+ * @author Jules Jacobsen <j.jacobsen@qmul.ac.uk>
+ */
+public class AlleleStoreTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private AlleleStore instance;
+
+    @Before
+    public void setUp() throws IOException {
+        Path alleleStorePath = temporaryFolder.getRoot().toPath().resolve("alleles.bin");
+
+        Map<FrequencySource, Float> frequencies = new EnumMap<>(FrequencySource.class);
+        frequencies.put(FrequencySource.THOUSAND_GENOMES, 0.01f);
+        frequencies.put(FrequencySource.ESP_ALL, 0.02f);
+        frequencies.put(FrequencySource.EXAC_OTHER, 0f);
+
+        Map<PathogenicitySource, Float> scores = new EnumMap<>(PathogenicitySource.class);
+        scores.put(PathogenicitySource.SIFT, 0.1f);
+        scores.put(PathogenicitySource.MUTATION_TASTER, 0.9f);
+
+        try (AlleleStoreWriter writer = new AlleleStoreWriter(alleleStorePath)) {
+            writer.write(1, 12345, "A", "C", 0, Collections.emptyMap(), scores);
+            writer.write(1, 12345, "A", "T", 121918506, frequencies, Collections.emptyMap());
+            writer.write(1, 12346, "AT", "A", 0, frequencies, Collections.emptyMap());
+            writer.write(10, 123256215, "T", "G", 0, Collections.emptyMap(), Collections.emptyMap());
+            writer.write(23, 100, "G", "GTTT", 12, Collections.emptyMap(), Collections.emptyMap());
+        }
+        instance = AlleleStore.open(alleleStorePath);
+    }
+
+    private Variant variant(int chr, int pos, String ref, String alt) {
+        return VariantEvaluation.builder(chr, pos, ref, alt).variantEffect(VariantEffect.MISSENSE_VARIANT).build();
+    }
+
+    @Test
+    public void testSize() {
+        assertThat(instance.size(), equalTo(5L));
+    }
+
+    @Test
+    public void testGetFrequencyData() {
+        FrequencyData expected = FrequencyData.of(RsId.valueOf(121918506), Frequency.valueOf(0.01f, FrequencySource.THOUSAND_GENOMES), Frequency
+                .valueOf(0.02f, FrequencySource.ESP_ALL));
+        assertThat(instance.getFrequencyData(variant(1, 12345, "A", "T")), equalTo(expected));
+    }
+
+    @Test
+    public void testGetFrequencyDataRsIdOnly() {
+        assertThat(instance.getFrequencyData(variant(23, 100, "G", "GTTT")), equalTo(FrequencyData.of(RsId.valueOf(12))));
+    }
+
+    @Test
+    public void testGetFrequencyDataNoData() {
+        assertThat(instance.getFrequencyData(variant(10, 123256215, "T", "G")), equalTo(FrequencyData.empty()));
+    }
+
+    @Test
+    public void testGetFrequencyDataNotInStore() {
+        assertThat(instance.getFrequencyData(variant(1, 12345, "A", "G")), equalTo(FrequencyData.empty()));
+        assertThat(instance.getFrequencyData(variant(2, 12345, "A", "T")), equalTo(FrequencyData.empty()));
+        assertThat(instance.getFrequencyData(variant(1, 1, "A", "T")), equalTo(FrequencyData.empty()));
+        assertThat(instance.getFrequencyData(variant(25, 1, "A", "T")), equalTo(FrequencyData.empty()));
+    }
+
+    @Test
+    public void testGetPathogenicityData() {
+        PathogenicityData expected = PathogenicityData.of(SiftScore.valueOf(0.1f), MutationTasterScore.valueOf(0.9f));
+        assertThat(instance.getPathogenicityData(variant(1, 12345, "A", "C")), equalTo(expected));
+        assertThat(instance.getPathogenicityData(variant(1, 12345, "A", "T")), equalTo(PathogenicityData.empty()));
+    }
+
+    @Test
+    public void testPathogenicityDaoOnlyReturnsDataForMissenseVariants() {
+        AlleleStorePathogenicityDao pathogenicityDao = new AlleleStorePathogenicityDao(instance);
+        Variant synonymous = VariantEvaluation.builder(1, 12345, "A", "C").variantEffect(VariantEffect.SYNONYMOUS_VARIANT).build();
+        assertThat(pathogenicityDao.getPathogenicityData(synonymous), equalTo(PathogenicityData.empty()));
+    }
+
+    @Test
+    public void testEmptyStore() {
+        assertThat(AlleleStore.empty().getFrequencyData(variant(1, 12345, "A", "T")), equalTo(FrequencyData.empty()));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testWriterRejectsOutOfOrderAlleles() throws IOException {
+        try (AlleleStoreWriter writer = new AlleleStoreWriter(temporaryFolder.newFile("unsorted.bin").toPath())) {
+            writer.write(1, 12345, "A", "T", 0, Collections.emptyMap(), Collections.emptyMap());
+            writer.write(1, 12345, "A", "C", 0, Collections.emptyMap(), Collections.emptyMap());
+        }
+    }
+
+    @Test(expected = AlleleStore.AlleleStoreException.class)
+    public void testOpenNonAlleleStoreFileThrowsException() throws IOException {
+        Path notAnAlleleStore = temporaryFolder.newFile("not-an-allele-store.bin").toPath();
+        Files.write(notAnAlleleStore, new byte[64]);
+        AlleleStore.open(notAnAlleleStore);
+    }
+}
@@ -36,10 +36,17 @@
 import org.monarchinitiative.exomiser.core.model.frequency.RsId;
 import org.monarchinitiative.exomiser.core.prioritisers.config.TestDataSourceConfig;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.cache.Cache;
+import org.springframework.cache.concurrent.ConcurrentMapCache;
 import org.springframework.test.context.ContextConfiguration;
 import org.springframework.test.context.jdbc.Sql;
 import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
 
+import javax.sql.DataSource;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
 import static org.hamcrest.CoreMatchers.equalTo;
 import static org.hamcrest.CoreMatchers.is;
 import static org.junit.Assert.assertThat;
@@ -60,6 +67,9 @@ public class DefaultFrequencyDaoTest {
     @Autowired
     private DefaultFrequencyDao instance;
 
+    @Autowired
+    private DataSource dataSource;
+
     private Variant variantNotInDatabase;
     private Variant variantInDatabaseWithRsId;
 
@@ -93,5 +103,33 @@ public void testVariantInDatabaseReturnsFrequencyData() {
         assertThat(result, equalTo(expected));
         assertThat(result.isRepresentedInDatabase(), is(true));
     }
-       
+
+    @Test
+    public void testBatchOfVariantsReturnsFrequencyDataInInputOrder() {
+        Variant nearbyVariantNotInDatabase = VariantEvaluation.builder(10, 123256214, "A", "C").build();
+        List<FrequencyData> result = instance.getFrequencyData(Arrays.asList(variantInDatabaseWithRsId, variantNotInDatabase, nearbyVariantNotInDatabase, variantInDatabaseWithRsId));
+
+        FrequencyData expected = FrequencyData.of(rsId, dbSnp, espAa, espAll, espEa);
+        assertThat(result, equalTo(Arrays.asList(expected, NO_DATA, NO_DATA, expected)));
+    }
+
+    @Test
+    public void testBatchOfVariantsUsesAndFillsFrequencyCache() {
+        Cache frequencyCache = new ConcurrentMapCache("frequency");
+        FrequencyData cachedData = FrequencyData.of(RsId.valueOf(12345), Frequency.valueOf(0.5f, FrequencySource.ESP_ALL));
+        frequencyCache.put(variantNotInDatabase, cachedData);
+
+        DefaultFrequencyDao cachingInstance = new DefaultFrequencyDao(dataSource, frequencyCache);
+        List<FrequencyData> result = cachingInstance.getFrequencyData(Arrays.asList(variantInDatabaseWithRsId, variantNotInDatabase));
+
+        FrequencyData expected = FrequencyData.of(rsId, dbSnp, espAa, espAll, espEa);
+        assertThat(result, equalTo(Arrays.asList(expected, cachedData)));
+        assertThat(frequencyCache.get(variantInDatabaseWithRsId, FrequencyData.class), equalTo(expected));
+    }
+
+    @Test
+    public void testEmptyBatchReturnsEmptyList() {
+        assertThat(instance.getFrequencyData(Collections.emptyList()), equalTo(Collections.emptyList()));
+    }
+
 }
@@ -0,0 +1,212 @@
+/*
+ * The Exomiser - A tool to annotate and prioritize genomic variants
+ *
+ * Copyright (c) 2016-2017 Queen Mary University of London.
+ * Copyright (c) 2012-2016 Charité Universitätsmedizin Berlin and Genome Research Ltd.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.monarchinitiative.exomiser.core.genome.dao;
+
+import org.junit.Test;
+import org.monarchinitiative.exomiser.core.model.VariantEvaluation;
+import org.monarchinitiative.exomiser.core.model.frequency.Frequency;
+import org.monarchinitiative.exomiser.core.model.frequency.FrequencyData;
+import org.monarchinitiative.exomiser.core.model.frequency.FrequencySource;
+import org.monarchinitiative.exomiser.core.model.frequency.RsId;
+import org.monarchinitiative.exomiser.core.model.pathogenicity.CaddScore;
+import org.monarchinitiative.exomiser.core.model.pathogenicity.PathogenicityData;
+import org.monarchinitiative.exomiser.core.model.pathogenicity.PolyPhenScore;
+import org.monarchinitiative.exomiser.core.model.pathogenicity.SiftScore;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.hamcrest.CoreMatchers.*;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+/**
+ * @author Jules Jacobsen <j.jacobsen@qmul.ac.uk>
+ */
+public class PackedVariantCacheTest {
+
+    private static VariantEvaluation variant(int chr, int pos, String ref, String alt) {
+        return VariantEvaluation.builder(chr, pos, ref, alt).build();
+    }
+
+    @Test
+    public void testVariantKeyIsExact() {
+        long key = VariantKey.pack(variant(1, 12345, "A", "T"));
+        assertThat(key > 0, is(true));
+        assertThat(VariantKey.pack(variant(1, 12345, "A", "T")), equalTo(key));
+        assertThat(VariantKey.pack(variant(1, 12345, "A", "G")), not(equalTo(key)));
+        assertThat(VariantKey.pack(variant(1, 12345, "AT", "")), not(equalTo(VariantKey.pack(variant(1, 12345, "A", "T")))));
+        assertThat(VariantKey.pack(variant(2, 12345, "A", "T")), not(equalTo(key)));
+    }
+
+    @Test
+    public void testVariantKeyNotPackable() {
+        assertThat(VariantKey.pack(variant(1, 12345, "A", "N")), equalTo(VariantKey.NOT_PACKABLE));
+        assertThat(VariantKey.pack(variant(1, 12345, "ACGTACGT", "A")), equalTo(VariantKey.NOT_PACKABLE));
+        assertThat(VariantKey.pack(variant(1, 12345, "ACGTAC", "ACGTACG")), equalTo(VariantKey.NOT_PACKABLE));
+    }
+
+    @Test
+    public void testGetMissingValue() {
+        PackedVariantCache instance = new PackedVariantCache("frequency", 100_000);
+        assertThat(instance.get(variant(1, 1, "A", "T")), nullValue());
+        assertThat(instance.getMissCount(), equalTo(1L));
+    }
+
+    @Test
+    public void testFrequencyDataRoundTrip() {
+        PackedVariantCache instance = new PackedVariantCache("frequency", 100_000);
+        FrequencyData frequencyData = FrequencyData.of(RsId.valueOf(12345), Frequency.valueOf(0.01f, FrequencySource.ESP_ALL), Frequency.valueOf(0.2f, FrequencySource.THOUSAND_GENOMES));
+        instance.put(variant(1, 1, "A", "T"), frequencyData);
+        instance.put(variant(1, 2, "A", "T"), FrequencyData.empty());
+
+        assertThat(instance.get(variant(1, 1, "A", "T")).get(), equalTo(frequencyData));
+        assertThat(instance.get(variant(1, 2, "A", "T")).get(), sameInstance(FrequencyData.empty()));
+        assertThat(instance.getHitCount(), equalTo(2L));
+    }
+
+    @Test
+    public void testPathogenicityDataRoundTrip() {
+        PackedVariantCache instance = new PackedVariantCache("pathogenicity", 100_000);
+        PathogenicityData pathogenicityData = PathogenicityData.of(SiftScore.valueOf(0.01f), PolyPhenScore.valueOf(0.9f), CaddScore.valueOf(0.5f));
+        instance.put(variant(1, 1, "A", "T"), pathogenicityData);
+        assertThat(instance.get(variant(1, 1, "A", "T"), PathogenicityData.class), equalTo(pathogenicityData));
+    }
+
+    @Test
+    public void testUnpackableKey() {
+        PackedVariantCache instance = new PackedVariantCache("frequency", 100_000);
+        instance.put(variant(1, 1, "ACGTACGTACGT", "A"), FrequencyData.empty());
+        assertThat(instance.get(variant(1, 1, "ACGTACGTACGT", "A")).get(), equalTo(FrequencyData.empty()));
+        assertThat(instance.size(), equalTo(1L));
+    }
+
+    @Test
+    public void testManyEntriesAndEviction() {
+        PackedVariantCache instance = new PackedVariantCache("frequency", 10_000_000);
+        for (int i = 1; i <= 10_000; i++) {
+            instance.put(variant(1, i, "A", "T"), FrequencyData.of(RsId.valueOf(i)));
+        }
+        assertThat(instance.size(), equalTo(10_000L));
+        for (int i = 1; i <= 10_000; i += 2) {
+            instance.evict(variant(1, i, "A", "T"));
+        }
+        assertThat(instance.size(), equalTo(5_000L));
+        for (int i = 1; i <= 10_000; i++) {
+            boolean expected = i % 2 == 0;
+            assertThat(instance.get(variant(1, i, "A", "T")) != null, is(expected));
+        }
+        assertThat(instance.get(variant(1, 10, "A", "T")).get(), equalTo(FrequencyData.of(RsId.valueOf(10))));
+    }
+
+    @Test
+    public void testEntriesAreEvictedOnceFull() {
+        long maxBytes = 8 * 1024;
+        PackedVariantCache instance = new PackedVariantCache("frequency", maxBytes);
+        for (int i = 1; i <= 1_000; i++) {
+            instance.put(variant(1, i, "A", "T"), FrequencyData.of(RsId.valueOf(i)));
+        }
+        assertThat(instance.estimatedBytes() <= maxBytes, is(true));
+        assertThat(instance.size() < 1_000, is(true));
+        assertThat(instance.getEvictionCount(), equalTo(1_000 - instance.size()));
+    }
+
+    @Test
+    public void testEntriesWithEmptyValuesOnlyCostTheirTableSlot() {
+        PackedVariantCache instance = new PackedVariantCache("frequency", 64 * 1024 * 1024);
+        for (int i = 1; i <= 100_000; i++) {
+            instance.put(variant(1, i, "A", "T"), FrequencyData.empty());
+        }
+        assertThat(instance.size(), equalTo(100_000L));
+        //12 bytes a slot at a load factor of between 3/8 and 3/4
+        assertThat(instance.estimatedBytes() / instance.size() <= 33, is(true));
+    }
+
+    @Test
+    public void testRecentlyReadEntriesSurviveEviction() {
+        PackedVariantCache instance = new PackedVariantCache("frequency", 8 * 1024);
+        VariantEvaluation frequentlyRead = variant(2, 1, "A", "T");
+        instance.put(frequentlyRead, FrequencyData.of(RsId.valueOf(1)));
+        for (int i = 1; i <= 10_000; i++) {
+            instance.put(variant(1, i, "A", "T"), FrequencyData.of(RsId.valueOf(i)));
+            assertThat(instance.get(frequentlyRead), notNullValue());
+        }
+        assertThat(instance.get(variant(1, 1, "A", "T")), nullValue());
+    }
+
+    @Test
+    public void testGetWithValueLoaderStoresLoadedValue() {
+        PackedVariantCache instance = new PackedVariantCache("frequency", 100_000);
+        FrequencyData frequencyData = FrequencyData.of(RsId.valueOf(12345));
+        assertThat(instance.get(variant(1, 1, "A", "T"), () -> frequencyData), equalTo(frequencyData));
+        assertThat(instance.get(variant(1, 1, "A", "T"), () -> FrequencyData.empty()), equalTo(frequencyData));
+    }
+
+    @Test
+    public void testConcurrentGetWithValueLoaderLoadsOnce() throws Exception {
+        PackedVariantCache instance = new PackedVariantCache("frequency", 100_000);
+        AtomicInteger loadCount = new AtomicInteger();
+        CountDownLatch loading = new CountDownLatch(1);
+        FrequencyData frequencyData = FrequencyData.of(RsId.valueOf(12345));
+        Callable<FrequencyData> valueLoader = () -> {
+            loadCount.incrementAndGet();
+            loading.await();
+            return frequencyData;
+        };
+        ExecutorService executorService = Executors.newFixedThreadPool(4);
+        List<Future<FrequencyData>> futures = new ArrayList<>();
+        for (int thread = 0; thread < 4; thread++) {
+            futures.add(executorService.submit(() -> instance.get(variant(1, 1, "A", "T"), valueLoader)));
+        }
+        Thread.sleep(100);
+        loading.countDown();
+        for (Future<FrequencyData> future : futures) {
+            assertThat(future.get(), equalTo(frequencyData));
+        }
+        executorService.shutdown();
+        assertThat(loadCount.get(), equalTo(1));
+    }
+
+    @Test
+    public void testConcurrentAccess() throws Exception {
+        PackedVariantCache instance = new PackedVariantCache("frequency", 10_000_000);
+        ExecutorService executorService = Executors.newFixedThreadPool(4);
+        List<Future<?>> futures = new ArrayList<>();
+        for (int thread = 0; thread < 4; thread++) {
+            futures.add(executorService.submit(() -> {
+                for (int i = 1; i <= 10_000; i++) {
+                    instance.put(variant(1, i, "A", "T"), FrequencyData.of(RsId.valueOf(i)));
+                    assertThat(instance.get(variant(1, i, "A", "T"), FrequencyData.class), equalTo(FrequencyData.of(RsId.valueOf(i))));
+                }
+            }));
+        }
+        for (Future<?> future : futures) {
+            future.get();
+        }
+        executorService.shutdown();
+        assertThat(instance.size(), equalTo(10_000L));
+    }
+}
@@ -0,0 +1,147 @@
+/*
+ * The Exomiser - A tool to annotate and prioritize genomic variants
+ *
+ * Copyright (c) 2016-2017 Queen Mary University of London.
+ * Copyright (c) 2012-2016 Charité Universitätsmedizin Berlin and Genome Research Ltd.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.monarchinitiative.exomiser.core.genome.dao;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.monarchinitiative.exomiser.core.model.VariantEvaluation;
+import org.monarchinitiative.exomiser.core.model.frequency.Frequency;
+import org.monarchinitiative.exomiser.core.model.frequency.FrequencyData;
+import org.monarchinitiative.exomiser.core.model.frequency.FrequencySource;
+import org.monarchinitiative.exomiser.core.model.frequency.RsId;
+import org.monarchinitiative.exomiser.core.model.pathogenicity.CaddScore;
+import org.monarchinitiative.exomiser.core.model.pathogenicity.PathogenicityData;
+import org.springframework.cache.Cache;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Optional;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+/**
+ * @author Jules Jacobsen <j.jacobsen@qmul.ac.uk>
+ */
+public class PersistentVariantStoreTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private static final VariantEvaluation VARIANT = VariantEvaluation.builder(1, 12345, "A", "T").build();
+    private static final FrequencyData FREQUENCY_DATA = FrequencyData.of(RsId.valueOf(12345), Frequency.valueOf(0.01f, FrequencySource.ESP_ALL));
+    private static final PathogenicityData PATHOGENICITY_DATA = PathogenicityData.of(CaddScore.valueOf(0.9f));
+
+    private Path storePath() throws IOException {
+        return temporaryFolder.getRoot().toPath().resolve("variant-cache.db");
+    }
+
+    @Test
+    public void testMissingValue() throws IOException {
+        PersistentVariantStore instance = PersistentVariantStore.open(storePath(), "1");
+        assertThat(instance.getCache("frequency").get(VARIANT), nullValue());
+        instance.close();
+    }
+
+    @Test
+    public void testValuesSurviveReopening() throws IOException {
+        PersistentVariantStore instance = PersistentVariantStore.open(storePath(), "1");
+        instance.getCache("frequency").put(VARIANT, FREQUENCY_DATA);
+        instance.getCache("cadd").put(VARIANT, PATHOGENICITY_DATA);
+        instance.getCache("remm").put(VARIANT, PathogenicityData.empty());
+        instance.close();
+
+        PersistentVariantStore reopened = PersistentVariantStore.open(storePath(), "1");
+        assertThat(reopened.getCache("frequency").get(VARIANT).get(), equalTo(FREQUENCY_DATA));
+        assertThat(reopened.getCache("cadd").get(VARIANT).get(), equalTo(PATHOGENICITY_DATA));
+        assertThat(reopened.getCache("remm").get(VARIANT).get(), equalTo(PathogenicityData.empty()));
+        reopened.close();
+    }
+
+    @Test
+    public void testNewDataVersionClearsStore() throws IOException {
+        PersistentVariantStore instance = PersistentVariantStore.open(storePath(), "1");
+        instance.getCache("frequency").put(VARIANT, FREQUENCY_DATA);
+        instance.close();
+
+        PersistentVariantStore reopened = PersistentVariantStore.open(storePath(), "2");
+        assertThat(reopened.getCache("frequency").get(VARIANT), nullValue());
+        reopened.close();
+    }
+
+    @Test
+    public void testUnpackableVariantIsNotStored() throws IOException {
+        PersistentVariantStore instance = PersistentVariantStore.open(storePath(), "1");
+        Cache cache = instance.getCache("frequency");
+        VariantEvaluation unpackable = VariantEvaluation.builder(1, 12345, "ACGTACGTACGT", "A").build();
+        cache.put(unpackable, FREQUENCY_DATA);
+        assertThat(cache.get(unpackable), nullValue());
+        instance.close();
+    }
+
+    @Test
+    public void testStoreCannotBeOpenedTwice() throws IOException {
+        PersistentVariantStore instance = PersistentVariantStore.open(storePath(), "1");
+        assertThat(PersistentVariantStore.tryOpen(storePath(), "1").isPresent(), is(false));
+        instance.close();
+
+        Optional<PersistentVariantStore> reopened = PersistentVariantStore.tryOpen(storePath(), "1");
+        assertThat(reopened.isPresent(), is(true));
+        reopened.get().close();
+    }
+
+    @Test(expected = PersistentVariantStore.PersistentVariantStoreException.class)
+    public void testOpenThrowsExceptionWhenStoreIsInUse() throws IOException {
+        PersistentVariantStore instance = PersistentVariantStore.open(storePath(), "1");
+        try {
+            PersistentVariantStore.open(storePath(), "1");
+        } finally {
+            instance.close();
+        }
+    }
+
+    @Test
+    public void testCorruptStoreIsRecreated() throws IOException {
+        byte[] garbage = new byte[4096];
+        Arrays.fill(garbage, (byte) 0x7f);
+        Files.write(storePath(), garbage);
+        Files.write(storePath().resolveSibling(storePath().getFileName() + ".p"), garbage);
+
+        PersistentVariantStore instance = PersistentVariantStore.open(storePath(), "1");
+        Cache cache = instance.getCache("frequency");
+        assertThat(cache.get(VARIANT), nullValue());
+        cache.put(VARIANT, FREQUENCY_DATA);
+        assertThat(cache.get(VARIANT).get(), equalTo(FREQUENCY_DATA));
+        instance.close();
+    }
+
+    @Test
+    public void testCloseIsIdempotent() throws IOException {
+        PersistentVariantStore instance = PersistentVariantStore.open(storePath(), "1");
+        instance.close();
+        instance.close();
+    }
+}
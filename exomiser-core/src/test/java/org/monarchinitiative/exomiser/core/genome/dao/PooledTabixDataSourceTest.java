@@ -0,0 +1,165 @@
+/*
+ * The Exomiser - A tool to annotate and prioritize genomic variants
+ *
+ * Copyright (c) 2016-2017 Queen Mary University of London.
+ * Copyright (c) 2012-2016 Charité Universitätsmedizin Berlin and Genome Research Ltd.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.monarchinitiative.exomiser.core.genome.dao;
+
+import htsjdk.tribble.readers.TabixReader;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+/**
+ * @author Jules Jacobsen <j.jacobsen@qmul.ac.uk>
+ */
+public class PooledTabixDataSourceTest {
+
+    private static final List<String> LINES = Arrays.asList("1\t10\tA\tT\t0.1", "1\t10\tA\tG\t0.2");
+
+    private static List<String> readAll(TabixReader.Iterator iterator) throws IOException {
+        List<String> lines = new ArrayList<>();
+        String line;
+        while ((line = iterator.next()) != null) {
+            lines.add(line);
+        }
+        return lines;
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testPoolSizeMustBePositive() {
+        new PooledTabixDataSource(() -> new StubTabixDataSource(null), 0);
+    }
+
+    @Test
+    public void testQueryReturnsAllLines() throws IOException {
+        PooledTabixDataSource instance = new PooledTabixDataSource(() -> new StubTabixDataSource(null), 2);
+        assertThat(readAll(instance.query("1:10-10")), equalTo(LINES));
+        assertThat(readAll(instance.query("1", 10, 10)), equalTo(LINES));
+        assertThat(instance.size(), equalTo(1));
+        assertThat(instance.getSource(), equalTo("stub"));
+    }
+
+    @Test(expected = IOException.class)
+    public void testReadErrorIsThrownWhenResultsAreRead() throws IOException {
+        PooledTabixDataSource instance = new PooledTabixDataSource(() -> new StubTabixDataSource(new IOException()), 1);
+        readAll(instance.query("1:10-10"));
+    }
+
+    @Test
+    public void testDataSourceIsReturnedToPoolOnceResultsAreRead() throws Exception {
+        PooledTabixDataSource instance = new PooledTabixDataSource(() -> new StubTabixDataSource(null), 1);
+        readAll(instance.query("1:10-10"));
+        //with a pool of one this would block if the data source had not been returned
+        ExecutorService executorService = Executors.newSingleThreadExecutor();
+        Future<List<String>> result = executorService.submit(() -> readAll(instance.query("1:10-10")));
+        assertThat(result.get(1, TimeUnit.SECONDS), equalTo(LINES));
+        executorService.shutdown();
+    }
+
+    @Test
+    public void testReleasedResultsReturnDataSourceToPool() throws Exception {
+        PooledTabixDataSource instance = new PooledTabixDataSource(() -> new StubTabixDataSource(null), 1);
+        TabixReader.Iterator partlyRead = instance.query("1:10-10");
+        assertThat(partlyRead.next(), equalTo(LINES.get(0)));
+        instance.release(partlyRead);
+        //releasing twice is harmless
+        instance.release(partlyRead);
+
+        ExecutorService executorService = Executors.newSingleThreadExecutor();
+        Future<List<String>> result = executorService.submit(() -> readAll(instance.query("1:10-10")));
+        assertThat(result.get(1, TimeUnit.SECONDS), equalTo(LINES));
+        executorService.shutdown();
+        assertThat(instance.size(), equalTo(1));
+    }
+
+    @Test
+    public void testConcurrentQueriesAreLimitedToPoolSize() throws Exception {
+        AtomicInteger inUse = new AtomicInteger();
+        AtomicInteger maxInUse = new AtomicInteger();
+        int poolSize = 3;
+        PooledTabixDataSource instance = new PooledTabixDataSource(() -> new StubTabixDataSource(null) {
+            @Override
+            public TabixReader.Iterator query(String query) {
+                maxInUse.accumulateAndGet(inUse.incrementAndGet(), Math::max);
+                try {
+                    Thread.sleep(5);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                inUse.decrementAndGet();
+                return super.query(query);
+            }
+        }, poolSize);
+
+        ExecutorService executorService = Executors.newFixedThreadPool(8);
+        List<Future<List<String>>> results = new ArrayList<>();
+        for (int i = 0; i < 40; i++) {
+            results.add(executorService.submit(() -> readAll(instance.query("1:10-10"))));
+        }
+        for (Future<List<String>> result : results) {
+            assertThat(result.get(), equalTo(LINES));
+        }
+        executorService.shutdown();
+
+        assertThat(maxInUse.get() <= poolSize, is(true));
+        assertThat(instance.size() <= poolSize, is(true));
+    }
+
+    private static class StubTabixDataSource implements TabixDataSource {
+
+        private final IOException exception;
+
+        private StubTabixDataSource(IOException exception) {
+            this.exception = exception;
+        }
+
+        @Override
+        public TabixReader.Iterator query(String query) {
+            if (exception != null) {
+                return () -> {
+                    throw exception;
+                };
+            }
+            return MockTabixIterator.of(LINES);
+        }
+
+        @Override
+        public TabixReader.Iterator query(String chromosome, int start, int end) {
+            return query(chromosome + ":" + start + "-" + end);
+        }
+
+        @Override
+        public void close() {
+        }
+
+        @Override
+        public String getSource() {
+            return "stub";
+        }
+    }
+}
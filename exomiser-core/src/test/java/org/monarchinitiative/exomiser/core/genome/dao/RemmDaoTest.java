@@ -27,7 +27,6 @@
 
 import de.charite.compbio.jannovar.annotation.VariantEffect;
 import htsjdk.tribble.readers.TabixReader;
-import htsjdk.variant.variantcontext.VariantContext;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
@@ -63,11 +62,7 @@ public void setUp() {
 
     private static VariantEvaluation variant(int chr, int pos, String ref, String alt) {
         if (ref.equals("-") || alt.equals("-")) {
-            //this is used to get round the fact that in real life the variant evaluation 
-            //is built from a variantContext and some variantAnnotations
-            return VariantEvaluation.builder(chr, pos, ref, alt)
-                    .variantContext(Mockito.mock(VariantContext.class))
-                    .build();
+            return VariantEvaluation.builder(chr, pos, ref, alt).build();
         }
         return VariantEvaluation.builder(chr, pos, ref, alt)
                 .variantEffect(VariantEffect.REGULATORY_REGION_VARIANT)
@@ -0,0 +1,162 @@
+/*
+ * The Exomiser - A tool to annotate and prioritize genomic variants
+ *
+ * Copyright (c) 2016-2017 Queen Mary University of London.
+ * Copyright (c) 2012-2016 Charité Universitätsmedizin Berlin and Genome Research Ltd.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.monarchinitiative.exomiser.core.genome.dao;
+
+import htsjdk.tribble.readers.TabixReader;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+/**
+ * @author Jules Jacobsen <j.jacobsen@qmul.ac.uk>
+ */
+public class StreamingTabixDataSourceTest {
+
+    private static final List<String> LINES = Arrays.asList(
+            "1\t10\tA\tT\t0.1",
+            "1\t10\tA\tG\t0.2",
+            "1\t12\tC\tG\t0.3",
+            "1\t15\tG\tA\t0.4",
+            "1\t5000\tT\tC\t0.5",
+            "2\t10\tA\tC\t0.6"
+    );
+
+    private CountingTabixDataSource countingDataSource;
+    private StreamingTabixDataSource instance;
+
+    @Before
+    public void setUp() {
+        countingDataSource = new CountingTabixDataSource(LINES);
+        instance = new StreamingTabixDataSource(countingDataSource, 1000);
+    }
+
+    private static List<String> readAll(TabixReader.Iterator iterator) throws IOException {
+        List<String> lines = new ArrayList<>();
+        String line;
+        while ((line = iterator.next()) != null) {
+            lines.add(line);
+        }
+        return lines;
+    }
+
+    @Test
+    public void testQuerySinglePosition() throws IOException {
+        assertThat(readAll(instance.query("1:10-10")), equalTo(Arrays.asList(LINES.get(0), LINES.get(1))));
+    }
+
+    @Test
+    public void testQueryNoResults() throws IOException {
+        assertThat(readAll(instance.query("1:11-11")), equalTo(new ArrayList<>()));
+    }
+
+    @Test
+    public void testQueryUnknownChromosome() throws IOException {
+        assertThat(readAll(instance.query("3:11-11")), equalTo(new ArrayList<>()));
+    }
+
+    @Test
+    public void testSortedQueriesOnlySeekOncePerChromosome() throws IOException {
+        assertThat(readAll(instance.query("1:10-10")), equalTo(Arrays.asList(LINES.get(0), LINES.get(1))));
+        assertThat(readAll(instance.query("1:11-11")), equalTo(new ArrayList<>()));
+        assertThat(readAll(instance.query("1:12-15")), equalTo(Arrays.asList(LINES.get(2), LINES.get(3))));
+        assertThat(readAll(instance.query("1:15-15")), equalTo(Arrays.asList(LINES.get(3))));
+        assertThat(countingDataSource.seeks, equalTo(1));
+
+        assertThat(readAll(instance.query("2:10-10")), equalTo(Arrays.asList(LINES.get(5))));
+        assertThat(countingDataSource.seeks, equalTo(2));
+    }
+
+    @Test
+    public void testPartiallyReadQueryDoesNotLoseLines() throws IOException {
+        //the CADD dao stops reading as soon as it finds a match
+        assertThat(instance.query("1:10-10").next(), equalTo(LINES.get(0)));
+        assertThat(readAll(instance.query("1:10-12")), equalTo(Arrays.asList(LINES.get(0), LINES.get(1), LINES.get(2))));
+        assertThat(countingDataSource.seeks, equalTo(1));
+    }
+
+    @Test
+    public void testQueryBackwardsSeeks() throws IOException {
+        assertThat(readAll(instance.query("1:12-12")), equalTo(Arrays.asList(LINES.get(2))));
+        assertThat(readAll(instance.query("1:10-10")), equalTo(Arrays.asList(LINES.get(0), LINES.get(1))));
+        assertThat(countingDataSource.seeks, equalTo(2));
+    }
+
+    @Test
+    public void testQueryBeyondScanDistanceSeeks() throws IOException {
+        assertThat(readAll(instance.query("1:10-10")), equalTo(Arrays.asList(LINES.get(0), LINES.get(1))));
+        assertThat(readAll(instance.query("1:5000-5000")), equalTo(Arrays.asList(LINES.get(4))));
+        assertThat(countingDataSource.seeks, equalTo(2));
+    }
+
+    @Test
+    public void testNonRangeQueryIsPassedToDataSource() throws IOException {
+        assertThat(readAll(instance.query("2")), equalTo(Arrays.asList(LINES.get(5))));
+    }
+
+    /**
+     * Returns lines in the same manner as the HTSJDK TabixReader, which takes a zero-based start position.
+     */
+    private static class CountingTabixDataSource implements TabixDataSource {
+
+        private final List<String> lines;
+        private int seeks = 0;
+
+        private CountingTabixDataSource(List<String> lines) {
+            this.lines = lines;
+        }
+
+        @Override
+        public TabixReader.Iterator query(String query) {
+            return MockTabixIterator.of(lines.stream()
+                    .filter(line -> line.startsWith(query + "\t"))
+                    .collect(Collectors.toList()));
+        }
+
+        @Override
+        public TabixReader.Iterator query(String chromosome, int start, int end) {
+            seeks++;
+            return MockTabixIterator.of(lines.stream()
+                    .filter(line -> line.startsWith(chromosome + "\t"))
+                    .filter(line -> {
+                        int position = TabixColumns.parseInt(line, 1);
+                        return position > start && position <= end;
+                    })
+                    .collect(Collectors.toList()));
+        }
+
+        @Override
+        public void close() {
+        }
+
+        @Override
+        public String getSource() {
+            return "counting";
+        }
+    }
+}
@@ -0,0 +1,132 @@
+/*
+ * The Exomiser - A tool to annotate and prioritize genomic variants
+ *
+ * Copyright (c) 2016-2017 Queen Mary University of London.
+ * Copyright (c) 2012-2016 Charité Universitätsmedizin Berlin and Genome Research Ltd.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.monarchinitiative.exomiser.core.model;
+
+import htsjdk.variant.variantcontext.VariantContext;
+import htsjdk.variant.vcf.VCFCodec;
+import htsjdk.variant.vcf.VCFHeader;
+import htsjdk.variant.vcf.VCFHeaderVersion;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+/**
+ * @author Jules Jacobsen <j.jacobsen@qmul.ac.uk>
+ */
+public class SampleGenotypesTest {
+
+    private static final List<String> SAMPLE_NAMES = Arrays.asList("Adam", "Eve", "Seth");
+
+    private VariantContext parseLine(String line) {
+        VCFCodec vcfCodec = new VCFCodec();
+        vcfCodec.setVCFHeader(new VCFHeader(Collections.emptySet(), SAMPLE_NAMES), VCFHeaderVersion.VCF4_2);
+        return vcfCodec.decode(line);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testWrongNumberOfAlleleCallsThrowsException() {
+        SampleGenotypes.of(0, 1, SAMPLE_NAMES, new byte[]{0, 1});
+    }
+
+    @Test
+    public void testFromVariantContext() {
+        VariantContext variantContext = parseLine("1\t12345\t.\tA\tT,C\t100\tPASS\t.\tGT\t0/1\t1/2\t./.");
+        SampleGenotypes instance = SampleGenotypes.of(variantContext, 7, SAMPLE_NAMES);
+
+        assertThat(instance.getRecordIndex(), equalTo(7));
+        assertThat(instance.hasRecordIndex(), is(true));
+        assertThat(instance.getRecordStart(), equalTo(12345));
+        assertThat(instance.getSampleNames(), equalTo(SAMPLE_NAMES));
+        assertThat(instance.getNumberOfSamples(), equalTo(3));
+
+        assertThat(instance.getAlleleCall(0, 0), equalTo(0));
+        assertThat(instance.getAlleleCall(0, 1), equalTo(1));
+        assertThat(instance.getAlleleCall(1, 0), equalTo(1));
+        assertThat(instance.getAlleleCall(1, 1), equalTo(2));
+        assertThat(instance.isNoCall(2), is(true));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testAlleleIndexTooLargeForCompactFormThrowsException() {
+        StringBuilder alts = new StringBuilder("C");
+        for (int i = 1; i < 128; i++) {
+            alts.append(",C").append(String.join("", Collections.nCopies(i, "A")));
+        }
+        VariantContext variantContext = parseLine("1\t12345\t.\tA\t" + alts + "\t100\tPASS\t.\tGT\t0/1\t0/128\t./.");
+        SampleGenotypes.of(variantContext, 0, SAMPLE_NAMES);
+    }
+
+    @Test
+    public void testGenotypeStringIsRelativeToAllele() {
+        VariantContext variantContext = parseLine("1\t12345\t.\tA\tT,C\t100\tPASS\t.\tGT\t0/1\t1/2\t./.");
+        SampleGenotypes instance = SampleGenotypes.of(variantContext, 0, SAMPLE_NAMES);
+
+        assertThat(instance.getGenotypeString(1), equalTo("0/1:0/1:./."));
+        assertThat(instance.getGenotypeString(2), equalTo("0/0:0/1:./."));
+    }
+
+    @Test
+    public void testHaploidGenotypes() {
+        VariantContext variantContext = parseLine("X\t12345\t.\tA\tT\t100\tPASS\t.\tGT\t1\t0\t.");
+        SampleGenotypes instance = SampleGenotypes.of(variantContext, 0, SAMPLE_NAMES);
+
+        assertThat(instance.getPloidy(0), equalTo(1));
+        assertThat(instance.isHomVar(0), is(true));
+        assertThat(instance.isHomRef(1), is(true));
+        assertThat(instance.isNoCall(2), is(true));
+        assertThat(instance.getGenotypeString(1), equalTo("1:0:."));
+    }
+
+    @Test
+    public void testZygosity() {
+        VariantContext variantContext = parseLine("1\t12345\t.\tA\tT,C\t100\tPASS\t.\tGT\t0/1\t1/1\t1/2");
+        SampleGenotypes instance = SampleGenotypes.of(variantContext, 0, SAMPLE_NAMES);
+
+        assertThat(instance.isHet(0), is(true));
+        assertThat(instance.isHomVar(0), is(false));
+        assertThat(instance.isHomVar(1), is(true));
+        assertThat(instance.isHet(1), is(false));
+        assertThat(instance.isHet(2), is(true));
+    }
+
+    @Test
+    public void testSampleHasAllele() {
+        VariantContext variantContext = parseLine("1\t12345\t.\tA\tT,C\t100\tPASS\t.\tGT\t0/1\t0/0\t0/1");
+        SampleGenotypes instance = SampleGenotypes.of(variantContext, 0, SAMPLE_NAMES);
+
+        assertThat(instance.sampleHasAllele(0, 1), is(true));
+        assertThat(instance.sampleHasAllele(1, 1), is(false));
+        assertThat(instance.anySampleHasAllele(1), is(true));
+        assertThat(instance.anySampleHasAllele(2), is(false));
+    }
+
+    @Test
+    public void testEquals() {
+        byte[] alleleCalls = {0, 1, 1, 1, 0, 0};
+        assertThat(SampleGenotypes.of(0, 1, SAMPLE_NAMES, alleleCalls), equalTo(SampleGenotypes.of(0, 1, SAMPLE_NAMES, alleleCalls.clone())));
+    }
+}
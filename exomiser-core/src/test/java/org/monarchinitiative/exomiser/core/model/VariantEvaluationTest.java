@@ -28,7 +28,6 @@
 import de.charite.compbio.jannovar.annotation.VariantEffect;
 import de.charite.compbio.jannovar.mendel.ModeOfInheritance;
 import de.charite.compbio.jannovar.pedigree.Genotype;
-import htsjdk.variant.variantcontext.VariantContext;
 import org.junit.Before;
 import org.junit.Test;
 import org.monarchinitiative.exomiser.core.filters.FilterResult;
@@ -487,15 +486,18 @@ public void testGetGenotype_Het() {
     }
 
     @Test
-    public void getVariantContext() {
-        VariantContext builtContext = instance.getVariantContext();
-        assertThat(builtContext.getContig(), equalTo("chr" + CHROMOSOME_NAME));
-        assertThat(builtContext.getStart(), equalTo(POSITION));
-        assertThat(builtContext.getEnd(), equalTo(POSITION));
-        assertThat(builtContext.getNAlleles(), equalTo(2));
-        assertThat(builtContext.getReference().getBaseString(), equalTo(instance.getRef()));
-        assertThat(builtContext.getAlternateAllele(instance.getAltAlleleId()).getBaseString(), equalTo(instance.getAlt()));
-        assertThat(builtContext.getNSamples(), equalTo(instance.getNumberOfIndividuals()));
+    public void getSampleGenotypes() {
+        SampleGenotypes sampleGenotypes = instance.getSampleGenotypes();
+        assertThat(sampleGenotypes.hasRecordIndex(), is(false));
+        assertThat(sampleGenotypes.getRecordStart(), equalTo(POSITION));
+        assertThat(sampleGenotypes.getNumberOfSamples(), equalTo(instance.getNumberOfIndividuals()));
+        assertThat(sampleGenotypes.isHet(0), is(true));
+        assertThat(sampleGenotypes.sampleHasAllele(0, instance.getAltAlleleId() + 1), is(true));
+    }
+
+    @Test
+    public void testVcfFilterStatusDefaultsToUnfiltered() {
+        assertThat(instance.getVcfFilterStatus(), equalTo(FilterStatus.UNFILTERED));
     }
 
     @Test
@@ -675,4 +677,31 @@ public void testToStringVariant_ContributesToGeneScore() {
         System.out.println(instance);
         assertThat(instance.toString(), equalTo(expected));
     }
+
+    @Test
+    public void testUnfilteredCopyHasSameAnnotationsWithoutFilterResultsOrData() {
+        VariantEvaluation original = VariantEvaluation.builder(CHROMOSOME, POSITION, REF, ALT)
+                .quality(QUALITY)
+                .variantEffect(VariantEffect.MISSENSE_VARIANT)
+                .geneSymbol(GENE1_GENE_SYMBOL)
+                .geneId(GENE1_ENTREZ_GENE_ID)
+                .frequencyData(FrequencyData.of(RsId.valueOf(123456), Frequency.valueOf(0.01f, FrequencySource.ESP_ALL)))
+                .filterResults(FAIL_FREQUENCY_RESULT)
+                .build();
+        original.setAsContributingToGeneScore();
+
+        VariantEvaluation copy = original.unfilteredCopy();
+
+        assertThat(copy, equalTo(original));
+        assertThat(copy, not(sameInstance(original)));
+        assertThat(copy.getChromosomeName(), equalTo(CHROMOSOME_NAME));
+        assertThat(copy.getPhredScore(), equalTo(QUALITY));
+        assertThat(copy.getVariantEffect(), equalTo(VariantEffect.MISSENSE_VARIANT));
+        assertThat(copy.getGeneSymbol(), equalTo(GENE1_GENE_SYMBOL));
+        assertThat(copy.getEntrezGeneId(), equalTo(GENE1_ENTREZ_GENE_ID));
+        assertThat(copy.getSampleGenotypes(), sameInstance(original.getSampleGenotypes()));
+        assertThat(copy.getFilterStatus(), equalTo(FilterStatus.UNFILTERED));
+        assertThat(copy.getFrequencyData(), equalTo(FrequencyData.empty()));
+        assertThat(copy.contributesToGeneScore(), is(false));
+    }
 }
@@ -106,6 +106,42 @@ public void testGetBestForwardAndReciprocalMatches() throws Exception {
         assertThat(instance.calculateBestForwardAndReciprocalMatches(modelPhenotypes), equalTo(expected));
     }
 
+    @Test
+    public void testMatchPhenotypeIdsReturnsEmptyScoreForEmptyModel() {
+        PhenodigmMatchRawScore expected = new PhenodigmMatchRawScore(0, 0, Collections.emptyList(), Collections.emptyList());
+        assertThat(instance.matchPhenotypeIds(Collections.emptyList()), equalTo(expected));
+    }
+
+    @Test
+    public void testMatchPhenotypeIds() {
+        List<String> modelPhenotypes = Lists.newArrayList(littleNose.getId(), "MP:0000000", longToe.getId());
+        //forward matches 1.0 + 2.0 and reciprocal matches 1.0 + 2.0
+        PhenodigmMatchRawScore expected = new PhenodigmMatchRawScore(2.0, 6.0, Lists.newArrayList(littleNose.getId(), longToe
+                .getId()), Lists.newArrayList(noseMatch, bestToeMatch));
+        assertThat(instance.matchPhenotypeIds(modelPhenotypes), equalTo(expected));
+    }
+
+    @Test
+    public void testMatchPhenotypeIdsUsesBestForwardMatchForQueryTerm() {
+        List<String> modelPhenotypes = Lists.newArrayList(crookedToe.getId(), longToe.getId(), bigNose.getId());
+        //forward matches 4.0 + 2.0 and reciprocal matches 1.5 + 2.0 + 4.0
+        PhenodigmMatchRawScore expected = new PhenodigmMatchRawScore(4.0, 13.5, modelPhenotypes, Lists.newArrayList(perfectNoseMatch, bestToeMatch));
+        assertThat(instance.matchPhenotypeIds(modelPhenotypes), equalTo(expected));
+    }
+
+    @Test
+    public void testMatchPhenotypeIdScoresHasSameScoresAsMatchPhenotypeIds() {
+        List<String> modelPhenotypes = Lists.newArrayList(crookedToe.getId(), "MP:0000000", longToe.getId(), bigNose.getId());
+        //forward matches 4.0 + 2.0 and reciprocal matches 1.5 + 2.0 + 4.0
+        PhenodigmMatchRawScore expected = new PhenodigmMatchRawScore(4.0, 13.5, 3);
+        assertThat(instance.matchPhenotypeIdScores(modelPhenotypes), equalTo(expected));
+
+        PhenodigmMatchRawScore fullScore = instance.matchPhenotypeIds(modelPhenotypes);
+        assertThat(fullScore.getMaxModelMatchScore(), equalTo(expected.getMaxModelMatchScore()));
+        assertThat(fullScore.getSumModelBestMatchScores(), equalTo(expected.getSumModelBestMatchScores()));
+        assertThat(fullScore.getNumMatchingPhenotypes(), equalTo(expected.getNumMatchingPhenotypes()));
+    }
+
     @Test
     public void testCanCalculateBestPhenotypeMatchesByTerm() {
         List<PhenotypeMatch> bestForwardAndReciprocalMatches = Lists.newArrayList(noseMatch, bestToeMatch, perfectNoseMatch, bestToeMatch);
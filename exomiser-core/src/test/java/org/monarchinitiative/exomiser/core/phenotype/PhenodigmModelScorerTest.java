@@ -129,6 +129,20 @@ public void testScoreModelPartialMatch() {
         assertThat(result.getScore(), equalTo(0.732228059966757));
     }
 
+    @Test
+    public void testCalculateScorePartialMatch() {
+        List<PhenotypeTerm> queryTerms = ImmutableList.copyOf(ontologyService.getHpoTerms());
+        PhenotypeMatcher referenceOrganismPhenotypeMatcher = priorityService.getHumanPhenotypeMatcherForTerms(queryTerms);
+
+        ModelScorer instance = PhenodigmModelScorer.forSameSpecies(referenceOrganismPhenotypeMatcher);
+
+        List<String> twoExactPhenotypeMatches = queryTerms.stream().limit(2).map(PhenotypeTerm::getId).collect(toList());
+
+        Model model = new GeneDiseaseModel("DISEASE:1", Organism.HUMAN, 12345, "GENE1", "DISEASE:1", "disease", twoExactPhenotypeMatches);
+        assertThat(instance.calculateScore(model), equalTo(0.732228059966757));
+        assertThat(instance.calculateScore(model), equalTo(instance.scoreModel(model).getScore()));
+    }
+
     @Test
     public void testScoreModelPerfectMatchModelAndUnmatchedQueryPhenotype() {
         List<PhenotypeTerm> queryTerms = new ArrayList<>(ontologyService.getHpoTerms());
@@ -0,0 +1,85 @@
+/*
+ * The Exomiser - A tool to annotate and prioritize genomic variants
+ *
+ * Copyright (c) 2016-2017 Queen Mary University of London.
+ * Copyright (c) 2012-2016 Charité Universitätsmedizin Berlin and Genome Research Ltd.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.monarchinitiative.exomiser.core.phenotype.dao;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+import javax.sql.DataSource;
+import java.sql.SQLException;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+/**
+ * @author Jules Jacobsen <j.jacobsen@qmul.ac.uk>
+ */
+public class PhenotypeMatchIndexLoaderTest {
+
+    private DataSource failingDataSource;
+    private final AtomicLong nanoTime = new AtomicLong();
+    private PhenotypeMatchIndexLoader instance;
+
+    @Before
+    public void setUp() throws Exception {
+        failingDataSource = Mockito.mock(DataSource.class);
+        Mockito.when(failingDataSource.getConnection()).thenThrow(new SQLException("database unavailable"));
+        instance = new PhenotypeMatchIndexLoader(failingDataSource, "hp_mp_mappings", "mp_id", "mp_term", nanoTime::get);
+    }
+
+    @Test
+    public void testFailedLoadReturnsNull() throws Exception {
+        assertThat(instance.getIndex(), nullValue());
+    }
+
+    @Test
+    public void testFailedLoadIsNotRetriedDuringBackOff() throws Exception {
+        instance.getIndex();
+        nanoTime.addAndGet(PhenotypeMatchIndexLoader.INITIAL_RETRY_DELAY_NANOS - 1);
+        instance.getIndex();
+        verify(failingDataSource, times(1)).getConnection();
+    }
+
+    @Test
+    public void testFailedLoadIsRetriedAfterBackOff() throws Exception {
+        instance.getIndex();
+        nanoTime.addAndGet(PhenotypeMatchIndexLoader.INITIAL_RETRY_DELAY_NANOS);
+        instance.getIndex();
+        verify(failingDataSource, times(2)).getConnection();
+    }
+
+    @Test
+    public void testBackOffDoublesAfterRepeatedFailure() throws Exception {
+        instance.getIndex();
+        nanoTime.addAndGet(PhenotypeMatchIndexLoader.INITIAL_RETRY_DELAY_NANOS);
+        instance.getIndex();
+        nanoTime.addAndGet(PhenotypeMatchIndexLoader.INITIAL_RETRY_DELAY_NANOS);
+        instance.getIndex();
+        verify(failingDataSource, times(2)).getConnection();
+        nanoTime.addAndGet(PhenotypeMatchIndexLoader.INITIAL_RETRY_DELAY_NANOS);
+        instance.getIndex();
+        verify(failingDataSource, times(3)).getConnection();
+    }
+}
@@ -0,0 +1,121 @@
+/*
+ * The Exomiser - A tool to annotate and prioritize genomic variants
+ *
+ * Copyright (c) 2016-2017 Queen Mary University of London.
+ * Copyright (c) 2012-2016 Charité Universitätsmedizin Berlin and Genome Research Ltd.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.monarchinitiative.exomiser.core.phenotype.dao;
+
+import com.google.common.collect.Sets;
+import org.junit.Test;
+import org.monarchinitiative.exomiser.core.phenotype.PhenotypeMatch;
+import org.monarchinitiative.exomiser.core.phenotype.PhenotypeTerm;
+
+import java.util.Collections;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+/**
+ * @author Jules Jacobsen <j.jacobsen@qmul.ac.uk>
+ */
+public class PhenotypeMatchIndexTest {
+
+    private final PhenotypeTerm multicysticKidneyDysplasia = PhenotypeTerm.of("HP:0000003", "Multicystic kidney dysplasia");
+    private final PhenotypeTerm renalDiverticulum = PhenotypeTerm.of("HP:0100877", "Renal diverticulum");
+    private final PhenotypeTerm renalCyst = PhenotypeTerm.of("HP:0000107", "Renal cyst");
+    private final PhenotypeTerm mesoblasticNephroma = PhenotypeTerm.of("HP:0100881", "Congenital mesoblastic nephroma");
+    private final PhenotypeTerm kidneyAbnormality = PhenotypeTerm.of("HP:0000077", "Abnormality of the kidney");
+    private final PhenotypeTerm bodyHeight = PhenotypeTerm.of("HP:0000002", "Abnormality of body height");
+
+    private PhenotypeMatchIndex buildIndex(int expectedSize, boolean offHeap) {
+        //the rows for a term are not contiguous here
+        return PhenotypeMatchIndex.builder(expectedSize, offHeap)
+                .add(multicysticKidneyDysplasia.getId(), renalDiverticulum, renalCyst, 0.769231, 5.347805, 2.028225214383722)
+                .add(bodyHeight.getId(), bodyHeight, bodyHeight, 1.0, 2.0, 1.414)
+                .add(multicysticKidneyDysplasia.getId(), mesoblasticNephroma, kidneyAbnormality, 0.380952, 3.020727, 1.0727310768221452)
+                .build();
+    }
+
+    private PhenotypeMatch diverticulumMatch() {
+        return PhenotypeMatch.builder()
+                .query(multicysticKidneyDysplasia)
+                .match(renalDiverticulum)
+                .lcs(renalCyst)
+                .simj(0.769231)
+                .ic(5.347805)
+                .score(2.028225214383722)
+                .build();
+    }
+
+    private PhenotypeMatch mesoblasticMatch() {
+        return PhenotypeMatch.builder()
+                .query(multicysticKidneyDysplasia)
+                .match(mesoblasticNephroma)
+                .lcs(kidneyAbnormality)
+                .simj(0.380952)
+                .ic(3.020727)
+                .score(1.0727310768221452)
+                .build();
+    }
+
+    @Test
+    public void testEmptyIndex() {
+        PhenotypeMatchIndex instance = PhenotypeMatchIndex.builder(0, false).build();
+        assertThat(instance.size(), equalTo(0));
+        assertThat(instance.getPhenotypeMatches(multicysticKidneyDysplasia), equalTo(Collections.emptySet()));
+    }
+
+    @Test
+    public void testSize() {
+        PhenotypeMatchIndex instance = buildIndex(3, false);
+        assertThat(instance.size(), equalTo(3));
+        assertThat(instance.numQueryTerms(), equalTo(2));
+    }
+
+    @Test
+    public void testGetPhenotypeMatches() {
+        PhenotypeMatchIndex instance = buildIndex(3, false);
+        assertThat(instance.getPhenotypeMatches(multicysticKidneyDysplasia), equalTo(Sets.newHashSet(diverticulumMatch(), mesoblasticMatch())));
+    }
+
+    @Test
+    public void testGetPhenotypeMatchesForUnknownTermIsEmpty() {
+        PhenotypeMatchIndex instance = buildIndex(3, false);
+        assertThat(instance.getPhenotypeMatches(renalCyst), equalTo(Collections.emptySet()));
+    }
+
+    @Test
+    public void testBuilderGrowsBeyondExpectedSize() {
+        PhenotypeMatchIndex.Builder builder = PhenotypeMatchIndex.builder(0, false);
+        for (int i = 0; i < 100; i++) {
+            builder.add(multicysticKidneyDysplasia.getId(), PhenotypeTerm.of("HP:" + i, "term " + i), renalCyst, 0.5, 1.0, i);
+        }
+        PhenotypeMatchIndex instance = builder.build();
+        assertThat(instance.size(), equalTo(100));
+        assertThat(instance.getPhenotypeMatches(multicysticKidneyDysplasia).size(), equalTo(100));
+    }
+
+    @Test
+    public void testOffHeap() {
+        PhenotypeMatchIndex instance = buildIndex(3, true);
+        assertThat(instance.isOffHeap(), is(true));
+        assertThat(instance.getPhenotypeMatches(multicysticKidneyDysplasia), equalTo(Sets.newHashSet(diverticulumMatch(), mesoblasticMatch())));
+        assertThat(instance.getPhenotypeMatches(bodyHeight).size(), equalTo(1));
+    }
+}
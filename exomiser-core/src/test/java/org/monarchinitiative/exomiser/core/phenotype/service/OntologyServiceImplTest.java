@@ -40,6 +40,7 @@
 import java.util.*;
 
 import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.sameInstance;
 import static org.hamcrest.MatcherAssert.assertThat;
 
 /**
@@ -76,6 +77,8 @@ public void setUp() {
 
         hpoTerms = new HashSet<>();
         setUpHpoTerms();
+        mpoTerms = new HashSet<>();
+        zpoTerms = new HashSet<>();
 
         setUpDaoMocks();
     }
@@ -137,4 +140,35 @@ public void testReturnsPhenotypeTermForGivenHpoId() {
     public void testReturnsNullForGivenHpoIdWhenHpoIdIsUnrecognised() {
         assertThat(instance.getPhenotypeTermForHpoId("invalidId"), equalTo(null));
     }
+
+    @Test
+    public void testReturnsSamePhenotypeTermInstanceForGivenHpoId() {
+        PhenotypeTerm first = instance.getPhenotypeTermForHpoId(cleftHelix.getId());
+        assertThat(instance.getPhenotypeTermForHpoId(cleftHelix.getId()), sameInstance(first));
+    }
+
+    @Test
+    public void testHpoTermsAreOnlyLoadedOnce() {
+        instance.getHpoTerms();
+        instance.getPhenotypeTermForHpoId(cleftHelix.getId());
+        instance.getPhenotypeTermForHpoId(thinEarHelix.getId());
+        Mockito.verify(mockHpoDao, Mockito.times(1)).getAllTerms();
+    }
+
+    @Test
+    public void testEmptyTermsAreReloadedOnNextRequest() {
+        instance.getMpoTerms();
+        instance.getMpoTerms();
+        Mockito.verify(mockMpoDao, Mockito.times(2)).getAllTerms();
+    }
+
+    @Test
+    public void testTermsAreHeldOnceLoadedAfterAnEmptyLoad() {
+        Set<PhenotypeTerm> mouseTerms = Collections.singleton(PhenotypeTerm.of("MP:0000001", "mammalian phenotype"));
+        Mockito.when(mockMpoDao.getAllTerms()).thenReturn(Collections.emptySet(), mouseTerms);
+        assertThat(instance.getMpoTerms(), equalTo(Collections.emptySet()));
+        assertThat(instance.getMpoTerms(), equalTo(mouseTerms));
+        assertThat(instance.getMpoTerms(), equalTo(mouseTerms));
+        Mockito.verify(mockMpoDao, Mockito.times(2)).getAllTerms();
+    }
 }
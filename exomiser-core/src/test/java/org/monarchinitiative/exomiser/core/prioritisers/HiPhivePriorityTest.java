@@ -236,6 +236,27 @@ public void testPrioritizeGenesRestrictedGeneList() {
         results.forEach(checkScores(expectedScores));
     }
 
+    @Test
+    public void testRepeatPrioritiseWithReorderedPhenotypesAndMoreGenes() {
+        HiPhivePriority instance = new HiPhivePriority(HiPhiveOptions.builder()
+                .runParams("human,mouse,fish")
+                .build(), DataMatrix.EMPTY, priorityService);
+
+        List<Gene> restrictedGenes = getGenes().stream().filter(gene -> gene.getGeneSymbol().equals("FGFR2")).collect(toList());
+        instance.prioritise(hpoIds, restrictedGenes).collect(toList());
+
+        //the second run re-uses the phenotype scores of the first and only scores the genes not seen before
+        List<String> reorderedHpoIds = new ArrayList<>(hpoIds);
+        Collections.reverse(reorderedHpoIds);
+        List<Gene> genes = getGenes();
+        List<HiPhivePriorityResult> results = instance.prioritise(reorderedHpoIds, genes)
+                .sorted(Comparator.naturalOrder())
+                .collect(toList());
+
+        assertThat(results.size(), equalTo(genes.size()));
+        results.forEach(checkScores(expectedHumanMouseFishScores()));
+    }
+
     @Test
     public void testPrioritizeMouseOnlyGenes() {
         List<Gene> genes = getGenes();
@@ -0,0 +1,109 @@
+/*
+ * The Exomiser - A tool to annotate and prioritize genomic variants
+ *
+ * Copyright (c) 2016-2017 Queen Mary University of London.
+ * Copyright (c) 2012-2016 Charité Universitätsmedizin Berlin and Genome Research Ltd.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.monarchinitiative.exomiser.core.prioritisers.service;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
+import org.junit.Test;
+import org.monarchinitiative.exomiser.core.phenotype.Organism;
+import org.monarchinitiative.exomiser.core.prioritisers.model.GeneDiseaseModel;
+import org.monarchinitiative.exomiser.core.prioritisers.model.GeneModel;
+import org.monarchinitiative.exomiser.core.prioritisers.model.GeneOrthologModel;
+
+import java.util.Collections;
+import java.util.List;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.Matchers.containsInAnyOrder;
+import static org.junit.Assert.assertThat;
+
+/**
+ * @author Jules Jacobsen <j.jacobsen@qmul.ac.uk>
+ */
+public class GeneModelStoreTest {
+
+    private final GeneModel fgfr2MouseModel = new GeneOrthologModel("MGI:95523_115", Organism.MOUSE, 2263, "FGFR2", "MGI:95523", "Fgfr2", Lists.newArrayList("MP:0000031", "MP:0000035"));
+    private final GeneModel fgfr2OtherMouseModel = new GeneOrthologModel("MGI:95523_116", Organism.MOUSE, 2263, "FGFR2", "MGI:95523", "Fgfr2", Lists.newArrayList("MP:0009522", "MP:0000031"));
+    private final GeneModel ror2MouseModel = new GeneOrthologModel("MGI:1347521_200", Organism.MOUSE, 4920, "ROR2", "MGI:1347521", "Ror2", Collections.emptyList());
+    private final GeneModel fgfr1MouseModel = new GeneOrthologModel("MGI:95522_300", Organism.MOUSE, 2260, "FGFR1", "MGI:95522", "Fgfr1", Lists.newArrayList("MP:0000035"));
+
+    private final GeneModelStore instance = GeneModelStore.of(Organism.MOUSE, Lists.newArrayList(fgfr2MouseModel, ror2MouseModel, fgfr1MouseModel, fgfr2OtherMouseModel));
+
+    @Test
+    public void testEmpty() {
+        GeneModelStore empty = GeneModelStore.empty(Organism.HUMAN);
+        assertThat(empty.getOrganism(), equalTo(Organism.HUMAN));
+        assertThat(empty.isEmpty(), is(true));
+        assertThat(empty.getModels(), equalTo(Collections.emptyList()));
+        assertThat(empty.getModelsForGene(2263), equalTo(Collections.emptyList()));
+    }
+
+    @Test
+    public void testSize() {
+        assertThat(instance.size(), equalTo(4));
+        assertThat(instance.numGenes(), equalTo(3));
+        assertThat(instance.numPhenotypeIds(), equalTo(3));
+    }
+
+    @Test
+    public void testModelsAreInEntrezGeneIdOrder() {
+        List<GeneModel> expected = Lists.newArrayList(fgfr1MouseModel, fgfr2MouseModel, fgfr2OtherMouseModel, ror2MouseModel);
+        assertThat(instance.getModels(), equalTo(expected));
+    }
+
+    @Test
+    public void testGetModelsForGene() {
+        assertThat(instance.getModelsForGene(2263), equalTo(Lists.newArrayList(fgfr2MouseModel, fgfr2OtherMouseModel)));
+        assertThat(instance.getModelsForGene(4920), equalTo(Lists.newArrayList(ror2MouseModel)));
+    }
+
+    @Test
+    public void testGetModelsForGeneWithNoModels() {
+        assertThat(instance.getModelsForGene(341640), equalTo(Collections.emptyList()));
+    }
+
+    @Test
+    public void testGetModelsForGenes() {
+        List<GeneModel> result = instance.getModelsForGenes(Sets.newHashSet(2263, 2260, 341640));
+        assertThat(result, containsInAnyOrder(fgfr2MouseModel, fgfr2OtherMouseModel, fgfr1MouseModel));
+    }
+
+    @Test
+    public void testStoredModelPhenotypeIdsMatchOriginal() {
+        GeneModel stored = instance.getModelsForGene(2263).get(1);
+        assertThat(stored.getPhenotypeIds(), equalTo(fgfr2OtherMouseModel.getPhenotypeIds()));
+        assertThat(stored.getPhenotypeIds().get(0), equalTo("MP:0009522"));
+        assertThat(stored.getPhenotypeIds().size(), equalTo(2));
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void testStoredModelPhenotypeIdsAreReadOnly() {
+        instance.getModelsForGene(2263).get(0).getPhenotypeIds().add("MP:0000001");
+    }
+
+    @Test
+    public void testStoresDiseaseModels() {
+        GeneModel diseaseModel = new GeneDiseaseModel("OMIM:101600_2263", Organism.HUMAN, 2263, "FGFR2", "OMIM:101600", "Pfeiffer syndrome", Lists.newArrayList("HP:0000174", "HP:0000194"));
+        GeneModelStore diseaseModelStore = GeneModelStore.of(Organism.HUMAN, Lists.newArrayList(diseaseModel));
+        assertThat(diseaseModelStore.getModelsForGene(2263), equalTo(Lists.newArrayList(diseaseModel)));
+    }
+}
@@ -0,0 +1,158 @@
+/*
+ * The Exomiser - A tool to annotate and prioritize genomic variants
+ *
+ * Copyright (c) 2016-2017 Queen Mary University of London.
+ * Copyright (c) 2012-2016 Charité Universitätsmedizin Berlin and Genome Research Ltd.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.monarchinitiative.exomiser.core.prioritisers.service;
+
+import com.google.common.collect.ImmutableList;
+import org.junit.Test;
+import org.mockito.Mockito;
+import org.monarchinitiative.exomiser.core.phenotype.Organism;
+import org.monarchinitiative.exomiser.core.phenotype.PhenotypeMatcher;
+import org.monarchinitiative.exomiser.core.phenotype.PhenotypeTerm;
+import org.monarchinitiative.exomiser.core.prioritisers.model.GeneDiseaseModel;
+import org.monarchinitiative.exomiser.core.prioritisers.model.GeneModelPhenotypeMatch;
+
+import java.util.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiFunction;
+
+import static org.hamcrest.CoreMatchers.*;
+import static org.junit.Assert.assertThat;
+
+/**
+ * @author Jules Jacobsen <j.jacobsen@qmul.ac.uk>
+ */
+public class PhenotypeQueryCacheTest {
+
+    private final PhenotypeTerm hypertelorism = PhenotypeTerm.of("HP:0000316", "Hypertelorism");
+    private final PhenotypeTerm craniosynostosis = PhenotypeTerm.of("HP:0001363", "Craniosynostosis");
+    private final PhenotypeTerm broadThumb = PhenotypeTerm.of("HP:0011304", "Broad thumb");
+
+    private final AtomicInteger matchersCreated = new AtomicInteger();
+
+    private final BiFunction<List<PhenotypeTerm>, Organism, PhenotypeMatcher> matcherFactory = (queryTerms, organism) -> {
+        matchersCreated.incrementAndGet();
+        PhenotypeMatcher phenotypeMatcher = Mockito.mock(PhenotypeMatcher.class);
+        Mockito.when(phenotypeMatcher.getOrganism()).thenReturn(organism);
+        Mockito.when(phenotypeMatcher.getQueryTerms()).thenReturn(queryTerms);
+        return phenotypeMatcher;
+    };
+
+    @Test
+    public void testCacheHitForSameTermsInDifferentOrder() {
+        PhenotypeQueryCache instance = new PhenotypeQueryCache(10);
+        PhenotypeQuery first = instance.get(ImmutableList.of(hypertelorism, craniosynostosis), matcherFactory);
+        PhenotypeQuery second = instance.get(ImmutableList.of(craniosynostosis, hypertelorism), matcherFactory);
+
+        assertThat(second, sameInstance(first));
+        assertThat(instance.size(), equalTo(1L));
+        assertThat(instance.getStats().hitCount(), equalTo(1L));
+        assertThat(instance.getStats().missCount(), equalTo(1L));
+    }
+
+    @Test
+    public void testCacheMissForDifferentTerms() {
+        PhenotypeQueryCache instance = new PhenotypeQueryCache(10);
+        PhenotypeQuery first = instance.get(ImmutableList.of(hypertelorism, craniosynostosis), matcherFactory);
+        PhenotypeQuery second = instance.get(ImmutableList.of(hypertelorism, craniosynostosis, broadThumb), matcherFactory);
+
+        assertThat(second, not(sameInstance(first)));
+        assertThat(instance.size(), equalTo(2L));
+        assertThat(instance.getStats().hitCount(), equalTo(0L));
+    }
+
+    @Test
+    public void testZeroSizeCacheIsDisabled() {
+        PhenotypeQueryCache instance = new PhenotypeQueryCache(0);
+        PhenotypeQuery first = instance.get(ImmutableList.of(hypertelorism), matcherFactory);
+        PhenotypeQuery second = instance.get(ImmutableList.of(hypertelorism), matcherFactory);
+
+        assertThat(second, not(sameInstance(first)));
+        assertThat(instance.size(), equalTo(0L));
+    }
+
+    @Test
+    public void testClear() {
+        PhenotypeQueryCache instance = new PhenotypeQueryCache(10);
+        instance.get(ImmutableList.of(hypertelorism), matcherFactory);
+        instance.clear();
+        assertThat(instance.size(), equalTo(0L));
+    }
+
+    @Test
+    public void testQueryIsReweighedWhenGenesAreScored() {
+        PhenotypeQueryCache instance = new PhenotypeQueryCache(10);
+        PhenotypeQuery phenotypeQuery = instance.get(ImmutableList.of(hypertelorism), matcherFactory);
+        long initialBytes = instance.weightedSize();
+
+        phenotypeQuery.addBestGeneModels(Organism.HUMAN, ImmutableList.of(2263, 4920), Collections.emptyMap());
+
+        assertThat(instance.weightedSize() > initialBytes, is(true));
+        assertThat(instance.weightedSize(), equalTo(phenotypeQuery.estimateSizeInBytes()));
+    }
+
+    @Test
+    public void testQueryIsEvictedOnceItOutgrowsTheCache() {
+        PhenotypeQueryCache instance = new PhenotypeQueryCache(10_000L);
+        PhenotypeQuery phenotypeQuery = instance.get(ImmutableList.of(hypertelorism), matcherFactory);
+        assertThat(instance.size(), equalTo(1L));
+
+        List<Integer> scoredGeneIds = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            scoredGeneIds.add(i);
+        }
+        phenotypeQuery.addBestGeneModels(Organism.HUMAN, scoredGeneIds, Collections.emptyMap());
+
+        assertThat(instance.size(), equalTo(0L));
+        assertThat(instance.get(ImmutableList.of(hypertelorism), matcherFactory), not(sameInstance(phenotypeQuery)));
+    }
+
+    @Test
+    public void testPhenotypeMatcherIsOnlyCreatedOncePerOrganism() {
+        PhenotypeQueryCache instance = new PhenotypeQueryCache(10);
+        List<PhenotypeTerm> queryTerms = ImmutableList.of(hypertelorism, craniosynostosis);
+
+        PhenotypeMatcher humanMatcher = instance.get(queryTerms, matcherFactory).getPhenotypeMatcher(Organism.HUMAN);
+        assertThat(humanMatcher.getQueryTerms(), equalTo(queryTerms));
+        assertThat(instance.get(queryTerms, matcherFactory).getPhenotypeMatcher(Organism.HUMAN), sameInstance(humanMatcher));
+        assertThat(instance.get(queryTerms, matcherFactory).getPhenotypeMatcher(Organism.MOUSE).getOrganism(), equalTo(Organism.MOUSE));
+        assertThat(matchersCreated.get(), equalTo(2));
+    }
+
+    @Test
+    public void testPhenotypeQueryRecordsScoredGenes() {
+        PhenotypeQuery instance = new PhenotypeQueryCache(10).get(ImmutableList.of(hypertelorism), matcherFactory);
+
+        GeneDiseaseModel model = new GeneDiseaseModel("OMIM:101600_1", Organism.HUMAN, 2263, "FGFR2", "OMIM:101600", "Pfeiffer syndrome", ImmutableList.of(hypertelorism.getId()));
+        GeneModelPhenotypeMatch bestModel = new GeneModelPhenotypeMatch(0.9, model, Collections.emptyList());
+
+        assertThat(instance.getUnscoredGeneIds(Organism.HUMAN, ImmutableList.of(2263, 4920)), equalTo(new LinkedHashSet<>(ImmutableList.of(2263, 4920))));
+
+        Map<Integer, GeneModelPhenotypeMatch> bestGeneModels = new HashMap<>();
+        bestGeneModels.put(2263, bestModel);
+        instance.addBestGeneModels(Organism.HUMAN, ImmutableList.of(2263, 4920), bestGeneModels);
+
+        assertThat(instance.getUnscoredGeneIds(Organism.HUMAN, ImmutableList.of(2263, 4920, 341640)), equalTo(Collections.singleton(341640)));
+        assertThat(instance.getUnscoredGeneIds(Organism.MOUSE, ImmutableList.of(2263)), equalTo(Collections.singleton(2263)));
+        assertThat(instance.getBestGeneModel(Organism.HUMAN, 2263), equalTo(bestModel));
+        assertThat(instance.getBestGeneModel(Organism.HUMAN, 4920), nullValue());
+        assertThat(instance.getBestGeneModel(Organism.MOUSE, 2263), nullValue());
+    }
+}
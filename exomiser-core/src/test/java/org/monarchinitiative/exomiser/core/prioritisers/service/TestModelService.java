@@ -20,9 +20,12 @@
 
 package org.monarchinitiative.exomiser.core.prioritisers.service;
 
+import org.monarchinitiative.exomiser.core.phenotype.Organism;
 import org.monarchinitiative.exomiser.core.prioritisers.model.GeneModel;
 
+import java.util.EnumMap;
 import java.util.List;
+import java.util.Map;
 
 /**
  * @author Jules Jacobsen <jules.jacobsen@sanger.ac.uk>
@@ -33,10 +36,15 @@ public class TestModelService implements ModelService {
     private final List<GeneModel> mouseModels;
     private final List<GeneModel> fishModels;
 
+    private final Map<Organism, GeneModelStore> modelStores = new EnumMap<>(Organism.class);
+
     public TestModelService(List<GeneModel> diseaseModels, List<GeneModel> mouseModels, List<GeneModel> fishModels) {
         this.diseaseModels = diseaseModels;
         this.mouseModels = mouseModels;
         this.fishModels = fishModels;
+        modelStores.put(Organism.HUMAN, GeneModelStore.of(Organism.HUMAN, diseaseModels));
+        modelStores.put(Organism.MOUSE, GeneModelStore.of(Organism.MOUSE, mouseModels));
+        modelStores.put(Organism.FISH, GeneModelStore.of(Organism.FISH, fishModels));
     }
 
     @Override
@@ -53,4 +61,9 @@ public List<GeneModel> getMouseGeneOrthologModels() {
     public List<GeneModel> getFishGeneOrthologModels() {
         return fishModels;
     }
+
+    @Override
+    public GeneModelStore getModelStore(Organism organism) {
+        return modelStores.getOrDefault(organism, GeneModelStore.empty(organism));
+    }
 }
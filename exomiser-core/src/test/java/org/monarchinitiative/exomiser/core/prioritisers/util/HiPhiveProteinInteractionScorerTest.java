@@ -21,9 +21,17 @@
 package org.monarchinitiative.exomiser.core.prioritisers.util;
 
 import com.google.common.collect.ArrayListMultimap;
+import com.google.common.collect.ListMultimap;
 import org.jblas.FloatMatrix;
 import org.junit.Test;
+import org.monarchinitiative.exomiser.core.phenotype.Organism;
+import org.monarchinitiative.exomiser.core.prioritisers.model.GeneDiseaseModel;
 import org.monarchinitiative.exomiser.core.prioritisers.model.GeneMatch;
+import org.monarchinitiative.exomiser.core.prioritisers.model.GeneModelPhenotypeMatch;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
 
 import static org.hamcrest.CoreMatchers.equalTo;
 import static org.junit.Assert.assertThat;
@@ -68,4 +76,63 @@ public void testEmptyInputValues() {
         assertThat(instance.getClosestPhenoMatchInNetwork(123), equalTo(GeneMatch.NO_HIT));
     }
 
-}
\ No newline at end of file
+    private DataMatrix dataMatrix() {
+        Map<Integer, Integer> entrezIdToRowIndex = new HashMap<>();
+        entrezIdToRowIndex.put(1, 0);
+        entrezIdToRowIndex.put(2, 1);
+        entrezIdToRowIndex.put(3, 2);
+        entrezIdToRowIndex.put(4, 3);
+        return new DataMatrix(testMatrix, entrezIdToRowIndex);
+    }
+
+    private GeneModelPhenotypeMatch geneModelPhenotypeMatch(int entrezGeneId, double score) {
+        GeneDiseaseModel model = new GeneDiseaseModel("OMIM:" + entrezGeneId, Organism.HUMAN, entrezGeneId, "GENE" + entrezGeneId, "OMIM:" + entrezGeneId, "disease", Collections.emptyList());
+        return new GeneModelPhenotypeMatch(score, model, Collections.emptyList());
+    }
+
+    private ListMultimap<Integer, GeneModelPhenotypeMatch> bestGeneModels() {
+        ListMultimap<Integer, GeneModelPhenotypeMatch> bestGeneModels = ArrayListMultimap.create();
+        bestGeneModels.put(1, geneModelPhenotypeMatch(1, 0.8));
+        bestGeneModels.put(3, geneModelPhenotypeMatch(3, 0.5));
+        return bestGeneModels;
+    }
+
+    private GeneMatch expectedMatch(int queryGeneId, int matchGeneId, float walkerScore, ListMultimap<Integer, GeneModelPhenotypeMatch> bestGeneModels) {
+        return GeneMatch.builder()
+                .queryGeneId(queryGeneId)
+                .matchGeneId(matchGeneId)
+                .score(0.5 + walkerScore)
+                .bestMatchModels(bestGeneModels.get(matchGeneId))
+                .build();
+    }
+
+    @Test
+    public void testGeneNotInMatrixIsNoHit() {
+        HiPhiveProteinInteractionScorer instance = new HiPhiveProteinInteractionScorer(dataMatrix(), bestGeneModels(), 0.4);
+        assertThat(instance.getClosestPhenoMatchInNetwork(5), equalTo(GeneMatch.NO_HIT));
+    }
+
+    @Test
+    public void testNoHighQualityMatchesIsNoHit() {
+        HiPhiveProteinInteractionScorer instance = new HiPhiveProteinInteractionScorer(dataMatrix(), bestGeneModels(), 0.9);
+        assertThat(instance.getClosestPhenoMatchInNetwork(2), equalTo(GeneMatch.NO_HIT));
+    }
+
+    @Test
+    public void testClosestMatchIsHighestWeightedScore() {
+        ListMultimap<Integer, GeneModelPhenotypeMatch> bestGeneModels = bestGeneModels();
+        HiPhiveProteinInteractionScorer instance = new HiPhiveProteinInteractionScorer(dataMatrix(), bestGeneModels, 0.4);
+        //gene1 1.0 * 0.8 beats gene3 1.2 * 0.5
+        assertThat(instance.getClosestPhenoMatchInNetwork(2), equalTo(expectedMatch(2, 1, 1.0f * 0.8f, bestGeneModels)));
+        assertThat(instance.getClosestPhenoMatchInNetwork(4), equalTo(expectedMatch(4, 1, 3.0f * 0.8f, bestGeneModels)));
+    }
+
+    @Test
+    public void testSeedGeneDoesNotMatchItself() {
+        ListMultimap<Integer, GeneModelPhenotypeMatch> bestGeneModels = bestGeneModels();
+        HiPhiveProteinInteractionScorer instance = new HiPhiveProteinInteractionScorer(dataMatrix(), bestGeneModels, 0.4);
+        assertThat(instance.getClosestPhenoMatchInNetwork(1), equalTo(expectedMatch(1, 3, 0.2f * 0.5f, bestGeneModels)));
+        assertThat(instance.getClosestPhenoMatchInNetwork(3), equalTo(expectedMatch(3, 1, 2.0f * 0.8f, bestGeneModels)));
+    }
+
+}
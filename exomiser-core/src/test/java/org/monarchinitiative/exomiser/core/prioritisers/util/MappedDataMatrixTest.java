@@ -0,0 +1,121 @@
+/*
+ * The Exomiser - A tool to annotate and prioritize genomic variants
+ *
+ * Copyright (c) 2016-2017 Queen Mary University of London.
+ * Copyright (c) 2012-2016 Charité Universitätsmedizin Berlin and Genome Research Ltd.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.monarchinitiative.exomiser.core.prioritisers.util;
+
+import org.jblas.FloatMatrix;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.monarchinitiative.exomiser.core.prioritisers.util.DataMatrixIO.DataMatrixIoException;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.TreeMap;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+
+/**
+ * @author Jules Jacobsen <j.jacobsen@qmul.ac.uk>
+ */
+public class MappedDataMatrixTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private DataMatrix dataMatrix;
+    private Path matrixPath;
+
+    @Before
+    public void setUp() throws Exception {
+        //  0  1  2  3
+        //0 00 01 02 03
+        //1 10 11 12 13
+        //2 20 21 22 23
+        //3 30 31 32 33
+        FloatMatrix floatMatrix = new FloatMatrix(4, 4);
+        for (int row = 0; row < 4; row++) {
+            for (int column = 0; column < 4; column++) {
+                floatMatrix.put(row, column, row * 10f + column);
+            }
+        }
+        Map<Integer, Integer> entrezIdToRowIndex = new TreeMap<>();
+        entrezIdToRowIndex.put(0000, 0);
+        entrezIdToRowIndex.put(1111, 1);
+        entrezIdToRowIndex.put(2222, 2);
+        entrezIdToRowIndex.put(3333, 3);
+        dataMatrix = new DataMatrix(floatMatrix, entrezIdToRowIndex);
+
+        matrixPath = temporaryFolder.getRoot().toPath().resolve("testMatrix.bin");
+        DataMatrixIO.writeBinaryMatrix(dataMatrix, matrixPath);
+    }
+
+    @Test
+    public void testNumRows() {
+        DataMatrix instance = MappedDataMatrix.open(matrixPath, dataMatrix.getEntrezIdToRowIndex());
+        assertThat(instance.getNumRows(), equalTo(4));
+    }
+
+    @Test
+    public void testGetColumnMatrixForGene() {
+        DataMatrix instance = MappedDataMatrix.open(matrixPath, dataMatrix.getEntrezIdToRowIndex());
+        for (Integer entrezId : dataMatrix.getEntrezIdToRowIndex().keySet()) {
+            assertThat(instance.getColumnMatrixForGene(entrezId), equalTo(dataMatrix.getColumnMatrixForGene(entrezId)));
+        }
+    }
+
+    @Test
+    public void testContainsGene() {
+        DataMatrix instance = MappedDataMatrix.open(matrixPath, dataMatrix.getEntrezIdToRowIndex());
+        assertThat(instance.containsGene(2222), is(true));
+        assertThat(instance.containsGene(4444), is(false));
+    }
+
+    @Test
+    public void testGetMatrixReadsWholeMatrix() {
+        DataMatrix instance = MappedDataMatrix.open(matrixPath, dataMatrix.getEntrezIdToRowIndex());
+        assertThat(instance.getMatrix(), equalTo(dataMatrix.getMatrix()));
+    }
+
+    @Test(expected = DataMatrixIoException.class)
+    public void testOpenNonBinaryFileThrowsException() throws Exception {
+        Path textFile = temporaryFolder.newFile("testMatrix.txt").toPath();
+        Files.write(textFile, "0.0\t0.1\t0.2\t0.3\n".getBytes());
+        MappedDataMatrix.open(textFile, dataMatrix.getEntrezIdToRowIndex());
+    }
+
+    @Test(expected = DataMatrixIoException.class)
+    public void testOpenTruncatedFileThrowsException() throws Exception {
+        byte[] bytes = Files.readAllBytes(matrixPath);
+        Path truncated = temporaryFolder.newFile("truncated.bin").toPath();
+        Files.write(truncated, Arrays.copyOf(bytes, bytes.length - 4));
+        MappedDataMatrix.open(truncated, dataMatrix.getEntrezIdToRowIndex());
+    }
+
+    @Test(expected = DataMatrixIoException.class)
+    public void testOpenMissingFileThrowsException() {
+        MappedDataMatrix.open(temporaryFolder.getRoot().toPath().resolve("missing.bin"), dataMatrix.getEntrezIdToRowIndex());
+    }
+}
@@ -0,0 +1,125 @@
+/*
+ * The Exomiser - A tool to annotate and prioritize genomic variants
+ *
+ * Copyright (c) 2016-2017 Queen Mary University of London.
+ * Copyright (c) 2012-2016 Charité Universitätsmedizin Berlin and Genome Research Ltd.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.monarchinitiative.exomiser.core.prioritisers.util;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.monarchinitiative.exomiser.core.prioritisers.util.PhenixSnapshot.PhenixSnapshotException;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.junit.Assert.assertThat;
+
+/**
+ * @author Jules Jacobsen <j.jacobsen@qmul.ac.uk>
+ */
+public class PhenixSnapshotTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private Path hpoOboFile;
+    private Path hpoAnnotationFile;
+    private Path snapshotFile;
+
+    private final Map<String, Double> termInformationContent = new LinkedHashMap<>();
+    private final Map<String, List<String>> geneAnnotations = new LinkedHashMap<>();
+
+    @Before
+    public void setUp() throws IOException {
+        Path phenixDataDirectory = temporaryFolder.getRoot().toPath();
+        hpoOboFile = Files.write(phenixDataDirectory.resolve("hp.obo"), Collections.singletonList("format-version: 1.2"));
+        hpoAnnotationFile = Files.write(phenixDataDirectory.resolve("genes_to_phenotype.txt"), Collections.singletonList("2263\tFGFR2\tCrouzon syndrome\tHP:0000244"));
+        snapshotFile = phenixDataDirectory.resolve("phenix.snapshot");
+
+        termInformationContent.put("HP:0000001", 0.0);
+        termInformationContent.put("HP:0000118", 0.0123);
+        termInformationContent.put("HP:0000244", 5.5);
+        termInformationContent.put("HP:0001363", 4.25);
+
+        geneAnnotations.put("2263", Arrays.asList("HP:0000244", "HP:0001363"));
+        geneAnnotations.put("6469", Collections.singletonList("HP:0000118"));
+    }
+
+    @Test
+    public void testWriteAndRead() {
+        PhenixSnapshot.of(hpoOboFile, hpoAnnotationFile, termInformationContent, geneAnnotations).write(snapshotFile);
+
+        PhenixSnapshot instance = PhenixSnapshot.read(snapshotFile);
+        assertThat(instance.getTermInformationContent(), equalTo(termInformationContent));
+        assertThat(instance.getGeneAnnotations(), equalTo(geneAnnotations));
+    }
+
+    @Test
+    public void testReadSnapshotIsCurrentForUnchangedSourceFiles() {
+        PhenixSnapshot.of(hpoOboFile, hpoAnnotationFile, termInformationContent, geneAnnotations).write(snapshotFile);
+
+        PhenixSnapshot instance = PhenixSnapshot.read(snapshotFile);
+        assertThat(instance.isCurrentFor(hpoOboFile, hpoAnnotationFile), equalTo(true));
+    }
+
+    @Test
+    public void testSnapshotIsNotCurrentWhenSourceFileChanges() throws IOException {
+        PhenixSnapshot instance = PhenixSnapshot.of(hpoOboFile, hpoAnnotationFile, termInformationContent, geneAnnotations);
+
+        Files.write(hpoAnnotationFile, Arrays.asList("2263\tFGFR2\tCrouzon syndrome\tHP:0000244", "6469\tSHH\tHoloprosencephaly\tHP:0000118"));
+        assertThat(instance.isCurrentFor(hpoOboFile, hpoAnnotationFile), equalTo(false));
+    }
+
+    @Test
+    public void testSnapshotIsNotCurrentWhenSourceFileContentChangesButNotSize() throws IOException {
+        PhenixSnapshot instance = PhenixSnapshot.of(hpoOboFile, hpoAnnotationFile, termInformationContent, geneAnnotations);
+
+        Files.write(hpoOboFile, Collections.singletonList("format-version: 1.4"));
+        assertThat(instance.isCurrentFor(hpoOboFile, hpoAnnotationFile), equalTo(false));
+    }
+
+    @Test
+    public void testSnapshotIsCurrentWhenOnlySourceFileModificationTimeChanges() throws IOException {
+        PhenixSnapshot instance = PhenixSnapshot.of(hpoOboFile, hpoAnnotationFile, termInformationContent, geneAnnotations);
+
+        FileTime lastModified = Files.getLastModifiedTime(hpoOboFile);
+        Files.setLastModifiedTime(hpoOboFile, FileTime.fromMillis(lastModified.toMillis() + 60_000));
+        assertThat(instance.isCurrentFor(hpoOboFile, hpoAnnotationFile), equalTo(true));
+    }
+
+    @Test(expected = PhenixSnapshotException.class)
+    public void testWriteThrowsExceptionWhenAnnotatedTermHasNoInformationContent() {
+        geneAnnotations.put("1234", Collections.singletonList("HP:9999999"));
+        PhenixSnapshot.of(hpoOboFile, hpoAnnotationFile, termInformationContent, geneAnnotations).write(snapshotFile);
+    }
+
+    @Test(expected = PhenixSnapshotException.class)
+    public void testReadThrowsExceptionForNonSnapshotFile() {
+        PhenixSnapshot.read(hpoOboFile);
+    }
+}
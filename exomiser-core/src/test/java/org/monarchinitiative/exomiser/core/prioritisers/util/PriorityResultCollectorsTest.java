@@ -0,0 +1,88 @@
+/*
+ * The Exomiser - A tool to annotate and prioritize genomic variants
+ *
+ * Copyright (c) 2016-2017 Queen Mary University of London.
+ * Copyright (c) 2012-2016 Charité Universitätsmedizin Berlin and Genome Research Ltd.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.monarchinitiative.exomiser.core.prioritisers.util;
+
+import org.junit.Test;
+import org.monarchinitiative.exomiser.core.prioritisers.ExomeWalkerPriorityResult;
+import org.monarchinitiative.exomiser.core.prioritisers.PriorityResult;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import static java.util.stream.Collectors.toList;
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.junit.Assert.assertThat;
+
+/**
+ * @author Jules Jacobsen <j.jacobsen@qmul.ac.uk>
+ */
+public class PriorityResultCollectorsTest {
+
+    private List<PriorityResult> makeResults(int numResults) {
+        Random random = new Random(42);
+        List<PriorityResult> results = new ArrayList<>();
+        for (int i = 0; i < numResults; i++) {
+            //rounded so that there are plenty of tied scores
+            double score = Math.round(random.nextDouble() * 100) / 100d;
+            results.add(new ExomeWalkerPriorityResult(i, "GENE" + i, score));
+        }
+        return results;
+    }
+
+    private List<PriorityResult> sortAndLimit(List<PriorityResult> results, int limit) {
+        return results.stream().sorted().limit(limit).collect(toList());
+    }
+
+    @Test
+    public void testEmptyStream() {
+        List<PriorityResult> results = Collections.<PriorityResult>emptyList().stream()
+                .collect(PriorityResultCollectors.toTopResults(10));
+        assertThat(results, equalTo(Collections.emptyList()));
+    }
+
+    @Test
+    public void testTopResultsAreSameAsSortedAndLimited() {
+        List<PriorityResult> results = makeResults(1000);
+        assertThat(results.stream().collect(PriorityResultCollectors.toTopResults(50)), equalTo(sortAndLimit(results, 50)));
+    }
+
+    @Test
+    public void testTopResultsFromParallelStream() {
+        List<PriorityResult> results = makeResults(1000);
+        assertThat(results.parallelStream().collect(PriorityResultCollectors.toTopResults(50)), equalTo(sortAndLimit(results, 50)));
+    }
+
+    @Test
+    public void testLimitGreaterThanNumberOfResults() {
+        List<PriorityResult> results = makeResults(20);
+        List<PriorityResult> topResults = results.stream().collect(PriorityResultCollectors.toTopResults(50));
+        assertThat(topResults.size(), equalTo(20));
+        assertThat(topResults, equalTo(sortAndLimit(results, 20)));
+    }
+
+    @Test
+    public void testZeroLimitReturnsAllResultsSorted() {
+        List<PriorityResult> results = makeResults(100);
+        assertThat(results.stream().collect(PriorityResultCollectors.toTopResults(0)), equalTo(sortAndLimit(results, 100)));
+    }
+}
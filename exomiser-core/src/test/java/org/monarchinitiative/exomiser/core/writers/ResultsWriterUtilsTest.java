@@ -123,6 +123,16 @@ public void testOutFileNameIsCombinationOfOutPrefixAndOutFormat() {
         assertThat(ResultsWriterUtils.makeOutputFilename(vcfPath, settings.getOutputPrefix(), outFormat), equalTo(outFilePrefix + "." + outFormat.getFileExtension()));
     }
     
+    @Test
+    public void testProbandOutputPrefixIsDefaultPrefixWithProbandSampleName() {
+        assertThat(ResultsWriterUtils.makeProbandOutputPrefix(vcfPath, "Seth"), equalTo(DEFAULT_OUTPUT_DIR + "/wibble-Seth-exomiser-results"));
+    }
+
+    @Test
+    public void testProbandOutputPrefixReplacesUnsafeCharactersInSampleName() {
+        assertThat(ResultsWriterUtils.makeProbandOutputPrefix(vcfPath, "family/1 child"), equalTo(DEFAULT_OUTPUT_DIR + "/wibble-family_1_child-exomiser-results"));
+    }
+
     @Test
     public void canMakeEmptyVariantTypeCounterFromEmptyVariantEvaluations() {
         List<VariantEvaluation> variantEvaluations = new ArrayList<>();
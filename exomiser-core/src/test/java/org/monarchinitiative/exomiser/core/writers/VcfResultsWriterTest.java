@@ -52,6 +52,7 @@
 import java.util.Collections;
 import java.util.EnumSet;
 import java.util.List;
+import java.util.stream.Stream;
 
 import static java.util.stream.Collectors.toList;
 import static org.hamcrest.CoreMatchers.equalTo;
@@ -61,7 +62,8 @@
  * Tests for the {@link VcfResultsWriter} class.
  * 
  * The {@link VcfResultsWriter} class needs a {@link VCFFileReader} for building its header. Thus, we base our output
- * {@link VcfResultsWriter} on the minimal.vcf file from the test resources.
+ * {@link VcfResultsWriter} on the minimal.vcf file from the test resources. The variants written out are read from
+ * the vcfResultsWriterSource.vcf file, so that their source records are written back out.
  * 
  * @author Jules Jacobsen <jules.jacobsen@sanger.ac.uk>
  * @author Manuel Holtgrewe <manuel.holtgrewe@charite.de>
@@ -95,6 +97,8 @@ public class VcfResultsWriterTest {
             + "#CHROM\tPOS\tID\tREF\tALT\tQUAL\tFILTER\tINFO\tFORMAT\tsample\n";
     private static final String CHR10_FGFR2_PATHOGENIC_MISSENSE_VARIANT = "chr10\t123256215\t.\tT\tG\t2.20\tPASS\tExGeneSCombi=0.0;ExGeneSPheno=0.0;ExGeneSVar=0.0;ExGeneSymbId=2263;ExGeneSymbol=FGFR2;ExVarEff=missense_variant;ExVarHgvs=10:g.123256215T>G;ExVarScore=1.0;RD=30\tGT:RD\t0/1:30\n";
 
+    private static final Path SOURCE_VCF_PATH = Paths.get("src/test/resources/vcfResultsWriterSource.vcf");
+
     private static final FilterResult PASS_TARGET_RESULT = FilterResult.pass(FilterType.VARIANT_EFFECT_FILTER);
     private static final FilterResult FAIL_TARGET_RESULT = FilterResult.fail(FilterType.VARIANT_EFFECT_FILTER);
     private static final FilterResult FAIL_FREQUENCY_RESULT = FilterResult.fail(FilterType.FREQUENCY_FILTER);
@@ -124,6 +128,9 @@ public class VcfResultsWriterTest {
     private Gene Fgfr2Gene;
     private Gene ShhGene;
 
+    /** The variants of the source VCF, in record order. */
+    private List<VariantEvaluation> sourceVariants;
+
     @BeforeClass
     public static void loadVCFHeader() throws URISyntaxException {
         final String inputFilePath = VcfResultsWriterTest.class.getResource("/minimal.vcf").toURI().getPath();
@@ -144,6 +151,10 @@ public void setUp() throws IOException {
     }
 
     private void setUpModel() {
+        VariantFactory variantFactory = TestFactory.buildDefaultVariantFactory();
+        try (Stream<VariantEvaluation> variants = variantFactory.streamVariantEvaluations(SOURCE_VCF_PATH)) {
+            sourceVariants = variants.collect(toList());
+        }
         setUpFgfr2Gene();
         setUpShhGene();
         unAnnotatedVariantEvaluation1 = VariantEvaluation.builder(5, 11, "AC", "AT").quality(1).build();
@@ -151,7 +162,7 @@ private void setUpModel() {
     }
 
     private void setUpShhGene() {
-        indelVariantEvaluation = varFactory.buildVariant(7, 155604800, "C", "CTT", Genotype.HETEROZYGOUS, 30, 0, 1.0);
+        indelVariantEvaluation = sourceVariants.get(2);
 
         ShhGene = TestFactory.newGeneSHH();
         ShhGene.addVariant(indelVariantEvaluation);
@@ -159,7 +170,7 @@ private void setUpShhGene() {
     }
 
     private void setUpFgfr2Gene() {
-        missenseVariantEvaluation = varFactory.buildVariant(10, 123256215, "T", "G", Genotype.HETEROZYGOUS, 30, 0, 2.2);
+        missenseVariantEvaluation = sourceVariants.get(3);
         missenseVariantEvaluation.setPathogenicityData(PathogenicityData.of(PolyPhenScore.valueOf(1f)));
 
         Fgfr2Gene = TestFactory.newGeneFGFR2();
@@ -169,6 +180,7 @@ private void setUpFgfr2Gene() {
 
     private AnalysisResults buildAnalysisResults(Gene... genes) {
         return AnalysisResults.builder()
+                .vcfPath(SOURCE_VCF_PATH)
                 .vcfHeader(vcfHeader)
                 .genes(Arrays.asList(genes))
                 .build();
@@ -295,9 +307,8 @@ public void testWritePassVariantsWithNoPassingVariants() {
     
     @Test
     public void testAlternativeAllelesAreWrittenOnSuccessiveLines() {
-        TestVariantFactory varFactory = new TestVariantFactory();
-        VariantEvaluation alt1 = varFactory.buildVariant(1, 120612040, "T", "TCCGCCG", Genotype.HETEROZYGOUS, 30, 0, 258.62);
-        VariantEvaluation alt2 = varFactory.buildVariant(1, 120612040, "T", "TCCTCCGCCG", Genotype.HOMOZYGOUS_ALT, 30, 0, 258.62);
+        VariantEvaluation alt1 = sourceVariants.get(0);
+        VariantEvaluation alt2 = sourceVariants.get(1);
         Gene gene = new Gene("TEST", 12345);
         gene.addVariant(alt1);
         gene.addVariant(alt2);
@@ -312,6 +323,34 @@ public void testAlternativeAllelesAreWrittenOnSuccessiveLines() {
         assertThat(output, equalTo(expected));
     }
 
+    @Test
+    public void testVariantWithoutSourceRecordIsWrittenAsMinimalRecord() {
+        VariantEvaluation sourcelessVariant = varFactory.buildVariant(10, 123256215, "T", "G", Genotype.HETEROZYGOUS, 30, 0, 2.2);
+        Gene gene = TestFactory.newGeneFGFR2();
+        gene.addVariant(sourcelessVariant);
+
+        AnalysisResults analysisResults = buildAnalysisResults(gene);
+
+        String output = instance.writeString(analysis, analysisResults, settings);
+        String expected = EXPECTED_HEADER
+                + "chr10\t123256215\t.\tT\tG\t2.20\t.\tExGeneSCombi=0.0;ExGeneSPheno=0.0;ExGeneSVar=0.0;ExGeneSymbId=2263;ExGeneSymbol=FGFR2;ExVarEff=missense_variant;ExVarHgvs=10:g.123256215T>G;ExVarScore=1.0\tGT\t0/1\n";
+        assertThat(output, equalTo(expected));
+    }
+
+    @Test
+    public void testVariantWithMissingSourceVcfIsWrittenAsMinimalRecord() {
+        AnalysisResults analysisResults = AnalysisResults.builder()
+                .vcfPath(tmpFolder.getRoot().toPath().resolve("deleted.vcf"))
+                .vcfHeader(vcfHeader)
+                .genes(Collections.singletonList(Fgfr2Gene))
+                .build();
+
+        String output = instance.writeString(analysis, analysisResults, settings);
+        String expected = EXPECTED_HEADER
+                + "chr10\t123256215\t.\tT\tG\t2.20\t.\tExGeneSCombi=0.0;ExGeneSPheno=0.0;ExGeneSVar=0.0;ExGeneSymbId=2263;ExGeneSymbol=FGFR2;ExVarEff=missense_variant;ExVarHgvs=10:g.123256215T>G;ExVarScore=1.0\tGT\t0/1\n";
+        assertThat(output, equalTo(expected));
+    }
+
     @Test
     public void testHomozygousAltAlleleOutputVcfContainsConcatenatedVariantScoresOnOneLine() {
         Path vcfPath = Paths.get("src/test/resources/multiAlleleGenotypes.vcf");
@@ -333,7 +372,11 @@ public void testHomozygousAltAlleleOutputVcfContainsConcatenatedVariantScoresOnO
         gene.addVariant(altAlleleOne);
         gene.addVariant(altAlleleTwo);
 
-        AnalysisResults analysisResults = buildAnalysisResults(gene);
+        AnalysisResults analysisResults = AnalysisResults.builder()
+                .vcfPath(vcfPath)
+                .vcfHeader(vcfHeader)
+                .genes(Collections.singletonList(gene))
+                .build();
 
         String output = instance.writeString(analysis, analysisResults, settings);
         System.out.println(output);
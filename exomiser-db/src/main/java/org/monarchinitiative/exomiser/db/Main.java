@@ -21,9 +21,11 @@
 package org.monarchinitiative.exomiser.db;
 
 import org.flywaydb.core.Flyway;
+import org.monarchinitiative.exomiser.core.prioritisers.PhenixEngine;
 import org.monarchinitiative.exomiser.db.config.AppConfig;
 import org.monarchinitiative.exomiser.db.config.DataSourceConfig;
 import org.monarchinitiative.exomiser.db.config.ResourceConfig;
+import org.monarchinitiative.exomiser.db.io.AlleleStoreBuilder;
 import org.monarchinitiative.exomiser.db.io.PhenodigmDataDumper;
 import org.monarchinitiative.exomiser.db.resources.Resource;
 import org.monarchinitiative.exomiser.db.resources.ResourceDownloadHandler;
@@ -110,6 +112,24 @@ public void run(ApplicationArguments applicationArguments) {
             logger.info(resource.getStatus());
         }
 
+        //build the allele store from the parsed frequency and pathogenicity data
+        boolean buildAlleleStore = appConfig.buildAlleleStore();
+        if (buildAlleleStore) {
+            logger.info("Building allele store...");
+            new AlleleStoreBuilder().buildAlleleStore(dataPath.resolve("frequency.pg"), dataPath.resolve("variant.pg"), dataPath.resolve("exomiser-alleles.bin"));
+        } else {
+            logger.info("Skipping building allele store.");
+        }
+
+        //build the PhenIX snapshot from the hp.obo and gene annotation files
+        boolean buildPhenixSnapshot = appConfig.buildPhenixSnapshot();
+        if (buildPhenixSnapshot) {
+            logger.info("Building PhenIX snapshot...");
+            PhenixEngine.buildSnapshot(dataPath.resolve("phenix"));
+        } else {
+            logger.info("Skipping building PhenIX snapshot.");
+        }
+
         //dump Phenodigm data to flatfiles for import
         boolean dumpPhenoDigmData = appConfig.dumpPhenoDigmData();
         if (dumpPhenoDigmData) {
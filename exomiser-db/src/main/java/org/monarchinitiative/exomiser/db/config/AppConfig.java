@@ -158,6 +158,20 @@ public boolean parseResources() {
         return parse;
     }
 
+    @Bean
+    public boolean buildAlleleStore() {
+        boolean buildAlleleStore = Boolean.parseBoolean(env.getProperty("buildAlleleStore"));
+        logger.info("Setting application to build allele store: {}", buildAlleleStore);
+        return buildAlleleStore;
+    }
+
+    @Bean
+    public boolean buildPhenixSnapshot() {
+        boolean buildPhenixSnapshot = Boolean.parseBoolean(env.getProperty("buildPhenixSnapshot"));
+        logger.info("Setting application to build PhenIX snapshot: {}", buildPhenixSnapshot);
+        return buildPhenixSnapshot;
+    }
+
     @Bean
     public boolean dumpPhenoDigmData() {
         boolean dumpPhenoDigmData = Boolean.parseBoolean(env.getProperty("dumpPhenoDigmData"));
@@ -0,0 +1,482 @@
+/*
+ * The Exomiser - A tool to annotate and prioritize genomic variants
+ *
+ * Copyright (c) 2016-2017 Queen Mary University of London.
+ * Copyright (c) 2012-2016 Charité Universitätsmedizin Berlin and Genome Research Ltd.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.monarchinitiative.exomiser.db.io;
+
+import org.monarchinitiative.exomiser.core.genome.dao.AlleleStoreWriter;
+import org.monarchinitiative.exomiser.core.model.frequency.FrequencySource;
+import org.monarchinitiative.exomiser.core.model.pathogenicity.PathogenicitySource;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+
+/**
+ * Builds the binary allele store used by the exomiser-core {@code AlleleStore} from the frequency.pg and variant.pg
+ * dump files written by the {@code VariantFrequencyResourceGroupParser} and {@code NSFP2SQLDumpParser}. Neither of
+ * these is guaranteed to be in position order, so the dump files are first split by chromosome, then each chromosome
+ * file is sorted externally, in chunks of {@link #SORT_CHUNK_SIZE} rows which are merged back together. The sorted
+ * frequency and pathogenicity rows of a chromosome are then merged as a stream and written out, so the memory required
+ * is that of a single chunk no matter how large the input.
+ * <p>
+ * Where there are several rows for the same allele the same rules as the database queries are applied: the frequency
+ * row with the highest dbSNP/ESP frequencies is used, along with the most pathogenic SIFT, PolyPhen and
+ * MutationTaster scores.
+ *
+ * @author Jules Jacobsen <j.jacobsen@qmul.ac.uk>
+ */
+public class AlleleStoreBuilder {
+
+    private static final Logger logger = LoggerFactory.getLogger(AlleleStoreBuilder.class);
+
+    //columns of the frequency.pg file following chromosome|position|ref|alt|rsid
+    private static final FrequencySource[] FREQUENCY_COLUMNS = {
+            FrequencySource.THOUSAND_GENOMES,
+            FrequencySource.ESP_EUROPEAN_AMERICAN,
+            FrequencySource.ESP_AFRICAN_AMERICAN,
+            FrequencySource.ESP_ALL,
+            FrequencySource.EXAC_AFRICAN_INC_AFRICAN_AMERICAN,
+            FrequencySource.EXAC_AMERICAN,
+            FrequencySource.EXAC_EAST_ASIAN,
+            FrequencySource.EXAC_FINNISH,
+            FrequencySource.EXAC_NON_FINNISH_EUROPEAN,
+            FrequencySource.EXAC_OTHER,
+            FrequencySource.EXAC_SOUTH_ASIAN
+    };
+    //the dbSNP and ESP columns used to choose between duplicate frequency rows
+    private static final int NUM_RANKING_COLUMNS = 4;
+
+    private static final String FREQUENCY_PREFIX = "frequency-";
+    private static final String PATHOGENICITY_PREFIX = "variant-";
+
+    //number of rows sorted in memory at a time
+    static final int SORT_CHUNK_SIZE = 1_000_000;
+
+    private final int sortChunkSize;
+
+    public AlleleStoreBuilder() {
+        this(SORT_CHUNK_SIZE);
+    }
+
+    AlleleStoreBuilder(int sortChunkSize) {
+        this.sortChunkSize = sortChunkSize;
+    }
+
+    /**
+     * @param frequencyDumpPath     path to the frequency.pg file
+     * @param pathogenicityDumpPath path to the variant.pg file
+     * @param outputPath            path of the allele store to be written
+     * @throws AlleleStoreBuilderException if the store could not be built. No partial output is left behind.
+     */
+    public void buildAlleleStore(Path frequencyDumpPath, Path pathogenicityDumpPath, Path outputPath) {
+        logger.info("Building allele store {} from {} and {}", outputPath, frequencyDumpPath, pathogenicityDumpPath);
+        Path workingDir = outputPath.resolveSibling(outputPath.getFileName() + "-tmp");
+        try {
+            Files.createDirectories(workingDir);
+            SortedSet<Integer> chromosomes = new TreeSet<>();
+            chromosomes.addAll(splitByChromosome(frequencyDumpPath, workingDir, FREQUENCY_PREFIX));
+            chromosomes.addAll(splitByChromosome(pathogenicityDumpPath, workingDir, PATHOGENICITY_PREFIX));
+
+            try (AlleleStoreWriter alleleStoreWriter = new AlleleStoreWriter(outputPath)) {
+                for (int chromosome : chromosomes) {
+                    writeChromosome(chromosome, workingDir, alleleStoreWriter);
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            deleteQuietly(outputPath);
+            throw new AlleleStoreBuilderException("Unable to build allele store " + outputPath, e);
+        } finally {
+            deleteWorkingDir(workingDir);
+        }
+    }
+
+    private Set<Integer> splitByChromosome(Path dumpPath, Path workingDir, String prefix) throws IOException {
+        if (!Files.exists(dumpPath)) {
+            logger.warn("Unable to find {} - allele store will not contain this data", dumpPath);
+            return Collections.emptySet();
+        }
+        logger.info("Splitting {} by chromosome", dumpPath);
+        Map<Integer, BufferedWriter> writers = new HashMap<>();
+        try (BufferedReader reader = Files.newBufferedReader(dumpPath, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                int chromosome = Integer.parseInt(line.substring(0, line.indexOf('|')));
+                BufferedWriter writer = writers.get(chromosome);
+                if (writer == null) {
+                    writer = Files.newBufferedWriter(chromosomeFile(workingDir, prefix, chromosome), StandardCharsets.UTF_8);
+                    writers.put(chromosome, writer);
+                }
+                writer.write(line);
+                writer.newLine();
+            }
+        } finally {
+            for (BufferedWriter writer : writers.values()) {
+                writer.close();
+            }
+        }
+        return writers.keySet();
+    }
+
+    private Path chromosomeFile(Path workingDir, String prefix, int chromosome) {
+        return workingDir.resolve(prefix + chromosome + ".pg");
+    }
+
+    private void writeChromosome(int chromosome, Path workingDir, AlleleStoreWriter alleleStoreWriter) throws IOException {
+        Path frequencyFile = sortFile(chromosomeFile(workingDir, FREQUENCY_PREFIX, chromosome), workingDir);
+        Path pathogenicityFile = sortFile(chromosomeFile(workingDir, PATHOGENICITY_PREFIX, chromosome), workingDir);
+
+        int written = 0;
+        int skipped = 0;
+        try (DumpRowReader frequencyRows = new DumpRowReader(frequencyFile, 0);
+             DumpRowReader pathogenicityRows = new DumpRowReader(pathogenicityFile, 0)) {
+            while (frequencyRows.hasNext() || pathogenicityRows.hasNext()) {
+                AlleleKey key = nextKey(frequencyRows, pathogenicityRows);
+                AlleleData data = new AlleleData();
+                while (frequencyRows.hasNext() && frequencyRows.peek().key.compareTo(key) == 0) {
+                    addFrequencies(data, frequencyRows.next().fields);
+                }
+                while (pathogenicityRows.hasNext() && pathogenicityRows.peek().key.compareTo(key) == 0) {
+                    addPathogenicityScores(data, pathogenicityRows.next().fields);
+                }
+                if (!AlleleStoreWriter.canStore(chromosome, key.ref, key.alt)) {
+                    skipped++;
+                    continue;
+                }
+                alleleStoreWriter.write(chromosome, key.position, key.ref, key.alt, data.rsId, data.getFrequencies(), data.getPathogenicityScores());
+                written++;
+            }
+        }
+        deleteQuietly(frequencyFile);
+        deleteQuietly(pathogenicityFile);
+        logger.info("Written {} alleles for chromosome {} - skipped {} alleles too long to store", written, chromosome, skipped);
+    }
+
+    private AlleleKey nextKey(DumpRowReader frequencyRows, DumpRowReader pathogenicityRows) {
+        if (!frequencyRows.hasNext()) {
+            return pathogenicityRows.peek().key;
+        }
+        if (!pathogenicityRows.hasNext()) {
+            return frequencyRows.peek().key;
+        }
+        AlleleKey frequencyKey = frequencyRows.peek().key;
+        AlleleKey pathogenicityKey = pathogenicityRows.peek().key;
+        return frequencyKey.compareTo(pathogenicityKey) <= 0 ? frequencyKey : pathogenicityKey;
+    }
+
+    private void addFrequencies(AlleleData data, String[] fields) {
+        Float[] frequencies = new Float[FREQUENCY_COLUMNS.length];
+        for (int i = 0; i < frequencies.length; i++) {
+            frequencies[i] = parseValue(fields[5 + i]);
+        }
+        data.addFrequencies(parseRsId(fields[4]), frequencies);
+    }
+
+    private void addPathogenicityScores(AlleleData data, String[] fields) {
+        data.addPathogenicityScores(parseValue(fields[4]), parseValue(fields[5]), parseValue(fields[6]));
+    }
+
+    /**
+     * Sorts the rows of the file into position order by writing out sorted runs of at most {@link #sortChunkSize}
+     * rows and merging these together. Rows with the same key keep their original relative order.
+     *
+     * @return the sorted file, which will be empty if the input file does not exist.
+     */
+    Path sortFile(Path file, Path workingDir) throws IOException {
+        Path sortedFile = workingDir.resolve("sorted-" + file.getFileName());
+        if (!Files.exists(file)) {
+            Files.createFile(sortedFile);
+            return sortedFile;
+        }
+        List<Path> runs = new ArrayList<>();
+        try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            List<DumpRow> chunk = new ArrayList<>();
+            String line;
+            while ((line = reader.readLine()) != null) {
+                chunk.add(DumpRow.parse(line));
+                if (chunk.size() == sortChunkSize) {
+                    runs.add(writeRun(chunk, file, runs.size(), workingDir));
+                    chunk.clear();
+                }
+            }
+            if (!chunk.isEmpty()) {
+                runs.add(writeRun(chunk, file, runs.size(), workingDir));
+            }
+        }
+        mergeRuns(runs, sortedFile);
+        for (Path run : runs) {
+            deleteQuietly(run);
+        }
+        deleteQuietly(file);
+        return sortedFile;
+    }
+
+    private Path writeRun(List<DumpRow> chunk, Path file, int runNumber, Path workingDir) throws IOException {
+        //a stable sort, so duplicate rows are resolved in the same way as the unsorted input
+        chunk.sort(Comparator.comparing(row -> row.key));
+        Path run = workingDir.resolve("run-" + runNumber + "-" + file.getFileName());
+        try (BufferedWriter writer = Files.newBufferedWriter(run, StandardCharsets.UTF_8)) {
+            for (DumpRow row : chunk) {
+                writer.write(row.line);
+                writer.newLine();
+            }
+        }
+        return run;
+    }
+
+    private void mergeRuns(List<Path> runs, Path sortedFile) throws IOException {
+        //ties are broken on the run number, so that earlier rows are still written first
+        PriorityQueue<DumpRowReader> readers = new PriorityQueue<>(Math.max(1, runs.size()), Comparator
+                .comparing((DumpRowReader reader) -> reader.peek().key)
+                .thenComparingInt(reader -> reader.runNumber));
+        try (BufferedWriter writer = Files.newBufferedWriter(sortedFile, StandardCharsets.UTF_8)) {
+            for (int i = 0; i < runs.size(); i++) {
+                DumpRowReader reader = new DumpRowReader(runs.get(i), i);
+                if (reader.hasNext()) {
+                    readers.add(reader);
+                } else {
+                    reader.close();
+                }
+            }
+            while (!readers.isEmpty()) {
+                DumpRowReader reader = readers.poll();
+                writer.write(reader.next().line);
+                writer.newLine();
+                if (reader.hasNext()) {
+                    readers.add(reader);
+                } else {
+                    reader.close();
+                }
+            }
+        } finally {
+            for (DumpRowReader reader : readers) {
+                reader.close();
+            }
+        }
+    }
+
+    private int parseRsId(String field) {
+        if (field.isEmpty() || "null".equalsIgnoreCase(field)) {
+            return 0;
+        }
+        return Integer.parseInt(field);
+    }
+
+    private Float parseValue(String field) {
+        if (field.isEmpty() || "null".equalsIgnoreCase(field) || ".".equals(field)) {
+            return null;
+        }
+        return Float.valueOf(field);
+    }
+
+    private void deleteWorkingDir(Path workingDir) {
+        if (!Files.isDirectory(workingDir)) {
+            return;
+        }
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(workingDir)) {
+            for (Path file : files) {
+                deleteQuietly(file);
+            }
+        } catch (IOException e) {
+            logger.warn("Unable to clean up working directory {}", workingDir, e);
+        }
+        deleteQuietly(workingDir);
+    }
+
+    private void deleteQuietly(Path path) {
+        try {
+            Files.deleteIfExists(path);
+        } catch (IOException e) {
+            logger.warn("Unable to delete {}", path, e);
+        }
+    }
+
+    /**
+     * A pipe-separated row of a dump file along with the allele it is for.
+     */
+    private static class DumpRow {
+
+        private final String line;
+        private final String[] fields;
+        private final AlleleKey key;
+
+        private DumpRow(String line, String[] fields, AlleleKey key) {
+            this.line = line;
+            this.fields = fields;
+            this.key = key;
+        }
+
+        static DumpRow parse(String line) {
+            String[] fields = line.split("\\|", -1);
+            return new DumpRow(line, fields, new AlleleKey(Integer.parseInt(fields[1]), fields[2], fields[3]));
+        }
+    }
+
+    /**
+     * Reads the rows of a sorted file one at a time.
+     */
+    private static class DumpRowReader implements Closeable {
+
+        private final BufferedReader reader;
+        private final int runNumber;
+        private DumpRow next;
+
+        DumpRowReader(Path file, int runNumber) throws IOException {
+            this.reader = Files.newBufferedReader(file, StandardCharsets.UTF_8);
+            this.runNumber = runNumber;
+            this.next = readRow();
+        }
+
+        private DumpRow readRow() throws IOException {
+            String line = reader.readLine();
+            return line == null ? null : DumpRow.parse(line);
+        }
+
+        boolean hasNext() {
+            return next != null;
+        }
+
+        DumpRow peek() {
+            return next;
+        }
+
+        DumpRow next() throws IOException {
+            DumpRow current = next;
+            next = readRow();
+            return current;
+        }
+
+        @Override
+        public void close() throws IOException {
+            reader.close();
+        }
+    }
+
+    /**
+     * Sorts in the same order as required by the {@link AlleleStoreWriter}.
+     */
+    private static class AlleleKey implements Comparable<AlleleKey> {
+
+        private final int position;
+        private final String ref;
+        private final String alt;
+
+        AlleleKey(int position, String ref, String alt) {
+            this.position = position;
+            this.ref = ref;
+            this.alt = alt;
+        }
+
+        @Override
+        public int compareTo(AlleleKey other) {
+            if (position != other.position) {
+                return Integer.compare(position, other.position);
+            }
+            int refComparison = ref.compareTo(other.ref);
+            if (refComparison != 0) {
+                return refComparison;
+            }
+            return alt.compareTo(other.alt);
+        }
+    }
+
+    private static class AlleleData {
+
+        private int rsId = 0;
+        private Float[] frequencies;
+
+        private Float sift;
+        private Float polyphen;
+        private Float mutationTaster;
+
+        void addFrequencies(int rsId, Float[] frequencies) {
+            if (this.frequencies == null || compareRankingColumns(frequencies, this.frequencies) > 0) {
+                this.rsId = rsId;
+                this.frequencies = frequencies;
+            }
+        }
+
+        //the equivalent of ORDER BY dbsnpmaf desc, espeamaf desc, espaamaf desc, espallmaf desc with nulls last
+        private static int compareRankingColumns(Float[] these, Float[] those) {
+            for (int i = 0; i < NUM_RANKING_COLUMNS; i++) {
+                float thisValue = these[i] == null ? Float.NEGATIVE_INFINITY : these[i];
+                float thatValue = those[i] == null ? Float.NEGATIVE_INFINITY : those[i];
+                int comparison = Float.compare(thisValue, thatValue);
+                if (comparison != 0) {
+                    return comparison;
+                }
+            }
+            return 0;
+        }
+
+        void addPathogenicityScores(Float sift, Float polyphen, Float mutationTaster) {
+            //lower SIFT scores are more pathogenic
+            if (sift != null && (this.sift == null || sift < this.sift)) {
+                this.sift = sift;
+            }
+            if (polyphen != null && (this.polyphen == null || polyphen > this.polyphen)) {
+                this.polyphen = polyphen;
+            }
+            if (mutationTaster != null && (this.mutationTaster == null || mutationTaster > this.mutationTaster)) {
+                this.mutationTaster = mutationTaster;
+            }
+        }
+
+        Map<FrequencySource, Float> getFrequencies() {
+            Map<FrequencySource, Float> frequencyMap = new EnumMap<>(FrequencySource.class);
+            if (frequencies != null) {
+                for (int i = 0; i < FREQUENCY_COLUMNS.length; i++) {
+                    if (frequencies[i] != null) {
+                        frequencyMap.put(FREQUENCY_COLUMNS[i], frequencies[i]);
+                    }
+                }
+            }
+            return frequencyMap;
+        }
+
+        Map<PathogenicitySource, Float> getPathogenicityScores() {
+            Map<PathogenicitySource, Float> scores = new EnumMap<>(PathogenicitySource.class);
+            if (sift != null) {
+                scores.put(PathogenicitySource.SIFT, sift);
+            }
+            if (polyphen != null) {
+                scores.put(PathogenicitySource.POLYPHEN, polyphen);
+            }
+            if (mutationTaster != null) {
+                scores.put(PathogenicitySource.MUTATION_TASTER, mutationTaster);
+            }
+            return scores;
+        }
+    }
+
+    public static class AlleleStoreBuilderException extends RuntimeException {
+
+        public AlleleStoreBuilderException(String message, Throwable cause) {
+            super(message, cause);
+        }
+    }
+}
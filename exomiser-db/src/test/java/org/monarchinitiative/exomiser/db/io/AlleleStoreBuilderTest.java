@@ -0,0 +1,119 @@
+/*
+ * The Exomiser - A tool to annotate and prioritize genomic variants
+ *
+ * Copyright (c) 2016-2017 Queen Mary University of London.
+ * Copyright (c) 2012-2016 Charité Universitätsmedizin Berlin and Genome Research Ltd.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.monarchinitiative.exomiser.db.io;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.monarchinitiative.exomiser.core.genome.dao.AlleleStore;
+import org.monarchinitiative.exomiser.core.model.VariantEvaluation;
+import org.monarchinitiative.exomiser.core.model.frequency.Frequency;
+import org.monarchinitiative.exomiser.core.model.frequency.FrequencyData;
+import org.monarchinitiative.exomiser.core.model.frequency.FrequencySource;
+import org.monarchinitiative.exomiser.core.model.frequency.RsId;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+/**
+ * @author Jules Jacobsen <j.jacobsen@qmul.ac.uk>
+ */
+public class AlleleStoreBuilderTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private static final String NO_FREQUENCIES = "|||||||||||";
+
+    private Path writeDumpFile(String name, String... lines) throws IOException {
+        Path dumpFile = temporaryFolder.getRoot().toPath().resolve(name);
+        Files.write(dumpFile, Arrays.asList(lines), StandardCharsets.UTF_8);
+        return dumpFile;
+    }
+
+    @Test
+    public void testSortFileMergesSortedRunsKeepingOriginalOrderOfDuplicates() throws IOException {
+        Path unsorted = writeDumpFile("frequency-1.pg",
+                "1|300|A|T|3" + NO_FREQUENCIES,
+                "1|100|A|T|1" + NO_FREQUENCIES,
+                "1|200|A|T|2" + NO_FREQUENCIES,
+                "1|100|A|T|4" + NO_FREQUENCIES,
+                "1|100|A|C|5" + NO_FREQUENCIES);
+
+        AlleleStoreBuilder instance = new AlleleStoreBuilder(2);
+        Path sorted = instance.sortFile(unsorted, temporaryFolder.getRoot().toPath());
+
+        List<String> expected = Arrays.asList(
+                "1|100|A|C|5" + NO_FREQUENCIES,
+                "1|100|A|T|1" + NO_FREQUENCIES,
+                "1|100|A|T|4" + NO_FREQUENCIES,
+                "1|200|A|T|2" + NO_FREQUENCIES,
+                "1|300|A|T|3" + NO_FREQUENCIES);
+        assertThat(Files.readAllLines(sorted, StandardCharsets.UTF_8), equalTo(expected));
+    }
+
+    @Test
+    public void testBuildAlleleStoreFromUnsortedDumpFiles() throws IOException {
+        Path frequencyDump = writeDumpFile("frequency.pg",
+                "2|500|G|A|22||||||||||||",
+                "1|300|A|T|3|0.01||||||||||",
+                "1|100|A|T|1|0.02||||||||||",
+                "1|100|A|T|1|0.05||||||||||");
+        Path pathogenicityDump = writeDumpFile("variant.pg",
+                "1|200|C|G|0.1|0.9|0.8",
+                "1|100|A|T|0.2|0.5|0.5");
+        Path outputPath = temporaryFolder.getRoot().toPath().resolve("alleles.bin");
+
+        new AlleleStoreBuilder(1).buildAlleleStore(frequencyDump, pathogenicityDump, outputPath);
+
+        AlleleStore alleleStore = AlleleStore.open(outputPath);
+        assertThat(alleleStore.size(), equalTo(4L));
+        FrequencyData frequencyData = alleleStore.getFrequencyData(VariantEvaluation.builder(1, 100, "A", "T").build());
+        assertThat(frequencyData, equalTo(FrequencyData.of(RsId.valueOf(1), Frequency.valueOf(0.05f, FrequencySource.THOUSAND_GENOMES))));
+        assertThat(Files.exists(outputPath.resolveSibling("alleles.bin-tmp")), is(false));
+    }
+
+    @Test
+    public void testBuildAlleleStoreFailureRemovesPartialOutput() throws IOException {
+        Path frequencyDump = writeDumpFile("frequency.pg",
+                "1|100|A|T|1" + NO_FREQUENCIES,
+                "1|not-a-position|A|T|1" + NO_FREQUENCIES);
+        Path outputPath = temporaryFolder.getRoot().toPath().resolve("alleles.bin");
+
+        try {
+            new AlleleStoreBuilder().buildAlleleStore(frequencyDump, temporaryFolder.getRoot().toPath().resolve("variant.pg"), outputPath);
+            fail("Expected an AlleleStoreBuilderException");
+        } catch (AlleleStoreBuilder.AlleleStoreBuilderException e) {
+            assertThat(Files.exists(outputPath), is(false));
+            assertThat(Files.exists(outputPath.resolveSibling("alleles.bin-tmp")), is(false));
+        }
+    }
+
+}
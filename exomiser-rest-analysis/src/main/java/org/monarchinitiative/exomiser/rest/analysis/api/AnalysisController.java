@@ -21,24 +21,35 @@
 package org.monarchinitiative.exomiser.rest.analysis.api;
 
 import org.monarchinitiative.exomiser.core.analysis.Analysis;
+import org.monarchinitiative.exomiser.core.writers.OutputFormat;
 import org.monarchinitiative.exomiser.rest.analysis.model.AnalysisResponse;
 import org.monarchinitiative.exomiser.rest.analysis.model.AnalysisStatus;
 import org.monarchinitiative.exomiser.rest.analysis.service.AnalysisService;
+import org.monarchinitiative.exomiser.rest.analysis.service.VcfUpload;
+import org.monarchinitiative.exomiser.rest.analysis.service.VcfUpload.VcfUploadException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.FileSystemResource;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.multipart.MultipartFile;
 
 import javax.inject.Named;
-import java.io.BufferedReader;
-import java.io.BufferedWriter;
+import javax.servlet.http.HttpServletRequest;
 import java.io.IOException;
-import java.io.InputStreamReader;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
 
 /**
  * @author Jules Jacobsen <jules.jacobsen@sanger.ac.uk>
@@ -56,6 +67,17 @@ public class AnalysisController {
     @Autowired
     private AnalysisService analysisService;
 
+    @Value("${exomiser.analysis.max-upload-bytes:-1}")
+    private long maxUploadBytes;
+
+    @Value("${exomiser.analysis.upload-idle-minutes:60}")
+    private long uploadIdleMinutes;
+
+    private static final String UPLOAD_OFFSET = "Upload-Offset";
+
+    //in-progress chunked uploads keyed by analysis id and file name
+    private final Map<String, VcfUpload> chunkedUploads = new ConcurrentHashMap<>();
+
     @RequestMapping(value = "", method = RequestMethod.GET)
     public String getAnalysis() {
         return "You can upload an analysis YAML file by posting to this URL.\n";
@@ -91,29 +113,174 @@ public AnalysisResponse postVcf(@PathVariable("analysisId") long id,
                                     @RequestParam(value = "vcf", required = true) MultipartFile file,
                                     @RequestParam(value = "ped", required = false) MultipartFile pedFile) throws FileUploadException {
 
-        if (!file.isEmpty()) {
-            Path analysisDir = getAnalysisDirectory(id);
-            Path outputFile = analysisDir.resolve(file.getOriginalFilename());
-            try {
-                Files.createFile(outputFile);
-            } catch (IOException ex) {
-                throw new FileUploadException("Error uploading file " + file.getOriginalFilename());
+        if (file.isEmpty()) {
+            throw new FileUploadException("Error uploading file " + file.getOriginalFilename() + " - File was empty.");
+        }
+        VcfUpload vcfUpload = newVcfUpload(id, file.getOriginalFilename());
+        try (InputStream inputStream = file.getInputStream()) {
+            vcfUpload.append(0, inputStream);
+        } catch (IOException | UncheckedIOException e) {
+            vcfUpload.abort();
+            logger.error("Error uploading file {} for id {}", file.getOriginalFilename(), id, e);
+            throw new FileUploadException("Error uploading file " + file.getOriginalFilename());
+        } catch (VcfUploadException e) {
+            throw new InvalidUploadException(e.getMessage());
+        }
+        AnalysisResponse response = completeVcfUpload(id, vcfUpload);
+        if (pedFile != null && !pedFile.isEmpty()) {
+            return savePed(id, pedFile);
+        }
+        return response;
+    }
+
+    /**
+     * Appends a chunk of a VCF to a resumable upload. Chunks must be sent in order, with the Upload-Offset header set
+     * to the number of bytes already received, which is returned in the same header by this and the matching GET
+     * request. The upload is finished by sending the last chunk with complete=true. The header can only be left out
+     * of the first chunk. An upload which receives nothing for the idle period is abandoned and its partial file
+     * deleted.
+     */
+    @RequestMapping(value = "/{analysisId}/upload/{fileName:.+}", method = RequestMethod.PUT)
+    public ResponseEntity<AnalysisResponse> putVcfChunk(@PathVariable("analysisId") long id,
+                                                        @PathVariable("fileName") String fileName,
+                                                        @RequestHeader(value = UPLOAD_OFFSET, required = false) Long uploadOffset,
+                                                        @RequestParam(value = "complete", defaultValue = "false") boolean complete,
+                                                        HttpServletRequest request) throws FileUploadException {
+        abortIdleUploads();
+        String uploadKey = id + "/" + fileName;
+        if (uploadOffset == null && chunkedUploads.containsKey(uploadKey)) {
+            throw new InvalidUploadException("The " + UPLOAD_OFFSET + " header is required to continue the upload of " + fileName);
+        }
+        long offset = uploadOffset == null ? 0 : uploadOffset;
+        VcfUpload vcfUpload;
+        if (offset == 0) {
+            vcfUpload = newVcfUpload(id, fileName);
+            VcfUpload previous = chunkedUploads.put(uploadKey, vcfUpload);
+            //waits for any chunk still being appended to the previous upload, so must happen outside of the map
+            if (previous != null) {
+                previous.abort();
             }
+        } else {
+            vcfUpload = getChunkedUpload(uploadKey);
+        }
+        try (InputStream inputStream = request.getInputStream()) {
+            vcfUpload.append(offset, inputStream);
+        } catch (IOException | UncheckedIOException e) {
+            logger.info("Chunk of {} for id {} interrupted after {} bytes", fileName, id, vcfUpload.getBytesReceived(), e);
+            return uploadProgress(id, vcfUpload, HttpStatus.INTERNAL_SERVER_ERROR);
+        } catch (VcfUploadException e) {
+            if (vcfUpload.isAborted()) {
+                chunkedUploads.remove(uploadKey);
+            }
+            throw new InvalidUploadException(e.getMessage());
+        }
+        if (complete) {
+            chunkedUploads.remove(uploadKey);
+            return ResponseEntity.ok()
+                    .header(UPLOAD_OFFSET, Long.toString(vcfUpload.getBytesReceived()))
+                    .body(completeVcfUpload(id, vcfUpload));
+        }
+        return uploadProgress(id, vcfUpload, HttpStatus.OK);
+    }
+
+    @RequestMapping(value = "/{analysisId}/upload/{fileName:.+}", method = RequestMethod.GET)
+    public ResponseEntity<AnalysisResponse> getVcfUploadProgress(@PathVariable("analysisId") long id, @PathVariable("fileName") String fileName) {
+        return uploadProgress(id, getChunkedUpload(id + "/" + fileName), HttpStatus.OK);
+    }
 
-            try (BufferedReader br = new BufferedReader(new InputStreamReader(file.getInputStream()));
-                 BufferedWriter fileWriter = Files.newBufferedWriter(outputFile)
-            ) {
-                String line;
-                while ((line = br.readLine()) != null) {
-                    fileWriter.write(line + "\n");
-                }
-                logger.info("Successfully saved input file for id {} to {}", id, outputFile);
-                return new AnalysisResponse(id, AnalysisStatus.READY, "Successfully uploaded file " + file.getOriginalFilename());
-            } catch (IOException e) {
-                throw new FileUploadException("Error uploading file " + file.getOriginalFilename());
+    private void abortIdleUploads() {
+        long idleLimit = System.nanoTime() - TimeUnit.MINUTES.toNanos(uploadIdleMinutes);
+        chunkedUploads.forEach((uploadKey, vcfUpload) -> {
+            if (vcfUpload.getLastActiveNanos() - idleLimit < 0 && chunkedUploads.remove(uploadKey, vcfUpload)) {
+                logger.info("Abandoning upload {} after {} minutes without receiving any data", uploadKey, uploadIdleMinutes);
+                vcfUpload.abort();
             }
+        });
+    }
+
+    private VcfUpload getChunkedUpload(String uploadKey) {
+        VcfUpload vcfUpload = chunkedUploads.get(uploadKey);
+        if (vcfUpload == null) {
+            throw new UnknownAnalysisException("No upload in progress for " + uploadKey);
         }
-        throw new FileUploadException("Error uploading file " + file.getOriginalFilename() + " - File was empty.");
+        return vcfUpload;
+    }
+
+    private ResponseEntity<AnalysisResponse> uploadProgress(long id, VcfUpload vcfUpload, HttpStatus httpStatus) {
+        long bytesReceived = vcfUpload.getBytesReceived();
+        AnalysisResponse response = new AnalysisResponse(id, AnalysisStatus.AWAITING_VCF, String.format("Received %d bytes", bytesReceived));
+        return ResponseEntity.status(httpStatus).header(UPLOAD_OFFSET, Long.toString(bytesReceived)).body(response);
+    }
+
+    private VcfUpload newVcfUpload(long id, String fileName) {
+        Path analysisDir = getAnalysisDirectory(id);
+        Analysis analysis = analysisService.getAnalysis(id);
+        if (analysis == null) {
+            throw new UnknownAnalysisException("AnalysisId not found: " + id);
+        }
+        return new VcfUpload(analysisDir.resolve(safeFileName(fileName)), maxUploadBytes, analysis.getProbandSampleName());
+    }
+
+    private AnalysisResponse completeVcfUpload(long id, VcfUpload vcfUpload) {
+        Path vcfPath;
+        try {
+            vcfPath = vcfUpload.complete();
+        } catch (VcfUploadException e) {
+            throw new InvalidUploadException(e.getMessage());
+        } catch (UncheckedIOException e) {
+            logger.error("Error saving upload for id {}", id, e);
+            throw new AnalysisServerError("Error saving upload for id " + id);
+        }
+        logger.info("Successfully saved input file for id {} to {}", id, vcfPath);
+        AnalysisResponse response = analysisService.createVcf(id, vcfPath);
+        return new AnalysisResponse(id, response.getAnalysisStatus(), response.getMessage() + " SHA-256: " + vcfUpload.getChecksum());
+    }
+
+    private AnalysisResponse savePed(long id, MultipartFile pedFile) {
+        Path pedPath = getAnalysisDirectory(id).resolve(safeFileName(pedFile.getOriginalFilename()));
+        try (InputStream inputStream = pedFile.getInputStream()) {
+            Files.copy(inputStream, pedPath, StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException e) {
+            throw new FileUploadException("Error uploading file " + pedFile.getOriginalFilename());
+        }
+        return analysisService.createPed(id, pedPath);
+    }
+
+    //only the name is used so that uploads cannot be written outside of the analysis directory
+    private String safeFileName(String fileName) {
+        Path name = Paths.get(fileName).getFileName();
+        if (name == null || name.toString().startsWith(".")) {
+            throw new InvalidUploadException("Invalid file name " + fileName);
+        }
+        return name.toString();
+    }
+
+    @RequestMapping(value = "/{analysisId}/start", method = RequestMethod.POST)
+    public AnalysisResponse startAnalysis(@PathVariable("analysisId") long id) {
+        checkAnalysisExists(id);
+        return analysisService.startAnalysis(id);
+    }
+
+    @RequestMapping(value = "/{analysisId}/status", method = RequestMethod.GET)
+    public AnalysisResponse getAnalysisStatus(@PathVariable("analysisId") long id) {
+        checkAnalysisExists(id);
+        return analysisService.getAnalysisStatus(id);
+    }
+
+    @RequestMapping(value = "/{analysisId}/results/{outputFormat}", method = RequestMethod.GET)
+    public FileSystemResource getResults(@PathVariable("analysisId") long id, @PathVariable("outputFormat") OutputFormat outputFormat) {
+        checkAnalysisExists(id);
+        Path resultsPath = analysisService.getResults(id, outputFormat);
+        if (resultsPath == null || !Files.exists(resultsPath)) {
+            throw new UnknownAnalysisException("No " + outputFormat + " results for analysisId: " + id);
+        }
+        return new FileSystemResource(resultsPath.toFile());
+    }
+
+    @RequestMapping(value = "/{analysisId}", method = RequestMethod.DELETE)
+    public void deleteAnalysis(@PathVariable("analysisId") long id) {
+        checkAnalysisExists(id);
+        analysisService.delete(id);
     }
 
 
@@ -134,6 +301,12 @@ private Path createAnalysisDirectory(long id) {
         return analysisDir;
     }
 
+    private void checkAnalysisExists(long id) {
+        if (!analysisService.exists(id)) {
+            throw new UnknownAnalysisException("AnalysisId not found: " + id);
+        }
+    }
+
     private Path getAnalysisDirectory(long id) {
         final Path analysisDir = analysisPath.resolve(Long.toUnsignedString(id));
         if (!Files.exists(analysisDir)) {
@@ -158,6 +331,14 @@ public UnknownAnalysisException(String message) {
         }
     }
 
+    @ResponseStatus(HttpStatus.BAD_REQUEST)
+    class InvalidUploadException extends RuntimeException {
+
+        public InvalidUploadException(String message) {
+            super(message);
+        }
+    }
+
     @ResponseStatus(HttpStatus.INTERNAL_SERVER_ERROR)
     private class AnalysisServerError extends RuntimeException {
         public AnalysisServerError(String message) {
@@ -0,0 +1,171 @@
+/*
+ * The Exomiser - A tool to annotate and prioritize genomic variants
+ *
+ * Copyright (c) 2016-2017 Queen Mary University of London.
+ * Copyright (c) 2012-2016 Charité Universitätsmedizin Berlin and Genome Research Ltd.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.monarchinitiative.exomiser.rest.analysis.service;
+
+import org.monarchinitiative.exomiser.core.analysis.Analysis;
+import org.monarchinitiative.exomiser.core.writers.OutputFormat;
+import org.monarchinitiative.exomiser.rest.analysis.model.AnalysisResponse;
+import org.monarchinitiative.exomiser.rest.analysis.model.AnalysisStatus;
+
+import java.nio.file.Path;
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * The state of a single analysis submitted to the server. Jobs are created and updated by the
+ * {@link AnalysisServiceDefaultImpl} and run by the {@link AnalysisJobEngine}, so the mutable state is either
+ * volatile or synchronized as it is read from the request threads while the job is running.
+ *
+ * @author Jules Jacobsen <j.jacobsen@qmul.ac.uk>
+ */
+class AnalysisJob {
+
+    private final long id;
+    private final Analysis analysis;
+    private final Path jobDirectory;
+
+    private volatile Path vcfPath;
+    private volatile Path pedPath;
+    private volatile AnalysisStatus status = AnalysisStatus.AWAITING_VCF;
+    private volatile String message = "Analysis received.";
+
+    private volatile long lastUpdatedNanos = System.nanoTime();
+
+    private volatile long estimatedVariantCount = 0;
+    private volatile long sequence = 0;
+    private volatile long queuedAtNanos = 0;
+
+    private final Map<OutputFormat, Path> results = new EnumMap<>(OutputFormat.class);
+
+    AnalysisJob(long id, Analysis analysis, Path jobDirectory) {
+        this.id = id;
+        this.analysis = analysis;
+        this.jobDirectory = jobDirectory;
+    }
+
+    long getId() {
+        return id;
+    }
+
+    /**
+     * @return the analysis as submitted, without the uploaded VCF and PED files.
+     */
+    Analysis getAnalysis() {
+        return analysis;
+    }
+
+    /**
+     * @return the analysis with the paths of the uploaded VCF and PED files, ready to be run.
+     */
+    Analysis buildRunnableAnalysis() {
+        Analysis.Builder builder = analysis.copy().vcfPath(vcfPath);
+        if (pedPath != null) {
+            builder.pedPath(pedPath);
+        }
+        return builder.build();
+    }
+
+    Path getJobDirectory() {
+        return jobDirectory;
+    }
+
+    Path getVcfPath() {
+        return vcfPath;
+    }
+
+    void setVcfPath(Path vcfPath) {
+        this.vcfPath = vcfPath;
+    }
+
+    Path getPedPath() {
+        return pedPath;
+    }
+
+    void setPedPath(Path pedPath) {
+        this.pedPath = pedPath;
+    }
+
+    AnalysisStatus getStatus() {
+        return status;
+    }
+
+    String getMessage() {
+        return message;
+    }
+
+    void setStatus(AnalysisStatus status, String message) {
+        this.status = status;
+        this.message = message;
+        this.lastUpdatedNanos = System.nanoTime();
+    }
+
+    /**
+     * @return the {@link System#nanoTime()} at which the status of the job last changed.
+     */
+    long getLastUpdatedNanos() {
+        return lastUpdatedNanos;
+    }
+
+    long getEstimatedVariantCount() {
+        return estimatedVariantCount;
+    }
+
+    void setEstimatedVariantCount(long estimatedVariantCount) {
+        this.estimatedVariantCount = estimatedVariantCount;
+    }
+
+    long getSequence() {
+        return sequence;
+    }
+
+    void setSequence(long sequence) {
+        this.sequence = sequence;
+    }
+
+    long getQueuedAtNanos() {
+        return queuedAtNanos;
+    }
+
+    void setQueuedAtNanos(long queuedAtNanos) {
+        this.queuedAtNanos = queuedAtNanos;
+    }
+
+    synchronized Path getResults(OutputFormat outputFormat) {
+        return results.get(outputFormat);
+    }
+
+    synchronized void addResults(OutputFormat outputFormat, Path resultsPath) {
+        results.put(outputFormat, resultsPath);
+    }
+
+    AnalysisResponse toResponse() {
+        return new AnalysisResponse(id, status, message);
+    }
+
+    @Override
+    public String toString() {
+        return "AnalysisJob{" +
+                "id=" + id +
+                ", status=" + status +
+                ", estimatedVariantCount=" + estimatedVariantCount +
+                '}';
+    }
+}
@@ -0,0 +1,279 @@
+/*
+ * The Exomiser - A tool to annotate and prioritize genomic variants
+ *
+ * Copyright (c) 2016-2017 Queen Mary University of London.
+ * Copyright (c) 2012-2016 Charité Universitätsmedizin Berlin and Genome Research Ltd.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.monarchinitiative.exomiser.rest.analysis.service;
+
+import org.monarchinitiative.exomiser.core.Exomiser;
+import org.monarchinitiative.exomiser.core.analysis.Analysis;
+import org.monarchinitiative.exomiser.core.analysis.AnalysisResults;
+import org.monarchinitiative.exomiser.core.writers.*;
+import org.monarchinitiative.exomiser.rest.analysis.model.AnalysisResponse;
+import org.monarchinitiative.exomiser.rest.analysis.model.AnalysisStatus;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs the submitted analyses on a bounded pool of workers. Jobs are queued in order of their estimated number of
+ * variants, so exomes waiting behind a whole genome are started first, and each running job reserves an estimate of
+ * the heap it needs. A job is only started when a worker is free and its reservation fits in what remains of the heap
+ * budget. Jobs which could never fit, or which arrive when the queue is full, are rejected with an
+ * {@link AnalysisStatus#ERROR} rather than risking an OutOfMemoryError for every running analysis.
+ * <p>
+ * So that a steady stream of exomes cannot hold back a genome forever, a job which has been queued for longer than
+ * the maximum wait is started next regardless of its size. Nothing else is started until it fits, so the memory
+ * released by the running jobs is kept for it.
+ *
+ * @author Jules Jacobsen <j.jacobsen@qmul.ac.uk>
+ */
+@Component
+public class AnalysisJobEngine {
+
+    private static final Logger logger = LoggerFactory.getLogger(AnalysisJobEngine.class);
+
+    static final long DEFAULT_MAX_QUEUE_WAIT_MINUTES = 30;
+
+    private static final Comparator<AnalysisJob> SMALLEST_FIRST = Comparator
+            .comparingLong(AnalysisJob::getEstimatedVariantCount)
+            .thenComparingLong(AnalysisJob::getSequence);
+
+    private final Exomiser exomiser;
+    private final ResultsWriterFactory resultsWriterFactory;
+
+    private final int maxConcurrentJobs;
+    private final int maxQueuedJobs;
+    private final long bytesPerVariant;
+    private final long heapBudget;
+    private final long maxQueueWaitNanos;
+
+    private final ExecutorService workers;
+    private final Queue<AnalysisJob> queue = new PriorityQueue<>(SMALLEST_FIRST);
+
+    //guarded by this
+    private long nextSequence = 0;
+    private long reservedBytes = 0;
+    //the worker thread of each running job, or null until the worker has picked it up
+    private final Map<AnalysisJob, Thread> runningJobs = new IdentityHashMap<>();
+    private final Map<AnalysisJob, Runnable> stopActions = new IdentityHashMap<>();
+
+    @Autowired
+    public AnalysisJobEngine(Exomiser exomiser, ResultsWriterFactory resultsWriterFactory,
+                             @Value("${exomiser.analysis.max-concurrent-jobs:2}") int maxConcurrentJobs,
+                             @Value("${exomiser.analysis.max-queued-jobs:100}") int maxQueuedJobs,
+                             @Value("${exomiser.analysis.bytes-per-variant:2048}") long bytesPerVariant,
+                             @Value("${exomiser.analysis.heap-fraction:0.8}") double heapFraction,
+                             @Value("${exomiser.analysis.max-queue-wait-minutes:" + DEFAULT_MAX_QUEUE_WAIT_MINUTES + "}") long maxQueueWaitMinutes) {
+        this(exomiser, resultsWriterFactory, maxConcurrentJobs, maxQueuedJobs, bytesPerVariant, (long) (Runtime.getRuntime().maxMemory() * heapFraction), TimeUnit.MINUTES.toNanos(maxQueueWaitMinutes));
+    }
+
+    AnalysisJobEngine(Exomiser exomiser, ResultsWriterFactory resultsWriterFactory, int maxConcurrentJobs, int maxQueuedJobs, long bytesPerVariant, long heapBudget) {
+        this(exomiser, resultsWriterFactory, maxConcurrentJobs, maxQueuedJobs, bytesPerVariant, heapBudget, TimeUnit.MINUTES.toNanos(DEFAULT_MAX_QUEUE_WAIT_MINUTES));
+    }
+
+    AnalysisJobEngine(Exomiser exomiser, ResultsWriterFactory resultsWriterFactory, int maxConcurrentJobs, int maxQueuedJobs, long bytesPerVariant, long heapBudget, long maxQueueWaitNanos) {
+        if (maxConcurrentJobs < 1) {
+            throw new IllegalArgumentException("maxConcurrentJobs must be at least 1, but was " + maxConcurrentJobs);
+        }
+        this.exomiser = exomiser;
+        this.resultsWriterFactory = resultsWriterFactory;
+        this.maxConcurrentJobs = maxConcurrentJobs;
+        this.maxQueuedJobs = maxQueuedJobs;
+        this.bytesPerVariant = bytesPerVariant;
+        this.heapBudget = heapBudget;
+        this.maxQueueWaitNanos = maxQueueWaitNanos;
+        this.workers = Executors.newFixedThreadPool(maxConcurrentJobs, daemonThreadFactory("analysis-worker-"));
+        logger.info("Running up to {} analyses at once with a heap budget of {} MB", maxConcurrentJobs, heapBudget / (1024 * 1024));
+    }
+
+    /**
+     * Queues the job to be run as soon as there is a free worker and enough memory.
+     *
+     * @return the status of the job, which is {@link AnalysisStatus#QUEUED} if it was accepted.
+     */
+    synchronized AnalysisResponse submit(AnalysisJob job) {
+        if (requiredBytes(job) > heapBudget) {
+            logger.info("Rejecting {} - it is too large to run on this server", job);
+            job.setStatus(AnalysisStatus.ERROR, String.format("Analysis of approximately %d variants needs more memory than this server has available.", job.getEstimatedVariantCount()));
+            return job.toResponse();
+        }
+        if (queue.size() >= maxQueuedJobs) {
+            logger.info("Rejecting {} - queue is full", job);
+            job.setStatus(AnalysisStatus.ERROR, "Too many analyses are waiting to run. Please try again later.");
+            return job.toResponse();
+        }
+        job.setSequence(nextSequence++);
+        job.setQueuedAtNanos(System.nanoTime());
+        job.setStatus(AnalysisStatus.QUEUED, "Analysis queued.");
+        queue.add(job);
+        logger.info("Queued {}", job);
+        dispatch();
+        return job.toResponse();
+    }
+
+    /**
+     * Stops the job and then runs the stopAction. A queued job is removed from the queue and a job which is not queued
+     * or running is already stopped, so the stopAction is run straight away. A running job is interrupted and the
+     * stopAction is run by its worker once the analysis has returned, so that it is safe to delete the job's files.
+     */
+    void cancel(AnalysisJob job, Runnable stopAction) {
+        synchronized (this) {
+            queue.remove(job);
+            if (runningJobs.containsKey(job)) {
+                logger.info("Cancelling running {}", job);
+                stopActions.put(job, stopAction);
+                Thread worker = runningJobs.get(job);
+                if (worker != null) {
+                    worker.interrupt();
+                }
+                return;
+            }
+        }
+        stopAction.run();
+    }
+
+    synchronized int getNumQueuedJobs() {
+        return queue.size();
+    }
+
+    synchronized int getNumRunningJobs() {
+        return runningJobs.size();
+    }
+
+    private long requiredBytes(AnalysisJob job) {
+        return job.getEstimatedVariantCount() * bytesPerVariant;
+    }
+
+    /**
+     * Starts the next queued jobs while there are free workers and enough of the heap budget left. As the queue is
+     * ordered smallest first, once the next job does not fit neither will anything behind it. An overdue job is
+     * always next, so nothing jumps ahead of it while it waits for memory.
+     */
+    private synchronized void dispatch() {
+        while (runningJobs.size() < maxConcurrentJobs && !queue.isEmpty()) {
+            AnalysisJob job = nextJob();
+            long requiredBytes = requiredBytes(job);
+            if (reservedBytes + requiredBytes > heapBudget) {
+                logger.debug("Waiting for memory to run {} - {} of {} bytes reserved", job, reservedBytes, heapBudget);
+                return;
+            }
+            queue.remove(job);
+            reservedBytes += requiredBytes;
+            runningJobs.put(job, null);
+            workers.execute(() -> run(job, requiredBytes));
+        }
+    }
+
+    /**
+     * @return the job which has been waiting longest if it has waited for more than the maximum, otherwise the smallest
+     * job.
+     */
+    private AnalysisJob nextJob() {
+        long now = System.nanoTime();
+        AnalysisJob overdueJob = null;
+        for (AnalysisJob job : queue) {
+            if (now - job.getQueuedAtNanos() >= maxQueueWaitNanos && (overdueJob == null || job.getSequence() < overdueJob.getSequence())) {
+                overdueJob = job;
+            }
+        }
+        return overdueJob == null ? queue.peek() : overdueJob;
+    }
+
+    /**
+     * @return false if the job was cancelled before the worker picked it up.
+     */
+    private synchronized boolean start(AnalysisJob job) {
+        if (stopActions.containsKey(job)) {
+            return false;
+        }
+        runningJobs.put(job, Thread.currentThread());
+        return true;
+    }
+
+    private synchronized Runnable release(AnalysisJob job, long requiredBytes) {
+        runningJobs.remove(job);
+        reservedBytes -= requiredBytes;
+        return stopActions.remove(job);
+    }
+
+    private void run(AnalysisJob job, long requiredBytes) {
+        try {
+            if (!start(job)) {
+                logger.info("Cancelled {} before it started", job);
+                return;
+            }
+            logger.info("Running {}", job);
+            job.setStatus(AnalysisStatus.PROCESSING, "Analysis running.");
+            Analysis analysis = job.buildRunnableAnalysis();
+            AnalysisResults analysisResults = exomiser.run(analysis);
+            writeResults(job, analysis, analysisResults);
+            job.setStatus(AnalysisStatus.COMPLETED, "Analysis complete.");
+            logger.info("Finished {}", job);
+        } catch (Exception e) {
+            logger.error("Analysis {} failed", job.getId(), e);
+            job.setStatus(AnalysisStatus.ERROR, "Analysis failed: " + e.getMessage());
+        } finally {
+            Runnable stopAction = release(job, requiredBytes);
+            if (stopAction != null) {
+                stopAction.run();
+            }
+            dispatch();
+        }
+    }
+
+    private void writeResults(AnalysisJob job, Analysis analysis, AnalysisResults analysisResults) {
+        String outputPrefix = job.getJobDirectory().resolve("results").toString();
+        OutputSettings outputSettings = OutputSettings.builder()
+                .outputPrefix(outputPrefix)
+                .outputFormats(EnumSet.allOf(OutputFormat.class))
+                .build();
+        for (OutputFormat outputFormat : outputSettings.getOutputFormats()) {
+            ResultsWriter resultsWriter = resultsWriterFactory.getResultsWriter(outputFormat);
+            resultsWriter.writeFile(analysis, analysisResults, outputSettings);
+            Path resultsPath = Paths.get(ResultsWriterUtils.makeOutputFilename(analysis.getVcfPath(), outputPrefix, outputFormat));
+            job.addResults(outputFormat, resultsPath);
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        workers.shutdownNow();
+    }
+
+    private static ThreadFactory daemonThreadFactory(String namePrefix) {
+        AtomicInteger threadCount = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, namePrefix + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+}
@@ -18,22 +18,37 @@
  * along with this program.  If not, see <http://www.gnu.org/licenses/>.
  */
 
+
 package org.monarchinitiative.exomiser.rest.analysis.service;
 
 import org.monarchinitiative.exomiser.core.analysis.Analysis;
+import org.monarchinitiative.exomiser.core.analysis.util.VariantCountEstimator;
 import org.monarchinitiative.exomiser.core.writers.OutputFormat;
 import org.monarchinitiative.exomiser.rest.analysis.model.AnalysisResponse;
 import org.monarchinitiative.exomiser.rest.analysis.model.AnalysisStatus;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
+import org.springframework.util.FileSystemUtils;
 
+import javax.inject.Named;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.EnumSet;
 import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicLong;
 
 /**
+ * Jobs which are not queued or running are expired, along with their files, once their status has not changed for
+ * the retention period. This is checked whenever a new job is created.
+ *
  * @author Jules Jacobsen <jules.jacobsen@sanger.ac.uk>
  */
 @Service
@@ -44,16 +59,38 @@ public class AnalysisServiceDefaultImpl implements AnalysisService {
     //TODO: make a better id - something like timestamp + random + serverId. Like the Twitter snowflake
     private static final AtomicLong analysisId = new AtomicLong(System.currentTimeMillis() * 100000);
 
-    //TODO: this should become a DAO
-    private final Map<Long, Analysis> analysisMap = new ConcurrentHashMap<>();
+    static final long DEFAULT_JOB_RETENTION_HOURS = 24;
+    private static final Set<AnalysisStatus> ACTIVE_STATUSES = EnumSet.of(AnalysisStatus.QUEUED, AnalysisStatus.PROCESSING);
 
+    //TODO: this should become a DAO
+    private final Map<Long, AnalysisJob> analysisJobs = new ConcurrentHashMap<>();
+
+    private final Path workingDirectory;
+    private final AnalysisJobEngine analysisJobEngine;
+    private final long jobRetentionNanos;
+
+    @Autowired
+    public AnalysisServiceDefaultImpl(@Named("exomiserWorkingDirectory") Path workingDirectory, AnalysisJobEngine analysisJobEngine,
+                                      @Value("${exomiser.analysis.job-retention-hours:" + DEFAULT_JOB_RETENTION_HOURS + "}") long jobRetentionHours) {
+        this.workingDirectory = workingDirectory;
+        this.analysisJobEngine = analysisJobEngine;
+        this.jobRetentionNanos = TimeUnit.HOURS.toNanos(jobRetentionHours);
+    }
 
     @Override
-    public synchronized AnalysisResponse createAnalysisJob(Analysis analysis) {
+    public AnalysisResponse createAnalysisJob(Analysis analysis) {
+        deleteExpiredJobs();
         final long id = analysisId.incrementAndGet();
-        analysisMap.put(id, analysis);
+        Path jobDirectory = workingDirectory.resolve(Long.toUnsignedString(id));
+        try {
+            Files.createDirectories(jobDirectory);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Unable to create analysis directory " + jobDirectory, e);
+        }
+        AnalysisJob analysisJob = new AnalysisJob(id, analysis, jobDirectory);
+        analysisJobs.put(id, analysisJob);
         logger.info("Created analysis job {}", id);
-        return new AnalysisResponse(id, AnalysisStatus.AWAITING_VCF, "Analysis received.");
+        return analysisJob.toResponse();
     }
 
     @Override
@@ -64,51 +101,111 @@ public AnalysisResponse createAnalysisJobFromYaml(String analysisYaml) {
 
     @Override
     public AnalysisResponse createVcf(long id, Path vcfPath) {
-        return null;
+        AnalysisJob analysisJob = analysisJobs.get(id);
+        if (analysisJob == null) {
+            return unknownAnalysis(id);
+        }
+        analysisJob.setVcfPath(vcfPath);
+        analysisJob.setStatus(AnalysisStatus.READY, "Successfully uploaded file " + vcfPath.getFileName());
+        return analysisJob.toResponse();
     }
 
     @Override
     public AnalysisResponse createPed(long id, Path pedPath) {
-        return null;
+        AnalysisJob analysisJob = analysisJobs.get(id);
+        if (analysisJob == null) {
+            return unknownAnalysis(id);
+        }
+        analysisJob.setPedPath(pedPath);
+        return analysisJob.toResponse();
     }
 
     @Override
     public Analysis getAnalysis(long id) {
-        return analysisMap.get(id);
+        AnalysisJob analysisJob = analysisJobs.get(id);
+        return analysisJob == null ? null : analysisJob.getAnalysis();
     }
 
     @Override
     public Path getVcf(long id) {
-        return null;
+        AnalysisJob analysisJob = analysisJobs.get(id);
+        return analysisJob == null ? null : analysisJob.getVcfPath();
     }
 
     @Override
     public Path getPed(long id) {
-        return null;
+        AnalysisJob analysisJob = analysisJobs.get(id);
+        return analysisJob == null ? null : analysisJob.getPedPath();
     }
 
     @Override
     public Path getResults(long id, OutputFormat outputFormat) {
-        return null;
+        AnalysisJob analysisJob = analysisJobs.get(id);
+        if (analysisJob == null || analysisJob.getStatus() != AnalysisStatus.COMPLETED) {
+            return null;
+        }
+        return analysisJob.getResults(outputFormat);
     }
 
     @Override
     public AnalysisResponse startAnalysis(long id) {
-        return null;
+        AnalysisJob analysisJob = analysisJobs.get(id);
+        if (analysisJob == null) {
+            return unknownAnalysis(id);
+        }
+        if (analysisJob.getStatus() != AnalysisStatus.READY) {
+            return new AnalysisResponse(id, analysisJob.getStatus(), "Analysis cannot be started - status is " + analysisJob.getStatus());
+        }
+        try {
+            analysisJob.setEstimatedVariantCount(VariantCountEstimator.estimateVariantCount(analysisJob.getVcfPath()));
+        } catch (IOException e) {
+            logger.error("Unable to read VCF for analysis {}", id, e);
+            analysisJob.setStatus(AnalysisStatus.ERROR, "Unable to read VCF file " + analysisJob.getVcfPath().getFileName());
+            return analysisJob.toResponse();
+        }
+        return analysisJobEngine.submit(analysisJob);
     }
 
     @Override
     public AnalysisResponse getAnalysisStatus(long id) {
-        return null;
+        AnalysisJob analysisJob = analysisJobs.get(id);
+        return analysisJob == null ? unknownAnalysis(id) : analysisJob.toResponse();
     }
 
+    /**
+     * Removes the job and deletes its files. A running job is cancelled first and its files are only deleted once the
+     * analysis has stopped, so the results are not written into a directory which is being deleted.
+     */
     @Override
     public void delete(long id) {
         logger.info("Deleting analysis job {}", id);
+        AnalysisJob analysisJob = analysisJobs.remove(id);
+        if (analysisJob != null) {
+            analysisJobEngine.cancel(analysisJob, () -> deleteJobDirectory(analysisJob));
+        }
+    }
+
+    private void deleteJobDirectory(AnalysisJob analysisJob) {
+        logger.debug("Deleting directory {}", analysisJob.getJobDirectory());
+        FileSystemUtils.deleteRecursively(analysisJob.getJobDirectory().toFile());
+    }
+
+    void deleteExpiredJobs() {
+        long now = System.nanoTime();
+        for (AnalysisJob analysisJob : analysisJobs.values()) {
+            if (!ACTIVE_STATUSES.contains(analysisJob.getStatus()) && now - analysisJob.getLastUpdatedNanos() > jobRetentionNanos) {
+                logger.info("Analysis job {} with status {} has expired", analysisJob.getId(), analysisJob.getStatus());
+                delete(analysisJob.getId());
+            }
+        }
     }
 
     @Override
     public boolean exists(long id) {
-        return false;
+        return analysisJobs.containsKey(id);
+    }
+
+    private AnalysisResponse unknownAnalysis(long id) {
+        return new AnalysisResponse(id, AnalysisStatus.ERROR, "Unknown analysis id " + id);
     }
 }
@@ -0,0 +1,316 @@
+/*
+ * The Exomiser - A tool to annotate and prioritize genomic variants
+ *
+ * Copyright (c) 2016-2017 Queen Mary University of London.
+ * Copyright (c) 2012-2016 Charité Universitätsmedizin Berlin and Genome Research Ltd.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.monarchinitiative.exomiser.rest.analysis.service;
+
+import org.monarchinitiative.exomiser.core.analysis.SampleMismatchException;
+import org.monarchinitiative.exomiser.core.analysis.util.SampleNameChecker;
+import org.monarchinitiative.exomiser.rest.analysis.service.VcfUpload.VcfUploadException;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * Checks the header of a VCF file from the first bytes of an upload, so that a file with the wrong format or samples
+ * can be rejected before the rest of it has been sent. The bytes are buffered until the #CHROM line has been seen. A
+ * gzipped upload is decompressed as it arrives, keeping the decompressor between chunks, and no more than
+ * {@link #MAX_HEADER_BYTES} of it are ever decompressed.
+ *
+ * @author Jules Jacobsen <j.jacobsen@qmul.ac.uk>
+ */
+class VcfHeaderChecker {
+
+    //headers with many contig and INFO lines can run to tens of KB
+    static final int MAX_HEADER_BYTES = 1024 * 1024;
+
+    private static final int FIRST_CHECK_BYTES = 4096;
+
+    private final String probandSampleName;
+    //the first bytes of the upload, held until there are enough to tell whether it is gzipped
+    private final ByteArrayOutputStream leadingBytes = new ByteArrayOutputStream(2);
+    //the decompressed header text
+    private final ByteArrayOutputStream prefix = new ByteArrayOutputStream(FIRST_CHECK_BYTES);
+
+    private boolean formatKnown = false;
+    private GzipDecoder gzipDecoder = null;
+    private int nextCheck = FIRST_CHECK_BYTES;
+    private List<String> sampleNames = null;
+
+    VcfHeaderChecker(String probandSampleName) {
+        this.probandSampleName = probandSampleName;
+    }
+
+    /**
+     * @return true once the header has been read and found to be valid.
+     */
+    boolean isComplete() {
+        return sampleNames != null;
+    }
+
+    List<String> getSampleNames() {
+        return sampleNames;
+    }
+
+    boolean isGzipped() {
+        return gzipDecoder != null;
+    }
+
+    /**
+     * Adds the next bytes of the upload, checking the header once enough of it has arrived.
+     *
+     * @throws VcfUploadException if the header is invalid.
+     */
+    void update(byte[] bytes, int offset, int length) {
+        if (isComplete()) {
+            return;
+        }
+        if (!formatKnown) {
+            leadingBytes.write(bytes, offset, length);
+            if (leadingBytes.size() < 2) {
+                return;
+            }
+            bytes = leadingBytes.toByteArray();
+            offset = 0;
+            length = bytes.length;
+            formatKnown = true;
+            if ((bytes[0] & 0xff) == 0x1f && (bytes[1] & 0xff) == 0x8b) {
+                gzipDecoder = new GzipDecoder();
+            }
+        }
+        try {
+            if (isGzipped()) {
+                gzipDecoder.decode(bytes, offset, length, prefix, MAX_HEADER_BYTES);
+            } else {
+                prefix.write(bytes, offset, Math.min(length, MAX_HEADER_BYTES - prefix.size()));
+            }
+            //re-reading the prefix is only worth it once it has grown a fair amount
+            if (prefix.size() >= nextCheck || prefix.size() == MAX_HEADER_BYTES) {
+                check(false);
+                nextCheck = prefix.size() * 2;
+            }
+        } catch (VcfUploadException e) {
+            endGzipDecoder();
+            throw e;
+        }
+        if (isComplete()) {
+            endGzipDecoder();
+        }
+    }
+
+    /**
+     * Checks whatever has been received once the upload has finished.
+     *
+     * @throws VcfUploadException if the header is invalid or incomplete.
+     */
+    void finish() {
+        try {
+            if (!isComplete()) {
+                if (!formatKnown) {
+                    prefix.write(leadingBytes.toByteArray(), 0, leadingBytes.size());
+                }
+                check(true);
+            }
+        } finally {
+            endGzipDecoder();
+        }
+    }
+
+    private void endGzipDecoder() {
+        if (gzipDecoder != null) {
+            gzipDecoder.end();
+        }
+    }
+
+    private void check(boolean endOfFile) {
+        List<String> lines = readLines(endOfFile);
+        if (!lines.isEmpty() && !lines.get(0).startsWith("##fileformat=VCF")) {
+            throw new VcfUploadException("File is not a VCF - the first line should start with ##fileformat=VCF");
+        }
+        for (String line : lines) {
+            if (line.startsWith("#CHROM")) {
+                sampleNames = checkColumnHeader(line);
+                return;
+            }
+            if (!line.startsWith("#")) {
+                throw new VcfUploadException("VCF is missing the #CHROM header line");
+            }
+        }
+        if (endOfFile || prefix.size() >= MAX_HEADER_BYTES) {
+            throw new VcfUploadException(String.format("VCF is missing the #CHROM header line in the first %d bytes", prefix.size()));
+        }
+    }
+
+    private List<String> checkColumnHeader(String line) {
+        String[] columns = line.split("\t");
+        if (columns.length < 8) {
+            throw new VcfUploadException("VCF #CHROM header line should have at least 8 tab-separated columns, but has " + columns.length);
+        }
+        List<String> vcfSampleNames = columns.length > 9 ? Arrays.asList(Arrays.copyOfRange(columns, 9, columns.length)) : new ArrayList<>();
+        try {
+            SampleNameChecker.getProbandSampleName(probandSampleName, vcfSampleNames);
+            SampleNameChecker.getProbandSampleId(probandSampleName, vcfSampleNames);
+        } catch (SampleMismatchException e) {
+            throw new VcfUploadException(e.getMessage());
+        }
+        return vcfSampleNames;
+    }
+
+    /**
+     * @return the complete lines in the decompressed prefix. The last line is only included at the end of the file as it
+     * will otherwise most likely have been cut short.
+     */
+    private List<String> readLines(boolean endOfFile) {
+        String text = new String(prefix.toByteArray(), StandardCharsets.US_ASCII);
+        List<String> lines = new ArrayList<>(Arrays.asList(text.split("\r?\n", -1)));
+        if (!endOfFile || lines.get(lines.size() - 1).isEmpty()) {
+            lines.remove(lines.size() - 1);
+        }
+        return lines;
+    }
+
+    /**
+     * Decompresses a gzip stream as it arrives, including the multiple members of a bgzipped file. Input which cannot
+     * be used yet, such as a member header split across two chunks, is held until the next call.
+     */
+    private static class GzipDecoder {
+
+        private static final int FHCRC = 2;
+        private static final int FEXTRA = 4;
+        private static final int FNAME = 8;
+        private static final int FCOMMENT = 16;
+        private static final int TRAILER_BYTES = 8;
+
+        private final ByteArrayOutputStream pending = new ByteArrayOutputStream();
+        private final byte[] buffer = new byte[8192];
+
+        private Inflater inflater = null;
+        private int trailerBytesToSkip = 0;
+
+        /**
+         * Writes the decompressed input to the output until it holds maxOutputBytes.
+         */
+        void decode(byte[] bytes, int offset, int length, ByteArrayOutputStream output, int maxOutputBytes) {
+            if (output.size() >= maxOutputBytes) {
+                return;
+            }
+            pending.write(bytes, offset, length);
+            byte[] input = pending.toByteArray();
+            int position = 0;
+            while (position < input.length && output.size() < maxOutputBytes) {
+                if (trailerBytesToSkip > 0) {
+                    int skipped = Math.min(trailerBytesToSkip, input.length - position);
+                    position += skipped;
+                    trailerBytesToSkip -= skipped;
+                } else if (inflater == null) {
+                    int headerLength = headerLength(input, position);
+                    if (headerLength < 0) {
+                        break;
+                    }
+                    position += headerLength;
+                    inflater = new Inflater(true);
+                } else {
+                    position += inflate(input, position, output, maxOutputBytes);
+                    if (!inflater.finished()) {
+                        break;
+                    }
+                    inflater.end();
+                    inflater = null;
+                    trailerBytesToSkip = TRAILER_BYTES;
+                }
+            }
+            pending.reset();
+            pending.write(input, position, input.length - position);
+            if (pending.size() > MAX_HEADER_BYTES) {
+                throw new VcfUploadException("Unable to decompress gzipped VCF - gzip header is too long");
+            }
+        }
+
+        /**
+         * @return the number of input bytes used.
+         */
+        private int inflate(byte[] input, int position, ByteArrayOutputStream output, int maxOutputBytes) {
+            int available = input.length - position;
+            inflater.setInput(input, position, available);
+            try {
+                int bytesInflated;
+                while (output.size() < maxOutputBytes && (bytesInflated = inflater.inflate(buffer, 0, Math.min(buffer.length, maxOutputBytes - output.size()))) > 0) {
+                    output.write(buffer, 0, bytesInflated);
+                }
+            } catch (DataFormatException e) {
+                throw new VcfUploadException("Unable to decompress gzipped VCF - " + e.getMessage());
+            }
+            if (inflater.needsDictionary()) {
+                throw new VcfUploadException("Unable to decompress gzipped VCF - a preset dictionary is not supported");
+            }
+            return available - inflater.getRemaining();
+        }
+
+        /**
+         * @return the length of the gzip member header starting at the position, or -1 if it has not all arrived yet.
+         */
+        private static int headerLength(byte[] input, int position) {
+            if (input.length - position < 10) {
+                return -1;
+            }
+            if ((input[position] & 0xff) != 0x1f || (input[position + 1] & 0xff) != 0x8b || input[position + 2] != 8) {
+                throw new VcfUploadException("Unable to decompress gzipped VCF - invalid gzip header");
+            }
+            int flags = input[position + 3] & 0xff;
+            int end = position + 10;
+            if ((flags & FEXTRA) != 0) {
+                if (end + 2 > input.length) {
+                    return -1;
+                }
+                end += 2 + ((input[end] & 0xff) | (input[end + 1] & 0xff) << 8);
+            }
+            if ((flags & FNAME) != 0 && (end = skipZeroTerminated(input, end)) < 0) {
+                return -1;
+            }
+            if ((flags & FCOMMENT) != 0 && (end = skipZeroTerminated(input, end)) < 0) {
+                return -1;
+            }
+            if ((flags & FHCRC) != 0) {
+                end += 2;
+            }
+            return end > input.length ? -1 : end - position;
+        }
+
+        private static int skipZeroTerminated(byte[] input, int position) {
+            for (int i = position; i < input.length; i++) {
+                if (input[i] == 0) {
+                    return i + 1;
+                }
+            }
+            return -1;
+        }
+
+        void end() {
+            if (inflater != null) {
+                inflater.end();
+                inflater = null;
+            }
+        }
+    }
+}
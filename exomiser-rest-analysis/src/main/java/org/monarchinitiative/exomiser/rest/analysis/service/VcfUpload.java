@@ -0,0 +1,206 @@
+/*
+ * The Exomiser - A tool to annotate and prioritize genomic variants
+ *
+ * Copyright (c) 2016-2017 Queen Mary University of London.
+ * Copyright (c) 2012-2016 Charité Universitätsmedizin Berlin and Genome Research Ltd.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.monarchinitiative.exomiser.rest.analysis.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * Streams an uploaded VCF to disk without decoding it, so gzipped files are stored exactly as sent. The bytes are
+ * written to a {@code .part} file next to the target and only moved into place once the upload is complete. As the
+ * data arrives it is checksummed, checked against the size limit and the first few KB are used to validate the VCF
+ * header and sample names, so a bad upload fails as early as possible.
+ * <p>
+ * An upload can be sent in a single request or as a series of chunks appended in order, in which case a client can
+ * resume an interrupted upload from {@link #getBytesReceived()}.
+ *
+ * @author Jules Jacobsen <j.jacobsen@qmul.ac.uk>
+ */
+public class VcfUpload {
+
+    private static final Logger logger = LoggerFactory.getLogger(VcfUpload.class);
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final Path outputPath;
+    private final Path partPath;
+    private final long maxBytes;
+    private final VcfHeaderChecker headerChecker;
+    private final MessageDigest messageDigest;
+
+    private long bytesReceived = 0;
+    private boolean aborted = false;
+    //not guarded so that it can be read while a chunk is being appended
+    private volatile long lastActiveNanos = System.nanoTime();
+
+    /**
+     * @param outputPath        where the VCF is to be written. A .gz extension will be added for gzipped files if it
+     *                          is missing.
+     * @param maxBytes          the maximum size of the upload, or less than 1 for no limit.
+     * @param probandSampleName the proband sample name from the analysis, which may be empty.
+     */
+    public VcfUpload(Path outputPath, long maxBytes, String probandSampleName) {
+        this.outputPath = outputPath;
+        this.partPath = outputPath.resolveSibling(outputPath.getFileName() + ".part");
+        this.maxBytes = maxBytes;
+        this.headerChecker = new VcfHeaderChecker(probandSampleName);
+        try {
+            this.messageDigest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    public synchronized long getBytesReceived() {
+        return bytesReceived;
+    }
+
+    /**
+     * @return the {@link System#nanoTime()} at which data was last received.
+     */
+    public long getLastActiveNanos() {
+        return lastActiveNanos;
+    }
+
+    /**
+     * Appends the contents of the input stream to the upload.
+     *
+     * @param offset the position in the file of the first byte of the input, which must be the number of bytes received
+     *               so far.
+     * @throws VcfUploadException if the offset is wrong, the upload is too large or the header is invalid. The partial
+     *                            upload is deleted in the last two cases.
+     * @throws UncheckedIOException if the data could not be read or written. The upload can be resumed from
+     *                              {@link #getBytesReceived()}.
+     */
+    public synchronized void append(long offset, InputStream inputStream) {
+        if (aborted) {
+            throw new VcfUploadException("Upload has been aborted");
+        }
+        if (offset != bytesReceived) {
+            throw new VcfUploadException(String.format("Expected upload offset %d but got %d", bytesReceived, offset));
+        }
+        try (OutputStream outputStream = Files.newOutputStream(partPath, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+            byte[] buffer = new byte[BUFFER_SIZE];
+            int bytesRead;
+            while ((bytesRead = inputStream.read(buffer)) != -1) {
+                checkSize(bytesRead);
+                headerChecker.update(buffer, 0, bytesRead);
+                outputStream.write(buffer, 0, bytesRead);
+                messageDigest.update(buffer, 0, bytesRead);
+                bytesReceived += bytesRead;
+                lastActiveNanos = System.nanoTime();
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Error writing upload to " + partPath, e);
+        } catch (VcfUploadException e) {
+            abort();
+            throw e;
+        }
+    }
+
+    private void checkSize(int bytesRead) {
+        if (maxBytes > 0 && bytesReceived + bytesRead > maxBytes) {
+            throw new VcfUploadException(String.format("Upload exceeds the maximum size of %d bytes", maxBytes));
+        }
+    }
+
+    /**
+     * Finishes the upload, moving the complete file into place.
+     *
+     * @return the path of the uploaded VCF.
+     * @throws VcfUploadException if the upload is empty or does not contain a valid VCF header.
+     */
+    public synchronized Path complete() {
+        try {
+            if (bytesReceived == 0) {
+                throw new VcfUploadException("Upload was empty");
+            }
+            headerChecker.finish();
+        } catch (VcfUploadException e) {
+            abort();
+            throw e;
+        }
+        Path vcfPath = headerChecker.isGzipped() ? gzipPath(outputPath) : outputPath;
+        try {
+            Files.move(partPath, vcfPath, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Unable to move upload to " + vcfPath, e);
+        }
+        logger.info("Received {} bytes to {} with SHA-256 {}", bytesReceived, vcfPath, getChecksum());
+        return vcfPath;
+    }
+
+    private Path gzipPath(Path path) {
+        String fileName = path.getFileName().toString();
+        return fileName.endsWith(".gz") ? path : path.resolveSibling(fileName + ".gz");
+    }
+
+    /**
+     * Deletes any partial upload.
+     */
+    public synchronized void abort() {
+        aborted = true;
+        try {
+            Files.deleteIfExists(partPath);
+        } catch (IOException e) {
+            logger.error("Unable to delete partial upload {}", partPath, e);
+        }
+    }
+
+    public synchronized boolean isAborted() {
+        return aborted;
+    }
+
+    /**
+     * @return the hex encoded SHA-256 of the bytes received so far.
+     */
+    public synchronized String getChecksum() {
+        try {
+            //clone the digest so that the running checksum can carry on
+            byte[] digest = ((MessageDigest) messageDigest.clone()).digest();
+            StringBuilder stringBuilder = new StringBuilder(digest.length * 2);
+            for (byte b : digest) {
+                stringBuilder.append(String.format("%02x", b));
+            }
+            return stringBuilder.toString();
+        } catch (CloneNotSupportedException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    public static class VcfUploadException extends RuntimeException {
+
+        public VcfUploadException(String message) {
+            super(message);
+        }
+    }
+}
@@ -0,0 +1,236 @@
+/*
+ * The Exomiser - A tool to annotate and prioritize genomic variants
+ *
+ * Copyright (c) 2016-2017 Queen Mary University of London.
+ * Copyright (c) 2012-2016 Charité Universitätsmedizin Berlin and Genome Research Ltd.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.monarchinitiative.exomiser.rest.analysis.service;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.monarchinitiative.exomiser.core.Exomiser;
+import org.monarchinitiative.exomiser.core.analysis.Analysis;
+import org.monarchinitiative.exomiser.core.analysis.AnalysisResults;
+import org.monarchinitiative.exomiser.core.writers.OutputFormat;
+import org.monarchinitiative.exomiser.core.writers.ResultsWriter;
+import org.monarchinitiative.exomiser.core.writers.ResultsWriterFactory;
+import org.monarchinitiative.exomiser.rest.analysis.model.AnalysisStatus;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.notNullValue;
+import static org.junit.Assert.assertThat;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * @author Jules Jacobsen <j.jacobsen@qmul.ac.uk>
+ */
+public class AnalysisJobEngineTest {
+
+    @Rule
+    public TemporaryFolder tmpFolder = new TemporaryFolder();
+
+    private Exomiser exomiser;
+    private ResultsWriterFactory resultsWriterFactory;
+    private AnalysisJobEngine instance;
+
+    private final List<Path> analysesRun = new CopyOnWriteArrayList<>();
+    private final CountDownLatch firstAnalysisReleased = new CountDownLatch(1);
+
+    @Before
+    public void setUp() {
+        exomiser = mock(Exomiser.class);
+        when(exomiser.run(any(Analysis.class))).thenAnswer(invocation -> {
+            Analysis analysis = (Analysis) invocation.getArguments()[0];
+            if (analysesRun.isEmpty()) {
+                firstAnalysisReleased.await(5, TimeUnit.SECONDS);
+            }
+            analysesRun.add(analysis.getVcfPath());
+            return AnalysisResults.builder().build();
+        });
+        resultsWriterFactory = mock(ResultsWriterFactory.class);
+        when(resultsWriterFactory.getResultsWriter(any(OutputFormat.class))).thenReturn(mock(ResultsWriter.class));
+    }
+
+    @After
+    public void tearDown() {
+        instance.shutdown();
+    }
+
+    private AnalysisJob job(long id, long estimatedVariantCount) throws Exception {
+        AnalysisJob job = new AnalysisJob(id, Analysis.builder().build(), tmpFolder.newFolder(String.valueOf(id)).toPath());
+        job.setVcfPath(Paths.get(id + ".vcf"));
+        job.setStatus(AnalysisStatus.READY, "ready");
+        job.setEstimatedVariantCount(estimatedVariantCount);
+        return job;
+    }
+
+    private void waitForStatus(AnalysisJob job, AnalysisStatus status) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (job.getStatus() != status && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertThat(job.getStatus(), equalTo(status));
+    }
+
+    @Test
+    public void testRunsJobAndWritesResultsInEachFormat() throws Exception {
+        instance = new AnalysisJobEngine(exomiser, resultsWriterFactory, 1, 10, 1, 1000);
+        firstAnalysisReleased.countDown();
+
+        AnalysisJob job = job(1, 100);
+        instance.submit(job);
+
+        waitForStatus(job, AnalysisStatus.COMPLETED);
+        for (OutputFormat outputFormat : OutputFormat.values()) {
+            assertThat(job.getResults(outputFormat), notNullValue());
+        }
+    }
+
+    @Test
+    public void testRejectsJobLargerThanHeapBudget() throws Exception {
+        instance = new AnalysisJobEngine(exomiser, resultsWriterFactory, 1, 10, 10, 1000);
+
+        AnalysisJob job = job(1, 101);
+        assertThat(instance.submit(job).getStatus(), equalTo(AnalysisStatus.ERROR));
+        assertThat(instance.getNumQueuedJobs(), equalTo(0));
+    }
+
+    @Test
+    public void testRejectsJobWhenQueueIsFull() throws Exception {
+        instance = new AnalysisJobEngine(exomiser, resultsWriterFactory, 1, 1, 1, 1000);
+
+        AnalysisJob running = job(1, 10);
+        instance.submit(running);
+        waitForStatus(running, AnalysisStatus.PROCESSING);
+
+        assertThat(instance.submit(job(2, 10)).getStatus(), equalTo(AnalysisStatus.QUEUED));
+        assertThat(instance.submit(job(3, 10)).getStatus(), equalTo(AnalysisStatus.ERROR));
+        firstAnalysisReleased.countDown();
+    }
+
+    @Test
+    public void testSmallerJobsRunBeforeLargerJobsSubmittedEarlier() throws Exception {
+        instance = new AnalysisJobEngine(exomiser, resultsWriterFactory, 1, 10, 1, 1_000_000);
+
+        AnalysisJob running = job(1, 10);
+        instance.submit(running);
+        waitForStatus(running, AnalysisStatus.PROCESSING);
+
+        AnalysisJob genome = job(2, 500_000);
+        AnalysisJob exome = job(3, 50_000);
+        instance.submit(genome);
+        instance.submit(exome);
+        firstAnalysisReleased.countDown();
+
+        waitForStatus(genome, AnalysisStatus.COMPLETED);
+        assertThat(analysesRun, equalTo(Arrays.asList(Paths.get("1.vcf"), Paths.get("3.vcf"), Paths.get("2.vcf"))));
+    }
+
+    @Test
+    public void testJobQueuedForLongerThanMaxWaitRunsBeforeSmallerJobs() throws Exception {
+        instance = new AnalysisJobEngine(exomiser, resultsWriterFactory, 1, 10, 1, 1_000_000, 0);
+
+        AnalysisJob running = job(1, 10);
+        instance.submit(running);
+        waitForStatus(running, AnalysisStatus.PROCESSING);
+
+        AnalysisJob genome = job(2, 500_000);
+        AnalysisJob exome = job(3, 50_000);
+        instance.submit(genome);
+        instance.submit(exome);
+        firstAnalysisReleased.countDown();
+
+        waitForStatus(exome, AnalysisStatus.COMPLETED);
+        assertThat(analysesRun, equalTo(Arrays.asList(Paths.get("1.vcf"), Paths.get("2.vcf"), Paths.get("3.vcf"))));
+    }
+
+    @Test
+    public void testCancelQueuedJobRunsStopActionImmediately() throws Exception {
+        instance = new AnalysisJobEngine(exomiser, resultsWriterFactory, 1, 10, 1, 1000);
+
+        AnalysisJob running = job(1, 10);
+        instance.submit(running);
+        waitForStatus(running, AnalysisStatus.PROCESSING);
+        AnalysisJob queued = job(2, 10);
+        instance.submit(queued);
+
+        CountDownLatch stopped = new CountDownLatch(1);
+        instance.cancel(queued, stopped::countDown);
+
+        assertThat(stopped.getCount(), equalTo(0L));
+        assertThat(instance.getNumQueuedJobs(), equalTo(0));
+        firstAnalysisReleased.countDown();
+    }
+
+    @Test
+    public void testCancelRunningJobRunsStopActionOnceAnalysisHasStopped() throws Exception {
+        instance = new AnalysisJobEngine(exomiser, resultsWriterFactory, 1, 10, 1, 1000);
+
+        AnalysisJob running = job(1, 10);
+        instance.submit(running);
+        waitForStatus(running, AnalysisStatus.PROCESSING);
+
+        CountDownLatch stopped = new CountDownLatch(1);
+        instance.cancel(running, stopped::countDown);
+
+        assertThat(stopped.await(5, TimeUnit.SECONDS), equalTo(true));
+        assertThat(instance.getNumRunningJobs(), equalTo(0));
+    }
+
+    @Test
+    public void testJobWaitsForMemoryReservedByRunningJob() throws Exception {
+        instance = new AnalysisJobEngine(exomiser, resultsWriterFactory, 2, 10, 1, 1000);
+
+        AnalysisJob running = job(1, 600);
+        instance.submit(running);
+        waitForStatus(running, AnalysisStatus.PROCESSING);
+
+        AnalysisJob waiting = job(2, 600);
+        instance.submit(waiting);
+        assertThat(instance.getNumRunningJobs(), equalTo(1));
+        assertThat(waiting.getStatus(), equalTo(AnalysisStatus.QUEUED));
+
+        firstAnalysisReleased.countDown();
+        waitForStatus(waiting, AnalysisStatus.COMPLETED);
+    }
+
+    @Test
+    public void testFailedAnalysisIsReportedAsError() throws Exception {
+        doThrow(new IllegalStateException("Boom!")).when(exomiser).run(any(Analysis.class));
+        instance = new AnalysisJobEngine(exomiser, resultsWriterFactory, 1, 10, 1, 1000);
+
+        AnalysisJob job = job(1, 10);
+        instance.submit(job);
+
+        waitForStatus(job, AnalysisStatus.ERROR);
+        assertThat(job.getMessage(), equalTo("Analysis failed: Boom!"));
+    }
+}
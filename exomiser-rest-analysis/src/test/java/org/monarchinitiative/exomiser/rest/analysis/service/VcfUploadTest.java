@@ -0,0 +1,215 @@
+/*
+ * The Exomiser - A tool to annotate and prioritize genomic variants
+ *
+ * Copyright (c) 2016-2017 Queen Mary University of London.
+ * Copyright (c) 2012-2016 Charité Universitätsmedizin Berlin and Genome Research Ltd.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.monarchinitiative.exomiser.rest.analysis.service;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.monarchinitiative.exomiser.rest.analysis.service.VcfUpload.VcfUploadException;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.zip.GZIPOutputStream;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.is;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+/**
+ * @author Jules Jacobsen <j.jacobsen@qmul.ac.uk>
+ */
+public class VcfUploadTest {
+
+    @Rule
+    public TemporaryFolder tmpFolder = new TemporaryFolder();
+
+    private static final String HEADER = "##fileformat=VCFv4.1\n" +
+            "#CHROM\tPOS\tID\tREF\tALT\tQUAL\tFILTER\tINFO\tFORMAT\tManuel\n";
+
+    private static byte[] vcf(String header, int numRecords) {
+        StringBuilder stringBuilder = new StringBuilder(header);
+        for (int i = 1; i <= numRecords; i++) {
+            stringBuilder.append(String.format("1\t%d\t.\tA\tT\t100\tPASS\t.\tGT\t0/1%n", i * 100));
+        }
+        return stringBuilder.toString().getBytes(StandardCharsets.US_ASCII);
+    }
+
+    private static byte[] gzip(byte[] bytes) throws IOException {
+        ByteArrayOutputStream byteArrayOutputStream = new ByteArrayOutputStream();
+        try (GZIPOutputStream gzipOutputStream = new GZIPOutputStream(byteArrayOutputStream)) {
+            gzipOutputStream.write(bytes);
+        }
+        return byteArrayOutputStream.toByteArray();
+    }
+
+    private Path outputPath(String fileName) {
+        return tmpFolder.getRoot().toPath().resolve(fileName);
+    }
+
+    private void assertRejected(VcfUpload instance, long offset, InputStream inputStream) {
+        try {
+            instance.append(offset, inputStream);
+            instance.complete();
+            fail("Expected VcfUploadException");
+        } catch (VcfUploadException e) {
+            //expected
+        }
+    }
+
+    @Test
+    public void testUploadIsWrittenUnchanged() throws Exception {
+        byte[] bytes = vcf(HEADER, 1000);
+        VcfUpload instance = new VcfUpload(outputPath("test.vcf"), -1, "");
+        instance.append(0, new ByteArrayInputStream(bytes));
+        Path vcfPath = instance.complete();
+
+        assertThat(vcfPath, equalTo(outputPath("test.vcf")));
+        assertThat(Arrays.equals(Files.readAllBytes(vcfPath), bytes), is(true));
+        assertThat(Files.exists(outputPath("test.vcf.part")), is(false));
+    }
+
+    @Test
+    public void testGzippedUploadIsWrittenUnchangedWithGzExtension() throws Exception {
+        byte[] bytes = gzip(vcf(HEADER, 1000));
+        VcfUpload instance = new VcfUpload(outputPath("test.vcf"), -1, "Manuel");
+        instance.append(0, new ByteArrayInputStream(bytes));
+        Path vcfPath = instance.complete();
+
+        assertThat(vcfPath, equalTo(outputPath("test.vcf.gz")));
+        assertThat(Arrays.equals(Files.readAllBytes(vcfPath), bytes), is(true));
+    }
+
+    @Test
+    public void testChecksum() throws Exception {
+        VcfUpload instance = new VcfUpload(outputPath("test.vcf"), -1, "");
+        instance.append(0, new ByteArrayInputStream(HEADER.getBytes(StandardCharsets.US_ASCII)));
+        instance.complete();
+
+        assertThat(instance.getChecksum().length(), equalTo(64));
+        VcfUpload same = new VcfUpload(outputPath("same.vcf"), -1, "");
+        same.append(0, new ByteArrayInputStream(HEADER.getBytes(StandardCharsets.US_ASCII)));
+        assertThat(same.getChecksum(), equalTo(instance.getChecksum()));
+    }
+
+    @Test
+    public void testChunkedUploadCanBeResumed() throws Exception {
+        byte[] bytes = vcf(HEADER, 10_000);
+        int chunkSize = bytes.length / 3;
+        VcfUpload instance = new VcfUpload(outputPath("test.vcf"), -1, "");
+        instance.append(0, new ByteArrayInputStream(bytes, 0, chunkSize));
+        try {
+            instance.append(0, new ByteArrayInputStream(bytes, 0, chunkSize));
+            fail("Expected VcfUploadException");
+        } catch (VcfUploadException e) {
+            //expected - wrong offset
+        }
+        long offset = instance.getBytesReceived();
+        instance.append(offset, new ByteArrayInputStream(bytes, (int) offset, bytes.length - (int) offset));
+        Path vcfPath = instance.complete();
+
+        assertThat(Arrays.equals(Files.readAllBytes(vcfPath), bytes), is(true));
+    }
+
+    @Test
+    public void testRejectsUploadLargerThanMaxBytes() throws Exception {
+        VcfUpload instance = new VcfUpload(outputPath("test.vcf"), 1000, "");
+        assertRejected(instance, 0, new ByteArrayInputStream(vcf(HEADER, 1000)));
+        assertThat(Files.exists(outputPath("test.vcf.part")), is(false));
+    }
+
+    @Test
+    public void testRejectsEmptyUpload() throws Exception {
+        assertRejected(new VcfUpload(outputPath("test.vcf"), -1, ""), 0, new ByteArrayInputStream(new byte[0]));
+    }
+
+    @Test
+    public void testRejectsFileWhichIsNotVcf() throws Exception {
+        byte[] bytes = "Hello, this is not a VCF\nreally it isn't".getBytes(StandardCharsets.US_ASCII);
+        assertRejected(new VcfUpload(outputPath("test.vcf"), -1, ""), 0, new ByteArrayInputStream(bytes));
+    }
+
+    @Test
+    public void testRejectsVcfWithoutColumnHeader() throws Exception {
+        byte[] bytes = vcf("##fileformat=VCFv4.1\n", 10);
+        assertRejected(new VcfUpload(outputPath("test.vcf"), -1, ""), 0, new ByteArrayInputStream(bytes));
+    }
+
+    @Test
+    public void testRejectsUnknownProbandSampleName() throws Exception {
+        String header = "##fileformat=VCFv4.1\n#CHROM\tPOS\tID\tREF\tALT\tQUAL\tFILTER\tINFO\tFORMAT\tManuel\tJoe\n";
+        assertRejected(new VcfUpload(outputPath("test.vcf"), -1, "Fred"), 0, new ByteArrayInputStream(vcf(header, 10)));
+    }
+
+    @Test
+    public void testRejectsMultiSampleVcfWithoutProbandSampleName() throws Exception {
+        String header = "##fileformat=VCFv4.1\n#CHROM\tPOS\tID\tREF\tALT\tQUAL\tFILTER\tINFO\tFORMAT\tManuel\tJoe\n";
+        assertRejected(new VcfUpload(outputPath("test.vcf"), -1, ""), 0, new ByteArrayInputStream(gzip(vcf(header, 10))));
+    }
+
+    @Test
+    public void testBadHeaderIsRejectedBeforeWholeFileIsRead() throws Exception {
+        byte[] bytes = vcf("##fileformat=VCFv4.1\n#CHROM\tPOS\tID\tREF\tALT\tQUAL\tFILTER\tINFO\tFORMAT\tManuel\tJoe\n", 100_000);
+        ByteArrayInputStream inputStream = new ByteArrayInputStream(bytes);
+        assertRejected(new VcfUpload(outputPath("test.vcf"), -1, "Fred"), 0, inputStream);
+        assertThat(inputStream.available() > 0, is(true));
+    }
+
+    @Test
+    public void testBgzippedUploadSentInSmallChunksIsAccepted() throws Exception {
+        byte[] vcf = vcf(HEADER, 1000);
+        ByteArrayOutputStream bgzipped = new ByteArrayOutputStream();
+        //bgzip writes a series of gzip members, so the header can be split between them
+        bgzipped.write(gzip(Arrays.copyOfRange(vcf, 0, 30)));
+        bgzipped.write(gzip(Arrays.copyOfRange(vcf, 30, vcf.length)));
+        byte[] bytes = bgzipped.toByteArray();
+
+        VcfUpload instance = new VcfUpload(outputPath("test.vcf"), -1, "Manuel");
+        for (int offset = 0; offset < bytes.length; offset += 7) {
+            instance.append(offset, new ByteArrayInputStream(bytes, offset, Math.min(7, bytes.length - offset)));
+        }
+        Path vcfPath = instance.complete();
+
+        assertThat(vcfPath.getFileName().toString(), equalTo("test.vcf.gz"));
+    }
+
+    @Test
+    public void testGzipBombIsRejectedAfterDecompressingOnlyTheMaxHeaderSize() throws Exception {
+        ByteArrayOutputStream byteArrayOutputStream = new ByteArrayOutputStream();
+        try (GZIPOutputStream gzipOutputStream = new GZIPOutputStream(byteArrayOutputStream)) {
+            gzipOutputStream.write("##fileformat=VCFv4.1\n##".getBytes(StandardCharsets.US_ASCII));
+            byte[] padding = new byte[1024 * 1024];
+            Arrays.fill(padding, (byte) 'A');
+            for (int i = 0; i < 128; i++) {
+                gzipOutputStream.write(padding);
+            }
+        }
+        ByteArrayInputStream inputStream = new ByteArrayInputStream(byteArrayOutputStream.toByteArray());
+        assertRejected(new VcfUpload(outputPath("test.vcf"), -1, ""), 0, inputStream);
+        assertThat(inputStream.available() > 0, is(true));
+    }
+}
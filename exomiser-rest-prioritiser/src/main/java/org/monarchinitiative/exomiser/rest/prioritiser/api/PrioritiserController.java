@@ -20,6 +20,7 @@
 
 package org.monarchinitiative.exomiser.rest.prioritiser.api;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
 import org.monarchinitiative.exomiser.core.genome.GeneFactory;
 import org.monarchinitiative.exomiser.core.model.Gene;
 import org.monarchinitiative.exomiser.core.model.GeneIdentifier;
@@ -27,6 +28,7 @@
 import org.monarchinitiative.exomiser.core.prioritisers.Prioritiser;
 import org.monarchinitiative.exomiser.core.prioritisers.PriorityFactory;
 import org.monarchinitiative.exomiser.core.prioritisers.PriorityResult;
+import org.monarchinitiative.exomiser.core.prioritisers.util.PriorityResultCollectors;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -34,15 +36,14 @@
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 import java.time.Duration;
 import java.time.Instant;
-import java.util.Comparator;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.function.Function;
-import java.util.stream.Stream;
 
 import static com.google.common.collect.ImmutableList.toImmutableList;
 import static com.google.common.collect.ImmutableMap.toImmutableMap;
@@ -55,12 +56,16 @@ public class PrioritiserController {
 
     private static final Logger logger = LoggerFactory.getLogger(PrioritiserController.class);
 
+    private static final String APPLICATION_NDJSON_VALUE = "application/x-ndjson";
+
     private final PriorityFactory priorityFactory;
+    private final ObjectMapper objectMapper;
     private final Map<Integer, GeneIdentifier> geneIdentifiers;
 
     @Autowired
-    public PrioritiserController(PriorityFactory priorityFactory, GeneFactory geneFactory) {
+    public PrioritiserController(PriorityFactory priorityFactory, GeneFactory geneFactory, ObjectMapper objectMapper) {
         this.priorityFactory = priorityFactory;
+        this.objectMapper = objectMapper;
         this.geneIdentifiers = geneFactory.createKnownGeneIds().stream()
                 .filter(GeneIdentifier::hasEntrezId)
                 .collect(toImmutableMap(GeneIdentifier::getEntrezIdAsInteger, Function.identity()));
@@ -105,6 +110,36 @@ public PrioritiserResultSet prioritise(@RequestParam(value = "phenotypes") List<
         return new PrioritiserResultSet(params, duration.toMillis(), results);
     }
 
+    /**
+     * Returns the same results as {@link #prioritise} as newline delimited JSON, one result per line, which are
+     * written directly to the response rather than being collected into a single document first.
+     */
+    @GetMapping(value = "stream", produces = APPLICATION_NDJSON_VALUE)
+    public StreamingResponseBody prioritiseStream(@RequestParam(value = "phenotypes") List<String> phenotypes,
+                                                  @RequestParam(value = "genes", required = false, defaultValue = "") List<Integer> genesIds,
+                                                  @RequestParam(value = "prioritiser") String prioritiserName,
+                                                  @RequestParam(value = "prioritiser-params", required = false, defaultValue = "") String prioritiserParams,
+                                                  @RequestParam(value = "limit", required = false, defaultValue = "0") Integer limit
+    ) {
+
+        logger.info("phenotypes: {}({}) genes: {} prioritiser: {} prioritiser-params: {} limit: {}", phenotypes, phenotypes.size(), genesIds, prioritiserName, prioritiserParams, limit);
+
+        Prioritiser prioritiser = parsePrioritser(prioritiserName, prioritiserParams);
+        List<String> uniquePhenotypes = phenotypes.stream().distinct().collect(toImmutableList());
+        List<Gene> genes = parseGeneIdentifiers(genesIds);
+
+        return outputStream -> {
+            Instant start = Instant.now();
+            List<PriorityResult> results = runLimitAndCollectResults(prioritiser, uniquePhenotypes, genes, limit);
+            for (PriorityResult result : results) {
+                outputStream.write(objectMapper.writeValueAsBytes(result));
+                outputStream.write('\n');
+            }
+            outputStream.flush();
+            logger.info("Streamed {} results in {} ms", results.size(), Duration.between(start, Instant.now()).toMillis());
+        };
+    }
+
     private Prioritiser parsePrioritser(String prioritiserName, String prioritiserParams) {
         switch(prioritiserName) {
             case "phenix":
@@ -141,13 +176,11 @@ private GeneIdentifier unrecognisedGeneIdentifier(Integer id) {
     }
 
     private List<PriorityResult> runLimitAndCollectResults(Prioritiser prioritiser, List<String> phenotypes, List<Gene> genes, int limit) {
-        Stream<? extends PriorityResult> resultsStream = prioritiser.prioritise(phenotypes, genes)
-                .sorted(Comparator.naturalOrder());
+        //only the top results are held and sorted, rather than sorting all of them and then applying the limit
+        List<PriorityResult> results = prioritiser.prioritise(phenotypes, genes)
+                .collect(PriorityResultCollectors.toTopResults(limit));
         logger.info("Finished {}", prioritiser.getPriorityType());
-        if (limit == 0) {
-            return resultsStream.collect(toImmutableList());
-        }
-        return resultsStream.limit(limit).collect(toImmutableList());
+        return results;
     }
 
 }
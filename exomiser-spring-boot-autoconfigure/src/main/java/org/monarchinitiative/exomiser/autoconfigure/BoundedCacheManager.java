@@ -0,0 +1,138 @@
+/*
+ * The Exomiser - A tool to annotate and prioritize genomic variants
+ *
+ * Copyright (c) 2016-2017 Queen Mary University of London.
+ * Copyright (c) 2012-2016 Charité Universitätsmedizin Berlin and Genome Research Ltd.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.monarchinitiative.exomiser.autoconfigure;
+
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.CaffeineSpec;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import org.monarchinitiative.exomiser.core.model.frequency.FrequencyData;
+import org.monarchinitiative.exomiser.core.model.pathogenicity.PathogenicityData;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.cache.Cache;
+import org.springframework.cache.caffeine.CaffeineCache;
+import org.springframework.cache.support.AbstractCacheManager;
+
+import java.util.*;
+
+/**
+ * Cache manager for the 'caffeine' cache option. Unlike the unbounded 'mem' caches, each cache is bounded in size or
+ * weight and evicts using Caffeine's W-TinyLFU policy, with optional expiry. Caches are configured using a
+ * {@link CaffeineSpec} string, e.g. {@code maximumSize=100000,expireAfterAccess=1h,recordStats}, with a default for
+ * caches which have not been configured individually.
+ * <p>
+ * When a spec sets a maximumWeight the entries are weighed by the number of frequencies or scores they hold, so that
+ * well-annotated variants count for more than those without any data.
+ *
+ * @author Jules Jacobsen <j.jacobsen@qmul.ac.uk>
+ */
+public class BoundedCacheManager extends AbstractCacheManager implements DisposableBean {
+
+    private static final Logger logger = LoggerFactory.getLogger(BoundedCacheManager.class);
+
+    private final Collection<String> cacheNames;
+    private final String defaultSpec;
+    private final Map<String, String> cacheSpecs;
+
+    /**
+     * @param cacheNames the caches to create up-front. Other caches are created on demand using the default spec.
+     * @param defaultSpec the spec for caches without their own entry in the cacheSpecs.
+     * @param cacheSpecs  specs for individual caches, keyed by cache name.
+     * @throws IllegalArgumentException if a spec cannot be parsed.
+     */
+    public BoundedCacheManager(Collection<String> cacheNames, String defaultSpec, Map<String, String> cacheSpecs) {
+        this.cacheNames = new ArrayList<>(cacheNames);
+        this.defaultSpec = defaultSpec;
+        this.cacheSpecs = new HashMap<>(cacheSpecs);
+        //fail fast on any typos rather than when the cache is first used
+        CaffeineSpec.parse(defaultSpec);
+        cacheSpecs.values().forEach(CaffeineSpec::parse);
+    }
+
+    @Override
+    protected Collection<? extends Cache> loadCaches() {
+        Set<String> names = new LinkedHashSet<>(cacheNames);
+        names.addAll(cacheSpecs.keySet());
+        List<Cache> caches = new ArrayList<>(names.size());
+        for (String name : names) {
+            caches.add(createCache(name));
+        }
+        return caches;
+    }
+
+    @Override
+    protected Cache getMissingCache(String name) {
+        return createCache(name);
+    }
+
+    private Cache createCache(String name) {
+        String spec = cacheSpecs.getOrDefault(name, defaultSpec);
+        Caffeine<Object, Object> builder = Caffeine.from(spec);
+        if (spec.contains("maximumWeight")) {
+            builder.weigher(BoundedCacheManager::weigh);
+        }
+        logger.debug("Created cache '{}' with spec '{}'", name, spec);
+        return new CaffeineCache(name, builder.build());
+    }
+
+    static int weigh(Object key, Object value) {
+        if (value instanceof FrequencyData) {
+            return 1 + ((FrequencyData) value).getKnownFrequencies().size();
+        }
+        if (value instanceof PathogenicityData) {
+            return 1 + ((PathogenicityData) value).getPredictedPathogenicityScores().size();
+        }
+        if (value instanceof Collection) {
+            return 1 + ((Collection<?>) value).size();
+        }
+        if (value instanceof Map) {
+            return 1 + ((Map<?, ?>) value).size();
+        }
+        return 1;
+    }
+
+    /**
+     * @return the hit, miss and eviction counts for each cache. These will all be zero for caches whose spec does not
+     * include recordStats.
+     */
+    public Map<String, CacheStats> getCacheStats() {
+        Map<String, CacheStats> stats = new LinkedHashMap<>();
+        for (String name : getCacheNames()) {
+            CaffeineCache cache = (CaffeineCache) getCache(name);
+            stats.put(name, cache.getNativeCache().stats());
+        }
+        return stats;
+    }
+
+    public void logCacheStats() {
+        getCacheStats().forEach((name, stats) -> {
+            if (stats.requestCount() > 0) {
+                logger.info("Cache '{}' hits: {} misses: {} hit rate: {} evictions: {}", name, stats.hitCount(), stats.missCount(), String.format("%.3f", stats.hitRate()), stats.evictionCount());
+            }
+        });
+    }
+
+    @Override
+    public void destroy() {
+        logCacheStats();
+    }
+}
@@ -28,11 +28,11 @@
 import htsjdk.tribble.readers.TabixReader;
 import org.monarchinitiative.exomiser.core.Exomiser;
 import org.monarchinitiative.exomiser.core.analysis.AnalysisFactory;
-import org.monarchinitiative.exomiser.core.genome.dao.ErrorThrowingTabixDataSource;
-import org.monarchinitiative.exomiser.core.genome.dao.TabixDataSource;
-import org.monarchinitiative.exomiser.core.genome.dao.TabixReaderAdaptor;
+import org.monarchinitiative.exomiser.core.genome.VariantFactory;
+import org.monarchinitiative.exomiser.core.genome.dao.*;
 import org.monarchinitiative.exomiser.core.model.frequency.FrequencySource;
 import org.monarchinitiative.exomiser.core.model.pathogenicity.PathogenicitySource;
+import org.monarchinitiative.exomiser.core.prioritisers.service.PhenotypeQueryCache;
 import org.monarchinitiative.exomiser.core.prioritisers.util.DataMatrix;
 import org.monarchinitiative.exomiser.core.prioritisers.util.DataMatrixIO;
 import org.slf4j.Logger;
@@ -41,14 +41,15 @@
 import org.springframework.boot.autoconfigure.condition.ConditionalOnClass;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnMissingBean;
 import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.cache.Cache;
 import org.springframework.cache.CacheManager;
 import org.springframework.cache.annotation.EnableCaching;
+import org.springframework.cache.concurrent.ConcurrentMapCache;
 import org.springframework.cache.concurrent.ConcurrentMapCacheManager;
 import org.springframework.cache.ehcache.EhCacheCacheManager;
 import org.springframework.cache.ehcache.EhCacheManagerFactoryBean;
-import org.springframework.cache.interceptor.CacheResolver;
-import org.springframework.cache.interceptor.NamedCacheResolver;
 import org.springframework.cache.support.NoOpCacheManager;
+import org.springframework.cache.support.SimpleCacheManager;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.ComponentScan;
 import org.springframework.context.annotation.Configuration;
@@ -59,11 +60,17 @@
 import javax.sql.DataSource;
 import java.io.File;
 import java.io.IOException;
+import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
+import java.util.Optional;
 
 /**
  * @author Jules Jacobsen <jules.jacobsen@sanger.ac.uk>
@@ -77,6 +84,10 @@ public class ExomiserAutoConfiguration {
 
     private static final Logger logger = LoggerFactory.getLogger(ExomiserAutoConfiguration.class);
 
+    private static final List<String> CACHE_NAMES = Arrays.asList("pathogenicity", "frequency", "diseaseHp", "diseases", "hpo", "mpo", "zpo", "cadd", "remm");
+    //caches keyed on a variant
+    private static final List<String> VARIANT_CACHE_NAMES = Arrays.asList("pathogenicity", "frequency", "cadd", "remm");
+
     @Autowired
     private ExomiserProperties properties;
 
@@ -136,6 +147,18 @@ public JannovarData jannovarData(Path transcriptFilePath) {
         }
     }
 
+    /**
+     * Annotation of whole genomes is CPU-bound, so this can be run over several threads by setting the
+     * exomiser.variant-annotation-threads property. The default of 1 will annotate variants on the analysis thread.
+     */
+    @Bean
+    @ConditionalOnMissingBean
+    public VariantFactory variantFactory(JannovarData jannovarData) {
+        int annotationThreads = properties.getVariantAnnotationThreads();
+        logger.info("Variant annotation using {} thread(s)", annotationThreads);
+        return new VariantFactory(jannovarData, annotationThreads);
+    }
+
     /**
      * Optional full system path to CADD InDels.tsv.gz and InDels.tsv.gz.tbi file pair.
      * These can be downloaded from http://cadd.gs.washington.edu/download - v1.3 has been tested.
@@ -211,13 +234,68 @@ private TabixDataSource getTabixDataSourceOrDefaultForProperty(String pathToTabi
             String message = "Data for " + dataSourceName + " is not configured. Check the application.properties is pointing to a valid file.";
             return new ErrorThrowingTabixDataSource(message);
         }
+        return new PooledTabixDataSource(() -> openTabixDataSource(tabixGzPathValue), properties.getTabixPoolSize());
+    }
+
+    private TabixDataSource openTabixDataSource(String tabixGzPathValue) {
         TabixReader tabixReader;
         try {
             tabixReader = new TabixReader(tabixGzPathValue);
         } catch (IOException e) {
             throw new ExomiserAutoConfigurationException(tabixGzPathValue + " file not found. Please check exomiser properties file points to a valid tabix .gz file.", e);
         }
-        return new TabixReaderAdaptor(tabixReader);
+        TabixDataSource tabixDataSource = new TabixReaderAdaptor(tabixReader);
+        if (properties.isTabixStreaming()) {
+            return new StreamingTabixDataSource(tabixDataSource);
+        }
+        return tabixDataSource;
+    }
+
+    /**
+     * Optional full system path to the binary allele store built by exomiser-db. When set this replaces the H2
+     * frequency and variant tables, so the frequency and pathogenicity lookups no longer need a database connection.
+     * <p>
+     * Default is empty and will use the H2 database.
+     *
+     * @return
+     */
+    @Lazy
+    @Bean
+    public AlleleStore alleleStore() {
+        String alleleStorePath = properties.getAlleleStorePath();
+        if (alleleStorePath.isEmpty()) {
+            return AlleleStore.empty();
+        }
+        logger.info("Reading allele frequency and pathogenicity data from: {}", alleleStorePath);
+        try {
+            return AlleleStore.open(Paths.get(alleleStorePath));
+        } catch (AlleleStore.AlleleStoreException e) {
+            throw new ExomiserAutoConfigurationException(alleleStorePath + " could not be read. Please check exomiser properties file points to a valid allele store file.", e);
+        }
+    }
+
+    /**
+     * Replaces the component-scanned bean of the same name so that the allele store is used when configured. The
+     * database backed DAO is given the 'frequency' cache so that its block look-ups share it with the single variant
+     * look-ups.
+     */
+    @Bean
+    public FrequencyDao defaultFrequencyDao(DataSource dataSource, CacheManager cacheManager) {
+        if (properties.getAlleleStorePath().isEmpty()) {
+            return new DefaultFrequencyDao(dataSource, cacheManager.getCache("frequency"));
+        }
+        return new AlleleStoreFrequencyDao(alleleStore());
+    }
+
+    /**
+     * Replaces the component-scanned bean of the same name so that the allele store is used when configured.
+     */
+    @Bean
+    public PathogenicityDao defaultPathogenicityDao(DataSource dataSource) {
+        if (properties.getAlleleStorePath().isEmpty()) {
+            return new DefaultPathogenicityDao(dataSource);
+        }
+        return new AlleleStorePathogenicityDao(alleleStore());
     }
 
     //Prioritiser configuration
@@ -264,6 +342,10 @@ public DataMatrix randomWalkMatrix() {
         String randomWalkIndexFileNameValue = properties.getRandomWalkIndexFileName();
         Path randomWalkIndexFilePath = resolveRelativeToDataDir(randomWalkIndexFileNameValue);
 
+        //the binary matrix is written with the exponent already applied
+        if (randomWalkFileNameValue.endsWith(".bin")) {
+            return DataMatrixIO.loadMappedDataMatrix(randomWalkFilePath.toString(), randomWalkIndexFilePath.toString());
+        }
         return DataMatrixIO.loadDataMatrix(randomWalkFilePath.toString(), randomWalkIndexFilePath.toString(), true);
     }
 
@@ -311,15 +393,6 @@ private String resolveH2UrlPathPlaceholder(String h2Url, String h2AbsolutePath)
         return h2Url.replace("${h2Path}", h2AbsolutePath);
     }
 
-    @Bean
-    public CacheResolver modelCacheResolver() {
-        NamedCacheResolver modelCacheResolver = new NamedCacheResolver();
-        //these guys are relatively small, always accessed and never grow so were using a ConcurrentMap to store them.
-        modelCacheResolver.setCacheNames(Arrays.asList("models"));
-        modelCacheResolver.setCacheManager(new ConcurrentMapCacheManager());
-        return modelCacheResolver;
-    }
-
     @Bean
     @ConditionalOnMissingBean
     public CacheManager cacheManager() {
@@ -332,7 +405,15 @@ public CacheManager cacheManager() {
                 cacheManager = noOpCacheManager();
                 break;
             case "mem":
-                cacheManager = new ConcurrentMapCacheManager("pathogenicity", "frequency", "diseaseHp", "diseases","hpo", "mpo", "zpo", "cadd", "remm");
+                cacheManager = new ConcurrentMapCacheManager(CACHE_NAMES.toArray(new String[CACHE_NAMES.size()]));
+                cacheNames.addAll(cacheManager.getCacheNames());
+                break;
+            case "caffeine":
+                cacheManager = boundedCacheManager();
+                cacheNames.addAll(cacheManager.getCacheNames());
+                break;
+            case "packed":
+                cacheManager = packedCacheManager();
                 cacheNames.addAll(cacheManager.getCacheNames());
                 break;
             case "ehcache":
@@ -340,14 +421,91 @@ public CacheManager cacheManager() {
                 cacheNames.addAll(Arrays.asList(ehCacheCacheManager().getCacheManager().getCacheNames()));
                 break;
             default:
-                String message = String.format("Unrecognised value '%s' for exomiser cache option. Please choose 'none', 'mem' or 'ehcache'.", cacheOption);
+                String message = String.format("Unrecognised value '%s' for exomiser cache option. Please choose 'none', 'mem', 'ehcache', 'caffeine' or 'packed'.", cacheOption);
                 logger.error(message);
                 throw new ExomiserAutoConfigurationException(message);
         }
         logger.info("Set up {} caches: {}", cacheOption, cacheNames);
+        String persistentCachePath = properties.getPersistentCachePath();
+        if (!persistentCachePath.isEmpty()) {
+            logger.info("Using persistent cache {} for {} caches", persistentCachePath, VARIANT_CACHE_NAMES);
+            Optional<PersistentVariantStore> persistentVariantStore = PersistentVariantStore.tryOpen(Paths.get(persistentCachePath), dataVersion());
+            if (persistentVariantStore.isPresent()) {
+                return new TieredCacheManager(cacheManager, persistentVariantStore.get(), VARIANT_CACHE_NAMES);
+            }
+            logger.warn("Persistent cache {} is in use by another process - using the {} caches only", persistentCachePath, cacheOption);
+        }
         return cacheManager;
     }
 
+    /**
+     * The versions of the resources in the database metadata table together with the paths, sizes and modification
+     * times of the variant data files. Any change to these will invalidate the persistent cache.
+     */
+    private String dataVersion() {
+        StringBuilder dataVersion = new StringBuilder();
+        try (Connection connection = dataSource().getConnection();
+             PreparedStatement ps = connection.prepareStatement("SELECT resource, version FROM metadata ORDER BY resource, version");
+             ResultSet rs = ps.executeQuery()) {
+            while (rs.next()) {
+                dataVersion.append(rs.getString("resource")).append('=').append(rs.getString("version")).append(';');
+            }
+        } catch (SQLException e) {
+            throw new ExomiserAutoConfigurationException("Unable to read data version from the metadata table for the persistent cache.", e);
+        }
+        dataVersion.append(dataFileVersion(properties.getCaddSnvPath())).append(';')
+                .append(dataFileVersion(properties.getCaddInDelPath())).append(';')
+                .append(dataFileVersion(properties.getRemmPath())).append(';')
+                .append(dataFileVersion(properties.getLocalFrequencyPath())).append(';')
+                .append(dataFileVersion(properties.getAlleleStorePath()));
+        return dataVersion.toString();
+    }
+
+    /**
+     * Identifies a variant data file by its path, size and modification time so that a file regenerated in place is
+     * noticed. The files run to many gigabytes, so digesting them on each start-up isn't an option.
+     */
+    static String dataFileVersion(String path) {
+        if (path.isEmpty()) {
+            return path;
+        }
+        Path dataFile = Paths.get(path);
+        try {
+            return path + '|' + Files.size(dataFile) + '|' + Files.getLastModifiedTime(dataFile).toMillis();
+        } catch (IOException e) {
+            //a missing file is reported by the data source which reads it
+            logger.debug("Unable to read size and modification time of {}", path, e);
+            return path;
+        }
+    }
+
+    private BoundedCacheManager boundedCacheManager() {
+        try {
+            BoundedCacheManager boundedCacheManager = new BoundedCacheManager(CACHE_NAMES, properties.getCacheSpec(), properties.getCacheSpecs());
+            boundedCacheManager.afterPropertiesSet();
+            return boundedCacheManager;
+        } catch (IllegalArgumentException e) {
+            String message = String.format("Invalid caffeine cache spec in %s %s", properties.getCacheSpec(), properties.getCacheSpecs());
+            throw new ExomiserAutoConfigurationException(message, e);
+        }
+    }
+
+    private SimpleCacheManager packedCacheManager() {
+        long maxBytes = properties.getPackedCacheMaxMb() * 1024L * 1024L;
+        List<Cache> caches = new ArrayList<>();
+        for (String cacheName : CACHE_NAMES) {
+            if (VARIANT_CACHE_NAMES.contains(cacheName)) {
+                caches.add(new PackedVariantCache(cacheName, maxBytes));
+            } else {
+                caches.add(new ConcurrentMapCache(cacheName));
+            }
+        }
+        SimpleCacheManager simpleCacheManager = new SimpleCacheManager();
+        simpleCacheManager.setCaches(caches);
+        simpleCacheManager.afterPropertiesSet();
+        return simpleCacheManager;
+    }
+
     private NoOpCacheManager noOpCacheManager() {
         logger.info("Caching disabled.");
         return new NoOpCacheManager();
@@ -374,4 +532,17 @@ public EhCacheManagerFactoryBean ehCacheManager() {
         return ehCacheManagerFactoryBean;
     }
 
+    /**
+     * Publishes the phenotype query cache statistics to the actuator, for those applications which use it.
+     */
+    @Configuration
+    @ConditionalOnClass(name = "org.springframework.boot.actuate.endpoint.PublicMetrics")
+    static class PhenotypeQueryCacheMetricsConfiguration {
+
+        @Bean
+        @ConditionalOnMissingBean
+        public PhenotypeQueryCacheMetrics phenotypeQueryCacheMetrics(PhenotypeQueryCache phenotypeQueryCache) {
+            return new PhenotypeQueryCacheMetrics(phenotypeQueryCache);
+        }
+    }
 }
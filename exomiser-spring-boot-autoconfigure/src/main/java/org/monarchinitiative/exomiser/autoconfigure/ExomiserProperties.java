@@ -23,6 +23,9 @@
 import org.springframework.boot.context.properties.ConfigurationProperties;
 import org.springframework.boot.context.properties.NestedConfigurationProperty;
 
+import java.util.HashMap;
+import java.util.Map;
+
 /**
  * @author Jules Jacobsen <jules.jacobsen@sanger.ac.uk>
  */
@@ -43,19 +46,63 @@ public class ExomiserProperties {
 
     private String localFrequencyPath = "";
 
+    /**
+     * read the tabix files forwards with a cursor rather than seeking for each variant. This is faster for large,
+     * position-sorted VCF files such as whole genomes.
+     */
+    private boolean tabixStreaming = false;
+
+    /**
+     * maximum number of readers opened for each tabix file. Readers are only opened when concurrent analyses need them.
+     */
+    private int tabixPoolSize = 4;
+
+    /**
+     * optional full system path to the binary allele store built by exomiser-db. When set this is used in place of
+     * the H2 frequency and variant tables.
+     */
+    private String alleleStorePath = "";
+
     //http://docs.spring.io/spring-boot/docs/current/reference/html/boot-features-caching.html
 //    private CacheType cache = CacheType.NONE;
 
     /**
-     * none/mem/ehcache
+     * none/mem/ehcache/caffeine/packed
      */
     private String cache = "none";
 
+    /**
+     * approximate maximum size in megabytes of each of the variant caches used by the packed cache option.
+     */
+    private int packedCacheMaxMb = 64;
+
+    /**
+     * optional full system path to a persistent cache of the variant frequency and pathogenicity data which is kept
+     * between runs. This sits underneath the in-memory cache and is cleared when the data version changes.
+     */
+    private String persistentCachePath = "";
+
+    /**
+     * Caffeine spec used by the caffeine cache option for any cache not configured in the cacheSpecs.
+     */
+    private String cacheSpec = "maximumSize=100000,recordStats";
+
+    /**
+     * Caffeine specs for individual caches used by the caffeine cache option, keyed by cache name.
+     */
+    private Map<String, String> cacheSpecs = new HashMap<>();
+
     /**
      * name of transcript data .ser file created from Jannovar for defining known exon locations
      */
     private String transcriptDataFileName = "hg19_ucsc.ser";
 
+    /**
+     * number of threads used for annotating variants with Jannovar. Values greater than 1 will annotate variants in
+     * parallel whilst preserving the VCF order.
+     */
+    private int variantAnnotationThreads = 1;
+
     //Random walk matrix for hiPhive and exomeWalker
     private String randomWalkFileName = "rw_string_9_05.gz";
     private String randomWalkIndexFileName = "rw_string_9_05_id2index.gz";
@@ -121,6 +168,30 @@ public void setLocalFrequencyPath(String localFrequencyPath) {
         this.localFrequencyPath = localFrequencyPath;
     }
 
+    public boolean isTabixStreaming() {
+        return tabixStreaming;
+    }
+
+    public void setTabixStreaming(boolean tabixStreaming) {
+        this.tabixStreaming = tabixStreaming;
+    }
+
+    public int getTabixPoolSize() {
+        return tabixPoolSize;
+    }
+
+    public void setTabixPoolSize(int tabixPoolSize) {
+        this.tabixPoolSize = tabixPoolSize;
+    }
+
+    public String getAlleleStorePath() {
+        return alleleStorePath;
+    }
+
+    public void setAlleleStorePath(String alleleStorePath) {
+        this.alleleStorePath = alleleStorePath;
+    }
+
     public String getCache() {
         return cache;
     }
@@ -129,6 +200,38 @@ public void setCache(String cache) {
         this.cache = cache;
     }
 
+    public int getPackedCacheMaxMb() {
+        return packedCacheMaxMb;
+    }
+
+    public void setPackedCacheMaxMb(int packedCacheMaxMb) {
+        this.packedCacheMaxMb = packedCacheMaxMb;
+    }
+
+    public String getPersistentCachePath() {
+        return persistentCachePath;
+    }
+
+    public void setPersistentCachePath(String persistentCachePath) {
+        this.persistentCachePath = persistentCachePath;
+    }
+
+    public String getCacheSpec() {
+        return cacheSpec;
+    }
+
+    public void setCacheSpec(String cacheSpec) {
+        this.cacheSpec = cacheSpec;
+    }
+
+    public Map<String, String> getCacheSpecs() {
+        return cacheSpecs;
+    }
+
+    public void setCacheSpecs(Map<String, String> cacheSpecs) {
+        this.cacheSpecs = cacheSpecs;
+    }
+
     public String getTranscriptDataFileName() {
         return transcriptDataFileName;
     }
@@ -137,6 +240,14 @@ public void setTranscriptDataFileName(String transcriptDataFileName) {
         this.transcriptDataFileName = transcriptDataFileName;
     }
 
+    public int getVariantAnnotationThreads() {
+        return variantAnnotationThreads;
+    }
+
+    public void setVariantAnnotationThreads(int variantAnnotationThreads) {
+        this.variantAnnotationThreads = variantAnnotationThreads;
+    }
+
     public String getRandomWalkFileName() {
         return randomWalkFileName;
     }
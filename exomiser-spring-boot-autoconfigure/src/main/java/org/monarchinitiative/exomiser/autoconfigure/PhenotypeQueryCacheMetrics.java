@@ -0,0 +1,60 @@
+/*
+ * The Exomiser - A tool to annotate and prioritize genomic variants
+ *
+ * Copyright (c) 2016-2017 Queen Mary University of London.
+ * Copyright (c) 2012-2016 Charité Universitätsmedizin Berlin and Genome Research Ltd.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.monarchinitiative.exomiser.autoconfigure;
+
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import org.monarchinitiative.exomiser.core.prioritisers.service.PhenotypeQueryCache;
+import org.springframework.boot.actuate.endpoint.PublicMetrics;
+import org.springframework.boot.actuate.metrics.Metric;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Publishes the size and hit rate of the {@link PhenotypeQueryCache} to the actuator metrics endpoint. This is set up
+ * by the {@link ExomiserAutoConfiguration} for any application with the actuator on its classpath.
+ *
+ * @author Jules Jacobsen <j.jacobsen@qmul.ac.uk>
+ */
+public class PhenotypeQueryCacheMetrics implements PublicMetrics {
+
+    private static final String PREFIX = "cache.phenotype-query.";
+
+    private final PhenotypeQueryCache phenotypeQueryCache;
+
+    public PhenotypeQueryCacheMetrics(PhenotypeQueryCache phenotypeQueryCache) {
+        this.phenotypeQueryCache = phenotypeQueryCache;
+    }
+
+    @Override
+    public Collection<Metric<?>> metrics() {
+        CacheStats stats = phenotypeQueryCache.getStats();
+        List<Metric<?>> metrics = new ArrayList<>();
+        metrics.add(new Metric<>(PREFIX + "size", phenotypeQueryCache.size()));
+        metrics.add(new Metric<>(PREFIX + "bytes", phenotypeQueryCache.weightedSize()));
+        metrics.add(new Metric<>(PREFIX + "hits", stats.hitCount()));
+        metrics.add(new Metric<>(PREFIX + "misses", stats.missCount()));
+        metrics.add(new Metric<>(PREFIX + "hit.ratio", stats.hitRate()));
+        metrics.add(new Metric<>(PREFIX + "evictions", stats.evictionCount()));
+        return metrics;
+    }
+}
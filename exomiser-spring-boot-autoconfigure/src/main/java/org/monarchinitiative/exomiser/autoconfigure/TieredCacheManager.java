@@ -0,0 +1,180 @@
+/*
+ * The Exomiser - A tool to annotate and prioritize genomic variants
+ *
+ * Copyright (c) 2016-2017 Queen Mary University of London.
+ * Copyright (c) 2012-2016 Charité Universitätsmedizin Berlin and Genome Research Ltd.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.monarchinitiative.exomiser.autoconfigure;
+
+import org.monarchinitiative.exomiser.core.genome.dao.PersistentVariantStore;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+
+import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Places a {@link PersistentVariantStore} underneath the in-memory caches of another cache manager for the variant
+ * caches. Lookups check the in-memory cache first, then the persistent store, copying any persistent hit back into
+ * memory. New values are written to both. Values are loaded through the in-memory cache, so a key requested by several
+ * threads at once is only loaded once. All other caches are passed through to the in-memory cache manager.
+ *
+ * @author Jules Jacobsen <j.jacobsen@qmul.ac.uk>
+ */
+public class TieredCacheManager implements CacheManager, DisposableBean {
+
+    private final CacheManager memoryCacheManager;
+    private final PersistentVariantStore persistentVariantStore;
+    private final Set<String> persistentCacheNames;
+
+    private final ConcurrentMap<String, Cache> tieredCaches = new ConcurrentHashMap<>();
+
+    public TieredCacheManager(CacheManager memoryCacheManager, PersistentVariantStore persistentVariantStore, Collection<String> persistentCacheNames) {
+        this.memoryCacheManager = memoryCacheManager;
+        this.persistentVariantStore = persistentVariantStore;
+        this.persistentCacheNames = new LinkedHashSet<>(persistentCacheNames);
+    }
+
+    @Override
+    public Cache getCache(String name) {
+        if (!persistentCacheNames.contains(name)) {
+            return memoryCacheManager.getCache(name);
+        }
+        return tieredCaches.computeIfAbsent(name, this::createTieredCache);
+    }
+
+    private Cache createTieredCache(String name) {
+        Cache persistentCache = persistentVariantStore.getCache(name);
+        Cache memoryCache = memoryCacheManager.getCache(name);
+        if (memoryCache == null) {
+            return persistentCache;
+        }
+        return new TieredCache(memoryCache, persistentCache);
+    }
+
+    @Override
+    public Collection<String> getCacheNames() {
+        Set<String> cacheNames = new LinkedHashSet<>(memoryCacheManager.getCacheNames());
+        cacheNames.addAll(persistentCacheNames);
+        return Collections.unmodifiableSet(cacheNames);
+    }
+
+    public CacheManager getMemoryCacheManager() {
+        return memoryCacheManager;
+    }
+
+    @Override
+    public void destroy() throws Exception {
+        if (memoryCacheManager instanceof DisposableBean) {
+            ((DisposableBean) memoryCacheManager).destroy();
+        }
+        persistentVariantStore.close();
+    }
+
+    private static class TieredCache implements Cache {
+
+        private final Cache memoryCache;
+        private final Cache persistentCache;
+
+        private TieredCache(Cache memoryCache, Cache persistentCache) {
+            this.memoryCache = memoryCache;
+            this.persistentCache = persistentCache;
+        }
+
+        @Override
+        public String getName() {
+            return memoryCache.getName();
+        }
+
+        @Override
+        public Object getNativeCache() {
+            return memoryCache.getNativeCache();
+        }
+
+        @Override
+        public ValueWrapper get(Object key) {
+            ValueWrapper valueWrapper = memoryCache.get(key);
+            if (valueWrapper != null) {
+                return valueWrapper;
+            }
+            valueWrapper = persistentCache.get(key);
+            if (valueWrapper != null) {
+                memoryCache.put(key, valueWrapper.get());
+            }
+            return valueWrapper;
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public <T> T get(Object key, Class<T> type) {
+            ValueWrapper valueWrapper = get(key);
+            if (valueWrapper == null) {
+                return null;
+            }
+            Object value = valueWrapper.get();
+            if (value != null && type != null && !type.isInstance(value)) {
+                throw new IllegalStateException("Cached value is not of required type [" + type.getName() + "]: " + value);
+            }
+            return (T) value;
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public <T> T get(Object key, Callable<T> valueLoader) {
+            //loading through the memory cache means concurrent analyses asking for the same key only load it once
+            return memoryCache.get(key, () -> {
+                ValueWrapper valueWrapper = persistentCache.get(key);
+                if (valueWrapper != null) {
+                    return (T) valueWrapper.get();
+                }
+                T value = valueLoader.call();
+                persistentCache.put(key, value);
+                return value;
+            });
+        }
+
+        @Override
+        public void put(Object key, Object value) {
+            memoryCache.put(key, value);
+            persistentCache.put(key, value);
+        }
+
+        @Override
+        public ValueWrapper putIfAbsent(Object key, Object value) {
+            ValueWrapper existing = get(key);
+            if (existing == null) {
+                put(key, value);
+            }
+            return existing;
+        }
+
+        @Override
+        public void evict(Object key) {
+            memoryCache.evict(key);
+            persistentCache.evict(key);
+        }
+
+        @Override
+        public void clear() {
+            memoryCache.clear();
+            persistentCache.clear();
+        }
+    }
+}
@@ -0,0 +1,86 @@
+/*
+ * The Exomiser - A tool to annotate and prioritize genomic variants
+ *
+ * Copyright (c) 2016-2017 Queen Mary University of London.
+ * Copyright (c) 2012-2016 Charité Universitätsmedizin Berlin and Genome Research Ltd.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.monarchinitiative.exomiser.autoconfigure;
+
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+import org.junit.Test;
+import org.monarchinitiative.exomiser.core.model.frequency.Frequency;
+import org.monarchinitiative.exomiser.core.model.frequency.FrequencyData;
+import org.monarchinitiative.exomiser.core.model.frequency.FrequencySource;
+import org.monarchinitiative.exomiser.core.model.frequency.RsId;
+import org.springframework.cache.Cache;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.hamcrest.CoreMatchers.*;
+import static org.junit.Assert.assertThat;
+
+/**
+ * @author Jules Jacobsen <j.jacobsen@qmul.ac.uk>
+ */
+public class BoundedCacheManagerTest {
+
+    @Test
+    public void testCachesAreCreatedWithSpecs() {
+        Map<String, String> specs = new HashMap<>();
+        specs.put("remm", "maximumSize=10");
+        BoundedCacheManager instance = new BoundedCacheManager(Arrays.asList("frequency", "cadd"), "maximumSize=100", specs);
+        instance.afterPropertiesSet();
+        assertThat(instance.getCacheNames(), hasItems("frequency", "cadd", "remm"));
+    }
+
+    @Test
+    public void testMissingCacheIsCreatedOnDemand() {
+        BoundedCacheManager instance = new BoundedCacheManager(Collections.emptyList(), "maximumSize=100", Collections.emptyMap());
+        instance.afterPropertiesSet();
+        assertThat(instance.getCache("wibble"), notNullValue());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidSpecThrowsException() {
+        new BoundedCacheManager(Collections.singletonList("frequency"), "wibble=1", Collections.emptyMap());
+    }
+
+    @Test
+    public void testStatsAreRecorded() {
+        BoundedCacheManager instance = new BoundedCacheManager(Collections.singletonList("frequency"), "maximumSize=100,recordStats", Collections.emptyMap());
+        instance.afterPropertiesSet();
+        Cache cache = instance.getCache("frequency");
+        cache.get("1-1-A-T");
+        cache.put("1-1-A-T", FrequencyData.empty());
+        cache.get("1-1-A-T");
+
+        CacheStats stats = instance.getCacheStats().get("frequency");
+        assertThat(stats.hitCount(), equalTo(1L));
+        assertThat(stats.missCount(), equalTo(1L));
+    }
+
+    @Test
+    public void testWeighFrequencyData() {
+        FrequencyData frequencyData = FrequencyData.of(RsId.empty(), Arrays.asList(Frequency.valueOf(0.1f, FrequencySource.ESP_ALL), Frequency.valueOf(0.2f, FrequencySource.EXAC_AFRICAN_INC_AFRICAN_AMERICAN)));
+        assertThat(BoundedCacheManager.weigh("key", frequencyData), equalTo(3));
+        assertThat(BoundedCacheManager.weigh("key", FrequencyData.empty()), equalTo(1));
+        assertThat(BoundedCacheManager.weigh("key", "value"), equalTo(1));
+    }
+}
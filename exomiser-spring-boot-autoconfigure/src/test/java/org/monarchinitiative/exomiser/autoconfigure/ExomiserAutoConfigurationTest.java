@@ -25,11 +25,16 @@
 import de.charite.compbio.jannovar.data.JannovarData;
 import de.charite.compbio.jannovar.reference.HG19RefDictBuilder;
 import org.junit.After;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 import org.mockito.Mockito;
+import org.monarchinitiative.exomiser.core.genome.VariantFactory;
 import org.monarchinitiative.exomiser.core.genome.dao.ErrorThrowingTabixDataSource;
+import org.monarchinitiative.exomiser.core.genome.dao.PackedVariantCache;
 import org.monarchinitiative.exomiser.core.genome.dao.TabixDataSource;
 import org.monarchinitiative.exomiser.core.prioritisers.util.DataMatrix;
+import org.springframework.boot.actuate.metrics.Metric;
 import org.springframework.boot.test.util.EnvironmentTestUtils;
 import org.springframework.cache.CacheManager;
 import org.springframework.cache.concurrent.ConcurrentMapCacheManager;
@@ -38,8 +43,13 @@
 import org.springframework.context.annotation.Configuration;
 
 import javax.sql.DataSource;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.attribute.FileTime;
+import java.util.List;
+import java.util.stream.Collectors;
 
 import static org.hamcrest.CoreMatchers.*;
 import static org.hamcrest.core.IsEqual.equalTo;
@@ -50,6 +60,9 @@
  */
 public class ExomiserAutoConfigurationTest {
 
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
     private AnnotationConfigApplicationContext context;
 
     private static final Path TEST_DATA = Paths.get("src/test/resources/data");
@@ -118,6 +131,20 @@ public void testJannovarDataCanBeOverridden() {
         assertThat(jannovarData, not(nullValue()));
     }
 
+    @Test
+    public void variantFactoryUsesSingleAnnotationThreadByDefault() {
+        load(EmptyConfiguration.class, TEST_DATA_ENV);
+        VariantFactory variantFactory = context.getBean(VariantFactory.class);
+        assertThat(variantFactory.getAnnotationThreads(), equalTo(1));
+    }
+
+    @Test
+    public void variantFactoryAnnotationThreadsCanBeSpecified() {
+        load(EmptyConfiguration.class, TEST_DATA_ENV, "exomiser.variant-annotation-threads=4");
+        VariantFactory variantFactory = context.getBean(VariantFactory.class);
+        assertThat(variantFactory.getAnnotationThreads(), equalTo(4));
+    }
+
     @Test(expected = RuntimeException.class)
     public void loadTabixFileThrowsRuntimeExceptionWhenFileNotFound() {
         String testTabixFilePath = TEST_DATA.resolve("wibble.tsv.gz").toAbsolutePath().toString();
@@ -350,6 +377,27 @@ public void cachingInMemCanBeDefined() {
         assertThat(cache.getCacheNames(), hasItems("pathogenicity", "frequency", "diseaseHp", "diseases","hpo", "mpo", "zpo", "cadd", "remm"));
     }
 
+    @Test
+    public void cachingCaffeineCanBeDefined() {
+        load(EmptyConfiguration.class, TEST_DATA_ENV, "exomiser.cache=caffeine", "exomiser.cache-specs.frequency=maximumWeight=1000,recordStats");
+        CacheManager cache = context.getBean(CacheManager.class);
+        assertThat(cache, instanceOf(BoundedCacheManager.class));
+        assertThat(cache.getCacheNames(), hasItems("pathogenicity", "frequency", "diseaseHp", "diseases","hpo", "mpo", "zpo", "cadd", "remm"));
+    }
+
+    @Test(expected = RuntimeException.class)
+    public void cachingCaffeineThrowsExceptionWhenSpecNotRecognised() {
+        load(EmptyConfiguration.class, TEST_DATA_ENV, "exomiser.cache=caffeine", "exomiser.cache-spec=wibble=1");
+    }
+
+    @Test
+    public void cachingPackedCanBeDefined() {
+        load(EmptyConfiguration.class, TEST_DATA_ENV, "exomiser.cache=packed");
+        CacheManager cache = context.getBean(CacheManager.class);
+        assertThat(cache.getCacheNames(), hasItems("pathogenicity", "frequency", "diseaseHp", "diseases","hpo", "mpo", "zpo", "cadd", "remm"));
+        assertThat(cache.getCache("frequency"), instanceOf(PackedVariantCache.class));
+    }
+
     @Test
     public void cachingEhCacheCanBeDefined() {
         load(EmptyConfiguration.class, TEST_DATA_ENV, "exomiser.cache=ehcache");
@@ -364,6 +412,33 @@ public void cachingCanBeOverridden() {
         assertThat(cache.getCacheNames(), hasItems("wibble"));
     }
 
+    @Test
+    public void testPhenotypeQueryCacheMetricsArePublishedWithActuator() {
+        load(EmptyConfiguration.class, TEST_DATA_ENV);
+        PhenotypeQueryCacheMetrics phenotypeQueryCacheMetrics = this.context.getBean(PhenotypeQueryCacheMetrics.class);
+        List<String> metricNames = phenotypeQueryCacheMetrics.metrics().stream().map(Metric::getName).collect(Collectors.toList());
+        assertThat(metricNames.contains("cache.phenotype-query.size"), is(true));
+        assertThat(metricNames.contains("cache.phenotype-query.hit.ratio"), is(true));
+    }
+
+    @Test
+    public void testDataFileVersionOfUnsetPathIsEmpty() {
+        assertThat(ExomiserAutoConfiguration.dataFileVersion(""), equalTo(""));
+    }
+
+    @Test
+    public void testDataFileVersionChangesWhenFileIsRegeneratedInPlace() throws Exception {
+        Path dataFile = temporaryFolder.newFile("remmData.tsv.gz").toPath();
+        Files.write(dataFile, "original".getBytes(StandardCharsets.UTF_8));
+        Files.setLastModifiedTime(dataFile, FileTime.fromMillis(1_000_000L));
+        String original = ExomiserAutoConfiguration.dataFileVersion(dataFile.toString());
+        assertThat(ExomiserAutoConfiguration.dataFileVersion(dataFile.toString()), equalTo(original));
+
+        Files.write(dataFile, "replaced".getBytes(StandardCharsets.UTF_8));
+        Files.setLastModifiedTime(dataFile, FileTime.fromMillis(2_000_000L));
+        assertThat(ExomiserAutoConfiguration.dataFileVersion(dataFile.toString()), not(equalTo(original)));
+    }
+
     @Configuration
     static class NoJannovarOverrideConfiguration {
         /*
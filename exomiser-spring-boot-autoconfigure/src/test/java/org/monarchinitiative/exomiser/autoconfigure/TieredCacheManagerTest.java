@@ -0,0 +1,125 @@
+/*
+ * The Exomiser - A tool to annotate and prioritize genomic variants
+ *
+ * Copyright (c) 2016-2017 Queen Mary University of London.
+ * Copyright (c) 2012-2016 Charité Universitätsmedizin Berlin and Genome Research Ltd.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.monarchinitiative.exomiser.autoconfigure;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.monarchinitiative.exomiser.core.genome.dao.PersistentVariantStore;
+import org.monarchinitiative.exomiser.core.model.VariantEvaluation;
+import org.monarchinitiative.exomiser.core.model.frequency.FrequencyData;
+import org.monarchinitiative.exomiser.core.model.frequency.RsId;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.cache.concurrent.ConcurrentMapCacheManager;
+
+import java.util.Collections;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.hamcrest.CoreMatchers.*;
+import static org.junit.Assert.assertThat;
+
+/**
+ * @author Jules Jacobsen <j.jacobsen@qmul.ac.uk>
+ */
+public class TieredCacheManagerTest {
+
+    @Rule
+    public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+    private static final VariantEvaluation VARIANT = VariantEvaluation.builder(1, 12345, "A", "T").build();
+    private static final FrequencyData FREQUENCY_DATA = FrequencyData.of(RsId.valueOf(12345));
+
+    private CacheManager memoryCacheManager;
+    private PersistentVariantStore persistentVariantStore;
+    private TieredCacheManager instance;
+
+    @Before
+    public void setUp() {
+        memoryCacheManager = new ConcurrentMapCacheManager("frequency", "hpo");
+        persistentVariantStore = PersistentVariantStore.open(temporaryFolder.getRoot().toPath().resolve("cache.db"), "1");
+        instance = new TieredCacheManager(memoryCacheManager, persistentVariantStore, Collections.singletonList("frequency"));
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        instance.destroy();
+    }
+
+    @Test
+    public void testNonPersistentCacheIsPassedThrough() {
+        assertThat(instance.getCache("hpo"), sameInstance(memoryCacheManager.getCache("hpo")));
+    }
+
+    @Test
+    public void testPutIsWrittenToBothTiers() {
+        instance.getCache("frequency").put(VARIANT, FREQUENCY_DATA);
+        assertThat(memoryCacheManager.getCache("frequency").get(VARIANT).get(), equalTo(FREQUENCY_DATA));
+        assertThat(persistentVariantStore.getCache("frequency").get(VARIANT).get(), equalTo(FREQUENCY_DATA));
+    }
+
+    @Test
+    public void testPersistentHitIsCopiedToMemory() {
+        persistentVariantStore.getCache("frequency").put(VARIANT, FREQUENCY_DATA);
+        Cache memoryCache = memoryCacheManager.getCache("frequency");
+        assertThat(memoryCache.get(VARIANT), nullValue());
+
+        assertThat(instance.getCache("frequency").get(VARIANT).get(), equalTo(FREQUENCY_DATA));
+        assertThat(memoryCache.get(VARIANT).get(), equalTo(FREQUENCY_DATA));
+    }
+
+    @Test
+    public void testLoadedValueIsWrittenToBothTiers() {
+        assertThat(instance.getCache("frequency").get(VARIANT, () -> FREQUENCY_DATA), equalTo(FREQUENCY_DATA));
+        assertThat(memoryCacheManager.getCache("frequency").get(VARIANT).get(), equalTo(FREQUENCY_DATA));
+        assertThat(persistentVariantStore.getCache("frequency").get(VARIANT).get(), equalTo(FREQUENCY_DATA));
+    }
+
+    @Test
+    public void testValueIsLoadedOnceForConcurrentRequests() throws Exception {
+        Cache cache = instance.getCache("frequency");
+        AtomicInteger numLoads = new AtomicInteger();
+        CountDownLatch loading = new CountDownLatch(1);
+        CountDownLatch released = new CountDownLatch(1);
+        Callable<FrequencyData> loader = () -> {
+            numLoads.incrementAndGet();
+            loading.countDown();
+            released.await(5, TimeUnit.SECONDS);
+            return FREQUENCY_DATA;
+        };
+
+        Thread first = new Thread(() -> cache.get(VARIANT, loader));
+        first.start();
+        loading.await(5, TimeUnit.SECONDS);
+        Thread second = new Thread(() -> cache.get(VARIANT, loader));
+        second.start();
+        released.countDown();
+        first.join();
+        second.join();
+
+        assertThat(numLoads.get(), equalTo(1));
+    }
+}
@@ -26,15 +26,19 @@
 import com.fasterxml.jackson.datatype.jdk7.Jdk7Module;
 import de.charite.compbio.jannovar.mendel.ModeOfInheritance;
 import de.charite.compbio.jannovar.reference.HG19RefDictBuilder;
-import org.monarchinitiative.exomiser.core.Exomiser;
 import org.monarchinitiative.exomiser.core.analysis.*;
+import org.monarchinitiative.exomiser.core.analysis.util.VariantCountEstimator;
 import org.monarchinitiative.exomiser.core.filters.FilterReport;
 import org.monarchinitiative.exomiser.core.model.Gene;
 import org.monarchinitiative.exomiser.core.model.GeneticInterval;
 import org.monarchinitiative.exomiser.core.model.VariantEvaluation;
 import org.monarchinitiative.exomiser.core.prioritisers.PriorityType;
 import org.monarchinitiative.exomiser.core.prioritisers.service.PriorityService;
-import org.monarchinitiative.exomiser.core.writers.*;
+import org.monarchinitiative.exomiser.core.writers.ResultsWriterUtils;
+import org.monarchinitiative.exomiser.core.writers.VariantEffectCount;
+import org.monarchinitiative.exomiser.web.service.AnalysisJob;
+import org.monarchinitiative.exomiser.web.service.AnalysisJobService;
+import org.monarchinitiative.exomiser.web.service.AnalysisJobService.AnalysisJobRejectedException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -43,12 +47,11 @@
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.ResponseBody;
 import org.springframework.web.multipart.MultipartFile;
 
 import javax.servlet.http.HttpSession;
-import java.io.BufferedReader;
 import java.io.IOException;
-import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
@@ -70,14 +73,12 @@ public class SubmitJobController {
     @Autowired
     private boolean clinicalInstance;
 
-    @Autowired
-    private Exomiser exomiser;
     @Autowired
     private SettingsParser settingsParser;
     @Autowired
     private PriorityService priorityService;
     @Autowired
-    private ResultsWriterFactory resultsWriterFactory;
+    private AnalysisJobService analysisJobService;
 
     @GetMapping(value = "submit")
     public String submit() {
@@ -103,8 +104,6 @@ public String submit(
             HttpSession session,
             Model model) {
 
-        UUID analysisId = UUID.randomUUID();
-        logger.info("Analysis id: {}", analysisId);
         Path vcfPath = createVcfPathFromMultipartFile(vcfFile);
         Path pedPath = createPedPathFromMultipartFile(pedFile);
         //require a mimimum input of a VCF file and a set of HPO terms - these can come from the diseaseId
@@ -126,7 +125,7 @@ public String submit(
         logger.info("Using disease: {}", diseaseId);
         logger.info("Using phenotypes: {}", phenotypes);
 
-        int numVariantsInSample = countVariantLinesInVcf(vcfPath);
+        long numVariantsInSample = estimateVariantCount(vcfPath);
         if (numVariantsInSample > maxVariants) {
             logger.info("{} contains {} variants - this is more than the allowed maximum of {}."
                     + "Returning user to submit page", vcfPath, numVariantsInSample, maxVariants);
@@ -136,34 +135,57 @@ public String submit(
         }
 
         Analysis analysis = buildAnalysis(vcfPath, pedPath, proband, diseaseId, phenotypes, geneticInterval, minimumQuality, removeDbSnp, keepOffTarget, keepNonPathogenic, modeOfInheritance, frequency, makeGenesToKeep(genesToFilter), prioritiser);
-        AnalysisResults analysisResults = exomiser.run(analysis);
-
-        Path outputDir = Paths.get(System.getProperty("java.io.tmpdir"), analysisId.toString());
         try {
-            Files.createDirectory(outputDir);
-        } catch (IOException e) {
-            logger.error("Unable to create directory {}", outputDir, e);
+            AnalysisJob job = analysisJobService.submit(analysis, Arrays.asList(vcfPath, pedPath));
+            logger.info("Analysis id: {}", job.getId());
+            //the analysis runs in the background, so send the user to the results page to wait for it
+            return "redirect:/results?id=" + job.getId();
+        } catch (AnalysisJobRejectedException e) {
+            logger.info("Analysis rejected - {}", e.getMessage());
+            model.addAttribute("errorMessage", e.getMessage());
+            return "progress";
         }
-        logger.info("Output dir: {}", outputDir);
-        String outFileName = outputDir.toString() + "/results";
-        OutputSettings outputSettings = OutputSettings.builder()
-                .numberOfGenesToShow(20)
-                .outputPrefix(outFileName)
-                //OutputFormat.HTML, causes issues due to thymeleaf templating
-                .outputFormats(EnumSet.of(OutputFormat.TSV_GENE, OutputFormat.TSV_VARIANT, OutputFormat.VCF))
-                .build();
+    }
 
-        for (OutputFormat outFormat : outputSettings.getOutputFormats()) {
-            ResultsWriter resultsWriter = resultsWriterFactory.getResultsWriter(outFormat);
-            resultsWriter.writeFile(analysis, analysisResults, outputSettings);
+    @GetMapping(value = "results")
+    public String results(@RequestParam("id") UUID analysisId, Model model) {
+        AnalysisJob job = analysisJobService.getJob(analysisId);
+        if (job == null) {
+            logger.info("Analysis {} not found", analysisId);
+            model.addAttribute("errorMessage", "Analysis " + analysisId + " was not found. Results are only kept for a limited time - please submit your analysis again.");
+            return "progress";
         }
-
-        buildResultsModel(model, analysis, analysisResults);
-        logger.info("Returning {} results to user", vcfPath.getFileName());
-        cleanUpSampleFiles(vcfPath, pedPath);
+        if (job.getStatus() != AnalysisJob.Status.COMPLETED) {
+            model.addAttribute("job", job);
+            return "progress";
+        }
+        buildResultsModel(model, job.getAnalysis(), job.getAnalysisResults());
+        logger.info("Returning analysis {} results to user", analysisId);
         return "results";
     }
 
+    /**
+     * Polled by the progress page while the analysis is waiting or running.
+     */
+    @GetMapping(value = "progress", produces = "application/json")
+    @ResponseBody
+    public Map<String, Object> progress(@RequestParam("id") UUID analysisId) {
+        AnalysisJob job = analysisJobService.getJob(analysisId);
+        Map<String, Object> progress = new LinkedHashMap<>();
+        progress.put("id", analysisId);
+        if (job == null) {
+            progress.put("status", "UNKNOWN");
+            return progress;
+        }
+        progress.put("status", job.getStatus());
+        progress.put("currentStep", job.getCurrentStep());
+        progress.put("numVariantsLoaded", job.getNumVariantsLoaded());
+        progress.put("numVariantsPassed", job.getNumVariantsPassed());
+        progress.put("elapsedSeconds", job.getElapsedSeconds());
+        progress.put("errorMessage", job.getErrorMessage());
+        return progress;
+    }
+
     private List<String> getDiseasePhenotypes(String diseaseId) {
         if (diseaseId == null || diseaseId.isEmpty()) {
             return Collections.emptyList();
@@ -171,24 +193,16 @@ private List<String> getDiseasePhenotypes(String diseaseId) {
         return priorityService.getHpoIdsForDiseaseId(diseaseId);
     }
 
-    private int countVariantLinesInVcf(Path vcfPath) {
-        int variantCount = 0;
-        try (BufferedReader fileReader = Files.newBufferedReader(vcfPath, StandardCharsets.UTF_8)) {
-            boolean readingVariants = false;
-            String line;
-            for (line = fileReader.readLine(); fileReader.readLine() != null;) {
-                if (line.startsWith("#CHROM")) {
-                    readingVariants = true;
-                }
-                while (readingVariants) {
-                    variantCount++;
-                }
-            }
+    //only the first records are read so that a large upload does not hold up the request thread
+    private long estimateVariantCount(Path vcfPath) {
+        try {
+            long variantCount = VariantCountEstimator.estimateVariantCount(vcfPath);
+            logger.info("Vcf {} contains approximately {} variants", vcfPath, variantCount);
+            return variantCount;
         } catch (IOException ex) {
-            logger.error("", ex);
+            logger.error("Unable to count variants in {}", vcfPath, ex);
+            return 0;
         }
-        logger.info("Vcf {} contains {} variants", vcfPath, variantCount);
-        return variantCount;
     }
 
     private Analysis buildAnalysis(Path vcfPath, Path pedPath, String proband, String diseaseId, List<String> phenotypes, String geneticInterval, Float minimumQuality, Boolean removeDbSnp, Boolean keepOffTarget, Boolean keepNonPathogenic, String modeOfInheritance, String frequency, Set<Integer> genesToKeep, String prioritiser) {
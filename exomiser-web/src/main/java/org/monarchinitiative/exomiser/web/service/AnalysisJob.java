@@ -0,0 +1,152 @@
+/*
+ * The Exomiser - A tool to annotate and prioritize genomic variants
+ *
+ * Copyright (c) 2016-2017 Queen Mary University of London.
+ * Copyright (c) 2012-2016 Charité Universitätsmedizin Berlin and Genome Research Ltd.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.monarchinitiative.exomiser.web.service;
+
+import org.monarchinitiative.exomiser.core.analysis.Analysis;
+import org.monarchinitiative.exomiser.core.analysis.AnalysisProgressListener;
+import org.monarchinitiative.exomiser.core.analysis.AnalysisResults;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.UUID;
+
+/**
+ * An analysis submitted through the web interface. The job records the progress of the analysis as it runs on one of
+ * the {@link AnalysisJobService} workers, so that it can be polled from the results page.
+ *
+ * @author Jules Jacobsen <j.jacobsen@qmul.ac.uk>
+ */
+public class AnalysisJob implements AnalysisProgressListener {
+
+    public enum Status {
+        QUEUED, RUNNING, COMPLETED, FAILED
+    }
+
+    private final UUID id;
+    private final Analysis analysis;
+    private final Path outputDir;
+    private final Instant submitted = Instant.now();
+
+    private volatile Status status = Status.QUEUED;
+    private volatile String currentStep = "Waiting to start";
+    private volatile int numVariantsLoaded = 0;
+    private volatile int numVariantsPassed = 0;
+    private volatile Instant finished = null;
+    private volatile String errorMessage = "";
+    private volatile AnalysisResults analysisResults = null;
+
+    AnalysisJob(UUID id, Analysis analysis, Path outputDir) {
+        this.id = id;
+        this.analysis = analysis;
+        this.outputDir = outputDir;
+    }
+
+    public UUID getId() {
+        return id;
+    }
+
+    public Analysis getAnalysis() {
+        return analysis;
+    }
+
+    public Path getOutputDir() {
+        return outputDir;
+    }
+
+    public Status getStatus() {
+        return status;
+    }
+
+    public boolean isFinished() {
+        return status == Status.COMPLETED || status == Status.FAILED;
+    }
+
+    public String getCurrentStep() {
+        return currentStep;
+    }
+
+    public int getNumVariantsLoaded() {
+        return numVariantsLoaded;
+    }
+
+    public int getNumVariantsPassed() {
+        return numVariantsPassed;
+    }
+
+    public String getErrorMessage() {
+        return errorMessage;
+    }
+
+    /**
+     * @return the results of the analysis, or null if it has not completed.
+     */
+    public AnalysisResults getAnalysisResults() {
+        return analysisResults;
+    }
+
+    /**
+     * @return the time spent waiting for a worker or running, up until the job finished.
+     */
+    public long getElapsedSeconds() {
+        Instant end = finished == null ? Instant.now() : finished;
+        return Duration.between(submitted, end).getSeconds();
+    }
+
+    @Override
+    public void stepStarted(String description) {
+        currentStep = description;
+    }
+
+    @Override
+    public void variantsLoaded(int numLoaded, int numPassed) {
+        numVariantsLoaded = numLoaded;
+        numVariantsPassed = numPassed;
+    }
+
+    void running() {
+        status = Status.RUNNING;
+        currentStep = "Starting analysis";
+    }
+
+    void completed(AnalysisResults analysisResults) {
+        this.analysisResults = analysisResults;
+        finished = Instant.now();
+        currentStep = "Finished";
+        status = Status.COMPLETED;
+    }
+
+    void failed(String errorMessage) {
+        this.errorMessage = errorMessage;
+        finished = Instant.now();
+        currentStep = "Failed";
+        status = Status.FAILED;
+    }
+
+    @Override
+    public String toString() {
+        return "AnalysisJob{" +
+                "id=" + id +
+                ", status=" + status +
+                ", currentStep='" + currentStep + '\'' +
+                '}';
+    }
+}
@@ -0,0 +1,207 @@
+/*
+ * The Exomiser - A tool to annotate and prioritize genomic variants
+ *
+ * Copyright (c) 2016-2017 Queen Mary University of London.
+ * Copyright (c) 2012-2016 Charité Universitätsmedizin Berlin and Genome Research Ltd.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.monarchinitiative.exomiser.web.service;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import org.monarchinitiative.exomiser.core.Exomiser;
+import org.monarchinitiative.exomiser.core.analysis.Analysis;
+import org.monarchinitiative.exomiser.core.analysis.AnalysisResults;
+import org.monarchinitiative.exomiser.core.writers.*;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs analyses submitted from the web interface on a small pool of background workers, so that the request thread
+ * can return straight away and long analyses are not limited by the HTTP timeout. Jobs are held until they finish, then
+ * kept for a while after the results page last asked for them. As finished jobs hold all of their results the number of
+ * variants they keep is also bounded, dropping the least recently viewed first. The job which finished most recently
+ * is always kept, however many variants it has, so that its results are there when the results page asks for them.
+ *
+ * @author Jules Jacobsen <j.jacobsen@qmul.ac.uk>
+ */
+@Service
+public class AnalysisJobService {
+
+    private static final Logger logger = LoggerFactory.getLogger(AnalysisJobService.class);
+
+    private final Exomiser exomiser;
+    private final ResultsWriterFactory resultsWriterFactory;
+
+    private final ThreadPoolExecutor workers;
+    private final Map<UUID, AnalysisJob> activeJobs = new ConcurrentHashMap<>();
+    private final Cache<UUID, AnalysisJob> finishedJobs;
+
+    @Autowired
+    public AnalysisJobService(Exomiser exomiser, ResultsWriterFactory resultsWriterFactory,
+                              @Value("${exomiser.web.max-concurrent-jobs:2}") int maxConcurrentJobs,
+                              @Value("${exomiser.web.max-queued-jobs:20}") int maxQueuedJobs,
+                              @Value("${exomiser.web.job-retention-minutes:60}") long jobRetentionMinutes,
+                              @Value("${exomiser.web.max-retained-variants:1000000}") long maxRetainedVariants) {
+        if (maxRetainedVariants < 1) {
+            throw new IllegalArgumentException("exomiser.web.max-retained-variants must be at least 1");
+        }
+        this.exomiser = exomiser;
+        this.resultsWriterFactory = resultsWriterFactory;
+        this.workers = new ThreadPoolExecutor(maxConcurrentJobs, maxConcurrentJobs, 0L, TimeUnit.MILLISECONDS,
+                new LinkedBlockingQueue<>(maxQueuedJobs), daemonThreadFactory("analysis-worker-"));
+        this.finishedJobs = CacheBuilder.newBuilder()
+                .expireAfterAccess(jobRetentionMinutes, TimeUnit.MINUTES)
+                //a single segment, otherwise the limit is split between them and one large job could never be kept
+                .concurrencyLevel(1)
+                .maximumWeight(maxRetainedVariants)
+                //a job heavier than the limit would be dropped as soon as it was added, so its weight is capped at the
+                //limit - it then displaces all the others but is itself kept until the next job finishes
+                .weigher((UUID id, AnalysisJob job) -> (int) Math.min(numVariantsHeld(job), maxRetainedVariants))
+                .build();
+        logger.info("Running up to {} analyses at once with up to {} waiting", maxConcurrentJobs, maxQueuedJobs);
+    }
+
+    /**
+     * Queues the analysis to be run in the background.
+     *
+     * @param sampleFiles the uploaded files used by the analysis, which are deleted once it has finished.
+     * @return the queued job.
+     * @throws AnalysisJobRejectedException if there are already too many analyses waiting to run.
+     */
+    public AnalysisJob submit(Analysis analysis, List<Path> sampleFiles) {
+        UUID id = UUID.randomUUID();
+        Path outputDir = Paths.get(System.getProperty("java.io.tmpdir"), id.toString());
+        AnalysisJob job = new AnalysisJob(id, analysis, outputDir);
+        activeJobs.put(id, job);
+        try {
+            workers.execute(() -> run(job, sampleFiles));
+        } catch (RejectedExecutionException e) {
+            activeJobs.remove(id);
+            cleanUpSampleFiles(sampleFiles);
+            throw new AnalysisJobRejectedException("The server is too busy to accept new analyses right now. Please try again later.");
+        }
+        logger.info("Queued analysis {} - {} analyses waiting", id, workers.getQueue().size());
+        return job;
+    }
+
+    /**
+     * @return the job, or null if there is no such job or it has expired.
+     */
+    public AnalysisJob getJob(UUID id) {
+        AnalysisJob job = activeJobs.get(id);
+        return job == null ? finishedJobs.getIfPresent(id) : job;
+    }
+
+    //the variants are the bulk of the results, so are a good enough measure of the memory held by a job
+    private static int numVariantsHeld(AnalysisJob job) {
+        AnalysisResults analysisResults = job.getAnalysisResults();
+        return analysisResults == null ? 1 : 1 + analysisResults.getVariantEvaluations().size();
+    }
+
+    private void run(AnalysisJob job, List<Path> sampleFiles) {
+        logger.info("Running analysis {}", job.getId());
+        job.running();
+        try {
+            AnalysisResults analysisResults = exomiser.run(job.getAnalysis(), job);
+            job.stepStarted("Writing results");
+            writeResults(job, analysisResults);
+            job.completed(analysisResults);
+            logger.info("Finished analysis {}", job.getId());
+        } catch (Exception e) {
+            logger.error("Analysis {} failed", job.getId(), e);
+            job.failed(e.getMessage());
+        } finally {
+            cleanUpSampleFiles(sampleFiles);
+            //the job moves over once it has finished so that it is always available to the results page
+            finishedJobs.put(job.getId(), job);
+            activeJobs.remove(job.getId());
+        }
+    }
+
+    private void writeResults(AnalysisJob job, AnalysisResults analysisResults) {
+        Path outputDir = job.getOutputDir();
+        try {
+            Files.createDirectory(outputDir);
+        } catch (IOException e) {
+            logger.error("Unable to create directory {}", outputDir, e);
+        }
+        logger.info("Output dir: {}", outputDir);
+        String outFileName = outputDir.toString() + "/results";
+        OutputSettings outputSettings = OutputSettings.builder()
+                .numberOfGenesToShow(20)
+                .outputPrefix(outFileName)
+                //OutputFormat.HTML, causes issues due to thymeleaf templating
+                .outputFormats(EnumSet.of(OutputFormat.TSV_GENE, OutputFormat.TSV_VARIANT, OutputFormat.VCF))
+                .build();
+
+        for (OutputFormat outFormat : outputSettings.getOutputFormats()) {
+            ResultsWriter resultsWriter = resultsWriterFactory.getResultsWriter(outFormat);
+            resultsWriter.writeFile(job.getAnalysis(), analysisResults, outputSettings);
+        }
+    }
+
+    //This throws 'java.nio.file.FileSystemException: The process cannot access the file because it is being used by another process.'
+    // when on Windows as it seems tha Tomcat is locking the files/not setting the correct owner permissions.
+    private void cleanUpSampleFiles(List<Path> sampleFiles) {
+        for (Path sampleFile : sampleFiles) {
+            try {
+                if (sampleFile != null) {
+                    logger.info("Deleting sample input file {}", sampleFile);
+                    Files.deleteIfExists(sampleFile);
+                }
+            } catch (IOException ex) {
+                logger.error("Unable to delete sample file {}", sampleFile, ex);
+            }
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        workers.shutdownNow();
+    }
+
+    private static ThreadFactory daemonThreadFactory(String namePrefix) {
+        AtomicInteger threadCount = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, namePrefix + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    public static class AnalysisJobRejectedException extends RuntimeException {
+
+        public AnalysisJobRejectedException(String message) {
+            super(message);
+        }
+    }
+}
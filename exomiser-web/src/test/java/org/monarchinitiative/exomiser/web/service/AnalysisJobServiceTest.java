@@ -0,0 +1,205 @@
+/*
+ * The Exomiser - A tool to annotate and prioritize genomic variants
+ *
+ * Copyright (c) 2016-2017 Queen Mary University of London.
+ * Copyright (c) 2012-2016 Charité Universitätsmedizin Berlin and Genome Research Ltd.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.monarchinitiative.exomiser.web.service;
+
+import org.junit.After;
+import org.junit.Test;
+import org.monarchinitiative.exomiser.core.Exomiser;
+import org.monarchinitiative.exomiser.core.analysis.Analysis;
+import org.monarchinitiative.exomiser.core.analysis.AnalysisProgressListener;
+import org.monarchinitiative.exomiser.core.analysis.AnalysisResults;
+import org.monarchinitiative.exomiser.core.model.VariantEvaluation;
+import org.monarchinitiative.exomiser.core.writers.OutputFormat;
+import org.monarchinitiative.exomiser.core.writers.ResultsWriter;
+import org.monarchinitiative.exomiser.core.writers.ResultsWriterFactory;
+import org.monarchinitiative.exomiser.web.service.AnalysisJobService.AnalysisJobRejectedException;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.junit.Assert.assertThat;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * @author Jules Jacobsen <j.jacobsen@qmul.ac.uk>
+ */
+public class AnalysisJobServiceTest {
+
+    private final Exomiser exomiser = mock(Exomiser.class);
+    private final ResultsWriterFactory resultsWriterFactory = mock(ResultsWriterFactory.class);
+    private final CountDownLatch analysisReleased = new CountDownLatch(1);
+    private AnalysisResults analysisResults = AnalysisResults.builder().build();
+
+    private AnalysisJobService instance;
+
+    private AnalysisJobService newInstance(int maxConcurrentJobs, int maxQueuedJobs) {
+        return newInstance(maxConcurrentJobs, maxQueuedJobs, 1000);
+    }
+
+    private AnalysisJobService newInstance(int maxConcurrentJobs, int maxQueuedJobs, long maxRetainedVariants) {
+        when(resultsWriterFactory.getResultsWriter(any(OutputFormat.class))).thenReturn(mock(ResultsWriter.class));
+        when(exomiser.run(any(Analysis.class), any(AnalysisProgressListener.class))).thenAnswer(invocation -> {
+            AnalysisProgressListener progressListener = (AnalysisProgressListener) invocation.getArguments()[1];
+            progressListener.stepStarted("Loading and filtering variants");
+            progressListener.variantsLoaded(100, 10);
+            analysisReleased.await(5, TimeUnit.SECONDS);
+            return analysisResults;
+        });
+        return new AnalysisJobService(exomiser, resultsWriterFactory, maxConcurrentJobs, maxQueuedJobs, 60, maxRetainedVariants);
+    }
+
+    @After
+    public void tearDown() {
+        analysisReleased.countDown();
+        if (instance != null) {
+            instance.shutdown();
+        }
+    }
+
+    private void waitForStatus(AnalysisJob job, AnalysisJob.Status status) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (job.getStatus() != status && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertThat(job.getStatus(), equalTo(status));
+    }
+
+    @Test
+    public void testSubmitReturnsBeforeAnalysisHasFinished() throws Exception {
+        instance = newInstance(1, 1);
+        Path vcfPath = Files.createTempFile("exomiser-", ".vcf");
+
+        AnalysisJob job = instance.submit(Analysis.builder().build(), Collections.singletonList(vcfPath));
+        assertThat(instance.getJob(job.getId()), equalTo(job));
+
+        waitForStatus(job, AnalysisJob.Status.RUNNING);
+        assertThat(job.getCurrentStep(), equalTo("Loading and filtering variants"));
+        assertThat(job.getNumVariantsLoaded(), equalTo(100));
+        assertThat(job.getNumVariantsPassed(), equalTo(10));
+        assertThat(job.getAnalysisResults(), nullValue());
+
+        analysisReleased.countDown();
+        waitForStatus(job, AnalysisJob.Status.COMPLETED);
+        assertThat(Files.exists(vcfPath), is(false));
+    }
+
+    @Test(expected = AnalysisJobRejectedException.class)
+    public void testSubmitRejectsAnalysisWhenQueueIsFull() throws Exception {
+        instance = newInstance(1, 1);
+        AnalysisJob running = instance.submit(Analysis.builder().build(), Collections.emptyList());
+        waitForStatus(running, AnalysisJob.Status.RUNNING);
+        instance.submit(Analysis.builder().build(), Collections.emptyList());
+        instance.submit(Analysis.builder().build(), Collections.emptyList());
+    }
+
+    @Test
+    public void testFailedAnalysisIsReported() throws Exception {
+        instance = new AnalysisJobService(exomiser, resultsWriterFactory, 1, 1, 60, 1000);
+        when(exomiser.run(any(Analysis.class), any(AnalysisProgressListener.class))).thenThrow(new IllegalStateException("Boom!"));
+
+        AnalysisJob job = instance.submit(Analysis.builder().build(), Collections.emptyList());
+
+        waitForStatus(job, AnalysisJob.Status.FAILED);
+        assertThat(job.getErrorMessage(), equalTo("Boom!"));
+    }
+
+    private void resultsWithVariants(int numVariants) {
+        List<VariantEvaluation> variants = new ArrayList<>();
+        for (int i = 1; i <= numVariants; i++) {
+            variants.add(VariantEvaluation.builder(1, i, "A", "T").build());
+        }
+        analysisResults = AnalysisResults.builder().variantEvaluations(variants).build();
+    }
+
+    @Test
+    public void testRunningJobIsKeptWhenFinishedJobsAreOverTheVariantLimit() throws Exception {
+        resultsWithVariants(5);
+        instance = newInstance(1, 1, 2);
+
+        AnalysisJob job = instance.submit(Analysis.builder().build(), Collections.emptyList());
+        waitForStatus(job, AnalysisJob.Status.RUNNING);
+        assertThat(instance.getJob(job.getId()), equalTo(job));
+    }
+
+    @Test
+    public void testFinishedJobWithMoreVariantsThanTheLimitIsKept() throws Exception {
+        resultsWithVariants(5);
+        instance = newInstance(1, 1, 2);
+
+        AnalysisJob job = instance.submit(Analysis.builder().build(), Collections.emptyList());
+        analysisReleased.countDown();
+        waitForStatus(job, AnalysisJob.Status.COMPLETED);
+        //the single worker only starts the next job once it has moved the first over to the finished jobs
+        CountDownLatch nextReleased = new CountDownLatch(1);
+        when(exomiser.run(any(Analysis.class), any(AnalysisProgressListener.class))).thenAnswer(invocation -> {
+            nextReleased.await(5, TimeUnit.SECONDS);
+            return analysisResults;
+        });
+        AnalysisJob next = instance.submit(Analysis.builder().build(), Collections.emptyList());
+        waitForStatus(next, AnalysisJob.Status.RUNNING);
+
+        assertThat(instance.getJob(job.getId()), equalTo(job));
+        assertThat(instance.getJob(job.getId()).getAnalysisResults().getVariantEvaluations().size(), equalTo(5));
+        nextReleased.countDown();
+    }
+
+    @Test
+    public void testFinishedJobsOverTheVariantLimitAreDroppedOldestFirst() throws Exception {
+        resultsWithVariants(5);
+        instance = newInstance(1, 1, 2);
+
+        AnalysisJob first = instance.submit(Analysis.builder().build(), Collections.emptyList());
+        AnalysisJob second = instance.submit(Analysis.builder().build(), Collections.emptyList());
+        analysisReleased.countDown();
+        waitForStatus(first, AnalysisJob.Status.COMPLETED);
+        waitForStatus(second, AnalysisJob.Status.COMPLETED);
+        //the job only moves to the finished jobs after its status has been updated
+        long deadline = System.currentTimeMillis() + 5000;
+        while (instance.getJob(first.getId()) != null && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+
+        assertThat(instance.getJob(first.getId()), nullValue());
+        assertThat(instance.getJob(second.getId()), equalTo(second));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testVariantLimitMustBePositive() {
+        instance = newInstance(1, 1, 0);
+    }
+
+    @Test
+    public void testUnknownJobIsNull() {
+        instance = newInstance(1, 1);
+        assertThat(instance.getJob(UUID.randomUUID()), nullValue());
+    }
+}